@@ -0,0 +1,105 @@
+package io.chung.popularmovies;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.res.Configuration;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rotates MainActivity and checks that the new activity takes over the list the old one had
+ * loaded, with the list it was switched to, instead of loading the popular list again. Needs
+ * network access to TMDb, or the lists in the local store.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConfigurationChangeTest {
+
+    private static final long LOAD_TIMEOUT_MILLIS = 15000;
+    private static final long POLL_MILLIS = 100;
+
+    private Instrumentation mInstrumentation;
+    private MainActivity mActivity;
+
+    @Before
+    public void launchActivity() throws Exception {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.setClassName(InstrumentationRegistry.getTargetContext(),
+                MainActivity.class.getName());
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        mActivity = (MainActivity) mInstrumentation.startActivitySync(intent);
+    }
+
+    @After
+    public void finishActivity() {
+        mActivity.setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+        mActivity.finish();
+    }
+
+    @Test
+    public void rotation_keepsTheLoadedListAndSortCriteria() throws Exception {
+        assertTrue(mInstrumentation.invokeMenuActionSync(mActivity,
+                R.id.action_sort_top_rated, 0));
+        waitForItems(mActivity);
+
+        MovieListState listState = mActivity.getListState();
+        int itemCount = listState.getPager().getItemCount();
+
+        boolean portrait = mActivity.getResources().getConfiguration().orientation
+                == Configuration.ORIENTATION_PORTRAIT;
+        MainActivity rotated = rotate(portrait
+                ? ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE
+                : ActivityInfo.SCREEN_ORIENTATION_PORTRAIT);
+        assertNotSame(mActivity, rotated);
+        mActivity = rotated;
+
+        // Nothing had time to load: the new activity shows what the old one had straight away.
+        assertSame(listState, rotated.getListState());
+        assertEquals(NetworkUtils.SortCriteria.TOP_RATED, listState.getSortCriteria());
+        assertEquals(itemCount, listOf(rotated).getAdapter().getItemCount());
+        assertEquals(rotated.getString(R.string.title_top_rated), rotated.getTitle());
+    }
+
+    private MainActivity rotate(int orientation) {
+        Instrumentation.ActivityMonitor monitor =
+                mInstrumentation.addMonitor(MainActivity.class.getName(), null, false);
+        try {
+            mActivity.setRequestedOrientation(orientation);
+            Activity recreated = mInstrumentation.waitForMonitorWithTimeout(monitor,
+                    LOAD_TIMEOUT_MILLIS);
+            assertNotNull("activity wasn't recreated", recreated);
+            mInstrumentation.waitForIdleSync();
+            return (MainActivity) recreated;
+        } finally {
+            mInstrumentation.removeMonitor(monitor);
+        }
+    }
+
+    private static RecyclerView listOf(MainActivity activity) {
+        return (RecyclerView) activity.findViewById(R.id.rv_movie_list);
+    }
+
+    private static void waitForItems(MainActivity activity) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (activity.getListState().isLoading()
+                || listOf(activity).getAdapter().getItemCount() == 0) {
+            assertTrue("movie list didn't load", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.chung.popularmovies;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.ColorDrawable;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a grid cell's poster view takes its height from its width alone, so setting its
+ * image never asks for a layout. The view is never attached, so the test can drive it directly.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PosterImageViewTest {
+
+    private static final int WIDTH = 360;
+
+    private PosterImageView mView;
+
+    @Before
+    public void setUp() {
+        mView = new PosterImageView(InstrumentationRegistry.getTargetContext());
+        layOut();
+    }
+
+    @Test
+    public void measure_isTwoByThreeFromTheWidth() {
+        assertEquals(WIDTH, mView.getMeasuredWidth());
+        assertEquals(WIDTH * 3 / 2, mView.getMeasuredHeight());
+    }
+
+    @Test
+    public void setImage_doesNotRequestLayout() {
+        mView.setImageDrawable(new ColorDrawable(0xff424242));
+        assertFalse(mView.isLayoutRequested());
+
+        mView.setImageBitmap(Bitmap.createBitmap(185, 278, Bitmap.Config.RGB_565));
+        assertFalse(mView.isLayoutRequested());
+
+        mView.setImageBitmap(Bitmap.createBitmap(92, 138, Bitmap.Config.RGB_565));
+        assertFalse(mView.isLayoutRequested());
+
+        mView.setImageDrawable(null);
+        assertFalse(mView.isLayoutRequested());
+    }
+
+    @Test
+    public void otherChanges_stillRequestLayout() {
+        mView.setPadding(1, 1, 1, 1);
+        assertTrue(mView.isLayoutRequested());
+    }
+
+    private void layOut() {
+        mView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+    }
+}
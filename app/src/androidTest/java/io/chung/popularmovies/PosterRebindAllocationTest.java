@@ -0,0 +1,145 @@
+package io.chung.popularmovies;
+
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Flings the movie grid down and back to the top, then checks that rebinding the cells on
+ * screen, whose posters are already showing, allocates nothing. Needs network access to TMDb.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PosterRebindAllocationTest {
+
+    private static final int FLINGS_EACH_WAY = 3;
+    private static final int FLING_VELOCITY = 6000;
+
+    private static final long LOAD_TIMEOUT_MILLIS = 15000;
+    private static final long POLL_MILLIS = 100;
+
+    private Instrumentation mInstrumentation;
+    private MainActivity mActivity;
+    private RecyclerView mMovieList;
+
+    @Before
+    public void launchActivity() throws Exception {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.setClassName(InstrumentationRegistry.getTargetContext(),
+                MainActivity.class.getName());
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        mActivity = (MainActivity) mInstrumentation.startActivitySync(intent);
+        mMovieList = (RecyclerView) mActivity.findViewById(R.id.rv_movie_list);
+
+        waitForItems();
+    }
+
+    @After
+    public void finishActivity() {
+        mActivity.finish();
+    }
+
+    @Test
+    public void rebindOfSeenCells_allocatesNothing() throws Exception {
+        for (int i = 0; i < FLINGS_EACH_WAY; i++) {
+            fling(FLING_VELOCITY);
+        }
+        for (int i = 0; i < FLINGS_EACH_WAY; i++) {
+            fling(-FLING_VELOCITY);
+        }
+        waitForPosters();
+
+        final int[] allocations = new int[1];
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                // The first pass settles the monitor's bookkeeping; only the second is counted.
+                rebindVisibleCells();
+
+                Debug.resetThreadAllocCount();
+                Debug.startAllocCounting();
+                try {
+                    rebindVisibleCells();
+                } finally {
+                    Debug.stopAllocCounting();
+                }
+                allocations[0] = Debug.getThreadAllocCount();
+            }
+        });
+
+        assertEquals("objects allocated rebinding seen cells", 0, allocations[0]);
+    }
+
+    private void rebindVisibleCells() {
+        MovieItemAdapter adapter = (MovieItemAdapter) mMovieList.getAdapter();
+
+        for (int i = 0; i < mMovieList.getChildCount(); i++) {
+            MovieItemAdapter.PosterViewHolder holder = (MovieItemAdapter.PosterViewHolder)
+                    mMovieList.getChildViewHolder(mMovieList.getChildAt(i));
+            adapter.onBindViewHolder(holder, holder.getAdapterPosition());
+        }
+    }
+
+    private void fling(final int velocity) throws InterruptedException {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mMovieList.fling(0, velocity);
+            }
+        });
+
+        // Let the fling start before polling for it to settle.
+        Thread.sleep(POLL_MILLIS);
+        mInstrumentation.waitForIdleSync();
+
+        while (mMovieList.getScrollState() != RecyclerView.SCROLL_STATE_IDLE) {
+            Thread.sleep(POLL_MILLIS);
+        }
+        mInstrumentation.waitForIdleSync();
+    }
+
+    private void waitForItems() throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (mMovieList.getAdapter().getItemCount() == 0) {
+            assertTrue("movie list didn't load", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    private void waitForPosters() throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        final boolean[] loaded = new boolean[1];
+
+        do {
+            assertTrue("posters didn't load", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(POLL_MILLIS);
+
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    loaded[0] = true;
+                    for (int i = 0; i < mMovieList.getChildCount(); i++) {
+                        MovieItemAdapter.PosterViewHolder holder =
+                                (MovieItemAdapter.PosterViewHolder)
+                                        mMovieList.getChildViewHolder(mMovieList.getChildAt(i));
+                        loaded[0] &= holder.isPosterLoaded();
+                    }
+                }
+            });
+        } while (!loaded[0]);
+    }
+}
@@ -0,0 +1,124 @@
+package io.chung.popularmovies;
+
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Flings the movie grid with poster prefetching off and then on, and logs the frame times,
+ * poster-ready latencies and layout passes of each run under the class name. Needs a debug
+ * build (for the scroll monitor) and network access to TMDb.
+ *
+ * Both runs fling further down the list than anything seen before, so neither finds its
+ * posters already in Picasso's cache.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScrollJankBenchmark {
+
+    private static final String TAG = ScrollJankBenchmark.class.getSimpleName();
+
+    private static final int FLINGS_PER_RUN = 5;
+    private static final int FLING_VELOCITY = 6000;
+
+    private static final long LOAD_TIMEOUT_MILLIS = 15000;
+    private static final long POLL_MILLIS = 100;
+
+    private Instrumentation mInstrumentation;
+    private MainActivity mActivity;
+    private RecyclerView mMovieList;
+
+    @Before
+    public void launchActivity() throws Exception {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.setClassName(InstrumentationRegistry.getTargetContext(),
+                MainActivity.class.getName());
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        mActivity = (MainActivity) mInstrumentation.startActivitySync(intent);
+        mMovieList = (RecyclerView) mActivity.findViewById(R.id.rv_movie_list);
+
+        waitForItems();
+        assertNotNull("scroll monitor is only created in debug builds",
+                mActivity.getScrollPerformanceMonitor());
+    }
+
+    @After
+    public void finishActivity() {
+        mActivity.finish();
+    }
+
+    @Test
+    public void flingWithAndWithoutPrefetch() throws Exception {
+        runFlings(false);
+        runFlings(true);
+    }
+
+    /**
+     * Flings down the list several times, logging each fling's report and the run's totals.
+     */
+    private void runFlings(final boolean prefetch) throws Exception {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mActivity.getPosterPrefetcher().setEnabled(prefetch);
+            }
+        });
+
+        int frames = 0;
+        int jankyFrames = 0;
+        int layoutPasses = 0;
+
+        for (int i = 0; i < FLINGS_PER_RUN; i++) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mMovieList.fling(0, FLING_VELOCITY);
+                }
+            });
+            waitForIdle();
+
+            ScrollPerformanceMonitor.Report report =
+                    mActivity.getScrollPerformanceMonitor().getLastReport();
+            frames += report.frameCount;
+            jankyFrames += report.jankyFrameCount;
+            layoutPasses += report.layoutPassCount;
+
+            Log.i(TAG, "Prefetch " + (prefetch ? "on" : "off") + ", fling " + i + ": " + report);
+        }
+
+        Log.i(TAG, "Prefetch " + (prefetch ? "on" : "off") + " total: " + jankyFrames + " of " + frames
+                + " frames janky, " + layoutPasses + " layout passes");
+    }
+
+    private void waitForItems() throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (mMovieList.getAdapter().getItemCount() == 0) {
+            assertTrue("movie list didn't load", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    private void waitForIdle() throws InterruptedException {
+        // Let the fling start before polling for it to settle.
+        Thread.sleep(POLL_MILLIS);
+        mInstrumentation.waitForIdleSync();
+
+        while (mMovieList.getScrollState() != RecyclerView.SCROLL_STATE_IDLE) {
+            Thread.sleep(POLL_MILLIS);
+        }
+        mInstrumentation.waitForIdleSync();
+    }
+}
@@ -0,0 +1,95 @@
+package io.chung.popularmovies;
+
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Launches MainActivity repeatedly and logs the time from starting each launch to its first
+ * frame and to its first poster on screen, under the class name. Needs network access to TMDb.
+ *
+ * Instrumentation runs in the app's process, which is already up by the time a test starts, so
+ * the first launch here is only the first in the process: it still pays for the first inflation,
+ * class loading and request of the run, but not for the process being forked. For true cold
+ * starts, force-stop the app and compare `am start -W` times, or the activity's fully drawn time
+ * in the log. The later launches are warm, and their medians are logged.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String TAG = StartupBenchmark.class.getSimpleName();
+
+    private static final int WARM_LAUNCHES = 5;
+
+    private static final long LOAD_TIMEOUT_MILLIS = 15000;
+    private static final long POLL_MILLIS = 20;
+
+    @Test
+    public void launchToFirstFrameAndPoster() throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+
+        long[] first = launch(instrumentation);
+        Log.i(TAG, "First launch in process: first frame " + first[0] + "ms, first poster "
+                + first[1] + "ms");
+
+        long[] warmFrames = new long[WARM_LAUNCHES];
+        long[] warmPosters = new long[WARM_LAUNCHES];
+        for (int i = 0; i < WARM_LAUNCHES; i++) {
+            long[] warm = launch(instrumentation);
+            warmFrames[i] = warm[0];
+            warmPosters[i] = warm[1];
+            Log.i(TAG, "Warm launch " + i + ": first frame " + warm[0] + "ms, first poster "
+                    + warm[1] + "ms");
+        }
+
+        Log.i(TAG, "Warm launch medians: first frame " + median(warmFrames)
+                + "ms, first poster " + median(warmPosters) + "ms");
+    }
+
+    /**
+     * Launches MainActivity, waits for its first poster, and finishes it.
+     * @return Milliseconds from the launch to the first frame and to the first poster.
+     */
+    private static long[] launch(Instrumentation instrumentation) throws Exception {
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.setClassName(InstrumentationRegistry.getTargetContext(),
+                MainActivity.class.getName());
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        long startUptimeMillis = SystemClock.uptimeMillis();
+        MainActivity activity = (MainActivity) instrumentation.startActivitySync(intent);
+        LaunchTimer timer = activity.getLaunchTimer();
+
+        try {
+            long deadline = startUptimeMillis + LOAD_TIMEOUT_MILLIS;
+            while (timer.getFirstPosterUptimeMillis() < 0) {
+                assertTrue("first poster didn't load", SystemClock.uptimeMillis() < deadline);
+                Thread.sleep(POLL_MILLIS);
+            }
+
+            return new long[] {
+                    timer.getFirstFrameUptimeMillis() - startUptimeMillis,
+                    timer.getFirstPosterUptimeMillis() - startUptimeMillis
+            };
+        } finally {
+            activity.finish();
+            instrumentation.waitForIdleSync();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,221 @@
+package io.chung.popularmovies;
+
+import android.content.res.AssetManager;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import io.chung.popularmovies.utilities.TMDbUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares TMDbMovieCodec against the JSONObject path on the movies from canned TMDb responses,
+ * for encode time, decode time and encoded size. Results are written to logcat under the class
+ * name.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TMDbMovieCodecBenchmark {
+
+    private static final String TAG = TMDbMovieCodecBenchmark.class.getSimpleName();
+
+    private static final String MOVIE_LIST_FIXTURE = "movie_list_popular.json";
+    private static final String MOVIE_DETAILS_FIXTURE = "movie_details.json";
+
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int MEASURED_ITERATIONS = 500;
+
+    private TMDbMovie[] mListMovies;
+    private TMDbMovie mDetailsMovie;
+
+    @Before
+    public void loadFixtures() throws Exception {
+        // Fixtures live in the test APK's assets, not the app under test.
+        AssetManager assets = InstrumentationRegistry.getContext().getAssets();
+
+        mListMovies = TMDbUtils.parseMovieListResponse(assets.open(MOVIE_LIST_FIXTURE));
+        mDetailsMovie = TMDbUtils.parseMovieDetailsResponse(assets.open(MOVIE_DETAILS_FIXTURE));
+    }
+
+    @Test
+    public void fixtureMovies_roundTrip() throws Exception {
+        assertRoundTrips(mDetailsMovie);
+        for (TMDbMovie movie : mListMovies) {
+            assertRoundTrips(movie);
+        }
+    }
+
+    @Test
+    public void benchmarkMovieList() throws Exception {
+        benchmark("movie list", mListMovies);
+    }
+
+    @Test
+    public void benchmarkMovieDetails() throws Exception {
+        benchmark("movie details", new TMDbMovie[]{mDetailsMovie});
+    }
+
+    /**
+     * Measures both paths on the given movies and logs the per-movie results.
+     */
+    private static void benchmark(String fixture, final TMDbMovie[] movies) throws Exception {
+        final String[] jsonStrings = new String[movies.length];
+        int jsonSize = 0;
+        int binarySize = 0;
+
+        for (int i = 0; i < movies.length; i++) {
+            jsonStrings[i] = toJson(movies[i]).toString();
+            jsonSize += jsonStrings[i].getBytes(StandardCharsets.UTF_8).length;
+            binarySize += TMDbMovieCodec.encodedSize(movies[i]);
+        }
+
+        // Encoding reuses one buffer, the way a cache writing into a shared buffer would.
+        final ByteBuffer buffer = ByteBuffer.allocate(binarySize);
+
+        Runnable jsonEncode = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (TMDbMovie movie : movies) {
+                        toJson(movie).toString();
+                    }
+                } catch (JSONException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Runnable binaryEncode = new Runnable() {
+            @Override
+            public void run() {
+                buffer.clear();
+                for (TMDbMovie movie : movies) {
+                    TMDbMovieCodec.encode(movie, buffer);
+                }
+            }
+        };
+        Runnable jsonDecode = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (String json : jsonStrings) {
+                        new TMDbMovie(new JSONObject(json));
+                    }
+                } catch (JSONException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Runnable binaryDecode = new Runnable() {
+            @Override
+            public void run() {
+                buffer.rewind();
+                for (int i = 0; i < movies.length; i++) {
+                    TMDbMovieCodec.decode(buffer);
+                }
+            }
+        };
+
+        long jsonEncodeNanos = measure(jsonEncode) / movies.length;
+        long binaryEncodeNanos = measure(binaryEncode) / movies.length;
+        long jsonDecodeNanos = measure(jsonDecode) / movies.length;
+        long binaryDecodeNanos = measure(binaryDecode) / movies.length;
+
+        Log.i(TAG, fixture + ": encode JSONObject " + jsonEncodeNanos / 1000 + "us/movie, binary "
+                + binaryEncodeNanos / 1000 + "us/movie");
+        Log.i(TAG, fixture + ": decode JSONObject " + jsonDecodeNanos / 1000 + "us/movie, binary "
+                + binaryDecodeNanos / 1000 + "us/movie");
+        Log.i(TAG, fixture + ": size JSON " + jsonSize / movies.length + "B/movie, binary "
+                + binarySize / movies.length + "B/movie");
+    }
+
+    /**
+     * Runs the given path and returns the mean time per run in nanoseconds.
+     */
+    private static long measure(Runnable path) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            path.run();
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            path.run();
+        }
+
+        return (SystemClock.elapsedRealtimeNanos() - start) / MEASURED_ITERATIONS;
+    }
+
+    /**
+     * Builds the JSON that TMDbMovie(JSONObject) reads back, as a JSON cache would store it.
+     */
+    private static JSONObject toJson(TMDbMovie movie) throws JSONException {
+        JSONArray genreIds = new JSONArray();
+        for (int genreId : movie.getGenreIds()) {
+            genreIds.put(genreId);
+        }
+
+        JSONArray reviews = new JSONArray();
+        for (TMDbMovie.Review review : movie.getReviews()) {
+            reviews.put(new JSONObject()
+                    .put("author", review.author)
+                    .put("content", review.getContent())
+                    .put("url", review.getUrlSpec()));
+        }
+
+        JSONArray videos = new JSONArray();
+        for (TMDbMovie.Video video : movie.getVideos()) {
+            videos.put(new JSONObject()
+                    .put("key", video.key)
+                    .put("name", video.name)
+                    .put("site", video.site));
+        }
+
+        return new JSONObject()
+                .put("adult", movie.adult)
+                .put("backdrop_path", movie.backdropPath)
+                .put("genre_ids", genreIds)
+                .put("id", movie.id)
+                .put("original_language", movie.originalLanguage)
+                .put("original_title", movie.originalTitle)
+                .put("overview", movie.getOverview())
+                .put("popularity", movie.popularity)
+                .put("poster_path", movie.posterPath)
+                .put("title", movie.title)
+                .put("release_date", movie.releaseDate)
+                .put("reviews", new JSONObject().put("results", reviews))
+                .put("runtime", movie.runtime)
+                .put("video", movie.video)
+                .put("videos", new JSONObject().put("results", videos))
+                .put("vote_average", movie.voteAverage)
+                .put("vote_count", movie.voteCount);
+    }
+
+    private static void assertRoundTrips(TMDbMovie expected) {
+        TMDbMovie actual = TMDbMovieCodec.decode(ByteBuffer.wrap(TMDbMovieCodec.encode(expected)));
+
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.title, actual.title);
+        assertArrayEquals(expected.getGenreIds(), actual.getGenreIds());
+        assertEquals(expected.getOverview(), actual.getOverview());
+        assertEquals(expected.voteAverage, actual.voteAverage, 0);
+        assertEquals(expected.runtime, actual.runtime);
+        assertEquals(expected.getReviews().length, actual.getReviews().length);
+        for (int i = 0; i < expected.getReviews().length; i++) {
+            assertEquals(expected.getReviews()[i].getContent(), actual.getReviews()[i].getContent());
+        }
+        assertEquals(expected.getVideos().length, actual.getVideos().length);
+        for (int i = 0; i < expected.getVideos().length; i++) {
+            assertEquals(expected.getVideos()[i].getUrl(), actual.getVideos()[i].getUrl());
+        }
+    }
+}
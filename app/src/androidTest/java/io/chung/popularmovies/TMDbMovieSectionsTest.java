@@ -0,0 +1,116 @@
+package io.chung.popularmovies;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+
+import io.chung.popularmovies.utilities.TMDbUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the optional sections of a details response are read out of one bundled response,
+ * and that a movie reports only the sections the response carried.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TMDbMovieSectionsTest {
+
+    private static final String DETAILS_JSON = "{\"id\":550,\"title\":\"Fight Club\","
+            + "\"runtime\":139,"
+            + "\"videos\":{\"results\":[]},"
+            + "\"credits\":{\"id\":550,\"cast\":["
+            + "{\"name\":\"Edward Norton\",\"character\":\"The Narrator\",\"order\":0},"
+            + "{\"name\":\"Brad Pitt\",\"character\":\"Tyler Durden\",\"order\":1}],"
+            + "\"crew\":[{\"name\":\"David Fincher\",\"job\":\"Director\"}]},"
+            + "\"release_dates\":{\"results\":[{\"release_dates\":["
+            + "{\"certification\":\"\",\"release_date\":\"1999-10-14T00:00:00.000Z\",\"type\":1},"
+            + "{\"certification\":\"R\",\"release_date\":\"1999-10-15T00:00:00.000Z\",\"type\":3}"
+            + "],\"iso_3166_1\":\"US\"}]},"
+            + "\"similar\":{\"page\":1,\"results\":[{\"id\":807,\"title\":\"Se7en\"}]},"
+            + "\"vote_count\":12000}";
+
+    @Test
+    public void sections_areReadFromTheBundledResponse() throws Exception {
+        TMDbMovie movie = parse(DETAILS_JSON);
+
+        assertEquals(139, movie.runtime);
+        assertEquals(12000, movie.voteCount);
+
+        assertEquals(2, movie.getCast().length);
+        assertEquals("Brad Pitt", movie.getCast()[1].name);
+        assertEquals("Tyler Durden", movie.getCast()[1].character);
+
+        assertEquals(2, movie.getReleaseDates().length);
+        assertEquals("US", movie.getReleaseDates()[0].country);
+        assertEquals("R", movie.getCertification("US"));
+        assertEquals("", movie.getCertification("FR"));
+
+        assertEquals(1, movie.getSimilar().length);
+        assertEquals(807, movie.getSimilar()[0].id);
+        assertEquals("Se7en", movie.getSimilar()[0].title);
+    }
+
+    @Test
+    public void sections_onlyCountWhatTheResponseCarried() throws Exception {
+        TMDbMovie movie = parse(DETAILS_JSON);
+
+        assertTrue(movie.hasSections(DetailSection.mask(DetailSection.VIDEOS,
+                DetailSection.CREDITS, DetailSection.RELEASE_DATES, DetailSection.SIMILAR)));
+        assertFalse(movie.hasSections(DetailSection.REVIEWS.bit()));
+        assertFalse(movie.hasSections(DetailSection.DEFAULT));
+
+        // Fetched but empty still counts as fetched.
+        assertEquals(0, movie.getVideos().length);
+    }
+
+    @Test
+    public void genresReviewsAndVideos_areBuiltFromTheStreamedJson() throws Exception {
+        TMDbMovie movie = parse("{\"id\":550,\"genre_ids\":[18,53],"
+                + "\"reviews\":{\"page\":1,\"results\":[{\"author\":\"Critic\","
+                + "\"content\":\"Still holds up.\",\"url\":\"https://example.com/r/1\"}]},"
+                + "\"videos\":{\"results\":[{\"key\":\"SUXWAEX2jlg\",\"name\":\"Trailer\","
+                + "\"site\":\"YouTube\"}]},\"title\":\"Fight Club\"}");
+
+        assertTrue(movie.getCollectionsSize() > 0);
+        assertArrayEquals(new int[]{18, 53}, movie.getGenreIds());
+        assertEquals(1, movie.getReviews().length);
+        assertEquals("Critic", movie.getReviews()[0].author);
+        assertEquals("Still holds up.", movie.getReviews()[0].getContent());
+        assertEquals("SUXWAEX2jlg", movie.getVideos()[0].key);
+        assertEquals("YouTube", movie.getVideos()[0].site);
+
+        // Built once, then shared.
+        assertSame(movie.getReviews(), movie.getReviews());
+        assertTrue(movie.hasSections(DetailSection.mask(DetailSection.REVIEWS,
+                DetailSection.VIDEOS)));
+    }
+
+    @Test
+    public void malformedResults_readAsEmpty() throws Exception {
+        TMDbMovie movie = parse("{\"id\":550,\"genre_ids\":{\"id\":18},"
+                + "\"reviews\":{\"results\":[1,2]},\"videos\":{\"results\":\"none\"}}");
+
+        assertEquals(0, movie.getGenreIds().length);
+        assertEquals(0, movie.getReviews().length);
+        assertEquals(0, movie.getVideos().length);
+    }
+
+    @Test
+    public void missingSections_areEmpty() throws Exception {
+        TMDbMovie movie = parse("{\"id\":550,\"title\":\"Fight Club\"}");
+
+        assertEquals(0, movie.getSections());
+        assertEquals(0, movie.getCast().length);
+        assertEquals(0, movie.getSimilar().length);
+        assertEquals(0, movie.getReleaseDates().length);
+        assertEquals(0, movie.getSectionsJsonLength());
+    }
+
+    private static TMDbMovie parse(String json) throws Exception {
+        return TMDbUtils.parseMovieDetailsResponse(
+                new ByteArrayInputStream(json.getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,103 @@
+package io.chung.popularmovies.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import io.chung.popularmovies.TMDbMovie;
+import io.chung.popularmovies.TMDbMovieListPage;
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that list snapshots read back what was put, and that a damaged or missing snapshot
+ * reads as none. Runs against a directory of its own in the cache dir.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ListSnapshotTest {
+
+    private static final NetworkUtils.SortCriteria POPULAR = NetworkUtils.SortCriteria.POPULAR;
+
+    private File mDirectory;
+    private ListSnapshot mSnapshot;
+
+    @Before
+    public void createSnapshot() {
+        mDirectory = new File(InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "list-snapshot-test");
+        deleteDirectory();
+        mSnapshot = new ListSnapshot(mDirectory);
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void putPage_readsBack() throws Exception {
+        mSnapshot.put(POPULAR, page(1));
+
+        TMDbMovieListPage read = mSnapshot.read(POPULAR);
+        assertEquals(1, read.page);
+        assertEquals(7, read.totalPages);
+        assertEquals(TMDbMovieListPage.PAGE_SIZE, read.movies.length);
+        assertEquals(119, read.movies[19].id);
+        assertEquals("Movie 119", read.movies[19].title);
+        assertArrayEquals(new int[]{28, 119}, read.movies[19].getGenreIds());
+        assertNull(mSnapshot.read(NetworkUtils.SortCriteria.TOP_RATED));
+    }
+
+    @Test
+    public void laterPage_isIgnored() throws Exception {
+        mSnapshot.put(POPULAR, page(2));
+
+        assertNull(mSnapshot.read(POPULAR));
+    }
+
+    @Test
+    public void truncatedSnapshot_readsAsNone() throws Exception {
+        mSnapshot.put(POPULAR, page(1));
+
+        File file = mDirectory.listFiles()[0];
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[] {0, 0, 0, 1, 0, 0});
+        } finally {
+            out.close();
+        }
+
+        assertNull(mSnapshot.read(POPULAR));
+    }
+
+    private static TMDbMovieListPage page(int page) throws Exception {
+        TMDbMovie[] movies = new TMDbMovie[TMDbMovieListPage.PAGE_SIZE];
+        for (int i = 0; i < movies.length; i++) {
+            int id = 100 + i;
+            movies[i] = new TMDbMovie(new JSONObject()
+                    .put("id", id)
+                    .put("title", "Movie " + id)
+                    .put("poster_path", "/poster" + id + ".jpg")
+                    .put("release_date", "2017-06-01")
+                    .put("vote_average", 7.5)
+                    .put("genre_ids", new JSONArray().put(28).put(id)));
+        }
+        return new TMDbMovieListPage(page, 7, movies);
+    }
+}
@@ -0,0 +1,181 @@
+package io.chung.popularmovies.data;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.chung.popularmovies.TMDbMovie;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the repository upgrades list-level movies to details and never downgrades them,
+ * that it hands back one instance per movie while the fields are the same, and that it stays
+ * within its size by evicting the least recently used movies.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieRepositoryTest {
+
+    private static final int MAX_SIZE = 64 * 1024;
+
+    private final MovieRepository mRepository = new MovieRepository(MAX_SIZE);
+
+    @Test
+    public void listMovie_isUpgradedByDetails() throws Exception {
+        mRepository.putMovies(new TMDbMovie[]{movie(100)});
+        assertNotNull(mRepository.getMovie(100));
+        assertNull(mRepository.getMovieDetails(100));
+
+        mRepository.putMovieDetails(new TMDbMovie(detailsJson(100)));
+
+        TMDbMovie details = mRepository.getMovieDetails(100);
+        assertNotNull(details);
+        assertEquals(123, details.runtime);
+        assertEquals(1, details.getReviews().length);
+    }
+
+    @Test
+    public void laterList_doesntDowngradeDetails() throws Exception {
+        mRepository.putMovieDetails(new TMDbMovie(detailsJson(100)));
+
+        mRepository.putMovies(new TMDbMovie[]{movie(100)});
+
+        TMDbMovie details = mRepository.getMovieDetails(100);
+        assertNotNull(details);
+        assertEquals(123, details.runtime);
+        assertEquals("abc", details.getVideos()[0].key);
+    }
+
+    @Test
+    public void listRowWithTheSameFields_reusesTheCachedInstance() throws Exception {
+        TMDbMovie[] first = new TMDbMovie[]{movie(100)};
+        mRepository.putMovies(first);
+
+        TMDbMovie[] second = new TMDbMovie[]{movie(100)};
+        mRepository.putMovies(second);
+
+        assertSame(first[0], second[0]);
+        assertSame(first[0], mRepository.getMovie(100));
+    }
+
+    @Test
+    public void freshListRowOverDetails_keepsTheCachedSections() throws Exception {
+        mRepository.putMovieDetails(new TMDbMovie(detailsJson(100)));
+        TMDbMovie cached = mRepository.getMovieDetails(100);
+
+        // The vote count has moved on since the details were fetched.
+        TMDbMovie[] movies = new TMDbMovie[]{new TMDbMovie(movieJson(100).put("vote_count", 1500))};
+        mRepository.putMovies(movies);
+
+        TMDbMovie merged = movies[0];
+        assertNotSame(cached, merged);
+        assertSame(merged, mRepository.getMovieDetails(100));
+        assertEquals(1500, merged.voteCount);
+        assertEquals(123, merged.runtime);
+        assertEquals(cached.getSections(), merged.getSections());
+        assertEquals(1, merged.getReviews().length);
+        assertEquals("Critic", merged.getReviews()[0].author);
+        assertEquals("abc", merged.getVideos()[0].key);
+    }
+
+    @Test
+    public void storedRow_neverReplacesAFreshOne() throws Exception {
+        TMDbMovie fresh = movie(100);
+        mRepository.putMovies(new TMDbMovie[]{fresh});
+
+        TMDbMovie[] stored = new TMDbMovie[]{new TMDbMovie(movieJson(100).put("title", "Old"))};
+        mRepository.putStoredMovies(stored);
+
+        assertSame(fresh, stored[0]);
+        assertSame(fresh, mRepository.getMovie(100));
+    }
+
+    @Test
+    public void freshRow_replacesAStoredOne() throws Exception {
+        mRepository.putStoredMovies(new TMDbMovie[]{movie(100)});
+
+        // Even with the same fields, so the entry counts as fresh from now on.
+        TMDbMovie[] fresh = new TMDbMovie[]{movie(100)};
+        mRepository.putMovies(fresh);
+        TMDbMovie[] stored = new TMDbMovie[]{new TMDbMovie(movieJson(100).put("title", "Old"))};
+        mRepository.putStoredMovies(stored);
+
+        assertSame(fresh[0], mRepository.getMovie(100));
+        assertSame(fresh[0], stored[0]);
+    }
+
+    @Test
+    public void repeatedStrings_areTheSameInstanceAcrossLists() throws Exception {
+        // Separate string instances, as two responses would parse them.
+        TMDbMovie[] popular = new TMDbMovie[]{
+                new TMDbMovie(movieJson(100).put("original_language", new String("ja")))};
+        TMDbMovie[] topRated = new TMDbMovie[]{
+                new TMDbMovie(movieJson(101).put("original_language", new String("ja")))};
+
+        mRepository.putMovies(popular);
+        mRepository.putMovies(topRated);
+
+        assertNotSame(popular[0], topRated[0]);
+        assertSame(popular[0].originalLanguage, topRated[0].originalLanguage);
+    }
+
+    @Test
+    public void overMaxSize_evictsLeastRecentlyUsed() throws Exception {
+        MovieRepository small = new MovieRepository(2048);
+
+        for (int id = 1; id <= 20; id++) {
+            small.putMovies(new TMDbMovie[]{movie(id)});
+            // Keep reading the first movie, so it stays while the others are evicted.
+            assertNotNull(small.getMovie(1));
+        }
+
+        assertNotNull(small.getMovie(1));
+        assertNull(small.getMovie(2));
+        assertNotNull(small.getMovie(20));
+    }
+
+    @Test
+    public void clear_dropsEverything() throws Exception {
+        mRepository.putMovies(new TMDbMovie[]{movie(100)});
+        mRepository.putMovieDetails(new TMDbMovie(detailsJson(101)));
+
+        mRepository.clear();
+
+        assertNull(mRepository.getMovie(100));
+        assertNull(mRepository.getMovie(101));
+    }
+
+    private static TMDbMovie movie(int id) throws Exception {
+        return new TMDbMovie(movieJson(id));
+    }
+
+    private static JSONObject movieJson(int id) throws Exception {
+        return new JSONObject()
+                .put("id", id)
+                .put("title", "Movie " + id)
+                .put("original_title", "Movie " + id)
+                .put("original_language", "en")
+                .put("overview", "Overview of movie " + id)
+                .put("poster_path", "/poster" + id + ".jpg")
+                .put("release_date", "2017-06-01")
+                .put("vote_average", 7.5)
+                .put("vote_count", 1000)
+                .put("popularity", 42.0)
+                .put("genre_ids", new JSONArray().put(28).put(12));
+    }
+
+    private static JSONObject detailsJson(int id) throws Exception {
+        return movieJson(id)
+                .put("runtime", 123)
+                .put("videos", new JSONObject().put("results", new JSONArray()
+                        .put(new JSONObject().put("key", "abc").put("name", "Trailer")
+                                .put("site", "YouTube"))))
+                .put("reviews", new JSONObject().put("results", new JSONArray()
+                        .put(new JSONObject().put("author", "Critic")
+                                .put("content", "Worth watching.")
+                                .put("url", "https://example.com/review"))));
+    }
+}
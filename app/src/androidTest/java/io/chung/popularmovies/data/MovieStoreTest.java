@@ -0,0 +1,158 @@
+package io.chung.popularmovies.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.chung.popularmovies.TMDbMovie;
+import io.chung.popularmovies.TMDbMovieListPage;
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the movie store only rewrites what changed between syncs, and that list pages
+ * and details don't clobber each other. Runs against an in-memory database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieStoreTest {
+
+    private static final NetworkUtils.SortCriteria POPULAR = NetworkUtils.SortCriteria.POPULAR;
+
+    private MovieDbHelper mDbHelper;
+    private MovieStore mStore;
+
+    @Before
+    public void createStore() {
+        mDbHelper = new MovieDbHelper(InstrumentationRegistry.getTargetContext(), null);
+        mStore = new MovieStore(mDbHelper);
+    }
+
+    @After
+    public void closeStore() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void storedPage_readsBackInOrder() throws Exception {
+        mStore.putListPage(POPULAR, page(1, 5, 100));
+
+        MovieStore.StoredList list = mStore.getList(POPULAR);
+        assertEquals(20, list.movies.length);
+        assertEquals(5, list.totalPages);
+        assertEquals(100, list.movies[0].id);
+        assertEquals("Movie 119", list.movies[19].title);
+        assertArrayEquals(new int[]{28, 119}, list.movies[19].getGenreIds());
+    }
+
+    @Test
+    public void unchangedPage_writesNothing() throws Exception {
+        MovieStore.SyncDiff first = mStore.putListPage(POPULAR, page(1, 5, 100));
+        MovieStore.SyncDiff second = mStore.putListPage(POPULAR, page(1, 5, 100));
+
+        assertEquals(20, first.moviesInserted);
+        assertEquals(20, first.positionsChanged);
+        assertTrue(second.isEmpty());
+        assertEquals(20, second.moviesUnchanged);
+    }
+
+    @Test
+    public void changedMovieAndOrder_onlyRewritesThose() throws Exception {
+        mStore.putListPage(POPULAR, page(1, 5, 100));
+
+        TMDbMovieListPage changed = page(1, 5, 100);
+        // Swap the first two movies and retitle a third.
+        TMDbMovie first = changed.movies[0];
+        changed.movies[0] = changed.movies[1];
+        changed.movies[1] = first;
+        changed.movies[5] = movie(105, "Renamed");
+
+        MovieStore.SyncDiff diff = mStore.putListPage(POPULAR, changed);
+        assertEquals(0, diff.moviesInserted);
+        assertEquals(1, diff.moviesUpdated);
+        assertEquals(2, diff.positionsChanged);
+
+        MovieStore.StoredList list = mStore.getList(POPULAR);
+        assertEquals(101, list.movies[0].id);
+        assertEquals("Renamed", list.movies[5].title);
+    }
+
+    @Test
+    public void shorterLastPage_removesTrailingPositions() throws Exception {
+        mStore.putListPage(POPULAR, page(1, 2, 100));
+        mStore.putListPage(POPULAR, page(2, 2, 200));
+
+        TMDbMovie[] shortPage = new TMDbMovie[5];
+        for (int i = 0; i < shortPage.length; i++) {
+            shortPage[i] = movie(200 + i, "Movie " + (200 + i));
+        }
+        MovieStore.SyncDiff diff =
+                mStore.putListPage(POPULAR, new TMDbMovieListPage(2, 2, shortPage));
+
+        assertEquals(15, diff.positionsRemoved);
+        assertEquals(25, mStore.getList(POPULAR).movies.length);
+        assertEquals(2, mStore.getStoredPageCount(POPULAR));
+    }
+
+    @Test
+    public void listPage_keepsStoredDetails() throws Exception {
+        JSONObject detailsJson = movieJson(100, "Movie 100")
+                .put("runtime", 123)
+                .put("videos", new JSONObject().put("results", new JSONArray()
+                        .put(new JSONObject().put("key", "abc").put("name", "Trailer")
+                                .put("site", "YouTube"))));
+        mStore.putMovieDetails(new TMDbMovie(detailsJson));
+
+        mStore.putListPage(POPULAR, page(1, 5, 100));
+
+        MovieStore.StoredMovie stored = mStore.getMovie(100);
+        assertTrue(stored.hasDetails);
+        assertEquals(123, stored.movie.runtime);
+        assertEquals(1, stored.movie.getVideos().length);
+        assertEquals("abc", stored.movie.getVideos()[0].key);
+        assertNotNull(stored.movie.getVideos()[0].getUrl());
+    }
+
+    @Test
+    public void missingPage_listEndsAtGap() throws Exception {
+        mStore.putListPage(POPULAR, page(1, 5, 100));
+        mStore.putListPage(POPULAR, page(3, 5, 300));
+
+        assertEquals(20, mStore.getList(POPULAR).movies.length);
+    }
+
+    /**
+     * Builds a full page of movies with consecutive IDs.
+     */
+    private static TMDbMovieListPage page(int page, int totalPages, int firstId) throws Exception {
+        TMDbMovie[] movies = new TMDbMovie[TMDbMovieListPage.PAGE_SIZE];
+        for (int i = 0; i < movies.length; i++) {
+            movies[i] = movie(firstId + i, "Movie " + (firstId + i));
+        }
+        return new TMDbMovieListPage(page, totalPages, movies);
+    }
+
+    private static TMDbMovie movie(int id, String title) throws Exception {
+        return new TMDbMovie(movieJson(id, title));
+    }
+
+    private static JSONObject movieJson(int id, String title) throws Exception {
+        return new JSONObject()
+                .put("id", id)
+                .put("title", title)
+                .put("original_title", title)
+                .put("overview", "Overview of " + title)
+                .put("poster_path", "/poster" + id + ".jpg")
+                .put("release_date", "2017-06-01")
+                .put("vote_average", 7.5)
+                .put("vote_count", 1000)
+                .put("popularity", 42.0)
+                .put("genre_ids", new JSONArray().put(28).put(id));
+    }
+}
@@ -0,0 +1,156 @@
+package io.chung.popularmovies.image;
+
+import android.app.Instrumentation;
+import android.content.ComponentCallbacks2;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.chung.popularmovies.MainActivity;
+import io.chung.popularmovies.R;
+import io.chung.popularmovies.metrics.Metrics;
+
+import static org.junit.Assert.*;
+
+/**
+ * Flings the movie grid with bitmap pooling off and then on, and logs each run's garbage
+ * collections, bytes allocated and poster decodes under the class name. The GC figures need
+ * API 23 or later; older devices log the decode counts only. Needs network access to TMDb, or
+ * posters already in the disk cache.
+ *
+ * Each run starts from an empty memory cache and flings further down than the run before, so
+ * both decode every poster they show, and the pooled run reuses the bitmaps the cache evicts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PosterHeapChurnBenchmark {
+
+    private static final String TAG = PosterHeapChurnBenchmark.class.getSimpleName();
+
+    private static final int FLINGS_PER_RUN = 8;
+    private static final int FLING_VELOCITY = 8000;
+
+    private static final long LOAD_TIMEOUT_MILLIS = 15000;
+    private static final long POLL_MILLIS = 100;
+
+    private Instrumentation mInstrumentation;
+    private MainActivity mActivity;
+    private RecyclerView mMovieList;
+
+    @Before
+    public void launchActivity() throws Exception {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.setClassName(InstrumentationRegistry.getTargetContext(),
+                MainActivity.class.getName());
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        mActivity = (MainActivity) mInstrumentation.startActivitySync(intent);
+        mMovieList = (RecyclerView) mActivity.findViewById(R.id.rv_movie_list);
+
+        waitForItems();
+    }
+
+    @After
+    public void finishActivity() {
+        ImagePipeline.getInstance().setPoolingEnabled(true);
+        mActivity.finish();
+    }
+
+    @Test
+    public void flingWithAndWithoutPooling() throws Exception {
+        runFlings(false);
+        runFlings(true);
+    }
+
+    /**
+     * Flings down the list several times from an empty memory cache, logging the heap churn.
+     */
+    private void runFlings(final boolean pooling) throws Exception {
+        mInstrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ImagePipeline pipeline = ImagePipeline.getInstance();
+                pipeline.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+                pipeline.setPoolingEnabled(pooling);
+            }
+        });
+
+        // Start from a settled heap, so earlier garbage isn't counted against this run.
+        Runtime.getRuntime().gc();
+        long gcCountBefore = runtimeStat("art.gc.gc-count");
+        long bytesAllocatedBefore = runtimeStat("art.gc.bytes-allocated");
+        long reusedBefore = Metrics.POSTER_POOL_REUSED.get();
+        long allocatedBefore = Metrics.POSTER_POOL_ALLOCATED.get();
+
+        for (int i = 0; i < FLINGS_PER_RUN; i++) {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mMovieList.fling(0, FLING_VELOCITY);
+                }
+            });
+            waitForIdle();
+        }
+
+        String run = "Pooling " + (pooling ? "on" : "off");
+        long reused = Metrics.POSTER_POOL_REUSED.get() - reusedBefore;
+        long allocated = Metrics.POSTER_POOL_ALLOCATED.get() - allocatedBefore;
+        Log.i(TAG, run + ": " + reused + " decodes into pooled bitmaps, " + allocated
+                + " into new ones, pool holds " + ImagePipeline.getInstance().getPoolSize()
+                + " bytes");
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Log.i(TAG, run + ": " + (runtimeStat("art.gc.gc-count") - gcCountBefore) + " GCs, "
+                    + (runtimeStat("art.gc.bytes-allocated") - bytesAllocatedBefore) / 1024
+                    + " KB allocated");
+        }
+
+        if (pooling) {
+            assertTrue("no decode reused a pooled bitmap", reused > 0);
+        } else {
+            assertEquals(0, reused);
+        }
+    }
+
+    /**
+     * Reads one of ART's GC statistics, or 0 where they aren't available.
+     */
+    private static long runtimeStat(String name) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return 0;
+        }
+
+        String value = Debug.getRuntimeStat(name);
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    private void waitForItems() throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + LOAD_TIMEOUT_MILLIS;
+        while (mMovieList.getAdapter().getItemCount() == 0) {
+            assertTrue("movie list didn't load", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    private void waitForIdle() throws InterruptedException {
+        // Let the fling start before polling for it to settle.
+        Thread.sleep(POLL_MILLIS);
+        mInstrumentation.waitForIdleSync();
+
+        while (mMovieList.getScrollState() != RecyclerView.SCROLL_STATE_IDLE) {
+            Thread.sleep(POLL_MILLIS);
+        }
+        mInstrumentation.waitForIdleSync();
+    }
+}
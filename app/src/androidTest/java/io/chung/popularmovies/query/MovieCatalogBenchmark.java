@@ -0,0 +1,129 @@
+package io.chung.popularmovies.query;
+
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how long MovieCatalog takes to build and to answer genre filters in each order, on
+ * synthetic catalogs from a few pages' worth of movies up to far more than the app ever loads.
+ * Results are written to logcat under the class name.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MovieCatalogBenchmark {
+
+    private static final String TAG = MovieCatalogBenchmark.class.getSimpleName();
+
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int MEASURED_ITERATIONS = 200;
+
+    /* The genres TMDb lists movies under. */
+    private static final int[] GENRE_IDS = {
+            12, 14, 16, 18, 27, 28, 35, 36, 37, 53, 80, 99, 878, 9648, 10402, 10749, 10751,
+            10752, 10770
+    };
+
+    /* Filters from none to a narrow combination, as a user might pick them. */
+    private static final int[][] FILTERS = {{}, {28}, {28, 12}, {18, 10749, 35}};
+
+    @Test
+    public void benchmark1k() throws Exception {
+        benchmark(1000);
+    }
+
+    @Test
+    public void benchmark10k() throws Exception {
+        benchmark(10000);
+    }
+
+    @Test
+    public void benchmark100k() throws Exception {
+        benchmark(100000);
+    }
+
+    /**
+     * Builds a catalog of the given size and logs the build time and each query's time.
+     */
+    private static void benchmark(final int size) throws Exception {
+        // Seeded, so runs are comparable.
+        Random random = new Random(size);
+        final int[] movieIds = new int[size];
+        final int[][] genreIds = new int[size][];
+        final float[] voteAverages = new float[size];
+        final int[] voteCounts = new int[size];
+        final float[] popularities = new float[size];
+        final int[] releaseDates = new int[size];
+        for (int row = 0; row < size; row++) {
+            movieIds[row] = row + 1;
+            genreIds[row] = new int[1 + random.nextInt(3)];
+            for (int i = 0; i < genreIds[row].length; i++) {
+                genreIds[row][i] = GENRE_IDS[random.nextInt(GENRE_IDS.length)];
+            }
+            voteAverages[row] = random.nextInt(101) / 10f;
+            voteCounts[row] = random.nextInt(20000);
+            popularities[row] = random.nextFloat() * 500;
+            releaseDates[row] = (1950 + random.nextInt(70)) * 10000
+                    + (1 + random.nextInt(12)) * 100 + 1 + random.nextInt(28);
+        }
+
+        final MovieCatalog[] catalog = new MovieCatalog[1];
+        long buildNanos = measure(new Runnable() {
+            @Override
+            public void run() {
+                MovieCatalog.Builder builder = new MovieCatalog.Builder(size);
+                for (int row = 0; row < size; row++) {
+                    builder.add(movieIds[row], genreIds[row], voteAverages[row], voteCounts[row],
+                            popularities[row], releaseDates[row]);
+                }
+                catalog[0] = builder.build();
+            }
+        }, WARMUP_ITERATIONS / 10, MEASURED_ITERATIONS / 10);
+        Log.i(TAG, size + " movies: build " + buildNanos / 1000 + "us");
+
+        final int[] rows = new int[size];
+        MovieCatalog.SortKey[] sortKeys = MovieCatalog.SortKey.values();
+        for (final int[] filter : FILTERS) {
+            StringBuilder line = new StringBuilder();
+            final int[] count = new int[1];
+            for (int i = -1; i < sortKeys.length; i++) {
+                final MovieCatalog.SortKey sortKey = i >= 0 ? sortKeys[i] : null;
+                long queryNanos = measure(new Runnable() {
+                    @Override
+                    public void run() {
+                        count[0] = catalog[0].query(filter, true, sortKey, rows);
+                    }
+                }, WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+                line.append(", ").append(sortKey != null ? sortKey : "ROW_ORDER").append(' ')
+                        .append(queryNanos / 1000).append("us");
+            }
+
+            assertTrue(count[0] <= size);
+            Log.i(TAG, size + " movies, genres " + Arrays.toString(filter) + " ("
+                    + count[0] + " match)" + line);
+        }
+    }
+
+    /**
+     * Runs the given path and returns the mean time per run in nanoseconds.
+     */
+    private static long measure(Runnable path, int warmupIterations, int measuredIterations) {
+        for (int i = 0; i < warmupIterations; i++) {
+            path.run();
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < measuredIterations; i++) {
+            path.run();
+        }
+
+        return (SystemClock.elapsedRealtimeNanos() - start) / measuredIterations;
+    }
+}
@@ -0,0 +1,258 @@
+package io.chung.popularmovies.utilities;
+
+import android.content.res.AssetManager;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Scanner;
+
+import io.chung.popularmovies.TMDbMovie;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the streaming JsonReader parse path against the String + JSONObject path on canned
+ * TMDb responses. Timings and allocation counts are written to logcat under the class name.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TMDbParseBenchmark {
+
+    private static final String TAG = TMDbParseBenchmark.class.getSimpleName();
+
+    private static final String MOVIE_LIST_FIXTURE = "movie_list_popular.json";
+    private static final String MOVIE_DETAILS_FIXTURE = "movie_details.json";
+
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int MEASURED_ITERATIONS = 500;
+
+    private byte[] mMovieList;
+    private byte[] mMovieDetails;
+
+    @Before
+    public void loadFixtures() throws Exception {
+        // Fixtures live in the test APK's assets, not the app under test.
+        AssetManager assets = InstrumentationRegistry.getContext().getAssets();
+
+        mMovieList = readFully(assets.open(MOVIE_LIST_FIXTURE));
+        mMovieDetails = readFully(assets.open(MOVIE_DETAILS_FIXTURE));
+    }
+
+    @Test
+    public void streamingListParse_matchesJsonObjectParse() throws Exception {
+        TMDbMovie[] expected = TMDbUtils.parseMovieListResponse(readAsString(mMovieList));
+        TMDbMovie[] actual = TMDbUtils.parseMovieListResponse(new ByteArrayInputStream(mMovieList));
+
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertMovieEquals(expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void streamingDetailsParse_matchesJsonObjectParse() throws Exception {
+        TMDbMovie expected = TMDbUtils.parseMovieDetailsResponse(readAsString(mMovieDetails));
+        TMDbMovie actual = TMDbUtils.parseMovieDetailsResponse(new ByteArrayInputStream(mMovieDetails));
+
+        assertMovieEquals(expected, actual);
+        assertEquals(expected.getVideos().length, actual.getVideos().length);
+        for (int i = 0; i < expected.getVideos().length; i++) {
+            assertEquals(String.valueOf(expected.getVideos()[i].getUrl()),
+                    String.valueOf(actual.getVideos()[i].getUrl()));
+        }
+        assertEquals(expected.getReviews().length, actual.getReviews().length);
+        for (int i = 0; i < expected.getReviews().length; i++) {
+            assertEquals(String.valueOf(expected.getReviews()[i].getUrl()),
+                    String.valueOf(actual.getReviews()[i].getUrl()));
+        }
+    }
+
+    @Test
+    public void benchmarkMovieListParse() throws Exception {
+        Runnable jsonObjectPath = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TMDbUtils.parseMovieListResponse(readAsString(mMovieList));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Runnable streamingPath = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TMDbUtils.parseMovieListResponse(new ByteArrayInputStream(mMovieList));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        report("movie list", measure(jsonObjectPath), measure(streamingPath));
+    }
+
+    @Test
+    public void benchmarkMovieDetailsParse() throws Exception {
+        Runnable jsonObjectPath = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TMDbUtils.parseMovieDetailsResponse(readAsString(mMovieDetails));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Runnable streamingPath = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TMDbUtils.parseMovieDetailsResponse(new ByteArrayInputStream(mMovieDetails));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        report("movie details", measure(jsonObjectPath), measure(streamingPath));
+    }
+
+    @Test
+    public void benchmarkMovieListAllocations() throws Exception {
+        // Parse and then read what the list screens read, to count what the list path pays for.
+        Runnable jsonObjectPath = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readListFields(TMDbUtils.parseMovieListResponse(readAsString(mMovieList)));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        Runnable streamingPath = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readListFields(TMDbUtils.parseMovieListResponse(
+                            new ByteArrayInputStream(mMovieList)));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        Log.i(TAG, "movie list: JSONObject " + countAllocations(jsonObjectPath)
+                + " allocs/op, streaming " + countAllocations(streamingPath) + " allocs/op");
+    }
+
+    private static void readListFields(TMDbMovie[] movies) {
+        for (TMDbMovie movie : movies) {
+            // The grid binds the poster, and filtering and the catalog read the genres.
+            if (movie.posterPath == null || movie.id == 0 || movie.getGenreIds() == null) {
+                throw new AssertionError("Missing list fields");
+            }
+        }
+    }
+
+    /**
+     * Runs the given parse path and returns the mean number of objects it allocates per parse.
+     */
+    @SuppressWarnings("deprecation")
+    private static int countAllocations(Runnable parsePath) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parsePath.run();
+        }
+
+        // Deprecated, but still the only allocation counter available without a profiler.
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+                parsePath.run();
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+
+        return Debug.getThreadAllocCount() / MEASURED_ITERATIONS;
+    }
+
+    /**
+     * Runs the given parse path and returns the mean time per parse in nanoseconds.
+     */
+    private static long measure(Runnable parsePath) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parsePath.run();
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            parsePath.run();
+        }
+
+        return (SystemClock.elapsedRealtimeNanos() - start) / MEASURED_ITERATIONS;
+    }
+
+    private static void report(String fixture, long jsonObjectNanos, long streamingNanos) {
+        Log.i(TAG, fixture + ": JSONObject " + jsonObjectNanos / 1000 + "us/op, streaming "
+                + streamingNanos / 1000 + "us/op");
+    }
+
+    /**
+     * Mirrors how NetworkUtils.getResponseFromUrl(URL) buffers the body, so the old path pays for
+     * the same String copy it does in the app.
+     */
+    private static String readAsString(byte[] body) {
+        Scanner scanner = new Scanner(new ByteArrayInputStream(body));
+        scanner.useDelimiter("\\A");
+
+        return scanner.next();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void assertMovieEquals(TMDbMovie expected, TMDbMovie actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.adult, actual.adult);
+        assertEquals(expected.backdropPath, actual.backdropPath);
+        assertArrayEquals(expected.getGenreIds(), actual.getGenreIds());
+        assertEquals(expected.originalLanguage, actual.originalLanguage);
+        assertEquals(expected.originalTitle, actual.originalTitle);
+        assertEquals(expected.getOverview(), actual.getOverview());
+        assertEquals(expected.popularity, actual.popularity, 0);
+        assertEquals(expected.posterPath, actual.posterPath);
+        assertEquals(expected.title, actual.title);
+        assertEquals(expected.releaseDate, actual.releaseDate);
+        assertEquals(expected.runtime, actual.runtime);
+        assertEquals(expected.video, actual.video);
+        assertEquals(expected.voteAverage, actual.voteAverage, 0);
+        assertEquals(expected.voteCount, actual.voteCount);
+    }
+}
@@ -0,0 +1,291 @@
+package io.chung.popularmovies;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+
+import io.chung.popularmovies.data.MovieRepository;
+import io.chung.popularmovies.search.MovieSearch;
+import io.chung.popularmovies.utilities.NetworkQualityEstimator;
+import io.chung.popularmovies.utilities.NetworkUtils;
+import io.chung.popularmovies.utilities.RequestQueue;
+import io.chung.popularmovies.utilities.RequestScheduler;
+import io.chung.popularmovies.utilities.TMDbUtils;
+
+/**
+ * Fetches movie details before the details screen asks for them, so a tap shows them without a
+ * round trip.
+ *
+ * A poster's details are requested as soon as it's pressed, ahead of the click. While the grid
+ * is at rest, the details of the movies on screen are also requested, a couple at a time so they
+ * never take every request thread, and only until a byte budget is spent. Results are kept in a
+ * small, short-lived cache that {@link MovieDetailActivity} checks with
+ * {@link #takePrefetchedDetails(int)}. A details screen opened while its prefetch is still in
+ * flight joins it through {@link RequestQueue}.
+ */
+public class DetailPrefetcher extends RecyclerView.OnScrollListener {
+
+    /* Bytes of details that idle prefetching may fetch per list, about 30 movies' worth. */
+    private static final int IDLE_BYTE_BUDGET = 256 * 1024;
+
+    /* Charged up front for a request until its result's actual size is known. */
+    private static final int ESTIMATED_DETAILS_BYTES = 8 * 1024;
+
+    /* How long, and how many, prefetched details are kept for the details screen. */
+    private static final long PREFETCHED_TTL_MILLIS = 60 * 1000;
+    private static final int MAX_PREFETCHED = 24;
+
+    /* Prefetched details by movie ID. Main thread only. */
+    private static final SparseArray<Prefetched> sPrefetched = new SparseArray<>();
+
+    private final String mApiKey;
+    private final MovieSource mMovies;
+    private final LinearLayoutManager mLayoutManager;
+
+    /* Requests that haven't finished yet, keyed by movie ID. */
+    private final SparseArray<RequestQueue.Request<TMDbMovie>> mInFlight = new SparseArray<>();
+
+    /* Movie IDs waiting for an idle prefetch slot. */
+    private final ArrayDeque<Integer> mPending = new ArrayDeque<>();
+
+    private int mIdleInFlightCount;
+    private int mBytesSpent;
+
+    private boolean mEnabled = true;
+
+    private static final class Prefetched {
+        final TMDbMovie movie;
+        final long fetchedAtMillis;
+
+        Prefetched(TMDbMovie movie, long fetchedAtMillis) {
+            this.movie = movie;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+    }
+
+    public DetailPrefetcher(Context context, MovieSource movies,
+                            LinearLayoutManager layoutManager) {
+        mApiKey = context.getString(R.string.the_movie_db_api_key);
+        mMovies = movies;
+        mLayoutManager = layoutManager;
+    }
+
+    /**
+     * Takes prefetched details out of the cache. Must be called on the main thread.
+     * @param movieId TMDb movie ID.
+     * @return The movie with details, or null if they weren't prefetched or have gone stale.
+     */
+    public static TMDbMovie takePrefetchedDetails(int movieId) {
+        Prefetched prefetched = sPrefetched.get(movieId);
+        if (prefetched == null) {
+            return null;
+        }
+
+        sPrefetched.remove(movieId);
+        return isFresh(prefetched, SystemClock.uptimeMillis()) ? prefetched.movie : null;
+    }
+
+    /**
+     * Turns idle prefetching on or off; turning it off drops any idle prefetch not yet started.
+     * Presses are still prefetched.
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            cancelIdle();
+        }
+    }
+
+    /**
+     * Requests a movie's details right away, because its poster was pressed and a click is
+     * likely to follow. Doesn't count against the idle limits.
+     * @param movie The pressed movie.
+     */
+    public void onPressed(TMDbMovie movie) {
+        // The press takes priority over anything queued, so it needn't wait for a slot.
+        mPending.remove(movie.id);
+
+        // An idle prefetch of the movie that's already out would be dropped rather than wait
+        // for a token, so it's moved to the pressed movie's lane instead.
+        RequestQueue.Request<TMDbMovie> inFlight = mInFlight.get(movie.id);
+        if (inFlight != null) {
+            inFlight.raisePriority(RequestScheduler.Priority.USER_VISIBLE);
+            return;
+        }
+        fetch(movie.id, false);
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            prefetchVisible();
+        } else {
+            // The cells on screen are about to change, so what's queued is no longer wanted.
+            cancelIdle();
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        // Layout passes report a scroll of 0, which is how the first page coming in shows up.
+        if (recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE) {
+            prefetchVisible();
+        }
+    }
+
+    /**
+     * Cancels every prefetch in flight or queued, and refills the byte budget, e.g. when the
+     * list is replaced. Already prefetched details are kept.
+     */
+    public void cancelAll() {
+        for (int i = 0; i < mInFlight.size(); i++) {
+            mInFlight.valueAt(i).cancel();
+        }
+        mInFlight.clear();
+        mPending.clear();
+        mIdleInFlightCount = 0;
+        mBytesSpent = 0;
+    }
+
+    private void prefetchVisible() {
+        if (!mEnabled) {
+            return;
+        }
+
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION || lastVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        for (int position = firstVisible; position <= lastVisible; position++) {
+            // Only prefetch what's already been parsed; this never triggers a page request.
+            TMDbMovie movie = mMovies.peekMovie(position);
+
+            if (movie != null && needsFetch(movie.id) && !mPending.contains(movie.id)) {
+                mPending.add(movie.id);
+            }
+        }
+
+        startPending();
+    }
+
+    private void startPending() {
+        // The network's policy keeps idle prefetches to a few of the request threads, leaving the
+        // rest for pages and taps, and to none at all on a slow link.
+        int maxIdleInFlight = NetworkQualityEstimator.getInstance().getPolicy()
+                .getMaxIdleDetailPrefetch();
+        while (mIdleInFlightCount < maxIdleInFlight && !mPending.isEmpty()
+                && mBytesSpent + ESTIMATED_DETAILS_BYTES <= IDLE_BYTE_BUDGET) {
+            int movieId = mPending.poll();
+
+            if (needsFetch(movieId)) {
+                mIdleInFlightCount++;
+                fetch(movieId, true);
+            }
+        }
+    }
+
+    private boolean needsFetch(int movieId) {
+        if (mInFlight.get(movieId) != null
+                || MovieRepository.getInstance().getMovieDetails(movieId,
+                        MovieDetailActivity.DETAIL_SECTIONS) != null) {
+            return false;
+        }
+
+        Prefetched prefetched = sPrefetched.get(movieId);
+        return prefetched == null || !isFresh(prefetched, SystemClock.uptimeMillis());
+    }
+
+    private void fetch(final int movieId, final boolean idle) {
+        if (!needsFetch(movieId)) {
+            return;
+        }
+
+        if (idle) {
+            mBytesSpent += ESTIMATED_DETAILS_BYTES;
+        }
+
+        // Fetch what the details screen shows, so the prefetched movie is all it needs.
+        URL url = NetworkUtils.buildMovieDetailsUrl(movieId, MovieDetailActivity.DETAIL_SECTIONS,
+                mApiKey);
+        RequestQueue.Request<TMDbMovie> request = RequestQueue.getInstance().fetch(url,
+                TMDbUtils.MOVIE_DETAILS_HANDLER,
+                // A pressed poster is about to be opened; the rest may never be.
+                idle ? RequestScheduler.Priority.PREFETCH : RequestScheduler.Priority.USER_VISIBLE,
+                new RequestQueue.Callback<TMDbMovie>() {
+                    @Override
+                    public void onResponse(TMDbMovie movie) {
+                        if (idle) {
+                            // Settle the estimate against the payload actually kept.
+                            mBytesSpent += TMDbMovieCodec.encodedSize(movie)
+                                    + movie.getSectionsJsonLength() - ESTIMATED_DETAILS_BYTES;
+                        }
+                        putPrefetched(movie);
+                        MovieSearch.getInstance().indexMovieDetails(movie);
+                        onFetchFinished(movieId, idle);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        // Speculative, so a failure is left for the details screen to report.
+                        onFetchFinished(movieId, idle);
+                    }
+                });
+
+        mInFlight.put(movieId, request);
+    }
+
+    private void onFetchFinished(int movieId, boolean idle) {
+        mInFlight.remove(movieId);
+
+        if (idle) {
+            mIdleInFlightCount--;
+            startPending();
+        }
+    }
+
+    /**
+     * Drops queued idle prefetches. Ones in flight are left to finish, as they've already been
+     * paid for, and so are pressed ones, as the click may still come.
+     */
+    private void cancelIdle() {
+        mPending.clear();
+    }
+
+    private static void putPrefetched(TMDbMovie movie) {
+        long now = SystemClock.uptimeMillis();
+
+        // Drop stale entries, then the oldest ones if it's still full.
+        for (int i = sPrefetched.size() - 1; i >= 0; i--) {
+            if (!isFresh(sPrefetched.valueAt(i), now)) {
+                sPrefetched.removeAt(i);
+            }
+        }
+        while (sPrefetched.size() >= MAX_PREFETCHED) {
+            removeOldest();
+        }
+
+        sPrefetched.put(movie.id, new Prefetched(movie, now));
+    }
+
+    private static void removeOldest() {
+        int oldestIndex = 0;
+        for (int i = 1; i < sPrefetched.size(); i++) {
+            if (sPrefetched.valueAt(i).fetchedAtMillis
+                    < sPrefetched.valueAt(oldestIndex).fetchedAtMillis) {
+                oldestIndex = i;
+            }
+        }
+        sPrefetched.removeAt(oldestIndex);
+    }
+
+    private static boolean isFresh(Prefetched prefetched, long nowMillis) {
+        return nowMillis - prefetched.fetchedAtMillis < PREFETCHED_TTL_MILLIS;
+    }
+}
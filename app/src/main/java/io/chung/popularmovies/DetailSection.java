@@ -0,0 +1,76 @@
+package io.chung.popularmovies;
+
+/**
+ * Optional parts of a movie details response, each appended to the one request through TMDb's
+ * append_to_response parameter instead of costing a request of its own.
+ *
+ * Screens declare the sections they show as a mask of {@link #bit()}s, so that a movie fetched
+ * for one screen can tell whether it already covers another.
+ */
+public enum DetailSection {
+    VIDEOS("videos"),
+    REVIEWS("reviews"),
+    CREDITS("credits"),
+    SIMILAR("similar"),
+    RELEASE_DATES("release_dates");
+
+    /* What the details screen has always shown, and what the local store keeps. */
+    public static final int DEFAULT = mask(VIDEOS, REVIEWS);
+
+    private static final DetailSection[] VALUES = values();
+
+    /* TMDb's name for the section, both in append_to_response and as the response key. */
+    public final String key;
+
+    DetailSection(String key) {
+        this.key = key;
+    }
+
+    public int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Builds a mask of the given sections.
+     */
+    public static int mask(DetailSection... sections) {
+        int mask = 0;
+        for (DetailSection section : sections) {
+            mask |= section.bit();
+        }
+        return mask;
+    }
+
+    /**
+     * Builds the append_to_response value for a mask of sections. Sections always come in the
+     * same order, so equal masks make equal URLs for the disk cache and request coalescing.
+     * @param mask Mask of sections.
+     * @return The comma-separated section keys, or "" for none.
+     */
+    public static String appendToResponse(int mask) {
+        StringBuilder value = new StringBuilder();
+
+        for (DetailSection section : VALUES) {
+            if ((mask & section.bit()) != 0) {
+                if (value.length() > 0) {
+                    value.append(',');
+                }
+                value.append(section.key);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Gets the section a response key belongs to.
+     * @return The section, or null if the key isn't a section's.
+     */
+    public static DetailSection forKey(String key) {
+        for (DetailSection section : VALUES) {
+            if (section.key.equals(key)) {
+                return section;
+            }
+        }
+        return null;
+    }
+}
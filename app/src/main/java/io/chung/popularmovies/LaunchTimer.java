@@ -0,0 +1,110 @@
+package io.chung.popularmovies;
+
+import android.app.Activity;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.concurrent.TimeUnit;
+
+import io.chung.popularmovies.metrics.Metrics;
+
+/**
+ * Times one launch of MainActivity to its first frame and to its first poster on screen, and
+ * records both in {@link Metrics}.
+ *
+ * The first launch in a process is cold, and is timed from when the process started as far as
+ * {@link StartupLoader} could tell, which is Application.onCreate. Later launches are warm, and
+ * are timed from the activity's onCreate.
+ */
+final class LaunchTimer implements ViewTreeObserver.OnPreDrawListener,
+        MovieItemAdapter.FirstPosterListener {
+
+    private static final String TAG = LaunchTimer.class.getSimpleName();
+
+    private final Activity mActivity;
+
+    private final View mDecorView;
+
+    /* Whether this launch started the process. */
+    private final boolean mCold;
+
+    /* Uptime in milliseconds when the launch started, and when each milestone was reached, or
+       -1 until it is. */
+    private final long mStartUptimeMillis;
+    private volatile long mFirstFrameUptimeMillis = -1;
+    private volatile long mFirstPosterUptimeMillis = -1;
+
+    /**
+     * Starts timing a launch, from the activity's onCreate.
+     * @param activity The activity being launched.
+     * @param adapter The adapter whose first poster ends the launch.
+     * @param createdUptimeMillis Uptime in milliseconds at the start of the activity's onCreate.
+     */
+    LaunchTimer(Activity activity, MovieItemAdapter adapter, long createdUptimeMillis) {
+        long processStartUptimeMillis = StartupLoader.takeProcessStartUptimeMillis();
+
+        mActivity = activity;
+        mCold = processStartUptimeMillis >= 0;
+        mStartUptimeMillis = mCold ? processStartUptimeMillis : createdUptimeMillis;
+
+        mDecorView = activity.getWindow().getDecorView();
+        mDecorView.getViewTreeObserver().addOnPreDrawListener(this);
+        adapter.setFirstPosterListener(this);
+    }
+
+    boolean isCold() {
+        return mCold;
+    }
+
+    long getStartUptimeMillis() {
+        return mStartUptimeMillis;
+    }
+
+    /**
+     * Uptime in milliseconds when the first frame was about to be drawn, or -1 if it hasn't yet.
+     */
+    long getFirstFrameUptimeMillis() {
+        return mFirstFrameUptimeMillis;
+    }
+
+    /**
+     * Uptime in milliseconds when the first poster had loaded, or -1 if it hasn't yet.
+     */
+    long getFirstPosterUptimeMillis() {
+        return mFirstPosterUptimeMillis;
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        mDecorView.getViewTreeObserver().removeOnPreDrawListener(this);
+
+        mFirstFrameUptimeMillis = SystemClock.uptimeMillis();
+        long elapsedMillis = mFirstFrameUptimeMillis - mStartUptimeMillis;
+        (mCold ? Metrics.STARTUP_COLD_FIRST_FRAME : Metrics.STARTUP_WARM_FIRST_FRAME)
+                .record(TimeUnit.MILLISECONDS.toNanos(elapsedMillis));
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, (mCold ? "Cold" : "Warm") + " launch to first frame: " + elapsedMillis
+                    + "ms");
+        }
+        return true;
+    }
+
+    @Override
+    public void onFirstPosterShown() {
+        mFirstPosterUptimeMillis = SystemClock.uptimeMillis();
+        long elapsedMillis = mFirstPosterUptimeMillis - mStartUptimeMillis;
+        (mCold ? Metrics.STARTUP_COLD_FIRST_POSTER : Metrics.STARTUP_WARM_FIRST_POSTER)
+                .record(TimeUnit.MILLISECONDS.toNanos(elapsedMillis));
+
+        // Lets the platform report the launch as fully drawn alongside its own launch times.
+        mActivity.reportFullyDrawn();
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, (mCold ? "Cold" : "Warm") + " launch to first poster: " + elapsedMillis
+                    + "ms");
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.chung.popularmovies;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Text that may still be in its UTF-8 encoded form, and is only decoded to a String the first
+ * time it's read. Used for long fields, like overviews and review content, that most screens
+ * never show.
+ *
+ * Reads are thread-safe. Two threads racing on the first read may both decode, but they get
+ * equal strings and one of them is kept. Once decoded, the text lets go of the buffer, which is
+ * usually a whole snapshot shared with every other movie decoded from it.
+ */
+final class LazyText {
+
+    /* Encoded form; the buffer's contents must not change while this is in use. Null once
+       decoded, and only ever cleared after the value is set. */
+    private volatile ByteBuffer mBuffer;
+    private final int mOffset;
+    private final int mLength;
+
+    private volatile String mValue;
+
+    private LazyText(ByteBuffer buffer, int offset, int length, String value) {
+        mBuffer = buffer;
+        mOffset = offset;
+        mLength = length;
+        mValue = value;
+    }
+
+    /**
+     * Wraps text that's already decoded.
+     */
+    static LazyText of(String value) {
+        return new LazyText(null, 0, 0, value);
+    }
+
+    /**
+     * Wraps UTF-8 bytes to be decoded on first read.
+     * @param buffer Buffer holding the bytes; only absolute indexes are used, so its position
+     *               doesn't matter.
+     * @param offset Absolute index of the first byte.
+     * @param length Number of bytes.
+     */
+    static LazyText encoded(ByteBuffer buffer, int offset, int length) {
+        return new LazyText(buffer, offset, length, null);
+    }
+
+    String get() {
+        String value = mValue;
+
+        if (value == null) {
+            ByteBuffer buffer = mBuffer;
+            if (buffer == null) {
+                // Another thread decoded it, and set the value before dropping the buffer.
+                return mValue;
+            }
+
+            value = decode(buffer);
+            mValue = value;
+            mBuffer = null;
+        }
+        return value;
+    }
+
+    /**
+     * Checks whether two texts are equal, comparing the encoded bytes when both are still
+     * encoded, so neither has to be decoded.
+     */
+    boolean contentEquals(LazyText other) {
+        if (this == other) {
+            return true;
+        }
+
+        ByteBuffer buffer = mBuffer;
+        ByteBuffer otherBuffer = other.mBuffer;
+        if (buffer == null || otherBuffer == null) {
+            String value = get();
+            return value == null ? other.get() == null : value.equals(other.get());
+        }
+
+        if (mLength != other.mLength) {
+            return false;
+        }
+        for (int i = 0; i < mLength; i++) {
+            if (buffer.get(mOffset + i) != otherBuffer.get(other.mOffset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the memory the text retains, in bytes, without decoding it: its share of the
+     * buffer while encoded, and two bytes per character once decoded.
+     */
+    int retainedSize() {
+        String value = mValue;
+        if (value != null) {
+            return 2 * value.length();
+        }
+        return mBuffer != null ? mLength : 0;
+    }
+
+    boolean isDecoded() {
+        return mValue != null;
+    }
+
+    private String decode(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + mOffset, mLength,
+                    StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes = new byte[mLength];
+        ByteBuffer source = buffer.duplicate();
+        source.position(mOffset);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,407 @@
+package io.chung.popularmovies;
+
+import android.support.v7.util.DiffUtil;
+import android.text.TextUtils;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.util.Arrays;
+
+import io.chung.popularmovies.metrics.Metrics;
+import io.chung.popularmovies.query.MovieCatalog;
+
+/**
+ * Filters every movie the pager has loaded for the list by genre and reorders them, on the
+ * device. While a filter or an order is set, this reads as the filtered movies; otherwise it
+ * reads straight through to the pager.
+ *
+ * The fields the query needs are kept for every loaded position, so pages the pager has since
+ * evicted still count; a result on such a page reads as null while the pager loads it again.
+ * They're kept up to date from the pager's updates: a page added to the end of the list is only
+ * appended, and a changed range only read again. While a query is set, each update hands back
+ * how the results changed, so the grid can animate them as it would the list, and scrolling to
+ * the end of the results pages on from the end of the list. Changing the filter or the order
+ * only reruns the query over a {@link MovieCatalog} built once. Main thread only.
+ */
+final class LocalMovieQuery implements MovieSource {
+
+    private static final int PAGE_SIZE = TMDbMovieListPage.PAGE_SIZE;
+
+    private static final int[] NO_GENRES = new int[0];
+
+    private final MoviePager mPager;
+
+    /* Genres a movie needs all of, and the order; none and null show the list as it is. */
+    private int[] mGenreIds = NO_GENRES;
+    private MovieCatalog.SortKey mSortKey;
+
+    /* Query fields of every movie loaded for the list, by list position, and how many positions
+       the list had when they were last brought up to date. */
+    private final SparseArray<IndexedMovie> mIndex = new SparseArray<>();
+    private int mIndexedListVersion;
+    private int mIndexedCount;
+
+    /*
+     * The indexed movies as catalog rows, in list order, each movie only once, at its first
+     * position, as happens when TMDb's ranking shifts between pages. Movies added to the end of
+     * the list are appended; anything else refills the rows, next time the query runs.
+     */
+    private MovieCatalog.Builder mCatalogRows = new MovieCatalog.Builder(0);
+    private final SparseBooleanArray mCatalogIds = new SparseBooleanArray();
+    private int[] mCatalogPositions = new int[PAGE_SIZE];
+    private int mCatalogSize;
+    private boolean mCatalogStale = true;
+
+    /* Built from the rows when the query runs, or null until it first does. */
+    private MovieCatalog mCatalog;
+
+    /* Catalog rows of the results, in order, and how many there are. */
+    private int[] mRows = new int[0];
+    private int mCount;
+
+    /* Positions whose movie changed in the update being applied. */
+    private final SparseBooleanArray mChangedPositions = new SparseBooleanArray();
+
+    /**
+     * The fields a query reads, and the poster the grid shows, kept apart from the movie so the
+     * pager can evict it.
+     */
+    private static final class IndexedMovie {
+        final int id;
+        final int[] genreIds;
+        final float voteAverage;
+        final int voteCount;
+        final float popularity;
+        final int releaseDate;
+        final String posterPath;
+
+        IndexedMovie(TMDbMovie movie) {
+            id = movie.id;
+            genreIds = movie.getGenreIds();
+            voteAverage = (float) movie.voteAverage;
+            voteCount = movie.voteCount;
+            popularity = (float) movie.popularity;
+            releaseDate = MovieCatalog.parseReleaseDate(movie.releaseDate);
+            posterPath = movie.posterPath;
+        }
+
+        boolean hasSameQueryFields(TMDbMovie movie) {
+            return id == movie.id
+                    && voteCount == movie.voteCount
+                    && Float.compare(voteAverage, (float) movie.voteAverage) == 0
+                    && Float.compare(popularity, (float) movie.popularity) == 0
+                    && releaseDate == MovieCatalog.parseReleaseDate(movie.releaseDate)
+                    && Arrays.equals(genreIds, movie.getGenreIds());
+        }
+    }
+
+    LocalMovieQuery(MoviePager pager) {
+        mPager = pager;
+    }
+
+    boolean isActive() {
+        return mGenreIds.length > 0 || mSortKey != null;
+    }
+
+    int[] getGenreIds() {
+        return mGenreIds.clone();
+    }
+
+    MovieCatalog.SortKey getSortKey() {
+        return mSortKey;
+    }
+
+    /**
+     * Filters to the movies that have all of the given genres.
+     * @param genreIds Genre IDs, or none to stop filtering.
+     */
+    void setGenreIds(int[] genreIds) {
+        mGenreIds = genreIds.clone();
+        run();
+    }
+
+    /**
+     * Orders the movies by a key.
+     * @param sortKey The key, or null for the list's own order.
+     */
+    void setSortKey(MovieCatalog.SortKey sortKey) {
+        mSortKey = sortKey;
+        run();
+    }
+
+    /**
+     * Picks up positions the pager inserted. Must be called for every update the pager makes,
+     * with a query set or not, so no loaded movie is missed.
+     * @param positionStart First inserted list position.
+     * @param itemCount Number of positions inserted.
+     * @return How the results changed, or null if no query is set, so the pager's own update
+     * applies to the grid.
+     */
+    DiffUtil.DiffResult onMoviesInserted(int positionStart, int itemCount) {
+        int[] oldIds = resultIds();
+
+        if (!startListIfReplaced() && positionStart == mIndexedCount
+                && positionStart + itemCount == mPager.getItemCount()) {
+            // The list grew at the end, so only the new positions need reading.
+            for (int position = positionStart; position < positionStart + itemCount;
+                 position++) {
+                indexPosition(position);
+            }
+            mIndexedCount += itemCount;
+        } else {
+            indexLoadedMovies();
+        }
+        return updateResults(oldIds);
+    }
+
+    /**
+     * Picks up positions whose movies the pager changed, or loaded again after evicting them.
+     * @see #onMoviesInserted(int, int)
+     */
+    DiffUtil.DiffResult onMoviesChanged(int positionStart, int itemCount) {
+        int[] oldIds = resultIds();
+
+        if (!startListIfReplaced() && mIndexedCount == mPager.getItemCount()) {
+            for (int position = positionStart; position < positionStart + itemCount;
+                 position++) {
+                indexPosition(position);
+                // Their cells are rebound even if nothing changed, as they may show a gap.
+                mChangedPositions.put(position, true);
+            }
+        } else {
+            indexLoadedMovies();
+        }
+        return updateResults(oldIds);
+    }
+
+    /**
+     * Picks up positions the pager removed or moved.
+     * @see #onMoviesInserted(int, int)
+     */
+    DiffUtil.DiffResult onMoviesRearranged() {
+        int[] oldIds = resultIds();
+
+        startListIfReplaced();
+        indexLoadedMovies();
+        return updateResults(oldIds);
+    }
+
+    /**
+     * Passes the viewport on to the pager. While a query is set, the pager pages on from the end
+     * of the list once the results are scrolled to within a page of their end.
+     * @param firstVisible First visible adapter position.
+     * @param lastVisible Last visible adapter position.
+     */
+    void onViewportChanged(int firstVisible, int lastVisible) {
+        if (!isActive()) {
+            mPager.onViewportChanged(firstVisible, lastVisible);
+            return;
+        }
+
+        if (lastVisible >= mCount - PAGE_SIZE) {
+            int lastPosition = mPager.getItemCount() - 1;
+            mPager.onViewportChanged(lastPosition, lastPosition);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return isActive() ? mCount : mPager.getItemCount();
+    }
+
+    @Override
+    public TMDbMovie getMovie(int position) {
+        if (!isActive()) {
+            return mPager.getMovie(position);
+        }
+        return mPager.getMovie(mCatalogPositions[mRows[position]]);
+    }
+
+    @Override
+    public TMDbMovie peekMovie(int position) {
+        if (!isActive()) {
+            return mPager.peekMovie(position);
+        }
+        return position >= 0 && position < mCount
+                ? mPager.peekMovie(mCatalogPositions[mRows[position]]) : null;
+    }
+
+    private void run() {
+        if (!isActive()) {
+            mCount = 0;
+            return;
+        }
+
+        if (mCatalogStale) {
+            fillCatalogRows();
+        }
+        if (mCatalog == null || mCatalog.size() != mCatalogSize) {
+            mCatalog = mCatalogRows.build();
+            if (mRows.length < mCatalogSize) {
+                mRows = new int[Math.max(mCatalogSize, 2 * mRows.length)];
+            }
+        }
+
+        long startNanos = System.nanoTime();
+        mCount = mCatalog.query(mGenreIds, true, mSortKey, mRows);
+        Metrics.LOCAL_QUERY.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Runs the query again after an update, and works out how the results changed. Results are
+     * matched by movie, and one whose position changed is rebound.
+     * @param oldIds Movie IDs of the results before the update, or null if no query is set.
+     */
+    private DiffUtil.DiffResult updateResults(final int[] oldIds) {
+        if (oldIds == null) {
+            mChangedPositions.clear();
+            return null;
+        }
+
+        run();
+        final int[] newIds = resultIds();
+        // Results only span the loaded movies, and an update only touches a page or so of them,
+        // so this is quick enough for the main thread.
+        DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldIds.length;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newIds.length;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return oldIds[oldItemPosition] == newIds[newItemPosition];
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return !mChangedPositions.get(mCatalogPositions[mRows[newItemPosition]]);
+            }
+        });
+        mChangedPositions.clear();
+        return result;
+    }
+
+    /**
+     * Gets the movie IDs of the results, in order.
+     * @return The IDs, or null if no query is set.
+     */
+    private int[] resultIds() {
+        if (!isActive()) {
+            return null;
+        }
+
+        int[] ids = new int[mCount];
+        for (int i = 0; i < mCount; i++) {
+            ids[i] = mCatalog.getMovieId(mRows[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Forgets the movies indexed for the previous list, once positions read from another.
+     * @return True if they did, so every position has to be read again.
+     */
+    private boolean startListIfReplaced() {
+        if (mIndexedListVersion == mPager.getListVersion()) {
+            return false;
+        }
+
+        mIndexedListVersion = mPager.getListVersion();
+        mIndex.clear();
+        mIndexedCount = 0;
+        mCatalogStale = true;
+        return true;
+    }
+
+    /**
+     * Reads the pager's resident movies again, after an update that may have moved them. What's
+     * recorded for positions that aren't resident stays, as the pager only moves movies within
+     * resident pages, unless the list now ends before them.
+     */
+    private void indexLoadedMovies() {
+        int itemCount = mPager.getItemCount();
+
+        for (int i = mIndex.size() - 1; i >= 0 && mIndex.keyAt(i) >= itemCount; i--) {
+            mIndex.removeAt(i);
+            mCatalogStale = true;
+        }
+        for (int position = 0; position < itemCount; position++) {
+            indexPosition(position);
+        }
+        mIndexedCount = itemCount;
+    }
+
+    /**
+     * Records the fields of the movie at a position, if it's resident, unless they're recorded
+     * already. A new movie after every catalog row is appended as a row; one anywhere else means
+     * the rows have to be refilled.
+     */
+    private void indexPosition(int position) {
+        TMDbMovie movie = mPager.peekMovie(position);
+        if (movie == null) {
+            return;
+        }
+
+        IndexedMovie indexed = mIndex.get(position);
+        if (indexed != null && indexed.hasSameQueryFields(movie)) {
+            if (!TextUtils.equals(indexed.posterPath, movie.posterPath)) {
+                // Only the cell changes; the rows stay as they are.
+                mIndex.put(position, new IndexedMovie(movie));
+                mChangedPositions.put(position, true);
+            }
+            return;
+        }
+
+        IndexedMovie updated = new IndexedMovie(movie);
+        mIndex.put(position, updated);
+        if (indexed != null) {
+            // Another movie here has only moved, which the results' diff picks up by itself.
+            if (indexed.id == movie.id) {
+                mChangedPositions.put(position, true);
+            }
+            mCatalogStale = true;
+        } else if (!mCatalogStale && (mCatalogSize == 0
+                || position > mCatalogPositions[mCatalogSize - 1])) {
+            addCatalogRow(position, updated);
+        } else {
+            mCatalogStale = true;
+        }
+    }
+
+    /**
+     * Refills the catalog rows from every indexed movie.
+     */
+    private void fillCatalogRows() {
+        int itemCount = mPager.getItemCount();
+        int indexedCount = mIndex.size();
+        mCatalogRows = new MovieCatalog.Builder(indexedCount);
+        mCatalogIds.clear();
+        mCatalogSize = 0;
+        mCatalog = null;
+        mCatalogStale = false;
+
+        for (int i = 0; i < indexedCount && mIndex.keyAt(i) < itemCount; i++) {
+            addCatalogRow(mIndex.keyAt(i), mIndex.valueAt(i));
+        }
+    }
+
+    private void addCatalogRow(int position, IndexedMovie movie) {
+        if (mCatalogIds.get(movie.id)) {
+            return;
+        }
+
+        mCatalogIds.put(movie.id, true);
+        mCatalogRows.add(movie.id, movie.genreIds, movie.voteAverage, movie.voteCount,
+                movie.popularity, movie.releaseDate);
+        if (mCatalogSize == mCatalogPositions.length) {
+            mCatalogPositions = Arrays.copyOf(mCatalogPositions, 2 * mCatalogSize);
+        }
+        mCatalogPositions[mCatalogSize++] = position;
+    }
+}
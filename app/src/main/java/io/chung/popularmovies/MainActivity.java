@@ -1,31 +1,50 @@
 package io.chung.popularmovies;
 
 import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.res.Configuration;
-import android.os.AsyncTask;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.BaseColumns;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.view.MenuItemCompat;
+import android.support.v4.widget.SimpleCursorAdapter;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.FilterQueryProvider;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
-import org.json.JSONException;
-
-import java.io.IOException;
-import java.net.URL;
+import java.util.Arrays;
 
 import io.chung.popularmovies.constants.IntentExtraKeys;
+import io.chung.popularmovies.data.ListSnapshot;
+import io.chung.popularmovies.data.MovieStore;
+import io.chung.popularmovies.image.ImagePipeline;
+import io.chung.popularmovies.query.MovieCatalog;
+import io.chung.popularmovies.search.MovieSearch;
+import io.chung.popularmovies.search.SearchIndex;
+import io.chung.popularmovies.utilities.NetworkQualityEstimator;
 import io.chung.popularmovies.utilities.NetworkUtils;
-import io.chung.popularmovies.utilities.TMDbException;
-import io.chung.popularmovies.utilities.TMDbUtils;
 
 public class MainActivity extends AppCompatActivity
-        implements MovieItemAdapter.ListItemClickHandler {
+        implements MovieItemAdapter.ListItemClickHandler, MoviePager.Listener {
+
+    /* Most search results shown under the search box. */
+    private static final int MAX_SEARCH_RESULTS = 20;
+
+    private static final String SEARCH_TITLE_COLUMN = "title";
+    private static final String[] SEARCH_COLUMNS = {BaseColumns._ID, SEARCH_TITLE_COLUMN};
 
      /* Reference to RecyclerView. */
     private RecyclerView mMovieList;
@@ -33,6 +52,33 @@ public class MainActivity extends AppCompatActivity
     /* Reference to RecyclerView's adapter. */
     private MovieItemAdapter mMovieItemAdapter;
 
+    /* The pager and local query below, kept across configuration changes. */
+    private MovieListState mListState;
+
+    /* Loads the movie list page by page as it's scrolled. */
+    private MoviePager mMoviePager;
+
+    /* What the grid shows: the pager's list, or its loaded movies filtered and reordered. */
+    private LocalMovieQuery mLocalQuery;
+
+    /* Warms the image cache with posters about to scroll into view. */
+    private PosterPrefetcher mPosterPrefetcher;
+
+    /* Fetches details of pressed and on-screen movies before they're opened. */
+    private DetailPrefetcher mDetailPrefetcher;
+
+    /* Frame and poster timings while scrolling; only created in debug builds. */
+    private ScrollPerformanceMonitor mScrollPerformanceMonitor;
+
+    /* Times this launch to its first frame and first poster; null after a configuration change. */
+    private LaunchTimer mLaunchTimer;
+
+    /* Debug overlay of performance metrics; created when first shown. */
+    private MetricsOverlay mMetricsOverlay;
+
+    /* Poster size that covers one grid cell. */
+    private NetworkUtils.PosterSize mPosterSize;
+
     /* Reference to the text view that displays the error message. */
     private TextView mErrorMessageDisplay;
 
@@ -41,22 +87,35 @@ public class MainActivity extends AppCompatActivity
 
     @Override
     public void onListItemClick(TMDbMovie movie) {
+        openMovieDetails(movie.id);
+    }
+
+    /**
+     * Opens the details screen of a movie.
+     * @param movieId TMDb movie ID.
+     */
+    private void openMovieDetails(int movieId) {
         Context context = this;
         Class destClass = MovieDetailActivity.class;
 
         Intent intent = new Intent(context, destClass);
-        intent.putExtra(IntentExtraKeys.MOVIE_ID, movie.id);
+        intent.putExtra(IntentExtraKeys.MOVIE_ID, movieId);
+        // The grid's poster is already in memory, so the details screen can show it right away.
+        intent.putExtra(IntentExtraKeys.POSTER_SIZE, mPosterSize.name());
+        // Lets the details screen measure how long the tap took to show the details.
+        intent.putExtra(IntentExtraKeys.TAP_UPTIME_MILLIS, SystemClock.uptimeMillis());
 
         startActivity(intent);
     }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createdUptimeMillis = SystemClock.uptimeMillis();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
         // Initialize the RecyclerView and its adapter
-        GridLayoutManager layoutManager;
+        final GridLayoutManager layoutManager;
 
         if (getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT) {
             layoutManager = new GridLayoutManager(this, 2);
@@ -64,6 +123,13 @@ public class MainActivity extends AppCompatActivity
             layoutManager = new GridLayoutManager(this, 3);
         }
 
+        // The grid fills the screen width, so each cell gets an equal share of it.
+        int cellWidth = getResources().getDisplayMetrics().widthPixels / layoutManager.getSpanCount();
+        // A slow link gets smaller posters, for as long as this activity lasts; switching sizes
+        // mid-scroll would only miss the cache for posters already loaded.
+        mPosterSize = NetworkQualityEstimator.getInstance().getPolicy().posterSizeFor(cellWidth);
+        ImagePipeline.getInstance().setDisplayWidth(mPosterSize, cellWidth);
+
         // Initialize references to the views
         mMovieList = (RecyclerView) findViewById(R.id.rv_movie_list);
         mErrorMessageDisplay = (TextView) findViewById(R.id.tv_error_message);
@@ -73,15 +139,123 @@ public class MainActivity extends AppCompatActivity
         mMovieList.setLayoutManager(layoutManager);
         mMovieList.setHasFixedSize(true);
 
-        mMovieItemAdapter = new MovieItemAdapter(this);
+        // A configuration change hands over the list as it was, with its requests in flight.
+        MovieListState retainedState = (MovieListState) getLastCustomNonConfigurationInstance();
+        mListState = retainedState != null
+                ? retainedState
+                : new MovieListState(getString(R.string.the_movie_db_api_key),
+                        MovieStore.getInstance(this), ListSnapshot.getInstance(this));
+        mListState.setListener(this);
+        mMoviePager = mListState.getPager();
+        mLocalQuery = mListState.getLocalQuery();
+
+        mMovieItemAdapter = new MovieItemAdapter(this, mLocalQuery, mPosterSize);
         mMovieList.setAdapter(mMovieItemAdapter);
 
-        loadMovieData(NetworkUtils.SortCriteria.POPULAR);
+        // Coming back from a configuration change isn't a launch.
+        if (retainedState == null) {
+            mLaunchTimer = new LaunchTimer(this, mMovieItemAdapter, createdUptimeMillis);
+        }
+
+        // Let the pager prefetch and evict pages around what's on screen. The local query
+        // passes this on, in the pager's positions, while it's showing filtered movies.
+        mMovieList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                mLocalQuery.onViewportChanged(layoutManager.findFirstVisibleItemPosition(),
+                        layoutManager.findLastVisibleItemPosition());
+            }
+        });
+
+        mPosterPrefetcher = new PosterPrefetcher(this, mLocalQuery, layoutManager, mPosterSize);
+        mMovieList.addOnScrollListener(mPosterPrefetcher);
+
+        mDetailPrefetcher = new DetailPrefetcher(this, mLocalQuery, layoutManager);
+        mMovieList.addOnScrollListener(mDetailPrefetcher);
+        mMovieItemAdapter.setDetailPrefetcher(mDetailPrefetcher);
+
+        if (BuildConfig.DEBUG) {
+            mScrollPerformanceMonitor = new ScrollPerformanceMonitor();
+            mMovieList.addOnScrollListener(mScrollPerformanceMonitor);
+            mMovieItemAdapter.setPerformanceMonitor(mScrollPerformanceMonitor);
+        }
+
+        if (retainedState != null) {
+            showRetainedList();
+        } else if (savedInstanceState != null) {
+            // The process was restarted; the saved list is read back from the store.
+            mLoadingIndicator.setVisibility(View.VISIBLE);
+            mListState.restoreInstanceState(savedInstanceState,
+                    StartupLoader.STARTUP_SORT_CRITERIA);
+        } else {
+            loadMovieData(StartupLoader.STARTUP_SORT_CRITERIA);
+        }
+        showSortCriteria(mListState.getSortCriteria());
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        mListState.saveInstanceState(outState);
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mListState;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // A configuration change hands the list and its page requests to the next activity.
+        // Otherwise results should only reach a screen that's still around.
+        if (isChangingConfigurations()) {
+            mListState.setListener(null);
+        } else {
+            mListState.cancel();
+        }
+        mPosterPrefetcher.cancelAll();
+        mDetailPrefetcher.cancelAll();
+        mMovieItemAdapter.releasePosters();
+        if (mMetricsOverlay != null) {
+            mMetricsOverlay.setShowing(false);
+        }
+    }
+
+    @VisibleForTesting
+    MovieListState getListState() {
+        return mListState;
+    }
+
+    @VisibleForTesting
+    PosterPrefetcher getPosterPrefetcher() {
+        return mPosterPrefetcher;
+    }
+
+    @VisibleForTesting
+    ScrollPerformanceMonitor getScrollPerformanceMonitor() {
+        return mScrollPerformanceMonitor;
+    }
+
+    @VisibleForTesting
+    LaunchTimer getLaunchTimer() {
+        return mLaunchTimer;
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_show_metrics).setVisible(BuildConfig.DEBUG);
+
+        // The list, filter and order can outlive the activity that picked them.
+        menu.findItem(mListState.getSortCriteria() == NetworkUtils.SortCriteria.TOP_RATED
+                ? R.id.action_sort_top_rated
+                : R.id.action_sort_popular).setChecked(true);
+        menu.findItem(orderItemId(mLocalQuery.getSortKey())).setChecked(true);
+
+        MenuItem searchItem = menu.findItem(R.id.action_search);
+        setUpSearch(searchItem, (SearchView) MenuItemCompat.getActionView(searchItem));
 
         return true;
     }
@@ -90,85 +264,327 @@ public class MainActivity extends AppCompatActivity
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.action_sort_popular:
-                setTitle(R.string.title_popular);
+                showSortCriteria(NetworkUtils.SortCriteria.POPULAR);
                 item.setChecked(true);
                 loadMovieData(NetworkUtils.SortCriteria.POPULAR);
                 return true;
             case R.id.action_sort_top_rated:
-                setTitle(R.string.title_top_rated);
+                showSortCriteria(NetworkUtils.SortCriteria.TOP_RATED);
                 item.setChecked(true);
                 loadMovieData(NetworkUtils.SortCriteria.TOP_RATED);
                 return true;
+            case R.id.action_filter_genres:
+                showGenreFilter();
+                return true;
+            case R.id.action_order_list:
+                return setLocalOrder(item, null);
+            case R.id.action_order_rating:
+                return setLocalOrder(item, MovieCatalog.SortKey.VOTE_AVERAGE);
+            case R.id.action_order_votes:
+                return setLocalOrder(item, MovieCatalog.SortKey.VOTE_COUNT);
+            case R.id.action_order_popularity:
+                return setLocalOrder(item, MovieCatalog.SortKey.POPULARITY);
+            case R.id.action_order_release_date:
+                return setLocalOrder(item, MovieCatalog.SortKey.RELEASE_DATE);
+            case R.id.action_show_metrics:
+                if (mMetricsOverlay == null) {
+                    mMetricsOverlay = new MetricsOverlay(this);
+                }
+                mMetricsOverlay.setShowing(!mMetricsOverlay.isShowing());
+                item.setChecked(mMetricsOverlay.isShowing());
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
     }
 
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        if (positionStart == 0) {
+            mLoadingIndicator.setVisibility(View.INVISIBLE);
+
+            if (itemCount == 0) {
+                showErrorMessage();
+                return;
+            }
+            showMovieList();
+        }
+
+        if (!showLocalQueryUpdate(mLocalQuery.onMoviesInserted(positionStart, itemCount))) {
+            mMovieItemAdapter.notifyItemRangeInserted(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        if (!showLocalQueryUpdate(mLocalQuery.onMoviesChanged(positionStart, itemCount))) {
+            mMovieItemAdapter.notifyItemRangeChanged(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        if (!showLocalQueryUpdate(mLocalQuery.onMoviesRearranged())) {
+            mMovieItemAdapter.notifyItemRangeRemoved(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemMoved(int fromPosition, int toPosition) {
+        if (!showLocalQueryUpdate(mLocalQuery.onMoviesRearranged())) {
+            mMovieItemAdapter.notifyItemMoved(fromPosition, toPosition);
+        }
+    }
+
     /**
-     * Executes an asynchronous request for the movie list.
-     * @param sortCriteria Indicates which sorting of the movie list to be requested.
+     * Applies how the local query's results changed to the grid, if it's showing.
+     * @param results The change, or null if no query is set.
+     * @return True if the query is showing, so the pager's positions don't apply to the grid.
      */
-    private void loadMovieData(NetworkUtils.SortCriteria sortCriteria) {
-        new FetchMovieListTask().execute(sortCriteria);
+    private boolean showLocalQueryUpdate(DiffUtil.DiffResult results) {
+        if (results == null) {
+            return false;
+        }
+
+        results.dispatchUpdatesTo(mMovieItemAdapter);
+        return true;
+    }
+
+    @Override
+    public void onListReplaced(int itemCount) {
+        mLoadingIndicator.setVisibility(View.INVISIBLE);
+
+        if (itemCount == 0) {
+            showErrorMessage();
+        } else {
+            showMovieList();
+        }
+    }
+
+    @Override
+    public void onPageLoadFailed(int page) {
+        // Later pages are simply requested again when scrolled to, but without the first page
+        // there's nothing to show, unless the stored list is already on screen.
+        if (page == 1 && mMoviePager.getItemCount() == 0) {
+            mLoadingIndicator.setVisibility(View.INVISIBLE);
+            showErrorMessage();
+        }
     }
 
     /**
-     * Shows the movie list and hides and error message text view.
+     * Shows the list handed over from the previous activity as that activity left it.
      */
-    private void showMovieList() {
-        mErrorMessageDisplay.setVisibility(View.INVISIBLE);
-        mMovieList.setVisibility(View.VISIBLE);
+    private void showRetainedList() {
+        if (mListState.isLoading()) {
+            mLoadingIndicator.setVisibility(View.VISIBLE);
+        }
+
+        if (mMoviePager.getItemCount() > 0) {
+            showMovieList();
+        } else if (!mListState.isLoading()) {
+            showErrorMessage();
+        }
     }
 
     /**
-     * Shows the error message text view and hides the movie list.
+     * Titles the screen after the list it shows.
      */
-    private void showErrorMessage() {
-        mErrorMessageDisplay.setVisibility(View.VISIBLE);
-        mMovieList.setVisibility(View.INVISIBLE);
+    private void showSortCriteria(NetworkUtils.SortCriteria sortCriteria) {
+        setTitle(sortCriteria == NetworkUtils.SortCriteria.TOP_RATED
+                ? R.string.title_top_rated
+                : R.string.title_popular);
     }
 
-    private class FetchMovieListTask extends AsyncTask<NetworkUtils.SortCriteria, Void, TMDbMovie[]> {
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-            mLoadingIndicator.setVisibility(View.VISIBLE);
+    /**
+     * Gets the menu item for ordering the loaded movies by a key.
+     * @param sortKey The key, or null for the list's order.
+     */
+    private static int orderItemId(MovieCatalog.SortKey sortKey) {
+        if (sortKey == null) {
+            return R.id.action_order_list;
         }
 
-        @Override
-        protected TMDbMovie[] doInBackground(NetworkUtils.SortCriteria... sortCriteria) {
-            // Only one sort criterion is expected, but if none are passed, return null.
-            if (sortCriteria.length == 0) {
-                return null;
+        switch (sortKey) {
+            case VOTE_AVERAGE:
+                return R.id.action_order_rating;
+            case VOTE_COUNT:
+                return R.id.action_order_votes;
+            case POPULARITY:
+                return R.id.action_order_popularity;
+            default:
+                return R.id.action_order_release_date;
+        }
+    }
+
+    /**
+     * Lets the user pick genres to filter the loaded movies by.
+     */
+    private void showGenreFilter() {
+        final int[] genreIds = getResources().getIntArray(R.array.genre_ids);
+        final boolean[] checked = new boolean[genreIds.length];
+        for (int genreId : mLocalQuery.getGenreIds()) {
+            for (int i = 0; i < genreIds.length; i++) {
+                checked[i] |= genreIds[i] == genreId;
             }
+        }
 
-            TMDbMovie[] movieList = null;
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.filter_genres_title)
+                .setMultiChoiceItems(getResources().getStringArray(R.array.genre_names), checked,
+                        new DialogInterface.OnMultiChoiceClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which,
+                                                boolean isChecked) {
+                                checked[which] = isChecked;
+                            }
+                        })
+                .setPositiveButton(R.string.filter_genres_apply,
+                        new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                int count = 0;
+                                int[] selected = new int[genreIds.length];
+                                for (int i = 0; i < genreIds.length; i++) {
+                                    if (checked[i]) {
+                                        selected[count++] = genreIds[i];
+                                    }
+                                }
+                                mLocalQuery.setGenreIds(Arrays.copyOf(selected, count));
+                                onLocalQueryChanged();
+                            }
+                        })
+                .setNeutralButton(R.string.filter_genres_clear,
+                        new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                mLocalQuery.setGenreIds(new int[0]);
+                                onLocalQueryChanged();
+                            }
+                        })
+                .show();
+    }
 
-            NetworkUtils.SortCriteria criterion = sortCriteria[0];
-            String apiKey = getString(R.string.the_movie_db_api_key);
+    /**
+     * Reorders the loaded movies by a key, or puts them back in the list's order.
+     * @param sortKey The key, or null for the list's order.
+     * @return True, as the menu item was handled.
+     */
+    private boolean setLocalOrder(MenuItem item, MovieCatalog.SortKey sortKey) {
+        item.setChecked(true);
+        mLocalQuery.setSortKey(sortKey);
+        onLocalQueryChanged();
+        return true;
+    }
 
-            try {
-                URL url = NetworkUtils.buildMovieListUrl(criterion, apiKey);
-                String response = NetworkUtils.getResponseFromUrl(url);
+    /**
+     * Shows the new results of the local query, or the pager's list again, from the top.
+     */
+    private void onLocalQueryChanged() {
+        mPosterPrefetcher.cancelAll();
+        mDetailPrefetcher.cancelAll();
+        mMovieItemAdapter.notifyDataSetChanged();
+        mMovieList.scrollToPosition(0);
+    }
 
-                movieList = TMDbUtils.parseMovieListResponse(response);
-            } catch (IOException | JSONException | TMDbException e) {
-                e.printStackTrace();
+    /**
+     * Shows movies from the local search index as suggestions while a query is typed. Choosing
+     * one, or submitting the query, opens the movie's details.
+     */
+    private void setUpSearch(final MenuItem searchItem, SearchView searchView) {
+        searchView.setQueryHint(getString(R.string.search_hint));
+
+        final SimpleCursorAdapter suggestions = new SimpleCursorAdapter(this,
+                android.R.layout.simple_list_item_1, null, new String[] {SEARCH_TITLE_COLUMN},
+                new int[] {android.R.id.text1}, 0);
+        // Filtering runs on the adapter's filter thread, so typing never waits for a search.
+        suggestions.setFilterQueryProvider(new FilterQueryProvider() {
+            @Override
+            public Cursor runQuery(CharSequence constraint) {
+                return searchCursor(constraint != null ? constraint.toString() : "");
             }
+        });
+        searchView.setSuggestionsAdapter(suggestions);
 
-            return movieList;
-        }
+        searchView.setOnSuggestionListener(new SearchView.OnSuggestionListener() {
+            @Override
+            public boolean onSuggestionSelect(int position) {
+                return false;
+            }
 
-        @Override
-        protected void onPostExecute(TMDbMovie[] movies) {
-            mLoadingIndicator.setVisibility(View.INVISIBLE);
+            @Override
+            public boolean onSuggestionClick(int position) {
+                Cursor cursor = suggestions.getCursor();
+                if (cursor != null && cursor.moveToPosition(position)) {
+                    openSearchResult(searchItem, cursor.getInt(0));
+                }
+                return true;
+            }
+        });
+
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                SearchIndex.Result[] results = MovieSearch.getInstance().search(query, 1);
+                if (results.length > 0) {
+                    openSearchResult(searchItem, results[0].movieId);
+                }
+                return true;
+            }
 
-            if (movies != null && movies.length != 0) {
-                showMovieList();
-                mMovieItemAdapter.setMovieData(movies);
-            } else {
-                showErrorMessage();
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // The suggestions adapter's filter handles it.
+                return false;
             }
+        });
+    }
+
+    private void openSearchResult(MenuItem searchItem, int movieId) {
+        MenuItemCompat.collapseActionView(searchItem);
+        openMovieDetails(movieId);
+    }
+
+    /**
+     * Searches the local index and gets the results as rows of movie ID and title.
+     */
+    private static Cursor searchCursor(String query) {
+        SearchIndex.Result[] results = MovieSearch.getInstance().search(query,
+                MAX_SEARCH_RESULTS);
+
+        MatrixCursor cursor = new MatrixCursor(SEARCH_COLUMNS, results.length);
+        for (SearchIndex.Result result : results) {
+            cursor.addRow(new Object[] {result.movieId, result.title});
         }
+        return cursor;
+    }
+
+    /**
+     * Executes an asynchronous request for the first page of the movie list.
+     * @param sortCriteria Indicates which sorting of the movie list to be requested.
+     */
+    private void loadMovieData(NetworkUtils.SortCriteria sortCriteria) {
+        mLoadingIndicator.setVisibility(View.VISIBLE);
+
+        // The pager keeps the current list up and replaces it through the listener, so posters
+        // of movies in both lists stay put.
+        mPosterPrefetcher.cancelAll();
+        mDetailPrefetcher.cancelAll();
+        mListState.load(sortCriteria);
+    }
+
+    /**
+     * Shows the movie list and hides and error message text view.
+     */
+    private void showMovieList() {
+        mErrorMessageDisplay.setVisibility(View.INVISIBLE);
+        mMovieList.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Shows the error message text view and hides the movie list.
+     */
+    private void showErrorMessage() {
+        mErrorMessageDisplay.setVisibility(View.VISIBLE);
+        mMovieList.setVisibility(View.INVISIBLE);
     }
 }
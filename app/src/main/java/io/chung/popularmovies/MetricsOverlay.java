@@ -0,0 +1,112 @@
+package io.chung.popularmovies;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.AsyncTask;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import io.chung.popularmovies.metrics.Metrics;
+
+/**
+ * Debug overlay that shows a summary of {@link Metrics} along the bottom of an activity,
+ * refreshed while it's showing. Tapping it writes every metric as JSON to the app's files
+ * directory, to pull with adb.
+ */
+final class MetricsOverlay implements Runnable, View.OnClickListener {
+
+    private static final String TAG = MetricsOverlay.class.getSimpleName();
+
+    private static final long REFRESH_INTERVAL_MILLIS = 500;
+
+    private static final String DUMP_FILE_NAME = "metrics.json";
+
+    private static final int BACKGROUND_COLOR = 0xcc000000;
+    private static final float TEXT_SIZE_SP = 11;
+
+    private final TextView mView;
+
+    private boolean mShowing;
+
+    MetricsOverlay(Activity activity) {
+        mView = new TextView(activity);
+        mView.setBackgroundColor(BACKGROUND_COLOR);
+        mView.setTextColor(Color.WHITE);
+        mView.setTextSize(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP);
+        mView.setTypeface(Typeface.MONOSPACE);
+
+        int padding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 8,
+                activity.getResources().getDisplayMetrics());
+        mView.setPadding(padding, padding, padding, padding);
+
+        mView.setVisibility(View.GONE);
+        mView.setOnClickListener(this);
+
+        FrameLayout content = (FrameLayout) activity.findViewById(android.R.id.content);
+        content.addView(mView, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM));
+    }
+
+    boolean isShowing() {
+        return mShowing;
+    }
+
+    /**
+     * Shows or hides the overlay. It only refreshes while showing.
+     */
+    void setShowing(boolean showing) {
+        if (showing == mShowing) {
+            return;
+        }
+        mShowing = showing;
+
+        mView.setVisibility(showing ? View.VISIBLE : View.GONE);
+        mView.removeCallbacks(this);
+        if (showing) {
+            run();
+        }
+    }
+
+    @Override
+    public void run() {
+        mView.setText(Metrics.summary());
+        mView.postDelayed(this, REFRESH_INTERVAL_MILLIS);
+    }
+
+    @Override
+    public void onClick(View view) {
+        final File dumpFile = new File(view.getContext().getFilesDir(), DUMP_FILE_NAME);
+        final String json = Metrics.toJson();
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Writer writer = new FileWriter(dumpFile);
+                    try {
+                        writer.write(json);
+                    } finally {
+                        writer.close();
+                    }
+                    Log.i(TAG, "Metrics written to " + dumpFile);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+
+        Toast.makeText(view.getContext(), dumpFile.getPath(), Toast.LENGTH_SHORT).show();
+    }
+}
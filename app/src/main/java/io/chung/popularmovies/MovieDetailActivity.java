@@ -1,11 +1,14 @@
 package io.chung.popularmovies;
 
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.support.v7.app.ActionBar;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.ImageView;
@@ -13,19 +16,32 @@ import android.widget.ProgressBar;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
+import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 
-import org.json.JSONException;
-
-import java.io.IOException;
-import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
 
 import io.chung.popularmovies.constants.IntentExtraKeys;
+import io.chung.popularmovies.data.MovieRepository;
+import io.chung.popularmovies.data.MovieStore;
+import io.chung.popularmovies.image.ImagePipeline;
+import io.chung.popularmovies.metrics.Counter;
+import io.chung.popularmovies.metrics.Metrics;
+import io.chung.popularmovies.utilities.NetworkQualityEstimator;
 import io.chung.popularmovies.utilities.NetworkUtils;
-import io.chung.popularmovies.utilities.TMDbException;
-import io.chung.popularmovies.utilities.TMDbUtils;
 
-public class MovieDetailActivity extends AppCompatActivity {
+public class MovieDetailActivity extends AppCompatActivity
+        implements MovieDetailState.Listener {
+
+    private static final String TAG = MovieDetailActivity.class.getSimpleName();
+
+    /* Sections of the movie details this screen shows, all fetched in its one details request. */
+    static final int DETAIL_SECTIONS = DetailSection.mask(DetailSection.VIDEOS,
+            DetailSection.REVIEWS, DetailSection.CREDITS, DetailSection.RELEASE_DATES);
+
+    /* Top-billed cast members named under the overview. */
+    private static final int CAST_SHOWN = 5;
 
     private ScrollView mMovieDetails;
 
@@ -34,11 +50,33 @@ public class MovieDetailActivity extends AppCompatActivity {
     private TextView mReleaseYear;
     private TextView mRuntime;
     private TextView mVoteAverage;
+    private TextView mCertification;
     private TextView mOverview;
+    private TextView mCast;
 
     private TextView mErrorMessageDisplay;
     private ProgressBar mLoadingIndicator;
 
+    /* Whether any movie data, even list-level only, is on screen. */
+    private boolean mShowingMovie;
+
+    /* Poster size that covers the poster view, and the smaller one the grid already loaded. */
+    private NetworkUtils.PosterSize mPosterSize;
+    private NetworkUtils.PosterSize mPlaceholderPosterSize;
+
+    /* Poster currently loaded into the poster view, so it's only loaded once. */
+    private String mLoadedPosterPath;
+
+    /* Low-res and high-res posters acquired from the image pipeline while they're shown. */
+    private Bitmap mPlaceholderBitmap;
+    private Bitmap mPosterBitmap;
+
+    /* The movie shown and its details request, kept across configuration changes. */
+    private MovieDetailState mState;
+
+    /* When the movie was tapped in the grid, or -1 once its latency is reported or if unknown. */
+    private long mTapUptimeMillis = -1;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -59,25 +97,74 @@ public class MovieDetailActivity extends AppCompatActivity {
         mReleaseYear = (TextView) findViewById(R.id.tv_release_year);
         mRuntime = (TextView) findViewById(R.id.tv_runtime);
         mVoteAverage = (TextView) findViewById(R.id.tv_vote_average);
+        mCertification = (TextView) findViewById(R.id.tv_certification);
         mOverview = (TextView) findViewById(R.id.tv_overview);
+        mCast = (TextView) findViewById(R.id.tv_cast);
 
         mErrorMessageDisplay = (TextView) findViewById(R.id.tv_details_error_message);
         mLoadingIndicator = (ProgressBar) findViewById(R.id.pg_details_loading_indicator);
 
+        // The poster view has a fixed width, so its size is known before layout.
+        int posterWidth = mPoster.getLayoutParams().width
+                - mPoster.getPaddingLeft() - mPoster.getPaddingRight();
+        mPosterSize = NetworkQualityEstimator.getInstance().getPolicy()
+                .posterSizeFor(posterWidth);
+        ImagePipeline.getInstance().setDisplayWidth(mPosterSize, posterWidth);
+
+        // A configuration change hands over the movie as it was, with its request in flight.
+        MovieDetailState retainedState =
+                (MovieDetailState) getLastCustomNonConfigurationInstance();
+        mState = retainedState != null ? retainedState : new MovieDetailState(this);
+        mState.setListener(this);
+
         // Process the incoming intent
         Intent incomingIntent = getIntent();
 
         if (incomingIntent != null) {
-            if (incomingIntent.hasExtra(IntentExtraKeys.MOVIE_ID)) {
+            if (incomingIntent.hasExtra(IntentExtraKeys.POSTER_SIZE)) {
+                mPlaceholderPosterSize = NetworkUtils.PosterSize.valueOf(
+                        incomingIntent.getStringExtra(IntentExtraKeys.POSTER_SIZE));
+            }
+
+            // Only the tap is timed, not a recreation after a configuration change or restart.
+            if (savedInstanceState == null) {
+                mTapUptimeMillis =
+                        incomingIntent.getLongExtra(IntentExtraKeys.TAP_UPTIME_MILLIS, -1);
+            }
+
+            if (retainedState != null) {
+                showRetainedMovie();
+            } else if (incomingIntent.hasExtra(IntentExtraKeys.MOVIE_ID)) {
                 int movieId = incomingIntent.getIntExtra(IntentExtraKeys.MOVIE_ID, -1);
 
                 if (movieId != -1) {
-                    getMovieInfo(movieId);
+                    showCachedMovie(movieId);
                 }
             }
         }
     }
 
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mState;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        // A configuration change hands the request to the next activity. Otherwise results
+        // should only reach a screen that's still around.
+        if (isChangingConfigurations()) {
+            mState.setListener(null);
+        } else {
+            mState.cancel();
+        }
+
+        Picasso.with(mPoster.getContext()).cancelRequest(mPoster);
+        releasePosters();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
@@ -90,89 +177,275 @@ public class MovieDetailActivity extends AppCompatActivity {
     }
 
     /**
-     * Executes an asynchronous request for movie details data.
-     * @param movieId The TMDb movie ID to request.
+     * Shows whatever the repository already knows about the movie, and only requests the movie
+     * details if they haven't been fetched or prefetched before with this screen's sections. On a
+     * miss, the local store is read while the details are requested.
+     * @param movieId The TMDb movie ID to show.
      */
-    private void getMovieInfo(int movieId) {
-        new FetchMovieListTask().execute(movieId);
+    private void showCachedMovie(int movieId) {
+        MovieRepository repository = MovieRepository.getInstance();
+
+        // Prefetched details were speculative until now, so only now are they kept for good.
+        TMDbMovie prefetched = DetailPrefetcher.takePrefetchedDetails(movieId);
+        if (prefetched != null) {
+            repository.putMovieDetails(prefetched);
+            MovieStore.getInstance(this).putMovieDetailsAsync(prefetched);
+
+            mState.onFreshDetailsShown();
+            showMovie(prefetched, true);
+            reportTapLatency(Metrics.DETAILS_FROM_PREFETCH);
+            return;
+        }
+
+        TMDbMovie movieDetails = repository.getMovieDetails(movieId, DETAIL_SECTIONS);
+
+        if (movieDetails != null) {
+            showMovie(movieDetails, true);
+            reportTapLatency(Metrics.DETAILS_FROM_MEMORY);
+            return;
+        }
+
+        // List-level data covers everything but the runtime, so paint that while details load.
+        TMDbMovie movie = repository.getMovie(movieId);
+        if (movie != null) {
+            showMovie(movie, false);
+        }
+
+        MovieStore.getInstance(this).loadMovie(movieId,
+                new MovieStore.Callback<MovieStore.StoredMovie>() {
+                    @Override
+                    public void onLoaded(MovieStore.StoredMovie storedMovie) {
+                        if (storedMovie == null || mState.isShowingFreshDetails()
+                                || isDestroyed()) {
+                            return;
+                        }
+
+                        if (storedMovie.hasDetails) {
+                            MovieRepository.getInstance().putMovieDetails(storedMovie.movie);
+                        }
+                        mLoadingIndicator.setVisibility(View.INVISIBLE);
+                        showMovie(storedMovie.movie, storedMovie.hasDetails);
+                        if (storedMovie.hasDetails) {
+                            reportTapLatency(Metrics.DETAILS_FROM_STORE);
+                        }
+                    }
+                });
+
+        getMovieInfo(movieId);
     }
 
     /**
-     * Shows the movie list and hides and error message text view.
+     * Fills the views with the given movie.
+     * @param movie The movie to show.
+     * @param hasDetails Whether the movie came from a details response and includes the runtime.
+     * The optional sections are shown when the movie carries them, whatever this says.
      */
-    private void showMovieDetails() {
-        mErrorMessageDisplay.setVisibility(View.INVISIBLE);
-        mMovieDetails.setVisibility(View.VISIBLE);
+    private void showMovie(TMDbMovie movie, boolean hasDetails) {
+        mShowingMovie = true;
+        mState.onShown(movie, hasDetails);
+
+        if (!movie.posterPath.equals(mLoadedPosterPath)) {
+            mLoadedPosterPath = movie.posterPath;
+            loadPoster(movie);
+        }
+
+        // Year needs to be extracted from the string.
+        String year = movie.releaseDate.split("-")[0];
+        mReleaseYear.setText(year);
+
+        // Append "min" to runtime
+        if (hasDetails) {
+            String runtime = Integer.toString(movie.runtime) + "min";
+            mRuntime.setText(runtime);
+        }
+
+        // Add denominator for voteAverage
+        String voteAverage = Double.toString(movie.voteAverage) + "/10";
+        mVoteAverage.setText(voteAverage);
+
+        // Title and overview are fine by themselves
+        mTitle.setText(movie.title);
+        mOverview.setText(movie.getOverview());
+
+        if (movie.hasSections(DetailSection.RELEASE_DATES.bit())) {
+            showOptionalText(mCertification,
+                    movie.getCertification(Locale.getDefault().getCountry()));
+        }
+        if (movie.hasSections(DetailSection.CREDITS.bit())) {
+            showOptionalText(mCast, castText(movie.getCast()));
+        }
+
+        showMovieDetails();
     }
 
     /**
-     * Shows the error message text view and hides the movie list.
+     * Shows text in a view that's hidden while there's nothing to show.
      */
-    private void showErrorMessage() {
-        mErrorMessageDisplay.setVisibility(View.VISIBLE);
-        mMovieDetails.setVisibility(View.INVISIBLE);
+    private static void showOptionalText(TextView view, String text) {
+        view.setText(text);
+        view.setVisibility(text.isEmpty() ? View.GONE : View.VISIBLE);
     }
 
-    private class FetchMovieListTask extends AsyncTask<Integer, Void, TMDbMovie> {
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
+    /**
+     * Builds the line naming the top-billed cast members, or "" if there are none.
+     */
+    private String castText(TMDbMovie.CastMember[] cast) {
+        if (cast.length == 0) {
+            return "";
+        }
 
-            mLoadingIndicator.setVisibility(View.VISIBLE);
+        String[] names = new String[Math.min(cast.length, CAST_SHOWN)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = cast[i].name;
         }
+        return getString(R.string.details_cast, TextUtils.join(", ", Arrays.asList(names)));
+    }
 
-        @Override
-        protected TMDbMovie doInBackground(Integer... movieIds) {
-            // Only one sort criterion is expected, but if none are passed, return null.
-            if (movieIds.length == 0) {
-                return null;
+    /**
+     * Loads the poster at the size that fits the poster view. When the grid's smaller poster is
+     * known, it's shown first from Picasso's memory cache and then swapped for the larger one.
+     * @param movie The movie whose poster to load.
+     */
+    private void loadPoster(TMDbMovie movie) {
+        final Picasso picasso = Picasso.with(mPoster.getContext());
+        final Uri posterUri = movie.getPosterUri(mPosterSize);
+
+        // The request replaces whatever's shown, so release it once the request is on its way.
+        Bitmap previousPlaceholder = mPlaceholderBitmap;
+        Bitmap previousPoster = mPosterBitmap;
+        mPlaceholderBitmap = null;
+        mPosterBitmap = null;
+
+        final Callback posterCallback = new Callback() {
+            @Override
+            public void onSuccess() {
+                mPosterBitmap = ImagePipeline.getInstance().acquire(mPoster);
+
+                ImagePipeline.getInstance().release(mPlaceholderBitmap);
+                mPlaceholderBitmap = null;
             }
 
-            int movieId = movieIds[0];
-            String apiKey = getString(R.string.the_movie_db_api_key);
-            URL url = NetworkUtils.buildMovieDetailsUrl(movieId, apiKey);
+            @Override
+            public void onError() {
+                // Picasso leaves the placeholder up, so it stays acquired.
+            }
+        };
+
+        if (mPlaceholderPosterSize == null
+                || mPlaceholderPosterSize.getWidth() >= mPosterSize.getWidth()) {
+            picasso.load(posterUri).into(mPoster, posterCallback);
+        } else {
+            Uri placeholderUri = movie.getPosterUri(mPlaceholderPosterSize);
+            picasso.load(placeholderUri).into(mPoster, new Callback() {
+                @Override
+                public void onSuccess() {
+                    mPlaceholderBitmap = ImagePipeline.getInstance().acquire(mPoster);
+
+                    // Keep the low-res poster up until the high-res one is decoded.
+                    picasso.load(posterUri).placeholder(mPoster.getDrawable()).noFade()
+                            .into(mPoster, posterCallback);
+                }
 
-            TMDbMovie movie = null;
+                @Override
+                public void onError() {
+                    picasso.load(posterUri).into(mPoster, posterCallback);
+                }
+            });
+        }
 
-            try {
-                String response = NetworkUtils.getResponseFromUrl(url);
-                movie = TMDbUtils.parseMovieDetailsResponse(response);
-            } catch (IOException | JSONException | TMDbException e) {
-                e.printStackTrace();
-            }
+        ImagePipeline.getInstance().release(previousPlaceholder);
+        ImagePipeline.getInstance().release(previousPoster);
+    }
 
-            return movie;
+    /**
+     * Hands the posters this screen shows back to the image pipeline, for reuse once they're out
+     * of its cache.
+     */
+    private void releasePosters() {
+        ImagePipeline.getInstance().release(mPlaceholderBitmap);
+        ImagePipeline.getInstance().release(mPosterBitmap);
+        mPlaceholderBitmap = null;
+        mPosterBitmap = null;
+    }
+
+    /**
+     * Executes an asynchronous request for movie details data, with every section this screen
+     * shows bundled into the one request.
+     * @param movieId The TMDb movie ID to request.
+     */
+    private void getMovieInfo(int movieId) {
+        if (!mShowingMovie) {
+            mLoadingIndicator.setVisibility(View.VISIBLE);
         }
 
-        @Override
-        protected void onPostExecute(TMDbMovie movie) {
-            mLoadingIndicator.setVisibility(View.INVISIBLE);
+        String apiKey = getString(R.string.the_movie_db_api_key);
+        mState.fetchDetails(NetworkUtils.buildMovieDetailsUrl(movieId, DETAIL_SECTIONS, apiKey));
+    }
 
-            if (movie != null) {
-                // Use Picasso to load the poster image.
-                Uri posterUri = NetworkUtils.buildPosterUri(movie.posterPath);
-                Picasso.with(mPoster.getContext()).load(posterUri).into(mPoster);
+    @Override
+    public void onDetailsLoaded(TMDbMovie movie) {
+        mLoadingIndicator.setVisibility(View.INVISIBLE);
+        showMovie(movie, true);
+        reportTapLatency(Metrics.DETAILS_FROM_NETWORK);
+    }
 
-                // Year needs to be extracted from the string.
-                String year = movie.releaseDate.split("-")[0];
-                mReleaseYear.setText(year);
+    @Override
+    public void onDetailsFailed() {
+        mLoadingIndicator.setVisibility(View.INVISIBLE);
 
-                // Append "min" to runtime
-                String runtime = Integer.toString(movie.runtime) + "min";
-                mRuntime.setText(runtime);
+        // Keep the list-level data on screen if it's there, rather than an error.
+        if (!mShowingMovie) {
+            showErrorMessage();
+        }
+    }
 
-                // Add denominator for voteAverage
-                String voteAverage = Double.toString(movie.voteAverage) + "/10";
-                mVoteAverage.setText(voteAverage);
+    /**
+     * Shows the movie handed over from the previous activity as that activity left it: the
+     * movie if there was one, and otherwise the loading indicator or the error.
+     */
+    private void showRetainedMovie() {
+        if (mState.getMovie() != null) {
+            showMovie(mState.getMovie(), mState.hasDetails());
+        } else if (mState.isLoading()) {
+            mLoadingIndicator.setVisibility(View.VISIBLE);
+        } else if (mState.hasFailed()) {
+            showErrorMessage();
+        }
+    }
 
-                // Title and overview are fine by themselves
-                mTitle.setText(movie.title);
-                mOverview.setText(movie.overview);
+    /**
+     * Records, once per tap, how long it took from the tap in the grid until the movie's details
+     * were on screen, and where they came from. Debug builds also log it.
+     * @param source Counter for where the details came from.
+     */
+    private void reportTapLatency(Counter source) {
+        if (mTapUptimeMillis == -1) {
+            return;
+        }
 
-                showMovieDetails();
-            } else {
-                showErrorMessage();
-            }
+        long latencyMillis = SystemClock.uptimeMillis() - mTapUptimeMillis;
+        Metrics.DETAILS_TAP_TO_CONTENT.record(latencyMillis * 1000000);
+        source.increment();
+
+        if (BuildConfig.DEBUG) {
+            Log.i(TAG, "Tap to details: " + latencyMillis + "ms, " + source.getName());
         }
+        mTapUptimeMillis = -1;
+    }
+
+    /**
+     * Shows the movie list and hides and error message text view.
+     */
+    private void showMovieDetails() {
+        mErrorMessageDisplay.setVisibility(View.INVISIBLE);
+        mMovieDetails.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Shows the error message text view and hides the movie list.
+     */
+    private void showErrorMessage() {
+        mErrorMessageDisplay.setVisibility(View.VISIBLE);
+        mMovieDetails.setVisibility(View.INVISIBLE);
     }
 }
@@ -0,0 +1,147 @@
+package io.chung.popularmovies;
+
+import android.content.Context;
+
+import java.net.URL;
+
+import io.chung.popularmovies.data.MovieRepository;
+import io.chung.popularmovies.data.MovieStore;
+import io.chung.popularmovies.search.MovieSearch;
+import io.chung.popularmovies.utilities.RequestQueue;
+import io.chung.popularmovies.utilities.TMDbUtils;
+
+/**
+ * What MovieDetailActivity has loaded for its movie, kept apart from the activity so it outlives a
+ * configuration change: the movie on screen, and the details request while it's in flight. A
+ * rotation hands this to the new activity, which shows the movie as it is, without a request or
+ * a parse, and gets the details from the request it joins.
+ *
+ * Nothing is saved for process death: the movie ID is in the intent, and details that were
+ * fetched are in the local store. All methods must be called on the main thread.
+ */
+final class MovieDetailState implements RequestQueue.Callback<TMDbMovie> {
+
+    /**
+     * Receives the outcome of the details request.
+     */
+    interface Listener {
+        void onDetailsLoaded(TMDbMovie movie);
+
+        void onDetailsFailed();
+    }
+
+    private final Context mContext;
+
+    /* The attached activity, or null between one activity and the next. */
+    private Listener mListener;
+
+    /* The movie on screen, or null, and whether it came from a details response. */
+    private TMDbMovie mMovie;
+    private boolean mHasDetails;
+
+    /* Whether the movie details from TMDb are on screen, which stored data mustn't replace. */
+    private boolean mShowingFreshDetails;
+
+    /* The details request in flight, if any, and whether the last one failed. */
+    private RequestQueue.Request<TMDbMovie> mRequest;
+    private boolean mFailed;
+
+    MovieDetailState(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Passes the details request's outcome on to an activity from now on.
+     * @param listener The activity, or null when it goes away.
+     */
+    void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return The movie on screen, or null if there's none yet.
+     */
+    TMDbMovie getMovie() {
+        return mMovie;
+    }
+
+    boolean hasDetails() {
+        return mHasDetails;
+    }
+
+    boolean isShowingFreshDetails() {
+        return mShowingFreshDetails;
+    }
+
+    boolean isLoading() {
+        return mRequest != null;
+    }
+
+    boolean hasFailed() {
+        return mFailed;
+    }
+
+    /**
+     * Records the movie the activity put on screen.
+     * @param hasDetails Whether the movie came from a details response.
+     */
+    void onShown(TMDbMovie movie, boolean hasDetails) {
+        mMovie = movie;
+        mHasDetails = hasDetails;
+    }
+
+    /**
+     * Records that the movie on screen has fresh details from TMDb, as from a prefetch.
+     */
+    void onFreshDetailsShown() {
+        mShowingFreshDetails = true;
+    }
+
+    /**
+     * Requests the movie details. The response is kept everywhere details are read from, and
+     * then passed to the listener.
+     * @param url The details URL, with the sections the screen shows.
+     */
+    void fetchDetails(URL url) {
+        mFailed = false;
+        mRequest = RequestQueue.getInstance().fetch(url, TMDbUtils.MOVIE_DETAILS_HANDLER, this);
+    }
+
+    /**
+     * Cancels the details request, once no activity will show this state again.
+     */
+    void cancel() {
+        mListener = null;
+        if (mRequest != null) {
+            mRequest.cancel();
+            mRequest = null;
+        }
+    }
+
+    @Override
+    public void onResponse(TMDbMovie movie) {
+        mRequest = null;
+
+        MovieRepository.getInstance().putMovieDetails(movie);
+        MovieStore.getInstance(mContext).putMovieDetailsAsync(movie);
+        MovieSearch.getInstance().indexMovieDetails(movie);
+
+        // Kept as shown even with no activity attached; the next one shows it.
+        mShowingFreshDetails = true;
+        onShown(movie, true);
+        if (mListener != null) {
+            mListener.onDetailsLoaded(movie);
+        }
+    }
+
+    @Override
+    public void onFailure(Exception e) {
+        e.printStackTrace();
+        mRequest = null;
+        mFailed = true;
+
+        if (mListener != null) {
+            mListener.onDetailsFailed();
+        }
+    }
+}
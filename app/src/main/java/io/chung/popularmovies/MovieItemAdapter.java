@@ -1,25 +1,56 @@
 package io.chung.popularmovies;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.ColorDrawable;
 import android.net.Uri;
+import android.os.Trace;
+import android.support.annotation.VisibleForTesting;
+import android.support.v4.content.ContextCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import io.chung.popularmovies.image.ImagePipeline;
+import io.chung.popularmovies.metrics.Metrics;
 import io.chung.popularmovies.utilities.NetworkUtils;
 
 public class MovieItemAdapter extends RecyclerView.Adapter<MovieItemAdapter.PosterViewHolder> {
 
     private static final String TAG = MovieItemAdapter.class.getSimpleName();
 
+    /* Per-bind logging. A constant, so the log calls are compiled out unless it's turned on. */
+    private static final boolean LOG_BINDS = false;
+
     private final ListItemClickHandler mClickHandler;
 
-    private TMDbMovie[] mMovieList;
+    private final MovieSource mMovies;
+
+    /* Smallest poster size that covers a grid cell. */
+    private final NetworkUtils.PosterSize mPosterSize;
+
+    /* Optional monitor told when each cell's poster is requested and shown. */
+    private ScrollPerformanceMonitor mPerformanceMonitor;
+
+    /* Optional prefetcher told when a poster is pressed, ahead of the click. */
+    private DetailPrefetcher mDetailPrefetcher;
+
+    /* Optional listener told once, when the first poster has loaded into a cell. */
+    private FirstPosterListener mFirstPosterListener;
+
+    /* Every cell created, including those in the recycled view pool, so their posters can all
+       be released when the grid goes away. */
+    private final List<PosterViewHolder> mViewHolders = new ArrayList<>();
 
     /**
      * Interface that receives onClick messages.
@@ -28,13 +59,49 @@ public class MovieItemAdapter extends RecyclerView.Adapter<MovieItemAdapter.Post
         void onListItemClick(TMDbMovie movie);
     }
 
+    /**
+     * Interface that's told when the first poster is on screen.
+     */
+    public interface FirstPosterListener {
+        void onFirstPosterShown();
+    }
+
     /**
      * Creates a MovieItemAdapter.
      * @param clickHandler The on-click handler for this adapter.
      *                     This single handler is called when an item is clicked.
+     * @param movies Supplies the movies by position.
+     * @param posterSize Poster size to request for the grid cells.
      */
-    public MovieItemAdapter(ListItemClickHandler clickHandler) {
+    public MovieItemAdapter(ListItemClickHandler clickHandler, MovieSource movies,
+                            NetworkUtils.PosterSize posterSize) {
         mClickHandler = clickHandler;
+        mMovies = movies;
+        mPosterSize = posterSize;
+    }
+
+    /**
+     * Reports poster bind and ready times to a monitor, for measuring scroll performance.
+     * @param performanceMonitor The monitor, or null to stop reporting.
+     */
+    public void setPerformanceMonitor(ScrollPerformanceMonitor performanceMonitor) {
+        mPerformanceMonitor = performanceMonitor;
+    }
+
+    /**
+     * Has a prefetcher start on a movie's details as soon as its poster is pressed.
+     * @param detailPrefetcher The prefetcher, or null to stop prefetching on press.
+     */
+    public void setDetailPrefetcher(DetailPrefetcher detailPrefetcher) {
+        mDetailPrefetcher = detailPrefetcher;
+    }
+
+    /**
+     * Tells a listener the next time a poster finishes loading into a cell, and only then.
+     * @param firstPosterListener The listener, or null to stop listening.
+     */
+    public void setFirstPosterListener(FirstPosterListener firstPosterListener) {
+        mFirstPosterListener = firstPosterListener;
     }
 
     @Override
@@ -45,50 +112,199 @@ public class MovieItemAdapter extends RecyclerView.Adapter<MovieItemAdapter.Post
 
         View view = inflater.inflate(layoutIdForListItem, parent, false);
 
-        return new PosterViewHolder(view);
+        PosterViewHolder holder = new PosterViewHolder(view,
+                ContextCompat.getColor(context, R.color.posterPlaceholder));
+        mViewHolders.add(holder);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(PosterViewHolder holder, int position) {
-        String posterPath = mMovieList[position].posterPath;
-        Uri posterUri = NetworkUtils.buildPosterUri(posterPath);
+        long startNanos = System.nanoTime();
+        Trace.beginSection("Bind poster cell");
+        try {
+            bindPoster(holder, position);
+        } finally {
+            Trace.endSection();
+            Metrics.GRID_BIND.record(System.nanoTime() - startNanos);
+        }
+    }
 
-        Context context = holder.mMoviePoster.getContext();
-        Picasso.with(context).load(posterUri).into(holder.mMoviePoster);
+    private void bindPoster(PosterViewHolder holder, int position) {
+        TMDbMovie movie = mMovies.getMovie(position);
+
+        // The movie's page was evicted and is being reloaded, so show an empty cell until then.
+        if (movie == null) {
+            holder.clearPoster();
+            return;
+        }
 
-        Log.d(TAG, "Binding image URI: " + posterUri.toString());
+        Uri posterUri = movie.getPosterUri(mPosterSize);
+
+        if (mPerformanceMonitor != null) {
+            mPerformanceMonitor.onPosterBound(position);
+        }
+
+        // Rebinding a cell to the poster it's already showing, as happens when scrolling back
+        // over it, needs no new request and allocates nothing.
+        if (holder.isShowingPoster(posterUri)) {
+            Metrics.GRID_POSTER_REUSED.increment();
+            if (mPerformanceMonitor != null) {
+                mPerformanceMonitor.onPosterReady(position);
+            }
+        } else {
+            Metrics.GRID_POSTER_REQUESTED.increment();
+            holder.loadPoster(posterUri, movie.posterPath, position);
+        }
+
+        if (LOG_BINDS) {
+            Log.d(TAG, "Binding image URI: " + posterUri);
+        }
     }
 
     @Override
     public int getItemCount() {
-        if (mMovieList != null) {
-            return mMovieList.length;
-        } else {
-            return 0;
+        return mMovies.getItemCount();
+    }
+
+    /**
+     * Cancels every cell's poster request and hands the posters they show back to the image
+     * pipeline, for reuse once they're out of its cache. Called when the grid is torn down.
+     */
+    public void releasePosters() {
+        for (PosterViewHolder holder : mViewHolders) {
+            holder.clearPoster();
         }
     }
 
     public class PosterViewHolder extends RecyclerView.ViewHolder implements
-            View.OnClickListener {
+            View.OnClickListener, View.OnTouchListener, Callback {
         public final ImageView mMoviePoster;
 
-        public PosterViewHolder(View itemView) {
+        /* Poster last requested for this cell, and the poster it shows once that's loaded. */
+        private Uri mRequestedPosterUri;
+        private Uri mShownPosterUri;
+
+        /* Position the poster was requested for, to report to the performance monitor. */
+        private int mRequestedPosition;
+
+        /* When the poster was requested, for measuring how long it took to show. */
+        private long mRequestedAtNanos;
+
+        /* Bitmap this cell acquired from the image pipeline and shows, if any. */
+        private Bitmap mShownBitmap;
+
+        /* Shown while the poster loads, in its placeholder color once that's known. */
+        private final ColorDrawable mPlaceholder = new ColorDrawable();
+        private final int mDefaultPlaceholderColor;
+
+        public PosterViewHolder(View itemView, int defaultPlaceholderColor) {
             super(itemView);
             mMoviePoster = (ImageView) itemView.findViewById(R.id.iv_movie_poster);
+            mDefaultPlaceholderColor = defaultPlaceholderColor;
             itemView.setOnClickListener(this);
+            itemView.setOnTouchListener(this);
+        }
+
+        /**
+         * Whether this cell has finished loading the given poster and is still showing it.
+         */
+        boolean isShowingPoster(Uri posterUri) {
+            return posterUri.equals(mShownPosterUri);
+        }
+
+        @VisibleForTesting
+        boolean isPosterLoaded() {
+            return mShownPosterUri != null;
+        }
+
+        /**
+         * Starts loading a poster into this cell, showing its placeholder color until it's loaded.
+         * The holder is its own Picasso callback and reuses its placeholder, so nothing is
+         * allocated per bind.
+         */
+        private void loadPoster(Uri posterUri, String posterPath, int position) {
+            ImagePipeline pipeline = ImagePipeline.getInstance();
+            mPlaceholder.setColor(
+                    pipeline.getPlaceholderColor(posterPath, mDefaultPlaceholderColor));
+
+            mRequestedPosterUri = posterUri;
+            mShownPosterUri = null;
+            mRequestedPosition = position;
+            mRequestedAtNanos = System.nanoTime();
+
+            // Grid cells are small enough that RGB_565 looks the same, at half the memory. The
+            // old poster is released once the view no longer shows it, and a cached poster
+            // calls back before into() returns.
+            Bitmap previousBitmap = mShownBitmap;
+            mShownBitmap = null;
+            Picasso.with(mMoviePoster.getContext())
+                    .load(posterUri)
+                    .config(ImagePipeline.GRID_CONFIG)
+                    .placeholder(mPlaceholder)
+                    .into(mMoviePoster, this);
+            pipeline.release(previousBitmap);
+        }
+
+        private void clearPoster() {
+            Picasso.with(mMoviePoster.getContext()).cancelRequest(mMoviePoster);
+            mPlaceholder.setColor(mDefaultPlaceholderColor);
+            mMoviePoster.setImageDrawable(mPlaceholder);
+            mRequestedPosterUri = null;
+            mShownPosterUri = null;
+
+            ImagePipeline.getInstance().release(mShownBitmap);
+            mShownBitmap = null;
+        }
+
+        @Override
+        public void onSuccess() {
+            mShownPosterUri = mRequestedPosterUri;
+            mShownBitmap = ImagePipeline.getInstance().acquire(mMoviePoster);
+            Metrics.GRID_IMAGE_READY.record(System.nanoTime() - mRequestedAtNanos);
+
+            if (mPerformanceMonitor != null) {
+                mPerformanceMonitor.onPosterReady(mRequestedPosition);
+            }
+
+            if (mFirstPosterListener != null) {
+                FirstPosterListener listener = mFirstPosterListener;
+                mFirstPosterListener = null;
+                listener.onFirstPosterShown();
+            }
+        }
+
+        @Override
+        public void onError() {
+        }
+
+        @Override
+        public boolean onTouch(View view, MotionEvent event) {
+            // A press comes a hundred milliseconds or more before the click, so start on the
+            // details now. The event is left for the click and scroll handling.
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN && mDetailPrefetcher != null) {
+                int position = getAdapterPosition();
+                TMDbMovie movie = position != RecyclerView.NO_POSITION
+                        ? mMovies.peekMovie(position) : null;
+
+                if (movie != null) {
+                    mDetailPrefetcher.onPressed(movie);
+                }
+            }
+            return false;
         }
 
         @Override
         public void onClick(View view) {
             int position = getAdapterPosition();
-            TMDbMovie movie = mMovieList[position];
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
 
-            mClickHandler.onListItemClick(movie);
+            TMDbMovie movie = mMovies.getMovie(position);
+            if (movie != null) {
+                mClickHandler.onListItemClick(movie);
+            }
         }
     }
-
-    public void setMovieData(TMDbMovie[] movies) {
-        mMovieList = movies;
-        notifyDataSetChanged();
-    }
 }
@@ -0,0 +1,177 @@
+package io.chung.popularmovies;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v7.util.DiffUtil;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Diffs two snapshots of a movie list on a background thread, and hands the result back on the
+ * main thread. Movies are matched by TMDb ID.
+ *
+ * Snapshots are arrays that mustn't be modified once passed in. They may hold nulls, for
+ * positions whose page isn't resident; a null only matches another null.
+ */
+final class MovieListDiffer {
+
+    /* One thread, so diffs run in the order they were started. */
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "MovieListDiffer");
+                }
+            });
+
+    private static final Executor sMainThread = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            MainHandlerHolder.HANDLER.post(runnable);
+        }
+    };
+
+    /* Only created once a diff is delivered, so tests can diff without a main looper. */
+    private static final class MainHandlerHolder {
+        static final Handler HANDLER = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Receives a finished diff on the main thread. Never called for a cancelled diff.
+     */
+    interface Callback {
+        void onDiffed(DiffUtil.DiffResult result);
+    }
+
+    /**
+     * A diff that's queued or running.
+     */
+    static final class Diff {
+        private volatile boolean mCancelled;
+
+        /**
+         * Stops the diff, even partway through, and drops its result. Must be called on the
+         * main thread to be sure the callback isn't called afterwards.
+         */
+        void cancel() {
+            mCancelled = true;
+        }
+
+        boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private MovieListDiffer() {
+    }
+
+    /**
+     * Starts diffing two snapshots.
+     * @param oldMovies The snapshot on screen.
+     * @param newMovies The snapshot to replace it with.
+     * @param callback Receives the result on the main thread, unless the diff is cancelled.
+     * @return The diff, to cancel it if it's superseded.
+     */
+    static Diff diff(TMDbMovie[] oldMovies, TMDbMovie[] newMovies, Callback callback) {
+        return diff(oldMovies, newMovies, callback, sExecutor, sMainThread);
+    }
+
+    /**
+     * Starts diffing two snapshots on the given threads.
+     * @param oldMovies The snapshot on screen.
+     * @param newMovies The snapshot to replace it with.
+     * @param callback Receives the result through mainThread, unless the diff is cancelled.
+     * @param background Runs the diff.
+     * @param mainThread Delivers the result.
+     * @return The diff, to cancel it if it's superseded.
+     */
+    static Diff diff(final TMDbMovie[] oldMovies, final TMDbMovie[] newMovies,
+                     final Callback callback, Executor background, final Executor mainThread) {
+        final Diff diff = new Diff();
+
+        background.execute(new Runnable() {
+            @Override
+            public void run() {
+                final DiffUtil.DiffResult result;
+                try {
+                    result = DiffUtil.calculateDiff(
+                            new SnapshotCallback(oldMovies, newMovies, diff), true);
+                } catch (CancellationException e) {
+                    return;
+                }
+
+                mainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!diff.isCancelled()) {
+                            callback.onDiffed(result);
+                        }
+                    }
+                });
+            }
+        });
+
+        return diff;
+    }
+
+    private static final class SnapshotCallback extends DiffUtil.Callback {
+        private final TMDbMovie[] mOldMovies;
+        private final TMDbMovie[] mNewMovies;
+        private final Diff mDiff;
+
+        SnapshotCallback(TMDbMovie[] oldMovies, TMDbMovie[] newMovies, Diff diff) {
+            mOldMovies = oldMovies;
+            mNewMovies = newMovies;
+            mDiff = diff;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldMovies.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewMovies.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            // DiffUtil can't be interrupted, but this is called throughout, so bail out here.
+            if (mDiff.isCancelled()) {
+                throw new CancellationException();
+            }
+
+            TMDbMovie oldMovie = mOldMovies[oldItemPosition];
+            TMDbMovie newMovie = mNewMovies[newItemPosition];
+
+            if (oldMovie == null || newMovie == null) {
+                return oldMovie == newMovie;
+            }
+            return oldMovie.id == newMovie.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            TMDbMovie oldMovie = mOldMovies[oldItemPosition];
+            TMDbMovie newMovie = mNewMovies[newItemPosition];
+
+            // The grid cell only shows the poster, so other changes don't need a rebind.
+            if (oldMovie == null || newMovie == null) {
+                return oldMovie == newMovie;
+            }
+            return oldMovie.posterPath.equals(newMovie.posterPath);
+        }
+    }
+}
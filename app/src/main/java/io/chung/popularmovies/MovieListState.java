@@ -0,0 +1,180 @@
+package io.chung.popularmovies;
+
+import android.os.Bundle;
+
+import io.chung.popularmovies.data.ListSnapshot;
+import io.chung.popularmovies.data.MovieStore;
+import io.chung.popularmovies.query.MovieCatalog;
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+/**
+ * Everything MainActivity has loaded and asked for, kept apart from the activity so it outlives a
+ * configuration change: the pager, with its parsed pages and the page requests still in flight,
+ * and the local filter and order over them. A rotation hands this to the new activity, which
+ * shows the movies as they are, without a request or a parse.
+ *
+ * The pager reports to this, and this passes its updates on to whichever activity is attached.
+ * An update while none is attached only refreshes the local query, since an activity that
+ * attaches reads the list afresh. For process death, the list, filter and order are saved to
+ * the activity's state, and the movies are then read back from the local store.
+ */
+final class MovieListState implements MoviePager.Listener {
+
+    private static final String KEY_SORT_CRITERIA = "movie_list.sort_criteria";
+    private static final String KEY_GENRE_IDS = "movie_list.genre_ids";
+    private static final String KEY_SORT_KEY = "movie_list.sort_key";
+
+    private final MoviePager mPager;
+    private final LocalMovieQuery mLocalQuery;
+
+    /* The attached activity, or null between one activity and the next. */
+    private MoviePager.Listener mListener;
+
+    /* Whether the list is being switched and the new list's first page isn't in yet. */
+    private boolean mLoading;
+
+    /**
+     * Creates the state with an empty pager; see {@link MoviePager} for the arguments.
+     */
+    MovieListState(String apiKey, MovieStore store, ListSnapshot snapshot) {
+        mPager = new MoviePager(apiKey, store, snapshot, this);
+        mLocalQuery = new LocalMovieQuery(mPager);
+    }
+
+    MoviePager getPager() {
+        return mPager;
+    }
+
+    LocalMovieQuery getLocalQuery() {
+        return mLocalQuery;
+    }
+
+    /**
+     * @return The list being shown, or the one being switched to.
+     */
+    NetworkUtils.SortCriteria getSortCriteria() {
+        return mPager.getSortCriteria();
+    }
+
+    boolean isLoading() {
+        return mLoading;
+    }
+
+    /**
+     * Passes the pager's updates on to an activity from now on.
+     * @param listener The activity, or null when it goes away.
+     */
+    void setListener(MoviePager.Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Switches the pager to the given list.
+     */
+    void load(NetworkUtils.SortCriteria sortCriteria) {
+        mLoading = true;
+        mPager.reset(sortCriteria);
+    }
+
+    /**
+     * Cancels everything in flight, once no activity will show this state again.
+     */
+    void cancel() {
+        mListener = null;
+        mPager.cancel();
+    }
+
+    /**
+     * Saves which list is shown and how it's filtered and ordered. The movies aren't saved; the
+     * local store has them.
+     */
+    void saveInstanceState(Bundle outState) {
+        if (getSortCriteria() != null) {
+            outState.putString(KEY_SORT_CRITERIA, getSortCriteria().name());
+        }
+        outState.putIntArray(KEY_GENRE_IDS, mLocalQuery.getGenreIds());
+        if (mLocalQuery.getSortKey() != null) {
+            outState.putString(KEY_SORT_KEY, mLocalQuery.getSortKey().name());
+        }
+    }
+
+    /**
+     * Loads the list saved by {@link #saveInstanceState(Bundle)}, filtered and ordered as it was.
+     * @param savedState The saved state.
+     * @param defaultSortCriteria List to load if none was saved.
+     */
+    void restoreInstanceState(Bundle savedState, NetworkUtils.SortCriteria defaultSortCriteria) {
+        String sortCriteria = savedState.getString(KEY_SORT_CRITERIA);
+        load(sortCriteria != null
+                ? NetworkUtils.SortCriteria.valueOf(sortCriteria)
+                : defaultSortCriteria);
+
+        // Nothing is loaded yet, so these only take effect as the movies come in.
+        int[] genreIds = savedState.getIntArray(KEY_GENRE_IDS);
+        if (genreIds != null && genreIds.length > 0) {
+            mLocalQuery.setGenreIds(genreIds);
+        }
+        String sortKey = savedState.getString(KEY_SORT_KEY);
+        if (sortKey != null) {
+            mLocalQuery.setSortKey(MovieCatalog.SortKey.valueOf(sortKey));
+        }
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        if (positionStart == 0) {
+            mLoading = false;
+        }
+        if (mListener != null) {
+            mListener.onItemRangeInserted(positionStart, itemCount);
+        } else {
+            // Keep the local query in step with the pager, as the activity would.
+            mLocalQuery.onMoviesInserted(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        if (mListener != null) {
+            mListener.onItemRangeChanged(positionStart, itemCount);
+        } else {
+            mLocalQuery.onMoviesChanged(positionStart, itemCount);
+        }
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        if (mListener != null) {
+            mListener.onItemRangeRemoved(positionStart, itemCount);
+        } else {
+            mLocalQuery.onMoviesRearranged();
+        }
+    }
+
+    @Override
+    public void onItemMoved(int fromPosition, int toPosition) {
+        if (mListener != null) {
+            mListener.onItemMoved(fromPosition, toPosition);
+        } else {
+            mLocalQuery.onMoviesRearranged();
+        }
+    }
+
+    @Override
+    public void onListReplaced(int itemCount) {
+        mLoading = false;
+        if (mListener != null) {
+            mListener.onListReplaced(itemCount);
+        }
+    }
+
+    @Override
+    public void onPageLoadFailed(int page) {
+        if (page == 1) {
+            mLoading = false;
+        }
+        if (mListener != null) {
+            mListener.onPageLoadFailed(page);
+        }
+    }
+}
@@ -0,0 +1,825 @@
+package io.chung.popularmovies;
+
+import android.os.SystemClock;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.net.URL;
+import java.util.EnumMap;
+
+import io.chung.popularmovies.data.ListSnapshot;
+import io.chung.popularmovies.data.MovieRepository;
+import io.chung.popularmovies.data.MovieStore;
+import io.chung.popularmovies.metrics.Metrics;
+import io.chung.popularmovies.search.MovieSearch;
+import io.chung.popularmovies.utilities.NetworkQualityEstimator;
+import io.chung.popularmovies.utilities.NetworkUtils;
+import io.chung.popularmovies.utilities.RequestQueue;
+import io.chung.popularmovies.utilities.RequestScheduler;
+import io.chung.popularmovies.utilities.TMDbUtils;
+
+/**
+ * Loads a movie list one TMDb page at a time as the user scrolls.
+ *
+ * Whatever the local store has for the list is shown first, while the first page is requested
+ * from TMDb. Stored pages are marked stale and replaced as fresh pages arrive, and every page
+ * loaded from TMDb is written back to the store. On the first start after the process starts,
+ * the first page can already be in memory from {@link StartupLoader}: either fresh, or the
+ * last-known one from the list snapshot, which is then treated like a stored page.
+ *
+ * Positions are stable: once a page has been loaded, its positions stay in the list even if the
+ * page is later evicted to bound memory. Evicted positions read as null and their page is loaded
+ * again when the viewport comes back to them. All methods must be called on the main thread.
+ *
+ * Replacing what's on screen goes through a diff keyed on movie ID, computed off the main
+ * thread: switching lists keeps the previous list up until the new one can be diffed against
+ * it, and a refreshed page is diffed against the page it replaces. Movies in both only move or
+ * stay put, so their cells keep their posters.
+ *
+ * Unless the network is slow, the first pages of the lists not on screen are requested along
+ * with the one that is, so switching lists swaps in a page already in memory. All pages hand
+ * their movies to {@link MovieRepository}, which keeps one instance per movie across lists.
+ */
+public class MoviePager implements MovieSource {
+
+    private static final int PAGE_SIZE = TMDbMovieListPage.PAGE_SIZE;
+
+    /* Pages requested ahead of the viewport when the list is still or scrolling slowly. The
+       most ever requested is up to the network's fetch policy. */
+    private static final int MIN_PREFETCH_PAGES = 1;
+
+    /* How far ahead prefetching tries to stay, in terms of time at the current scroll speed. */
+    private static final long PREFETCH_LOOKAHEAD_MILLIS = 2000;
+
+    /* Pages kept resident on each side of the viewport and its prefetch range. */
+    private static final int RESIDENT_PAGE_MARGIN = 2;
+
+    /* How long a preloaded first page may be shown instead of requesting it. */
+    private static final long PRELOADED_TTL_MILLIS = 5 * 60 * 1000;
+
+    /*
+     * Fresh first pages of the lists not on screen, fetched alongside the one that is, so
+     * switching to a list is a swap in memory. A page is taken when its list is switched to, so
+     * choosing the list again loads it afresh. Shared by every pager, as the screen that asked
+     * for a page may be gone by the time its list is switched to; the requests hold nothing of
+     * the pager that made them.
+     */
+    private static final EnumMap<NetworkUtils.SortCriteria, Preloaded> sPreloaded =
+            new EnumMap<>(NetworkUtils.SortCriteria.class);
+    private static final EnumMap<NetworkUtils.SortCriteria,
+            RequestQueue.Request<TMDbMovieListPage>> sPreloading =
+            new EnumMap<>(NetworkUtils.SortCriteria.class);
+
+    /**
+     * Receives page loads. Positions are adapter positions.
+     */
+    public interface Listener {
+        void onItemRangeInserted(int positionStart, int itemCount);
+
+        void onItemRangeChanged(int positionStart, int itemCount);
+
+        void onItemRangeRemoved(int positionStart, int itemCount);
+
+        void onItemMoved(int fromPosition, int toPosition);
+
+        /**
+         * Called once the list from a reset has replaced the previous list on screen, after the
+         * updates between them.
+         * @param itemCount Number of positions now in the list.
+         */
+        void onListReplaced(int itemCount);
+
+        void onPageLoadFailed(int page);
+    }
+
+    private final String mApiKey;
+    private final MovieStore mStore;
+    private final ListSnapshot mSnapshot;
+    private final Listener mListener;
+
+    private NetworkUtils.SortCriteria mSortCriteria;
+
+    /* Resident pages by 1-based page number. */
+    private final SparseArray<TMDbMovie[]> mPages = new SparseArray<>();
+
+    /* Resident pages that came from the store and haven't been refreshed from TMDb yet. */
+    private final SparseBooleanArray mStalePages = new SparseBooleanArray();
+
+    /* Pages with a request on the way, so each page is only requested once at a time. */
+    private final SparseArray<RequestQueue.Request<TMDbMovieListPage>> mInFlightPages =
+            new SparseArray<>();
+
+    /* Number of positions exposed so far; only grows until the next reset. */
+    private int mItemCount;
+    private int mHighestLoadedPage;
+    private int mTotalPages = Integer.MAX_VALUE;
+
+    /* Last viewport, used to derive scroll direction and speed. */
+    private int mLastFirstVisible;
+    private long mLastViewportTime;
+    private float mItemsPerMilli;
+
+    /* Bumped on every reset, so a store read for an earlier list is ignored. */
+    private int mGeneration;
+
+    /* Bumped whenever positions start reading from another list. */
+    private int mListVersion;
+
+    /* Whether the store read for the current list hasn't come back yet. */
+    private boolean mAwaitingStore;
+
+    /* Whether the first page failed while the store read was still out. */
+    private boolean mFirstPageFailed;
+
+    /* Whether any page of the current list has come from TMDb, after which the store's is moot. */
+    private boolean mHasFreshPage;
+
+    /*
+     * The previous list, still on screen after a reset until the new list has a first page and
+     * has been diffed against it. Null otherwise.
+     */
+    private TMDbMovie[] mOutgoing;
+
+    /* The diff from mOutgoing to the new list's first pages, while it runs. */
+    private MovieListDiffer.Diff mSwapDiff;
+
+    /* Diffs of resident pages against their refreshed contents, by page, while they run. */
+    private final SparseArray<MovieListDiffer.Diff> mPageDiffs = new SparseArray<>();
+
+    private static final class Preloaded {
+        final TMDbMovieListPage page;
+        final long loadedAtMillis;
+
+        Preloaded(TMDbMovieListPage page, long loadedAtMillis) {
+            this.page = page;
+            this.loadedAtMillis = loadedAtMillis;
+        }
+    }
+
+    public MoviePager(String apiKey, MovieStore store, ListSnapshot snapshot, Listener listener) {
+        mApiKey = apiKey;
+        mStore = store;
+        mSnapshot = snapshot;
+        mListener = listener;
+    }
+
+    /**
+     * Switches to the given list, reads what the store has for it and requests its first page.
+     * The current list stays on screen until the new one replaces it through the listener.
+     * @param sortCriteria List to page through.
+     */
+    public void reset(NetworkUtils.SortCriteria sortCriteria) {
+        // A reset before the last one finished swapping in leaves its outgoing list on screen.
+        if (mOutgoing == null && mItemCount > 0) {
+            mOutgoing = snapshotExposed();
+        } else if (mOutgoing == null) {
+            mListVersion++;
+        }
+
+        // Responses and diffs for the previous list are no longer wanted.
+        cancel();
+
+        mSortCriteria = sortCriteria;
+        mPages.clear();
+        mStalePages.clear();
+        mItemCount = 0;
+        mHighestLoadedPage = 0;
+        mTotalPages = Integer.MAX_VALUE;
+        mLastFirstVisible = 0;
+        mLastViewportTime = 0;
+        mItemsPerMilli = 0;
+        mFirstPageFailed = false;
+        mHasFreshPage = false;
+
+        final int generation = ++mGeneration;
+
+        // The list is on screen now, so a preload still on the way would only be shown next time.
+        RequestQueue.Request<TMDbMovieListPage> preloading = sPreloading.remove(sortCriteria);
+        if (preloading != null) {
+            preloading.cancel();
+        }
+
+        // The first page came with the previous list's, so there's nothing to read or request.
+        TMDbMovieListPage preloaded = takePreloaded(sortCriteria);
+        if (preloaded != null) {
+            Metrics.LIST_PRELOAD_HITS.increment();
+            mAwaitingStore = false;
+            onPageLoaded(1, preloaded);
+            preloadOtherLists();
+            return;
+        }
+
+        mAwaitingStore = true;
+        mStore.loadList(sortCriteria, new MovieStore.Callback<MovieStore.StoredList>() {
+            @Override
+            public void onLoaded(MovieStore.StoredList storedList) {
+                if (generation == mGeneration) {
+                    onStoredListLoaded(storedList);
+                }
+            }
+        });
+
+        StartupLoader.FirstPage startupPage = StartupLoader.take(sortCriteria);
+        if (startupPage != null && startupPage.fresh) {
+            storePage(mStore, mSnapshot, sortCriteria, startupPage.page);
+            onPageLoaded(1, startupPage.page);
+            preloadOtherLists();
+            return;
+        }
+        if (startupPage != null) {
+            showSnapshot(startupPage.page);
+        }
+
+        // At startup this joins StartupLoader's request for the page if it's still in flight.
+        loadPage(1, RequestScheduler.Priority.USER_VISIBLE);
+        preloadOtherLists();
+    }
+
+    /**
+     * Requests the first page of every list not on screen, alongside the one that is, unless
+     * it's already preloaded. Preloads outlive the pager, as any pager can use them.
+     */
+    private void preloadOtherLists() {
+        if (!NetworkQualityEstimator.getInstance().getPolicy().shouldPreloadLists()) {
+            return;
+        }
+
+        for (NetworkUtils.SortCriteria sortCriteria : NetworkUtils.SortCriteria.values()) {
+            if (sortCriteria == mSortCriteria || sPreloading.containsKey(sortCriteria)
+                    || getPreloaded(sortCriteria) != null) {
+                continue;
+            }
+
+            URL url = NetworkUtils.buildMovieListUrl(sortCriteria, mApiKey, 1);
+            sPreloading.put(sortCriteria, RequestQueue.getInstance().fetch(url,
+                    TMDbUtils.MOVIE_LIST_PAGE_HANDLER, RequestScheduler.Priority.PREFETCH,
+                    new PreloadCallback(sortCriteria, mStore, mSnapshot)));
+        }
+    }
+
+    private static TMDbMovieListPage getPreloaded(NetworkUtils.SortCriteria sortCriteria) {
+        Preloaded preloaded = sPreloaded.get(sortCriteria);
+        if (preloaded == null
+                || SystemClock.uptimeMillis() - preloaded.loadedAtMillis > PRELOADED_TTL_MILLIS) {
+            return null;
+        }
+        return preloaded.page;
+    }
+
+    /**
+     * Gets a list's preloaded first page, if it's recent enough, and forgets it either way.
+     */
+    private static TMDbMovieListPage takePreloaded(NetworkUtils.SortCriteria sortCriteria) {
+        TMDbMovieListPage page = getPreloaded(sortCriteria);
+        sPreloaded.remove(sortCriteria);
+        return page;
+    }
+
+    /**
+     * Keeps a preloaded first page. Static, so a preload doesn't keep the pager that started it.
+     */
+    private static final class PreloadCallback
+            implements RequestQueue.Callback<TMDbMovieListPage> {
+        private final NetworkUtils.SortCriteria mSortCriteria;
+        private final MovieStore mStore;
+        private final ListSnapshot mSnapshot;
+
+        PreloadCallback(NetworkUtils.SortCriteria sortCriteria, MovieStore store,
+                        ListSnapshot snapshot) {
+            mSortCriteria = sortCriteria;
+            mStore = store;
+            mSnapshot = snapshot;
+        }
+
+        @Override
+        public void onResponse(TMDbMovieListPage result) {
+            sPreloading.remove(mSortCriteria);
+            storePage(mStore, mSnapshot, mSortCriteria, result);
+            if (result.movies != null) {
+                sPreloaded.put(mSortCriteria, new Preloaded(result, SystemClock.uptimeMillis()));
+            }
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            // Speculative; switching to the list requests it as usual.
+            sPreloading.remove(mSortCriteria);
+        }
+    }
+
+    /**
+     * Cancels every page request and diff in flight, e.g. when the screen showing the list goes
+     * away.
+     */
+    public void cancel() {
+        for (int i = 0; i < mInFlightPages.size(); i++) {
+            mInFlightPages.valueAt(i).cancel();
+        }
+        mInFlightPages.clear();
+
+        for (int i = 0; i < mPageDiffs.size(); i++) {
+            mPageDiffs.valueAt(i).cancel();
+        }
+        mPageDiffs.clear();
+
+        if (mSwapDiff != null) {
+            mSwapDiff.cancel();
+            mSwapDiff = null;
+        }
+    }
+
+    public NetworkUtils.SortCriteria getSortCriteria() {
+        return mSortCriteria;
+    }
+
+    /**
+     * Identifies the list that positions read from. It changes once another list replaces it on
+     * screen, rather than on reset, as the outgoing list stays up until then.
+     */
+    int getListVersion() {
+        return mListVersion;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mOutgoing != null ? mOutgoing.length : mItemCount;
+    }
+
+    /**
+     * Gets the movie at a position.
+     * @param position Adapter position.
+     * @return The movie, or null while its page is being (re)loaded.
+     */
+    @Override
+    public TMDbMovie getMovie(int position) {
+        if (mOutgoing != null) {
+            return mOutgoing[position];
+        }
+
+        int page = pageForPosition(position);
+        TMDbMovie[] movies = mPages.get(page);
+
+        if (movies == null) {
+            loadPage(page, RequestScheduler.Priority.USER_VISIBLE);
+            return null;
+        }
+
+        int index = position - (page - 1) * PAGE_SIZE;
+        return index < movies.length ? movies[index] : null;
+    }
+
+    /**
+     * Gets the movie at a position if its page is resident, without requesting anything.
+     * @param position Adapter position.
+     * @return The movie, or null if its page isn't loaded.
+     */
+    @Override
+    public TMDbMovie peekMovie(int position) {
+        if (position < 0 || position >= getItemCount()) {
+            return null;
+        }
+        if (mOutgoing != null) {
+            return mOutgoing[position];
+        }
+
+        int page = pageForPosition(position);
+        TMDbMovie[] movies = mPages.get(page);
+        int index = position - (page - 1) * PAGE_SIZE;
+
+        return movies != null && index < movies.length ? movies[index] : null;
+    }
+
+    /**
+     * Updates the viewport. Pages ahead of it are prefetched further the faster the user
+     * scrolls, and pages far from it are evicted.
+     * @param firstVisible First visible adapter position.
+     * @param lastVisible Last visible adapter position.
+     */
+    public void onViewportChanged(int firstVisible, int lastVisible) {
+        // The outgoing list is fixed, and the new list's paging starts once it's on screen.
+        if (firstVisible < 0 || lastVisible < firstVisible || mOutgoing != null) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        int movedItems = firstVisible - mLastFirstVisible;
+
+        if (mLastViewportTime != 0 && now > mLastViewportTime) {
+            float instantSpeed = (float) movedItems / (now - mLastViewportTime);
+            // Smooth the speed so one jumpy frame doesn't swing the prefetch distance.
+            mItemsPerMilli = 0.5f * mItemsPerMilli + 0.5f * instantSpeed;
+        }
+        mLastFirstVisible = firstVisible;
+        mLastViewportTime = now;
+
+        int prefetchPages = (int) Math.ceil(
+                Math.abs(mItemsPerMilli) * PREFETCH_LOOKAHEAD_MILLIS / PAGE_SIZE);
+        int maxPrefetchPages = NetworkQualityEstimator.getInstance().getPolicy()
+                .getMaxPagePrefetch();
+        prefetchPages = Math.max(MIN_PREFETCH_PAGES, Math.min(maxPrefetchPages, prefetchPages));
+
+        int firstPage = pageForPosition(firstVisible);
+        int lastPage = pageForPosition(lastVisible);
+
+        int wantedFirstPage = firstPage;
+        int wantedLastPage = lastPage;
+        if (mItemsPerMilli < 0) {
+            wantedFirstPage = Math.max(1, firstPage - prefetchPages);
+        } else {
+            wantedLastPage = Math.min(mTotalPages, lastPage + prefetchPages);
+        }
+
+        for (int page = wantedFirstPage; page <= wantedLastPage; page++) {
+            if (mPages.get(page) == null || mStalePages.get(page)) {
+                // Pages only ahead of what's on screen can wait behind what the user sees.
+                loadPage(page, page >= firstPage && page <= lastPage
+                        ? RequestScheduler.Priority.USER_VISIBLE
+                        : RequestScheduler.Priority.PREFETCH);
+            }
+        }
+
+        evictPagesOutside(wantedFirstPage - RESIDENT_PAGE_MARGIN,
+                wantedLastPage + RESIDENT_PAGE_MARGIN);
+    }
+
+    private void evictPagesOutside(int firstResidentPage, int lastResidentPage) {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            int page = mPages.keyAt(i);
+
+            if (page < firstResidentPage || page > lastResidentPage) {
+                mPages.removeAt(i);
+                mStalePages.delete(page);
+
+                // The page's refresh is dropped too; it's loaded again when it's needed.
+                MovieListDiffer.Diff diff = mPageDiffs.get(page);
+                if (diff != null) {
+                    diff.cancel();
+                    mPageDiffs.remove(page);
+                }
+            }
+        }
+    }
+
+    private void loadPage(final int page, RequestScheduler.Priority priority) {
+        if (page < 1 || page > mTotalPages) {
+            return;
+        }
+
+        RequestQueue.Request<TMDbMovieListPage> inFlight = mInFlightPages.get(page);
+        if (inFlight != null) {
+            // A prefetch that's now on screen shouldn't wait behind other prefetches.
+            inFlight.raisePriority(priority);
+            return;
+        }
+
+        final NetworkUtils.SortCriteria sortCriteria = mSortCriteria;
+        URL url = NetworkUtils.buildMovieListUrl(sortCriteria, mApiKey, page);
+        RequestQueue.Request<TMDbMovieListPage> request = RequestQueue.getInstance().fetch(
+                url, TMDbUtils.MOVIE_LIST_PAGE_HANDLER, priority,
+                new RequestQueue.Callback<TMDbMovieListPage>() {
+                    @Override
+                    public void onResponse(TMDbMovieListPage result) {
+                        storePage(mStore, mSnapshot, sortCriteria, result);
+                        onPageLoaded(page, result);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        e.printStackTrace();
+                        onPageLoadFailed(page);
+                    }
+                });
+
+        mInFlightPages.put(page, request);
+    }
+
+    /**
+     * Keeps a page that came from TMDb everywhere it's read from later.
+     */
+    private static void storePage(MovieStore store, ListSnapshot snapshot,
+                                  NetworkUtils.SortCriteria sortCriteria,
+                                  TMDbMovieListPage result) {
+        // Share the parsed movies so the details screen can show them immediately, and swap in
+        // the instances other lists already hold.
+        if (result.movies != null) {
+            MovieRepository.getInstance().putMovies(result.movies);
+            MovieSearch.getInstance().indexMovies(result.movies);
+        }
+        store.putListPageAsync(sortCriteria, result);
+        snapshot.putAsync(sortCriteria, result);
+    }
+
+    /**
+     * Shows the list snapshot's first page, marked stale like a stored page.
+     */
+    private void showSnapshot(TMDbMovieListPage snapshot) {
+        MovieRepository.getInstance().putStoredMovies(snapshot.movies);
+
+        mPages.put(1, snapshot.movies);
+        mStalePages.put(1, true);
+        if (snapshot.totalPages > 0) {
+            mTotalPages = snapshot.totalPages;
+        }
+        exposeLoadedPages();
+    }
+
+    /**
+     * Shows the stored list, unless TMDb already answered. Pages the snapshot already shows are
+     * left as they are. A failure of the first page that was held back waiting for the store is
+     * only reported if the store had nothing either.
+     */
+    private void onStoredListLoaded(MovieStore.StoredList storedList) {
+        mAwaitingStore = false;
+
+        if (!mHasFreshPage && storedList.movies.length > 0) {
+            MovieRepository.getInstance().putStoredMovies(storedList.movies);
+
+            int pageCount = (storedList.movies.length + PAGE_SIZE - 1) / PAGE_SIZE;
+            for (int page = 1; page <= pageCount; page++) {
+                if (mPages.get(page) != null) {
+                    continue;
+                }
+
+                int start = (page - 1) * PAGE_SIZE;
+                int end = Math.min(storedList.movies.length, start + PAGE_SIZE);
+                TMDbMovie[] movies = new TMDbMovie[end - start];
+                System.arraycopy(storedList.movies, start, movies, 0, movies.length);
+
+                mPages.put(page, movies);
+                mStalePages.put(page, true);
+            }
+
+            if (storedList.totalPages > 0) {
+                mTotalPages = storedList.totalPages;
+            }
+            exposeLoadedPages();
+        }
+
+        if (mFirstPageFailed) {
+            mFirstPageFailed = false;
+            if (mPages.get(1) == null) {
+                dropOutgoing();
+            }
+            mListener.onPageLoadFailed(1);
+        }
+    }
+
+    private void onPageLoaded(int page, TMDbMovieListPage result) {
+        mInFlightPages.remove(page);
+        mStalePages.delete(page);
+        mHasFreshPage = true;
+
+        TMDbMovie[] movies = result.movies != null ? result.movies : new TMDbMovie[0];
+        mTotalPages = result.totalPages;
+        if (movies.length < PAGE_SIZE) {
+            // A short page is the last one, whatever total_pages says.
+            mTotalPages = Math.min(mTotalPages, page);
+        }
+
+        if (page <= mHighestLoadedPage && mPages.get(page) != null) {
+            // A stored page was refreshed, or a page was refreshed again while being diffed.
+            replacePage(page, movies);
+            return;
+        }
+
+        mPages.put(page, movies);
+
+        if (page <= mHighestLoadedPage) {
+            // An evicted page came back; its positions were already exposed.
+            int positionStart = (page - 1) * PAGE_SIZE;
+            int exposedCount = page == mHighestLoadedPage ? mItemCount - positionStart : PAGE_SIZE;
+            mListener.onItemRangeChanged(positionStart, Math.min(exposedCount, movies.length));
+
+            // A stored list can end in a short page that has since filled up.
+            if (movies.length > exposedCount) {
+                mItemCount += movies.length - exposedCount;
+                mListener.onItemRangeInserted(positionStart + exposedCount,
+                        movies.length - exposedCount);
+                exposeLoadedPages();
+            }
+            return;
+        }
+
+        exposeLoadedPages();
+    }
+
+    /**
+     * Exposes resident pages that follow on from the end of the list. Prefetched pages can
+     * arrive out of order, so later pages wait in mPages until the gap is filled.
+     */
+    private void exposeLoadedPages() {
+        if (mOutgoing != null) {
+            swapInLoadedPages();
+            return;
+        }
+
+        // Pages after one that's being diffed would move if its length changes, so they wait.
+        if (mPageDiffs.get(mHighestLoadedPage) != null) {
+            return;
+        }
+
+        TMDbMovie[] nextPage;
+        while ((nextPage = mPages.get(mHighestLoadedPage + 1)) != null) {
+            int positionStart = mItemCount;
+
+            mHighestLoadedPage++;
+            mItemCount += nextPage.length;
+            mListener.onItemRangeInserted(positionStart, nextPage.length);
+
+            if (nextPage.length < PAGE_SIZE) {
+                break;
+            }
+        }
+    }
+
+    private void onPageLoadFailed(int page) {
+        mInFlightPages.remove(page);
+
+        // Keep showing the stored page rather than retrying on every scroll while offline.
+        mStalePages.delete(page);
+
+        if (page == 1 && mAwaitingStore) {
+            mFirstPageFailed = true;
+            return;
+        }
+        if (page == 1 && mPages.get(1) == null) {
+            dropOutgoing();
+        }
+        mListener.onPageLoadFailed(page);
+    }
+
+    /**
+     * Diffs a resident page against its refreshed contents on a background thread, and only
+     * then puts the new contents in place. Until then the page keeps reading as before.
+     */
+    private void replacePage(final int page, final TMDbMovie[] movies) {
+        final TMDbMovie[] shownMovies = mPages.get(page);
+        final int positionStart = (page - 1) * PAGE_SIZE;
+
+        // A refresh that arrives while the last one is being diffed supersedes it.
+        MovieListDiffer.Diff runningDiff = mPageDiffs.get(page);
+        if (runningDiff != null) {
+            runningDiff.cancel();
+            mPageDiffs.remove(page);
+        }
+
+        // Only the last page can change length without moving the pages after it. Anywhere
+        // else, keep the positions as they are, as for a page that was evicted.
+        if (movies.length != shownMovies.length && page != mHighestLoadedPage) {
+            mPages.put(page, movies);
+            mListener.onItemRangeChanged(positionStart,
+                    Math.min(shownMovies.length, movies.length));
+            return;
+        }
+
+        mPageDiffs.put(page, MovieListDiffer.diff(shownMovies, movies,
+                new MovieListDiffer.Callback() {
+                    @Override
+                    public void onDiffed(DiffUtil.DiffResult result) {
+                        mPageDiffs.remove(page);
+                        mPages.put(page, movies);
+                        mItemCount += movies.length - shownMovies.length;
+
+                        result.dispatchUpdatesTo(new OffsetUpdateCallback(positionStart));
+
+                        // A short last page that filled up lets the pages after it follow.
+                        exposeLoadedPages();
+                    }
+                }));
+    }
+
+    /**
+     * Starts diffing the outgoing list against the new list's consecutive pages from page 1,
+     * once page 1 is in. Pages that arrive while the diff runs are handled when it's done.
+     */
+    private void swapInLoadedPages() {
+        if (mSwapDiff != null || mPages.get(1) == null) {
+            return;
+        }
+
+        final SparseArray<TMDbMovie[]> incomingPages = new SparseArray<>();
+        int incomingCount = 0;
+        TMDbMovie[] nextPage;
+        while ((nextPage = mPages.get(incomingPages.size() + 1)) != null) {
+            incomingPages.put(incomingPages.size() + 1, nextPage);
+            incomingCount += nextPage.length;
+
+            if (nextPage.length < PAGE_SIZE) {
+                break;
+            }
+        }
+
+        TMDbMovie[] incoming = new TMDbMovie[incomingCount];
+        for (int i = 0; i < incomingPages.size(); i++) {
+            TMDbMovie[] movies = incomingPages.valueAt(i);
+            System.arraycopy(movies, 0, incoming, i * PAGE_SIZE, movies.length);
+        }
+
+        final int itemCount = incomingCount;
+        mSwapDiff = MovieListDiffer.diff(mOutgoing, incoming, new MovieListDiffer.Callback() {
+            @Override
+            public void onDiffed(DiffUtil.DiffResult result) {
+                mSwapDiff = null;
+                onSwapDiffed(result, incomingPages, itemCount);
+            }
+        });
+    }
+
+    private void onSwapDiffed(DiffUtil.DiffResult result, SparseArray<TMDbMovie[]> swappedPages,
+                              int itemCount) {
+        mOutgoing = null;
+        mListVersion++;
+        mHighestLoadedPage = swappedPages.size();
+        mItemCount = itemCount;
+
+        // Pages refreshed while the diff ran go back to what was diffed, and are then diffed
+        // again against their refreshed contents.
+        SparseArray<TMDbMovie[]> refreshedPages = new SparseArray<>();
+        for (int i = 0; i < swappedPages.size(); i++) {
+            int page = swappedPages.keyAt(i);
+            TMDbMovie[] currentMovies = mPages.get(page);
+
+            if (currentMovies != swappedPages.valueAt(i)) {
+                refreshedPages.put(page, currentMovies);
+                mPages.put(page, swappedPages.valueAt(i));
+            }
+        }
+
+        result.dispatchUpdatesTo(new OffsetUpdateCallback(0));
+        mListener.onListReplaced(mItemCount);
+
+        for (int i = 0; i < refreshedPages.size(); i++) {
+            replacePage(refreshedPages.keyAt(i), refreshedPages.valueAt(i));
+        }
+        exposeLoadedPages();
+    }
+
+    /**
+     * Takes the outgoing list off the screen when the new list has nothing to replace it with.
+     */
+    private void dropOutgoing() {
+        if (mOutgoing == null || mSwapDiff != null) {
+            return;
+        }
+
+        int outgoingCount = mOutgoing.length;
+        mOutgoing = null;
+        mListVersion++;
+        mListener.onItemRangeRemoved(0, outgoingCount);
+    }
+
+    /**
+     * Copies the exposed positions, with nulls where pages aren't resident.
+     */
+    private TMDbMovie[] snapshotExposed() {
+        TMDbMovie[] snapshot = new TMDbMovie[mItemCount];
+
+        for (int i = 0; i < mPages.size(); i++) {
+            int start = (mPages.keyAt(i) - 1) * PAGE_SIZE;
+            TMDbMovie[] movies = mPages.valueAt(i);
+
+            if (start < mItemCount) {
+                System.arraycopy(movies, 0, snapshot, start,
+                        Math.min(movies.length, mItemCount - start));
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Passes a diff's updates to the listener, offset to where the diffed range starts.
+     */
+    private class OffsetUpdateCallback implements ListUpdateCallback {
+        private final int mOffset;
+
+        OffsetUpdateCallback(int offset) {
+            mOffset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mListener.onItemRangeInserted(mOffset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mListener.onItemRangeRemoved(mOffset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mListener.onItemMoved(mOffset + fromPosition, mOffset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            mListener.onItemRangeChanged(mOffset + position, count);
+        }
+    }
+
+    private static int pageForPosition(int position) {
+        return position / PAGE_SIZE + 1;
+    }
+}
@@ -0,0 +1,23 @@
+package io.chung.popularmovies;
+
+/**
+ * Movies by adapter position, as the movie grid shows them. Must be used on the main thread.
+ */
+public interface MovieSource {
+
+    int getItemCount();
+
+    /**
+     * Gets the movie at a position, loading it if it isn't at hand.
+     * @param position Adapter position.
+     * @return The movie, or null while it's being loaded.
+     */
+    TMDbMovie getMovie(int position);
+
+    /**
+     * Gets the movie at a position if it's at hand, without loading anything.
+     * @param position Adapter position.
+     * @return The movie, or null if it isn't at hand or the position is out of range.
+     */
+    TMDbMovie peekMovie(int position);
+}
@@ -0,0 +1,95 @@
+package io.chung.popularmovies;
+
+import android.app.Application;
+
+import java.io.File;
+import java.net.URL;
+
+import io.chung.popularmovies.data.MovieRepository;
+import io.chung.popularmovies.data.MovieSyncJobService;
+import io.chung.popularmovies.image.ImagePipeline;
+import io.chung.popularmovies.metrics.Metrics;
+import io.chung.popularmovies.search.MovieSearch;
+import io.chung.popularmovies.utilities.ConnectivityMonitor;
+import io.chung.popularmovies.utilities.DiskResponseCache;
+import io.chung.popularmovies.utilities.FetchPolicy;
+import io.chung.popularmovies.utilities.NetworkQualityEstimator;
+import io.chung.popularmovies.utilities.NetworkUtils;
+import io.chung.popularmovies.utilities.RequestQueue;
+import io.chung.popularmovies.utilities.TMDbHttpClient;
+
+public class PopularMoviesApplication extends Application {
+
+    /* Directory under the app's cache dir that holds TMDb API responses. */
+    private static final String RESPONSE_CACHE_DIR = "tmdb-responses";
+
+    /* API responses are small JSON documents, so a few MB holds plenty of lists and details. */
+    private static final long RESPONSE_CACHE_SIZE = 5 * 1024 * 1024;
+
+    /* File under the app's files dir that holds the local search index. */
+    private static final String SEARCH_INDEX_FILE = "search-index.bin";
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        File cacheDir = new File(getCacheDir(), RESPONSE_CACHE_DIR);
+        NetworkUtils.setResponseCache(new DiskResponseCache(cacheDir, RESPONSE_CACHE_SIZE,
+                NetworkUtils.getHttpClient()));
+
+        // Every API request also tells the estimator how the network is doing, and requests
+        // follow what it makes of that. It has the connection before the first request goes.
+        final NetworkQualityEstimator estimator = NetworkQualityEstimator.getInstance();
+        NetworkUtils.getHttpClient().setEventListener(new TMDbHttpClient.EventListener() {
+            @Override
+            public void onRequestFinished(URL url, TMDbHttpClient.RequestTiming timing) {
+                Metrics.recordHttpRequest(timing.dnsNanos, timing.connectNanos,
+                        timing.firstByteNanos, timing.totalNanos, timing.bytesOnWire,
+                        timing.bytesDecoded);
+                estimator.onRequestFinished(timing);
+            }
+        });
+        estimator.addListener(new NetworkQualityEstimator.Listener() {
+            @Override
+            public void onPolicyChanged(FetchPolicy policy) {
+                applyFetchPolicy(policy);
+            }
+        });
+        ConnectivityMonitor.start(this, estimator);
+        applyFetchPolicy(estimator.getPolicy());
+
+        // Read the search index before anything is parsed, so new movies are added to it.
+        MovieSearch.getInstance().open(new File(getFilesDir(), SEARCH_INDEX_FILE));
+
+        // Start on the first screen's movies as soon as requests can be made, so they're on
+        // their way while the rest of the app and MainActivity are set up.
+        StartupLoader.start(this);
+
+        ImagePipeline.install(this);
+
+        // Keep the stored lists fresh so the next start has recent data without waiting.
+        MovieSyncJobService.schedule(this);
+    }
+
+    /**
+     * Sizes the API request threads and timeouts for the network. Posters follow the policy
+     * through the image pipeline.
+     */
+    private static void applyFetchPolicy(FetchPolicy policy) {
+        NetworkUtils.getHttpClient().setTimeouts(policy.getConnectTimeoutMillis(),
+                policy.getReadTimeoutMillis());
+        RequestQueue.getInstance().setThreadCount(policy.getRequestThreads());
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        ImagePipeline.getInstance().onTrimMemory(level);
+
+        // Parsed movies can always be rebuilt from the disk cache, so give the memory back early.
+        if (level >= TRIM_MEMORY_MODERATE) {
+            MovieRepository.getInstance().clear();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package io.chung.popularmovies;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.drawable.Drawable;
+import android.support.v7.widget.AppCompatImageView;
+import android.util.AttributeSet;
+
+/**
+ * Image view for a grid cell's poster, as tall as its width times a fixed aspect ratio, 2:3 by
+ * default like TMDb's posters.
+ *
+ * Its size never depends on its image, so setting an image doesn't request a layout. A poster
+ * arriving mid-fling would otherwise have the grid lay out every row again.
+ */
+public class PosterImageView extends AppCompatImageView {
+
+    /* TMDb posters are 2:3, so 1.5 times as tall as they're wide. */
+    private static final float DEFAULT_ASPECT_RATIO = 1.5f;
+
+    /* Height as a multiple of the width. */
+    private final float mAspectRatio;
+
+    /* Whether an image is being set, which mustn't request a layout. */
+    private boolean mSettingImage;
+
+    public PosterImageView(Context context) {
+        this(context, null);
+    }
+
+    public PosterImageView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public PosterImageView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+
+        TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.PosterImageView,
+                defStyleAttr, 0);
+        try {
+            mAspectRatio = a.getFloat(R.styleable.PosterImageView_aspectRatio,
+                    DEFAULT_ASPECT_RATIO);
+        } finally {
+            a.recycle();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        // The grid gives each cell an exact width, its share of the span.
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        setMeasuredDimension(width, Math.round(width * mAspectRatio));
+    }
+
+    @Override
+    public void setImageDrawable(Drawable drawable) {
+        // setImageBitmap and Picasso both come through here.
+        mSettingImage = true;
+        try {
+            super.setImageDrawable(drawable);
+        } finally {
+            mSettingImage = false;
+        }
+    }
+
+    @Override
+    public void setImageResource(int resId) {
+        mSettingImage = true;
+        try {
+            super.setImageResource(resId);
+        } finally {
+            mSettingImage = false;
+        }
+    }
+
+    @Override
+    public void requestLayout() {
+        if (!mSettingImage) {
+            super.requestLayout();
+        }
+    }
+}
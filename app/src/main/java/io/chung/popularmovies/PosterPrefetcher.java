@@ -0,0 +1,170 @@
+package io.chung.popularmovies;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseArray;
+
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+
+import io.chung.popularmovies.image.ImagePipeline;
+import io.chung.popularmovies.utilities.NetworkQualityEstimator;
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+/**
+ * Warms Picasso's cache with the posters just beyond the viewport, in the direction the user is
+ * scrolling, so cells already have their poster when they're bound.
+ *
+ * The faster the scroll, the more posters are fetched ahead, as far as the network allows.
+ * Prefetches run at low priority so they never hold up posters that are on screen, and ones the
+ * viewport has moved away from (for example after the scroll direction reverses) are cancelled.
+ */
+public class PosterPrefetcher extends RecyclerView.OnScrollListener {
+
+    /* Posters fetched ahead of the viewport when scrolling slowly. The most ever fetched is up
+       to the network's fetch policy, and may be none. */
+    private static final int MIN_PREFETCH_COUNT = 4;
+
+    /* Per-frame scroll distance that earns one more poster of lookahead. */
+    private static final int SCROLL_PX_PER_EXTRA_POSTER = 12;
+
+    private final Picasso mPicasso;
+    private final MovieSource mMovies;
+    private final LinearLayoutManager mLayoutManager;
+    private final NetworkUtils.PosterSize mPosterSize;
+
+    /* Prefetches that haven't finished yet, keyed by position; the value is the Picasso tag. */
+    private final SparseArray<String> mInFlight = new SparseArray<>();
+
+    /* Positions covered by the last prefetch pass. */
+    private int mWindowStart = -1;
+    private int mWindowEnd = -1;
+
+    /* Last non-zero scroll direction: 1 towards the end of the list, -1 towards the start. */
+    private int mDirection = 1;
+
+    private boolean mEnabled = true;
+
+    public PosterPrefetcher(Context context, MovieSource movies, LinearLayoutManager layoutManager,
+                            NetworkUtils.PosterSize posterSize) {
+        mPicasso = Picasso.with(context);
+        mMovies = movies;
+        mLayoutManager = layoutManager;
+        mPosterSize = posterSize;
+    }
+
+    /**
+     * Turns prefetching on or off; turning it off cancels any prefetch in flight.
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            cancelAll();
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (!mEnabled) {
+            return;
+        }
+
+        int firstVisible = mLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION || lastVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        // dy is 0 for layout passes, so keep prefetching the way the user last scrolled.
+        if (dy != 0) {
+            mDirection = dy > 0 ? 1 : -1;
+        }
+
+        int count = MIN_PREFETCH_COUNT + Math.abs(dy) / SCROLL_PX_PER_EXTRA_POSTER;
+        count = Math.min(NetworkQualityEstimator.getInstance().getPolicy().getMaxPosterPrefetch(),
+                count);
+
+        int windowStart;
+        int windowEnd;
+        if (mDirection > 0) {
+            windowStart = lastVisible + 1;
+            windowEnd = Math.min(mMovies.getItemCount() - 1, lastVisible + count);
+        } else {
+            windowStart = Math.max(0, firstVisible - count);
+            windowEnd = firstVisible - 1;
+        }
+
+        cancelOutside(windowStart, windowEnd);
+
+        for (int position = windowStart; position <= windowEnd; position++) {
+            // Positions from the last pass were already requested.
+            if (position >= mWindowStart && position <= mWindowEnd) {
+                continue;
+            }
+            prefetch(position);
+        }
+
+        mWindowStart = windowStart;
+        mWindowEnd = windowEnd;
+    }
+
+    /**
+     * Cancels every prefetch in flight, e.g. when the list is replaced.
+     */
+    public void cancelAll() {
+        for (int i = 0; i < mInFlight.size(); i++) {
+            mPicasso.cancelTag(mInFlight.valueAt(i));
+        }
+        mInFlight.clear();
+        mWindowStart = -1;
+        mWindowEnd = -1;
+    }
+
+    private void prefetch(final int position) {
+        // Only prefetch what's already been parsed; this never triggers a page request.
+        TMDbMovie movie = mMovies.peekMovie(position);
+        if (movie == null || mInFlight.get(position) != null) {
+            return;
+        }
+
+        Uri posterUri = movie.getPosterUri(mPosterSize);
+        final String tag = posterUri.toString();
+        mInFlight.put(position, tag);
+
+        // The grid's config, since Picasso's cache keys don't tell configs apart.
+        mPicasso.load(posterUri)
+                .config(ImagePipeline.GRID_CONFIG)
+                .priority(Picasso.Priority.LOW)
+                .tag(tag)
+                .fetch(new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        removeInFlight(position, tag);
+                    }
+
+                    @Override
+                    public void onError() {
+                        removeInFlight(position, tag);
+                    }
+                });
+    }
+
+    private void removeInFlight(int position, String tag) {
+        if (tag.equals(mInFlight.get(position))) {
+            mInFlight.remove(position);
+        }
+    }
+
+    private void cancelOutside(int windowStart, int windowEnd) {
+        for (int i = mInFlight.size() - 1; i >= 0; i--) {
+            int position = mInFlight.keyAt(i);
+
+            if (position < windowStart || position > windowEnd) {
+                mPicasso.cancelTag(mInFlight.valueAt(i));
+                mInFlight.removeAt(i);
+            }
+        }
+    }
+}
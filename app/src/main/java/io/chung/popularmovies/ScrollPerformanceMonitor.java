@@ -0,0 +1,201 @@
+package io.chung.popularmovies;
+
+import android.os.SystemClock;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.util.SparseLongArray;
+import android.view.Choreographer;
+import android.view.ViewTreeObserver;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Measures how smoothly the movie grid scrolls: the time between frames while it's moving, how
+ * long each cell waits between being bound and having its poster on screen, and how many layout
+ * passes run. Scrolling itself needs none, so each one is a view asking for a layout mid-scroll.
+ *
+ * A scroll session starts when the list starts moving and ends when it comes to rest, at which
+ * point a {@link Report} is logged and kept for {@link #getLastReport()}.
+ */
+public class ScrollPerformanceMonitor extends RecyclerView.OnScrollListener
+        implements Choreographer.FrameCallback, ViewTreeObserver.OnGlobalLayoutListener {
+
+    private static final String TAG = ScrollPerformanceMonitor.class.getSimpleName();
+
+    /* One frame at 60fps. Frames taking over 1.5x this are counted as janky. */
+    private static final long FRAME_NANOS = 16666667L;
+    private static final long JANK_THRESHOLD_NANOS = FRAME_NANOS * 3 / 2;
+
+    /* Samples kept per session; a long fling at 60fps is well under this. */
+    private static final int MAX_SAMPLES = 4096;
+
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+
+    /* Frame intervals and image-ready latencies of the current session, in nanoseconds. */
+    private final long[] mFrameIntervals = new long[MAX_SAMPLES];
+    private final long[] mImageLatencies = new long[MAX_SAMPLES];
+    private int mFrameCount;
+    private int mImageCount;
+    private int mLayoutPassCount;
+
+    /* The list being scrolled in the current session, whose layout passes are counted. */
+    private RecyclerView mRecyclerView;
+
+    /* Bind time of each cell still waiting for its poster, keyed by adapter position. */
+    private final SparseLongArray mBindTimes = new SparseLongArray();
+
+    private long mLastFrameNanos;
+    private boolean mScrolling;
+
+    private Report mLastReport;
+
+    /**
+     * Summary of one scroll session. Times are in milliseconds.
+     */
+    public static final class Report {
+        public final int frameCount;
+        public final int jankyFrameCount;
+        public final double frameP50Millis;
+        public final double frameP90Millis;
+        public final double frameP99Millis;
+
+        public final int imageCount;
+        public final double imageReadyP50Millis;
+        public final double imageReadyP90Millis;
+        public final double imageReadyMaxMillis;
+
+        public final int layoutPassCount;
+
+        Report(long[] frameIntervals, int frameCount, long[] imageLatencies, int imageCount,
+               int layoutPassCount) {
+            Arrays.sort(frameIntervals, 0, frameCount);
+            Arrays.sort(imageLatencies, 0, imageCount);
+
+            int janky = 0;
+            for (int i = 0; i < frameCount; i++) {
+                if (frameIntervals[i] > JANK_THRESHOLD_NANOS) {
+                    janky++;
+                }
+            }
+
+            this.frameCount = frameCount;
+            this.jankyFrameCount = janky;
+            this.frameP50Millis = percentileMillis(frameIntervals, frameCount, 50);
+            this.frameP90Millis = percentileMillis(frameIntervals, frameCount, 90);
+            this.frameP99Millis = percentileMillis(frameIntervals, frameCount, 99);
+
+            this.imageCount = imageCount;
+            this.imageReadyP50Millis = percentileMillis(imageLatencies, imageCount, 50);
+            this.imageReadyP90Millis = percentileMillis(imageLatencies, imageCount, 90);
+            this.imageReadyMaxMillis = percentileMillis(imageLatencies, imageCount, 100);
+
+            this.layoutPassCount = layoutPassCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d frames, %d janky, p50/p90/p99 %.1f/%.1f/%.1fms; "
+                            + "%d posters ready after p50/p90/max %.1f/%.1f/%.1fms; "
+                            + "%d layout passes",
+                    frameCount, jankyFrameCount, frameP50Millis, frameP90Millis, frameP99Millis,
+                    imageCount, imageReadyP50Millis, imageReadyP90Millis, imageReadyMaxMillis,
+                    layoutPassCount);
+        }
+
+        private static double percentileMillis(long[] sorted, int count, int percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            int index = Math.min(count - 1, (int) Math.ceil(count * percentile / 100.0) - 1);
+            return sorted[Math.max(0, index)] / 1000000.0;
+        }
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState != RecyclerView.SCROLL_STATE_IDLE && !mScrolling) {
+            startSession(recyclerView);
+        } else if (newState == RecyclerView.SCROLL_STATE_IDLE && mScrolling) {
+            finishSession();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mScrolling) {
+            return;
+        }
+
+        if (mLastFrameNanos != 0 && mFrameCount < MAX_SAMPLES) {
+            mFrameIntervals[mFrameCount++] = frameTimeNanos - mLastFrameNanos;
+        }
+        mLastFrameNanos = frameTimeNanos;
+
+        mChoreographer.postFrameCallback(this);
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        if (mScrolling) {
+            mLayoutPassCount++;
+        }
+    }
+
+    /**
+     * Records that a cell was bound and its poster requested.
+     * @param position Adapter position of the cell.
+     */
+    public void onPosterBound(int position) {
+        mBindTimes.put(position, SystemClock.elapsedRealtimeNanos());
+    }
+
+    /**
+     * Records that a cell's poster is on screen. Posters already in memory are ready at bind.
+     * @param position Adapter position of the cell.
+     */
+    public void onPosterReady(int position) {
+        int index = mBindTimes.indexOfKey(position);
+        if (index < 0) {
+            return;
+        }
+
+        long latency = SystemClock.elapsedRealtimeNanos() - mBindTimes.valueAt(index);
+        mBindTimes.removeAt(index);
+
+        if (mScrolling && mImageCount < MAX_SAMPLES) {
+            mImageLatencies[mImageCount++] = latency;
+        }
+    }
+
+    /**
+     * @return The report of the last finished scroll session, or null if there hasn't been one.
+     */
+    public Report getLastReport() {
+        return mLastReport;
+    }
+
+    private void startSession(RecyclerView recyclerView) {
+        mScrolling = true;
+        mFrameCount = 0;
+        mImageCount = 0;
+        mLayoutPassCount = 0;
+        mLastFrameNanos = 0;
+
+        mRecyclerView = recyclerView;
+        mRecyclerView.getViewTreeObserver().addOnGlobalLayoutListener(this);
+        mChoreographer.postFrameCallback(this);
+    }
+
+    private void finishSession() {
+        mScrolling = false;
+        mChoreographer.removeFrameCallback(this);
+        mRecyclerView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+        mRecyclerView = null;
+
+        mLastReport = new Report(mFrameIntervals, mFrameCount, mImageLatencies, mImageCount,
+                mLayoutPassCount);
+        Log.i(TAG, "Scroll session: " + mLastReport);
+    }
+}
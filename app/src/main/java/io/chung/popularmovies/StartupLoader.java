@@ -0,0 +1,157 @@
+package io.chung.popularmovies;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+
+import java.net.URL;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import io.chung.popularmovies.data.ListSnapshot;
+import io.chung.popularmovies.utilities.NetworkUtils;
+import io.chung.popularmovies.utilities.RequestQueue;
+import io.chung.popularmovies.utilities.TMDbUtils;
+
+/**
+ * Gets the first screen of the movie grid going at process start, while MainActivity is still
+ * being created and inflated: reads the last-known first page from {@link ListSnapshot}, and
+ * requests the fresh first page from TMDb.
+ *
+ * The first {@link MoviePager} to start takes whichever is ready. If the request is still in
+ * flight by then, the pager's own request for the page joins it through {@link RequestQueue}.
+ * Everything here is on the main thread, apart from the snapshot read.
+ */
+final class StartupLoader {
+
+    /* The list MainActivity opens with. */
+    static final NetworkUtils.SortCriteria STARTUP_SORT_CRITERIA =
+            NetworkUtils.SortCriteria.POPULAR;
+
+    /* When the process started, as far as the app can tell, or -1 once a launch has used it. */
+    private static long sProcessStartUptimeMillis = -1;
+
+    private static Future<TMDbMovieListPage> sSnapshot;
+
+    private static TMDbMovieListPage sFirstPage;
+
+    /* Whether a pager has already taken what was loaded, or there was nothing to start. */
+    private static boolean sTaken = true;
+
+    /**
+     * What was ready when the first pager started.
+     */
+    static final class FirstPage {
+        final TMDbMovieListPage page;
+        /* Whether the page is from TMDb rather than the snapshot. */
+        final boolean fresh;
+
+        FirstPage(TMDbMovieListPage page, boolean fresh) {
+            this.page = page;
+            this.fresh = fresh;
+        }
+    }
+
+    private StartupLoader() {
+    }
+
+    /**
+     * Starts reading the snapshot and requesting the first page. Called from
+     * Application.onCreate.
+     */
+    static void start(Context context) {
+        sProcessStartUptimeMillis = SystemClock.uptimeMillis();
+        sTaken = false;
+
+        // A launch creates its activity straight after the application, without the main
+        // thread going idle in between. If it goes idle first, the process was started for
+        // something else, such as the sync job, and there's no launch to get ready for.
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                sProcessStartUptimeMillis = -1;
+                discard();
+                return false;
+            }
+        });
+
+        sSnapshot = ListSnapshot.getInstance(context).readAsync(STARTUP_SORT_CRITERIA);
+
+        String apiKey = context.getString(R.string.the_movie_db_api_key);
+        URL url = NetworkUtils.buildMovieListUrl(STARTUP_SORT_CRITERIA, apiKey, 1);
+        RequestQueue.getInstance().fetch(url, TMDbUtils.MOVIE_LIST_PAGE_HANDLER,
+                new RequestQueue.Callback<TMDbMovieListPage>() {
+                    @Override
+                    public void onResponse(TMDbMovieListPage result) {
+                        if (!sTaken) {
+                            sFirstPage = result;
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        // The pager requests the page again and reports the failure if it recurs.
+                        e.printStackTrace();
+                    }
+                });
+    }
+
+    /**
+     * Takes the freshest first page that's ready for the list, without waiting. Only the first
+     * call after start can return anything.
+     * @param sortCriteria The list the pager is starting on.
+     * @return The page, or null if the list isn't the startup list or nothing is ready yet.
+     */
+    static FirstPage take(NetworkUtils.SortCriteria sortCriteria) {
+        if (sTaken) {
+            return null;
+        }
+
+        TMDbMovieListPage firstPage = sFirstPage;
+        TMDbMovieListPage snapshot = getIfDone(sSnapshot);
+        discard();
+
+        if (sortCriteria != STARTUP_SORT_CRITERIA) {
+            return null;
+        }
+
+        if (firstPage != null) {
+            return new FirstPage(firstPage, true);
+        }
+        if (snapshot != null && snapshot.movies.length > 0) {
+            return new FirstPage(snapshot, false);
+        }
+        return null;
+    }
+
+    /**
+     * Takes the process start time for timing the first launch. Later launches in the same
+     * process are warm, and time themselves from their own start.
+     * @return Uptime in milliseconds when the process started, or -1 if already taken.
+     */
+    static long takeProcessStartUptimeMillis() {
+        long processStart = sProcessStartUptimeMillis;
+        sProcessStartUptimeMillis = -1;
+        return processStart;
+    }
+
+    private static void discard() {
+        sTaken = true;
+        sFirstPage = null;
+        sSnapshot = null;
+    }
+
+    private static TMDbMovieListPage getIfDone(Future<TMDbMovieListPage> future) {
+        if (future == null || !future.isDone()) {
+            return null;
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
@@ -1,63 +1,134 @@
 package io.chung.popularmovies;
 
+import android.database.Cursor;
+import android.net.Uri;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigDecimal;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
+import io.chung.popularmovies.data.MovieContract.MovieEntry;
+import io.chung.popularmovies.data.MovieContract.ReviewEntry;
+import io.chung.popularmovies.data.MovieContract.VideoEntry;
 import io.chung.popularmovies.utilities.NetworkUtils;
 
 public class TMDbMovie {
+    private static final String ADULT_KEY = "adult";
+    private static final String BACKDROP_PATH_KEY = "backdrop_path";
+    private static final String CAST_KEY = "cast";
+    private static final String CREDITS_KEY = "credits";
+    private static final String GENRE_IDS_KEY = "genre_ids";
+    private static final String ID_KEY = "id";
+    private static final String ORIGINAL_LANGUAGE_KEY = "original_language";
+    private static final String ORIGINAL_TITLE_KEY = "original_title";
+    private static final String OVERVIEW_KEY = "overview";
+    private static final String POPULARITY_KEY = "popularity";
+    private static final String POSTER_PATH_KEY = "poster_path";
+    private static final String TITLE_KEY = "title";
+    private static final String RELEASE_DATE_KEY = "release_date";
+    private static final String RELEASE_DATES_KEY = "release_dates";
+    private static final String RESULTS_KEY = "results";
+    private static final String REVIEWS_KEY = "reviews";
+    private static final String RUNTIME_KEY = "runtime";
+    private static final String SIMILAR_KEY = "similar";
+    private static final String VIDEO_KEY = "video";
+    private static final String VIDEOS_KEY = "videos";
+    private static final String VOTE_AVERAGE_KEY = "vote_average";
+    private static final String VOTE_COUNT_KEY = "vote_count";
+
+    /* Shared by movies without genres, reviews or videos, so they don't each allocate one. */
+    private static final int[] NO_GENRE_IDS = new int[0];
+    private static final Review[] NO_REVIEWS = new Review[0];
+    private static final Video[] NO_VIDEOS = new Video[0];
+    private static final CastMember[] NO_CAST = new CastMember[0];
+    private static final TMDbMovie[] NO_MOVIES = new TMDbMovie[0];
+    private static final ReleaseDate[] NO_RELEASE_DATES = new ReleaseDate[0];
+
+    private static final int POSTER_SIZE_COUNT = NetworkUtils.PosterSize.values().length;
+
+    /* Strings that only take a handful of values, such as language and country codes, kept
+       once and shared by every movie, video and release date that has them. */
+    private static final ConcurrentHashMap<String, String> sInterned = new ConcurrentHashMap<>();
+
+    /* Past this many, strings are no longer interned, in case a field turns out not to repeat. */
+    private static final int MAX_INTERNED = 1024;
+
     public final boolean adult;
     public final String backdropPath;
-    public final int[] genreIds;
     public final int id;
     public final String originalLanguage;
     public final String originalTitle;
-    public final String overview;
     public final double popularity;
     public final String posterPath;
     public final String title;
     public final String releaseDate;
-    public final Review[] reviews;
     public final int runtime;
     public final boolean video;
-    public final Video[] videos;
     public final double voteAverage;
     public final int voteCount;
 
+    /* Long and only shown on the details screen, so it may be decoded on first read. */
+    private final LazyText mOverview;
+
+    /* Every list screen filters, indexes and compares by genre, so these are read up front. */
+    private final int[] mGenreIds;
+
+    /*
+     * Only the details screen reads these, so a movie parsed from JSON keeps them as JSON text
+     * and builds them on first read. Null until built.
+     */
+    private volatile Review[] mReviews;
+    private volatile Video[] mVideos;
+
+    /* JSON text the fields above are built from: the reviews and videos sub-responses. Null when
+       they were built up front, or the JSON had none. */
+    private final String mReviewsJson;
+    private final String mVideosJson;
+
+    /* Mask of the DetailSections the movie carries, whether or not they turned out empty. */
+    private final int mSections;
+
+    /*
+     * The optional sections as their JSON text, which only the screens that show them parse, on
+     * first read. Null when the movie doesn't carry the section.
+     */
+    private final String mCreditsJson;
+    private final String mSimilarJson;
+    private final String mReleaseDatesJson;
+
+    /* Built from the JSON text above on first read. Null until built. */
+    private volatile CastMember[] mCast;
+    private volatile TMDbMovie[] mSimilar;
+    private volatile ReleaseDate[] mReleaseDates;
+
+    /* Poster URIs built so far, indexed by PosterSize ordinal. Null until one is built. */
+    private volatile Uri[] mPosterUris;
+
     /**
-     * Constructs the object with a TMDb movie list result item.
+     * Constructs the object with a TMDb movie list result item. Reviews, videos and the optional
+     * sections are only built from the JSON when they're first read.
      * @param movieJson A JSONObject of a single movie from a movie list result.
      */
     public TMDbMovie(JSONObject movieJson) {
-        final String ADULT_KEY = "adult";
-        final String BACKDROP_PATH_KEY = "backdrop_path";
-        final String GENRE_IDS_KEY = "genre_ids";
-        final String ID_KEY = "id";
-        final String ORIGINAL_LANGUAGE_KEY = "original_language";
-        final String ORIGINAL_TITLE_KEY = "original_title";
-        final String OVERVIEW_KEY = "overview";
-        final String POPULARITY_KEY = "popularity";
-        final String POSTER_PATH_KEY = "poster_path";
-        final String TITLE_KEY = "title";
-        final String RELEASE_DATE_KEY = "release_date";
-        final String RESULTS_KEY = "results";
-        final String REVIEWS_KEY = "reviews";
-        final String RUNTIME_KEY = "runtime";
-        final String VIDEO_KEY = "video";
-        final String VIDEOS_KEY = "videos";
-        final String VOTE_AVERAGE_KEY = "vote_average";
-        final String VOTE_COUNT_KEY = "vote_count";
-
         adult = movieJson.optBoolean(ADULT_KEY);
         backdropPath = movieJson.optString(BACKDROP_PATH_KEY);
         id = movieJson.optInt(ID_KEY);
-        originalLanguage = movieJson.optString(ORIGINAL_LANGUAGE_KEY);
+        originalLanguage = intern(movieJson.optString(ORIGINAL_LANGUAGE_KEY));
         originalTitle = movieJson.optString(ORIGINAL_TITLE_KEY);
-        overview = movieJson.optString(OVERVIEW_KEY);
+        mOverview = LazyText.of(movieJson.optString(OVERVIEW_KEY));
         popularity = movieJson.optDouble(POPULARITY_KEY);
         posterPath = movieJson.optString(POSTER_PATH_KEY);
         title = movieJson.optString(TITLE_KEY);
@@ -67,110 +138,1089 @@ public class TMDbMovie {
         voteAverage = movieJson.optDouble(VOTE_AVERAGE_KEY);
         voteCount = movieJson.optInt(VOTE_COUNT_KEY);
 
-        JSONArray genreIdsJson = movieJson.optJSONArray(GENRE_IDS_KEY);
+        // List results have no videos or reviews, so look them up without throwing for each.
+        mGenreIds = optIntArray(movieJson.optJSONArray(GENRE_IDS_KEY));
+        mVideosJson = optSectionJson(movieJson, VIDEOS_KEY);
+        mReviewsJson = optSectionJson(movieJson, REVIEWS_KEY);
 
-        if (genreIdsJson != null && genreIdsJson.length() > 0) {
-            genreIds = new int[genreIdsJson.length()];
+        mCreditsJson = optSectionJson(movieJson, CREDITS_KEY);
+        mSimilarJson = optSectionJson(movieJson, SIMILAR_KEY);
+        mReleaseDatesJson = optSectionJson(movieJson, RELEASE_DATES_KEY);
 
-            for (int i = 0; i < genreIdsJson.length(); i++) {
-                genreIds[i] = genreIdsJson.optInt(i);
+        int sections = 0;
+        for (DetailSection section : DetailSection.values()) {
+            if (movieJson.has(section.key)) {
+                sections |= section.bit();
             }
-        } else {
-            genreIds = new int[0];
+        }
+        mSections = sections;
+    }
+
+    /**
+     * Constructs the object by streaming a single movie object out of a JsonReader. The reader
+     * must be positioned at the start of the movie object and is left just after its end.
+     * Unknown keys are skipped, and missing or null values fall back to the same defaults as the
+     * JSONObject constructor. Genre IDs, reviews, videos and the optional sections are only
+     * copied out as JSON text, and built when they're first read.
+     * @param reader A JsonReader positioned at a single movie object.
+     * @throws IOException Thrown when reading from the underlying stream fails or the JSON is
+     * malformed.
+     */
+    public TMDbMovie(JsonReader reader) throws IOException {
+        boolean parsedAdult = false;
+        String parsedBackdropPath = "";
+        int[] parsedGenreIds = NO_GENRE_IDS;
+        int parsedId = 0;
+        String parsedOriginalLanguage = "";
+        String parsedOriginalTitle = "";
+        String parsedOverview = "";
+        double parsedPopularity = Double.NaN;
+        String parsedPosterPath = "";
+        String parsedTitle = "";
+        String parsedReleaseDate = "";
+        String parsedReviewsJson = null;
+        int parsedRuntime = 0;
+        boolean parsedVideo = false;
+        String parsedVideosJson = null;
+        double parsedVoteAverage = Double.NaN;
+        int parsedVoteCount = 0;
+        int parsedSections = 0;
+        String parsedCreditsJson = null;
+        String parsedSimilarJson = null;
+        String parsedReleaseDatesJson = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            switch (name) {
+                case ADULT_KEY:
+                    parsedAdult = nextBoolean(reader);
+                    break;
+                case BACKDROP_PATH_KEY:
+                    parsedBackdropPath = nextString(reader);
+                    break;
+                case CREDITS_KEY:
+                    parsedCreditsJson = readJsonText(reader);
+                    parsedSections |= DetailSection.CREDITS.bit();
+                    break;
+                case GENRE_IDS_KEY:
+                    parsedGenreIds = nextIntArray(reader);
+                    break;
+                case ID_KEY:
+                    parsedId = nextInt(reader);
+                    break;
+                case ORIGINAL_LANGUAGE_KEY:
+                    parsedOriginalLanguage = nextString(reader);
+                    break;
+                case ORIGINAL_TITLE_KEY:
+                    parsedOriginalTitle = nextString(reader);
+                    break;
+                case OVERVIEW_KEY:
+                    parsedOverview = nextString(reader);
+                    break;
+                case POPULARITY_KEY:
+                    parsedPopularity = nextDouble(reader);
+                    break;
+                case POSTER_PATH_KEY:
+                    parsedPosterPath = nextString(reader);
+                    break;
+                case TITLE_KEY:
+                    parsedTitle = nextString(reader);
+                    break;
+                case RELEASE_DATE_KEY:
+                    parsedReleaseDate = nextString(reader);
+                    break;
+                case RELEASE_DATES_KEY:
+                    parsedReleaseDatesJson = readJsonText(reader);
+                    parsedSections |= DetailSection.RELEASE_DATES.bit();
+                    break;
+                case REVIEWS_KEY:
+                    parsedReviewsJson = readJsonText(reader);
+                    parsedSections |= DetailSection.REVIEWS.bit();
+                    break;
+                case RUNTIME_KEY:
+                    parsedRuntime = nextInt(reader);
+                    break;
+                case SIMILAR_KEY:
+                    parsedSimilarJson = readJsonText(reader);
+                    parsedSections |= DetailSection.SIMILAR.bit();
+                    break;
+                case VIDEO_KEY:
+                    parsedVideo = nextBoolean(reader);
+                    break;
+                case VIDEOS_KEY:
+                    parsedVideosJson = readJsonText(reader);
+                    parsedSections |= DetailSection.VIDEOS.bit();
+                    break;
+                case VOTE_AVERAGE_KEY:
+                    parsedVoteAverage = nextDouble(reader);
+                    break;
+                case VOTE_COUNT_KEY:
+                    parsedVoteCount = nextInt(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        adult = parsedAdult;
+        backdropPath = parsedBackdropPath;
+        id = parsedId;
+        originalLanguage = intern(parsedOriginalLanguage);
+        originalTitle = parsedOriginalTitle;
+        mOverview = LazyText.of(parsedOverview);
+        popularity = parsedPopularity;
+        posterPath = parsedPosterPath;
+        title = parsedTitle;
+        releaseDate = parsedReleaseDate;
+        runtime = parsedRuntime;
+        video = parsedVideo;
+        voteAverage = parsedVoteAverage;
+        voteCount = parsedVoteCount;
+
+        mGenreIds = parsedGenreIds;
+        mReviewsJson = parsedReviewsJson;
+        mVideosJson = parsedVideosJson;
+
+        mSections = parsedSections;
+        mCreditsJson = parsedCreditsJson;
+        mSimilarJson = parsedSimilarJson;
+        mReleaseDatesJson = parsedReleaseDatesJson;
+    }
+
+    /**
+     * Constructs the object from a row of the local movie store. Genres, reviews and videos are
+     * stored in their own tables, so they're read separately and passed in. The store keeps no
+     * other sections, and a movie whose details weren't stored carries none.
+     * @param cursor A cursor positioned at a row of the movies table.
+     * @param genreIds The movie's genre IDs.
+     * @param reviews The movie's reviews, empty unless its details were stored.
+     * @param videos The movie's videos, empty unless its details were stored.
+     */
+    public TMDbMovie(Cursor cursor, int[] genreIds, Review[] reviews, Video[] videos) {
+        adult = cursor.getInt(cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_ADULT)) != 0;
+        backdropPath = cursor.getString(
+                cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_BACKDROP_PATH));
+        id = cursor.getInt(cursor.getColumnIndexOrThrow(MovieEntry._ID));
+        originalLanguage = intern(cursor.getString(
+                cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_ORIGINAL_LANGUAGE)));
+        originalTitle = cursor.getString(
+                cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_ORIGINAL_TITLE));
+        mOverview = LazyText.of(
+                cursor.getString(cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_OVERVIEW)));
+        popularity = getDouble(cursor, MovieEntry.COLUMN_POPULARITY);
+        posterPath = cursor.getString(cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_POSTER_PATH));
+        title = cursor.getString(cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_TITLE));
+        releaseDate = cursor.getString(
+                cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_RELEASE_DATE));
+        runtime = cursor.getInt(cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_RUNTIME));
+        video = cursor.getInt(cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_VIDEO)) != 0;
+        voteAverage = getDouble(cursor, MovieEntry.COLUMN_VOTE_AVERAGE);
+        voteCount = cursor.getInt(cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_VOTE_COUNT));
+
+        mGenreIds = genreIds;
+        mReviews = reviews;
+        mVideos = videos;
+        mReviewsJson = null;
+        mVideosJson = null;
+
+        boolean hasDetails = cursor.getInt(
+                cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_HAS_DETAILS)) != 0;
+        mSections = hasDetails ? DetailSection.DEFAULT : 0;
+        mCreditsJson = null;
+        mSimilarJson = null;
+        mReleaseDatesJson = null;
+    }
+
+    /**
+     * Constructs the object from already decoded fields, for TMDbMovieCodec, which keeps no
+     * sections but videos and reviews.
+     * @param sections Mask of the {@link DetailSection}s the movie carries, of videos and
+     * reviews.
+     */
+    TMDbMovie(boolean adult, String backdropPath, int[] genreIds, int id, String originalLanguage,
+              String originalTitle, LazyText overview, double popularity, String posterPath,
+              String title, String releaseDate, Review[] reviews, int runtime, boolean video,
+              Video[] videos, double voteAverage, int voteCount, int sections) {
+        this.adult = adult;
+        this.backdropPath = backdropPath;
+        this.id = id;
+        this.originalLanguage = intern(originalLanguage);
+        this.originalTitle = originalTitle;
+        this.mOverview = overview;
+        this.popularity = popularity;
+        this.posterPath = posterPath;
+        this.title = title;
+        this.releaseDate = releaseDate;
+        this.runtime = runtime;
+        this.video = video;
+        this.voteAverage = voteAverage;
+        this.voteCount = voteCount;
+
+        mGenreIds = genreIds;
+        mReviews = reviews;
+        mVideos = videos;
+        mReviewsJson = null;
+        mVideosJson = null;
+
+        mSections = sections & DetailSection.DEFAULT;
+        mCreditsJson = null;
+        mSimilarJson = null;
+        mReleaseDatesJson = null;
+    }
+
+    /**
+     * Constructs the object from two copies of the same movie: every field of the fresher one,
+     * and whichever sections only the older one carries.
+     */
+    private TMDbMovie(TMDbMovie fresh, TMDbMovie older) {
+        adult = fresh.adult;
+        backdropPath = fresh.backdropPath;
+        id = fresh.id;
+        originalLanguage = fresh.originalLanguage;
+        originalTitle = fresh.originalTitle;
+        mOverview = fresh.mOverview;
+        popularity = fresh.popularity;
+        posterPath = fresh.posterPath;
+        title = fresh.title;
+        releaseDate = fresh.releaseDate;
+        // List results leave the runtime out.
+        runtime = fresh.runtime != 0 ? fresh.runtime : older.runtime;
+        video = fresh.video;
+        voteAverage = fresh.voteAverage;
+        voteCount = fresh.voteCount;
+
+        mGenreIds = fresh.mGenreIds;
+        mPosterUris = fresh.mPosterUris;
+
+        TMDbMovie videos = fresh.hasSections(DetailSection.VIDEOS.bit()) ? fresh : older;
+        mVideos = videos.mVideos;
+        mVideosJson = videos.mVideosJson;
+        TMDbMovie reviews = fresh.hasSections(DetailSection.REVIEWS.bit()) ? fresh : older;
+        mReviews = reviews.mReviews;
+        mReviewsJson = reviews.mReviewsJson;
+
+        TMDbMovie credits = fresh.mCreditsJson != null ? fresh : older;
+        mCreditsJson = credits.mCreditsJson;
+        mCast = credits.mCast;
+        TMDbMovie similar = fresh.mSimilarJson != null ? fresh : older;
+        mSimilarJson = similar.mSimilarJson;
+        mSimilar = similar.mSimilar;
+        TMDbMovie releaseDates = fresh.mReleaseDatesJson != null ? fresh : older;
+        mReleaseDatesJson = releaseDates.mReleaseDatesJson;
+        mReleaseDates = releaseDates.mReleaseDates;
+
+        mSections = fresh.mSections | older.mSections;
+    }
+
+    /**
+     * Merges two copies of the same movie, as when a list response brings fresh votes for a
+     * movie whose details were fetched earlier.
+     * @param fresh The copy just parsed, whose fields win.
+     * @param older A copy with sections the fresh one may lack.
+     * @return A movie with every field of the fresh copy and every section of either.
+     */
+    public static TMDbMovie merge(TMDbMovie fresh, TMDbMovie older) {
+        return new TMDbMovie(fresh, older);
+    }
+
+    /**
+     * Checks whether another copy of the same movie has the same list-level fields, the ones a
+     * list response carries, so either copy will do.
+     */
+    public boolean hasSameListFields(TMDbMovie other) {
+        return id == other.id
+                && adult == other.adult
+                && video == other.video
+                && voteCount == other.voteCount
+                && Double.compare(popularity, other.popularity) == 0
+                && Double.compare(voteAverage, other.voteAverage) == 0
+                && equal(title, other.title)
+                && equal(originalTitle, other.originalTitle)
+                && equal(originalLanguage, other.originalLanguage)
+                && equal(posterPath, other.posterPath)
+                && equal(backdropPath, other.backdropPath)
+                && equal(releaseDate, other.releaseDate)
+                && Arrays.equals(mGenreIds, other.mGenreIds)
+                && mOverview.contentEquals(other.mOverview);
+    }
+
+    public String getOverview() {
+        return mOverview.get();
+    }
+
+    /**
+     * Estimates the memory the overview retains, in bytes, without decoding it.
+     */
+    public int getOverviewSize() {
+        return mOverview.retainedSize();
+    }
+
+    LazyText overviewText() {
+        return mOverview;
+    }
+
+    /*
+     * The arrays below are shared, so callers must not modify them. The getters after the first
+     * may race to build the same array on first read. That's harmless: both threads build equal
+     * arrays, and whichever is stored last is kept.
+     */
+
+    public int[] getGenreIds() {
+        return mGenreIds;
+    }
+
+    public Review[] getReviews() {
+        Review[] reviews = mReviews;
+
+        if (reviews == null) {
+            reviews = parseReviews(mReviewsJson);
+            mReviews = reviews;
+        }
+        return reviews;
+    }
+
+    public Video[] getVideos() {
+        Video[] videos = mVideos;
+
+        if (videos == null) {
+            videos = parseVideos(mVideosJson);
+            mVideos = videos;
+        }
+        return videos;
+    }
+
+    public CastMember[] getCast() {
+        CastMember[] cast = mCast;
+
+        if (cast == null) {
+            cast = parseCast(mCreditsJson);
+            mCast = cast;
+        }
+        return cast;
+    }
+
+    public TMDbMovie[] getSimilar() {
+        TMDbMovie[] similar = mSimilar;
+
+        if (similar == null) {
+            similar = parseSimilar(mSimilarJson);
+            mSimilar = similar;
+        }
+        return similar;
+    }
+
+    public ReleaseDate[] getReleaseDates() {
+        ReleaseDate[] releaseDates = mReleaseDates;
+
+        if (releaseDates == null) {
+            releaseDates = parseReleaseDates(mReleaseDatesJson);
+            mReleaseDates = releaseDates;
+        }
+        return releaseDates;
+    }
+
+    /**
+     * Gets the movie's age rating in a country, from its release dates.
+     * @param country ISO 3166-1 country code, such as "US".
+     * @return The first non-empty certification for the country, or "" if there's none.
+     */
+    public String getCertification(String country) {
+        for (ReleaseDate releaseDate : getReleaseDates()) {
+            if (releaseDate.country.equals(country) && !releaseDate.certification.isEmpty()) {
+                return releaseDate.certification;
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Gets the sections the movie carries. A section that was fetched but turned out empty still
+     * counts, as fetching it again wouldn't find more.
+     * @return Mask of {@link DetailSection}s.
+     */
+    public int getSections() {
+        return mSections;
+    }
+
+    /**
+     * Checks whether the movie carries every one of the given sections, so a screen that needs
+     * them can use it without another request.
+     * @param sections Mask of {@link DetailSection}s.
+     */
+    public boolean hasSections(int sections) {
+        return (mSections & sections) == sections;
+    }
+
+    /**
+     * Gets the length of the optional sections' JSON text, which is most of what they retain,
+     * for estimating the movie's size.
+     */
+    public int getSectionsJsonLength() {
+        return length(mCreditsJson) + length(mSimilarJson) + length(mReleaseDatesJson);
+    }
+
+    /**
+     * Estimates the memory the genre IDs, reviews and videos retain, in bytes, without building
+     * the reviews and videos: four bytes per genre ID, and two bytes per character of the
+     * reviews' and videos' JSON text when they're kept as JSON, or else the arrays built up
+     * front, at a fixed overhead per object.
+     */
+    public int getCollectionsSize() {
+        final int OBJECT_OVERHEAD = 16;
+
+        int size = 4 * mGenreIds.length + 2 * (length(mReviewsJson) + length(mVideosJson));
+
+        Review[] reviews = mReviewsJson == null ? mReviews : null;
+        if (reviews != null) {
+            for (Review review : reviews) {
+                size += OBJECT_OVERHEAD * 4 + 2 * length(review.author) + review.getContentSize();
+            }
+        }
+
+        Video[] videos = mVideosJson == null ? mVideos : null;
+        if (videos != null) {
+            for (Video video : videos) {
+                size += OBJECT_OVERHEAD * 5
+                        + 2 * (length(video.key) + length(video.name) + length(video.site));
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the URI of the movie's poster at the given size. Each size is only built once, so
+     * rebinding a grid cell reuses the same URI.
+     * @param size Size of the poster, usually from {@link NetworkUtils.PosterSize#forWidth(int)}.
+     * @return The poster URI.
+     */
+    public Uri getPosterUri(NetworkUtils.PosterSize size) {
+        Uri[] posterUris = mPosterUris;
+
+        // A racing thread may build its own array and URI; either result is equal and usable.
+        if (posterUris == null) {
+            posterUris = new Uri[POSTER_SIZE_COUNT];
+            mPosterUris = posterUris;
+        }
+
+        Uri posterUri = posterUris[size.ordinal()];
+        if (posterUri == null) {
+            posterUri = NetworkUtils.buildPosterUri(posterPath, size);
+            posterUris[size.ordinal()] = posterUri;
+        }
+        return posterUri;
+    }
+
+    /**
+     * Gets the shared copy of a string that only takes a handful of values.
+     * @return An equal string, the same instance for every caller, or the value itself once
+     * enough strings are interned.
+     */
+    static String intern(String value) {
+        if (value == null) {
+            return null;
         }
 
-        // Parse videos if available
-        Video parsed_videos[];
+        String interned = sInterned.get(value);
+        if (interned != null) {
+            return interned;
+        }
+        if (sInterned.size() >= MAX_INTERNED) {
+            return value;
+        }
+
+        interned = sInterned.putIfAbsent(value, value);
+        return interned != null ? interned : value;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /* SQLite stores NaN as NULL, so read it back as NaN. */
+    private static double getDouble(Cursor cursor, String column) {
+        int index = cursor.getColumnIndexOrThrow(column);
+        return cursor.isNull(index) ? Double.NaN : cursor.getDouble(index);
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * Gets the JSON text of an optional section's sub-response, if there is one.
+     */
+    private static String optSectionJson(JSONObject movieJson, String key) {
+        JSONObject subResponse = movieJson.optJSONObject(key);
+        return subResponse != null ? subResponse.toString() : null;
+    }
+
+    /**
+     * Reads a genre ID array. Anything but numbers reads as 0.
+     */
+    private static int[] optIntArray(JSONArray array) {
+        if (array == null || array.length() == 0) {
+            return NO_GENRE_IDS;
+        }
+
+        int[] values = new int[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.optInt(i);
+        }
+        return values;
+    }
+
+    /* A results array holding anything but objects is treated as having no results. */
+
+    private static Video[] parseVideos(String videosJson) {
+        List<Video> videos = parseSectionArray(videosJson, RESULTS_KEY,
+                new ElementReader<Video>() {
+                    @Override
+                    public Video read(JsonReader reader) throws IOException {
+                        return new Video(reader);
+                    }
+                });
+        return videos.isEmpty() ? NO_VIDEOS : videos.toArray(new Video[videos.size()]);
+    }
+
+    private static Review[] parseReviews(String reviewsJson) {
+        List<Review> reviews = parseSectionArray(reviewsJson, RESULTS_KEY,
+                new ElementReader<Review>() {
+                    @Override
+                    public Review read(JsonReader reader) throws IOException {
+                        return new Review(reader);
+                    }
+                });
+        return reviews.isEmpty() ? NO_REVIEWS : reviews.toArray(new Review[reviews.size()]);
+    }
+
+    private static CastMember[] parseCast(String creditsJson) {
+        List<CastMember> cast = parseSectionArray(creditsJson, CAST_KEY,
+                new ElementReader<CastMember>() {
+                    @Override
+                    public CastMember read(JsonReader reader) throws IOException {
+                        return new CastMember(reader);
+                    }
+                });
+        return cast.isEmpty() ? NO_CAST : cast.toArray(new CastMember[cast.size()]);
+    }
+
+    private static TMDbMovie[] parseSimilar(String similarJson) {
+        List<TMDbMovie> similar = parseSectionArray(similarJson, RESULTS_KEY,
+                new ElementReader<TMDbMovie>() {
+                    @Override
+                    public TMDbMovie read(JsonReader reader) throws IOException {
+                        return new TMDbMovie(reader);
+                    }
+                });
+        return similar.isEmpty() ? NO_MOVIES : similar.toArray(new TMDbMovie[similar.size()]);
+    }
+
+    private static ReleaseDate[] parseReleaseDates(String releaseDatesJson) {
+        List<List<ReleaseDate>> countries = parseSectionArray(releaseDatesJson, RESULTS_KEY,
+                new ElementReader<List<ReleaseDate>>() {
+                    @Override
+                    public List<ReleaseDate> read(JsonReader reader) throws IOException {
+                        return ReleaseDate.readCountry(reader);
+                    }
+                });
+
+        List<ReleaseDate> releaseDates = new ArrayList<>();
+        for (List<ReleaseDate> country : countries) {
+            releaseDates.addAll(country);
+        }
+        return releaseDates.isEmpty()
+                ? NO_RELEASE_DATES
+                : releaseDates.toArray(new ReleaseDate[releaseDates.size()]);
+    }
+
+    /**
+     * Reads one element of an array in a section's JSON.
+     */
+    private interface ElementReader<T> {
+        T read(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * Reads the elements of the named array out of a section's JSON object. JSON that doesn't
+     * have the expected shape is logged and treated as having no elements, since it was already
+     * well-formed enough to be copied out of the response.
+     * @param sectionJson The section's JSON text, may be null.
+     * @param arrayKey Key of the array in the section's object.
+     * @param elementReader Reads each element.
+     * @return The elements, empty if there are none.
+     */
+    private static <T> List<T> parseSectionArray(String sectionJson, String arrayKey,
+                                                 ElementReader<T> elementReader) {
+        List<T> elements = new ArrayList<>();
+        if (sectionJson == null) {
+            return elements;
+        }
+
+        JsonReader reader = new JsonReader(new StringReader(sectionJson));
         try {
-            JSONObject videosJson = movieJson.getJSONObject(VIDEOS_KEY);
-            parsed_videos = parseVideos(videosJson.getJSONArray(RESULTS_KEY));
-        } catch (JSONException e) {
-            parsed_videos = new Video[0];
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(arrayKey)
+                        && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        elements.add(elementReader.read(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            e.printStackTrace();
+            elements.clear();
+        } finally {
+            closeQuietly(reader);
         }
-        videos = parsed_videos;
+        return elements;
+    }
 
-        // Parse reviews if available
-        Review parsed_reviews[];
+    private static void closeQuietly(JsonReader reader) {
         try {
-            JSONObject reviewsJson = movieJson.getJSONObject(REVIEWS_KEY);
-            parsed_reviews = parseReviews(reviewsJson.getJSONArray(RESULTS_KEY));
-        } catch (JSONException e){
-            parsed_reviews = new Review[0];
+            reader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Copies the value at the reader out as compact JSON text, so it can be parsed later.
+     * @return The JSON text, or null if the value is null or isn't an object or array.
+     */
+    private static String readJsonText(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.BEGIN_OBJECT && token != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
         }
-        reviews = parsed_reviews;
+
+        StringWriter text = new StringWriter();
+        JsonWriter writer = new JsonWriter(text);
+        int depth = 0;
+
+        do {
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                    reader.beginObject();
+                    writer.beginObject();
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    reader.endObject();
+                    writer.endObject();
+                    depth--;
+                    break;
+                case BEGIN_ARRAY:
+                    reader.beginArray();
+                    writer.beginArray();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    reader.endArray();
+                    writer.endArray();
+                    depth--;
+                    break;
+                case NAME:
+                    writer.name(reader.nextName());
+                    break;
+                case STRING:
+                    writer.value(reader.nextString());
+                    break;
+                case NUMBER:
+                    // Keep the number as written, so integers don't come back as doubles.
+                    writer.value(new BigDecimal(reader.nextString()));
+                    break;
+                case BOOLEAN:
+                    writer.value(reader.nextBoolean());
+                    break;
+                default:
+                    reader.nextNull();
+                    writer.nullValue();
+                    break;
+            }
+        } while (depth > 0);
+
+        writer.close();
+        return text.toString();
     }
 
-    private Video[] parseVideos(JSONArray videosJson)
-            throws JSONException {
+    private static int[] nextIntArray(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return NO_GENRE_IDS;
+        }
 
-        Video videos[] = new Video[videosJson.length()];
+        // Genre lists are short, so grow a small primitive buffer instead of boxing into a List.
+        int[] values = new int[4];
+        int count = 0;
 
-        for (int i = 0; i < videosJson.length(); i++) {
-            JSONObject videoJson = videosJson.getJSONObject(i);
-            videos[i] = new Video(videoJson);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nextInt(reader);
         }
+        reader.endArray();
 
-        return videos;
+        if (count == 0) {
+            return NO_GENRE_IDS;
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
     }
 
-    private Review[] parseReviews(JSONArray reviewsJson)
-            throws JSONException {
-        Review reviews[] = new Review[reviewsJson.length()];
+    /* The next* helpers mirror JSONObject's opt* defaults for null or mismatched values. */
 
-        for (int i = 0; i < reviewsJson.length(); i++) {
-            JSONObject reviewJson = reviewsJson.getJSONObject(i);
-            reviews[i] = new Review(reviewJson);
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
         }
+        return reader.nextString();
+    }
 
-        return reviews;
+    private static boolean nextBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BOOLEAN) {
+            reader.skipValue();
+            return false;
+        }
+        return reader.nextBoolean();
     }
 
-    private class Review {
+    private static int nextInt(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return 0;
+        }
+        return (int) reader.nextDouble();
+    }
+
+    private static double nextDouble(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return Double.NaN;
+        }
+        return reader.nextDouble();
+    }
+
+    public static class Review {
+        private static final String AUTHOR_KEY = "author";
+        private static final String CONTENT_KEY = "content";
+        private static final String URL_KEY = "url";
+
         public final String author;
-        public final String content;
-        public final URL url;
 
-        public Review(JSONObject reviewJson) {
-            final String AUTHOR_KEY = "author";
-            final String CONTENT_KEY = "content";
-            final String URL_KEY = "url";
+        /* Reviews can run to thousands of characters, so this may be decoded on first read. */
+        private final LazyText mContent;
+
+        /* The review's URL as TMDb sent it, only turned into a URL on first read. */
+        private final String mUrlSpec;
+        private URL mUrl;
+        private volatile boolean mUrlResolved;
 
+        public Review(JSONObject reviewJson) {
             author = reviewJson.optString(AUTHOR_KEY);
-            content = reviewJson.optString(CONTENT_KEY);
-
-            URL _url;  // Can't do this with url directly since it's possible to be assigned twice.
-            try {
-                _url = new URL(reviewJson.optString(URL_KEY));
-            } catch (MalformedURLException e) {
-                e.printStackTrace();
-                _url = null;
+            mContent = LazyText.of(reviewJson.optString(CONTENT_KEY));
+            mUrlSpec = reviewJson.optString(URL_KEY);
+        }
+
+        public Review(JsonReader reader) throws IOException {
+            String parsedAuthor = "";
+            String parsedContent = "";
+            String parsedUrl = "";
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case AUTHOR_KEY:
+                        parsedAuthor = nextString(reader);
+                        break;
+                    case CONTENT_KEY:
+                        parsedContent = nextString(reader);
+                        break;
+                    case URL_KEY:
+                        parsedUrl = nextString(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            author = parsedAuthor;
+            mContent = LazyText.of(parsedContent);
+            mUrlSpec = parsedUrl;
+        }
+
+        /**
+         * Constructs the object from a row of the local movie store's reviews table.
+         */
+        public Review(Cursor cursor) {
+            author = cursor.getString(cursor.getColumnIndexOrThrow(ReviewEntry.COLUMN_AUTHOR));
+            mContent = LazyText.of(
+                    cursor.getString(cursor.getColumnIndexOrThrow(ReviewEntry.COLUMN_CONTENT)));
+            mUrlSpec = cursor.getString(cursor.getColumnIndexOrThrow(ReviewEntry.COLUMN_URL));
+        }
+
+        /**
+         * Constructs the object from already decoded fields, for TMDbMovieCodec.
+         */
+        Review(String author, LazyText content, String urlSpec) {
+            this.author = author;
+            this.mContent = content;
+            this.mUrlSpec = urlSpec;
+        }
+
+        public String getContent() {
+            return mContent.get();
+        }
+
+        /**
+         * Estimates the memory the content retains, in bytes, without decoding it.
+         */
+        public int getContentSize() {
+            return mContent.retainedSize();
+        }
+
+        LazyText contentText() {
+            return mContent;
+        }
+
+        /**
+         * Gets the review's URL, or null if it has none or it's malformed.
+         */
+        public URL getUrl() {
+            // mUrl is written before the volatile flag, so a thread that sees the flag sees it.
+            if (!mUrlResolved) {
+                URL _url = null;
+                if (mUrlSpec != null && !mUrlSpec.isEmpty()) {
+                    try {
+                        _url = new URL(mUrlSpec);
+                    } catch (MalformedURLException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+                mUrl = _url;
+                mUrlResolved = true;
             }
+            return mUrl;
+        }
 
-            url = _url;
+        /**
+         * Gets the review's URL as TMDb sent it, without building a URL.
+         */
+        String getUrlSpec() {
+            return mUrlSpec;
         }
     }
 
-    private class Video {
+    public static class Video {
+        private static final String KEY_KEY = "key";
+        private static final String NAME_KEY = "name";
+        private static final String SITE_KEY = "site";
+        private static final String YOUTUBE_SITE_VALUE = "YouTube";
+
         public final String key;
         public final String name;
         public final String site;
-        public final URL url;
 
-        public Video(JSONObject videoJson) {
-            final String KEY_KEY = "key";
-            final String NAME_KEY = "name";
-            final String SITE_KEY = "site";
-            final String YOUTUBE_SITE_VALUE = "YouTube";
+        /* Building the YouTube URL goes through Uri, so it's only done on first read. */
+        private URL mUrl;
+        private volatile boolean mUrlResolved;
 
+        public Video(JSONObject videoJson) {
             key = videoJson.optString(KEY_KEY);
             name = videoJson.optString(NAME_KEY);
-            site = videoJson.optString(SITE_KEY);
+            site = intern(videoJson.optString(SITE_KEY));
+        }
+
+        public Video(JsonReader reader) throws IOException {
+            String parsedKey = "";
+            String parsedName = "";
+            String parsedSite = "";
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case KEY_KEY:
+                        parsedKey = nextString(reader);
+                        break;
+                    case NAME_KEY:
+                        parsedName = nextString(reader);
+                        break;
+                    case SITE_KEY:
+                        parsedSite = nextString(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            key = parsedKey;
+            name = parsedName;
+            site = intern(parsedSite);
+        }
+
+        /**
+         * Constructs the object from a row of the local movie store's videos table.
+         */
+        public Video(Cursor cursor) {
+            key = cursor.getString(cursor.getColumnIndexOrThrow(VideoEntry.COLUMN_KEY));
+            name = cursor.getString(cursor.getColumnIndexOrThrow(VideoEntry.COLUMN_NAME));
+            site = intern(cursor.getString(cursor.getColumnIndexOrThrow(VideoEntry.COLUMN_SITE)));
+        }
+
+        /**
+         * Constructs the object from already decoded fields, for TMDbMovieCodec.
+         */
+        Video(String key, String name, String site) {
+            this.key = key;
+            this.name = name;
+            this.site = intern(site);
+        }
+
+        /**
+         * Gets the URL to watch the video, or null if it isn't on YouTube.
+         */
+        public URL getUrl() {
+            // mUrl is written before the volatile flag, so a thread that sees the flag sees it.
+            if (!mUrlResolved) {
+                mUrl = site.equals(YOUTUBE_SITE_VALUE) ? NetworkUtils.buildYoutubeUrl(key) : null;
+                mUrlResolved = true;
+            }
+            return mUrl;
+        }
+    }
+
+    public static class CastMember {
+        private static final String NAME_KEY = "name";
+        private static final String CHARACTER_KEY = "character";
+
+        public final String name;
+        public final String character;
+
+        public CastMember(JsonReader reader) throws IOException {
+            String parsedName = "";
+            String parsedCharacter = "";
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case NAME_KEY:
+                        parsedName = nextString(reader);
+                        break;
+                    case CHARACTER_KEY:
+                        parsedCharacter = nextString(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+
+            name = parsedName;
+            character = parsedCharacter;
+        }
+    }
+
+    public static class ReleaseDate {
+        private static final String COUNTRY_KEY = "iso_3166_1";
+        private static final String CERTIFICATION_KEY = "certification";
+        private static final String TYPE_KEY = "type";
+
+        /* ISO 3166-1 code of the country the movie was released in. */
+        public final String country;
+        public final String certification;
+        public final String date;
+        /* TMDb's release type, such as 3 for theatrical or 4 for digital. */
+        public final int type;
+
+        ReleaseDate(String country, String certification, String date, int type) {
+            this.country = intern(country);
+            this.certification = intern(certification);
+            this.date = date;
+            this.type = type;
+        }
+
+        /**
+         * Reads one country's entry of a release dates sub-response, which lists every release
+         * in that country.
+         */
+        static List<ReleaseDate> readCountry(JsonReader reader) throws IOException {
+            String country = "";
+            List<String> certifications = new ArrayList<>();
+            List<String> dates = new ArrayList<>();
+            int[] types = new int[4];
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (name.equals(COUNTRY_KEY)) {
+                    country = nextString(reader);
+                } else if (name.equals(RELEASE_DATES_KEY)
+                        && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String certification = "";
+                        String date = "";
+                        int type = 0;
+
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case CERTIFICATION_KEY:
+                                    certification = nextString(reader);
+                                    break;
+                                case RELEASE_DATE_KEY:
+                                    date = nextString(reader);
+                                    break;
+                                case TYPE_KEY:
+                                    type = nextInt(reader);
+                                    break;
+                                default:
+                                    reader.skipValue();
+                                    break;
+                            }
+                        }
+                        reader.endObject();
+
+                        if (certifications.size() == types.length) {
+                            types = Arrays.copyOf(types, types.length * 2);
+                        }
+                        types[certifications.size()] = type;
+                        certifications.add(certification);
+                        dates.add(date);
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
 
-            if (site.equals(YOUTUBE_SITE_VALUE)) {
-                url = NetworkUtils.buildYoutubeUrl(key);
-            } else {
-                url = null;
+            // The country code may come after its releases, so they're only built at the end.
+            List<ReleaseDate> releaseDates = new ArrayList<>(certifications.size());
+            for (int i = 0; i < certifications.size(); i++) {
+                releaseDates.add(new ReleaseDate(country, certifications.get(i), dates.get(i),
+                        types[i]));
             }
+            return releaseDates;
         }
     }
 }
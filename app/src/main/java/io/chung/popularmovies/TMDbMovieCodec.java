@@ -0,0 +1,321 @@
+package io.chung.popularmovies;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact, versioned binary encoding of {@link TMDbMovie}, for caching and persisting movies
+ * without going back through JSON.
+ *
+ * Layout (version 2), with lengths and counts as unsigned varints and strings as a varint
+ * byte length followed by UTF-8:
+ * <pre>
+ *   byte    version
+ *   byte    flags (adult, video)
+ *   byte    sections carried, as a DetailSection mask of videos and reviews
+ *   int     id
+ *   int     runtime
+ *   int     voteCount
+ *   double  popularity
+ *   double  voteAverage
+ *   string  backdropPath, originalLanguage, originalTitle, posterPath, title, releaseDate
+ *   string  overview
+ *   varint  genre count, then each genre ID as a varint
+ *   varint  review count, then each review's author, content and url ("" for none)
+ *   varint  video count, then each video's key, name and site
+ * </pre>
+ *
+ * Of the optional detail sections, only videos and reviews are encoded; a decoded movie carries
+ * no others. Whether it carries those is kept too, so a list-level movie's empty videos and
+ * reviews aren't taken for fetched ones.
+ *
+ * Decoding reads the buffer in place. The overview and review content are not decoded until
+ * they're first read, so the buffer's contents must stay unchanged while decoded movies are in
+ * use.
+ */
+public final class TMDbMovieCodec {
+
+    /* Bumped whenever the layout changes; other versions are rejected rather than misread. */
+    public static final int VERSION = 2;
+
+    private static final int FLAG_ADULT = 1;
+    private static final int FLAG_VIDEO = 1 << 1;
+
+    /* Fixed-width part: version, flags, sections, three ints and two doubles. */
+    private static final int FIXED_SIZE = 1 + 1 + 1 + 3 * 4 + 2 * 8;
+
+    private TMDbMovieCodec() {
+    }
+
+    /**
+     * Gets the exact number of bytes {@link #encode(TMDbMovie, ByteBuffer)} will write.
+     */
+    public static int encodedSize(TMDbMovie movie) {
+        int size = FIXED_SIZE
+                + stringSize(movie.backdropPath)
+                + stringSize(movie.originalLanguage)
+                + stringSize(movie.originalTitle)
+                + stringSize(movie.posterPath)
+                + stringSize(movie.title)
+                + stringSize(movie.releaseDate)
+                + stringSize(movie.getOverview());
+
+        size += varintSize(movie.getGenreIds().length);
+        for (int genreId : movie.getGenreIds()) {
+            size += varintSize(genreId);
+        }
+
+        size += varintSize(movie.getReviews().length);
+        for (TMDbMovie.Review review : movie.getReviews()) {
+            size += stringSize(review.author)
+                    + stringSize(review.getContent())
+                    + stringSize(urlSpec(review));
+        }
+
+        size += varintSize(movie.getVideos().length);
+        for (TMDbMovie.Video video : movie.getVideos()) {
+            size += stringSize(video.key) + stringSize(video.name) + stringSize(video.site);
+        }
+
+        return size;
+    }
+
+    /**
+     * Encodes a movie into a new array.
+     */
+    public static byte[] encode(TMDbMovie movie) {
+        ByteBuffer out = ByteBuffer.allocate(encodedSize(movie));
+        encode(movie, out);
+        return out.array();
+    }
+
+    /**
+     * Encodes a movie at the buffer's position, advancing it. Nothing is allocated.
+     * @param movie The movie to encode.
+     * @param out Buffer with at least {@link #encodedSize(TMDbMovie)} bytes remaining.
+     * @throws java.nio.BufferOverflowException Thrown when the buffer is too small.
+     */
+    public static void encode(TMDbMovie movie, ByteBuffer out) {
+        int flags = (movie.adult ? FLAG_ADULT : 0) | (movie.video ? FLAG_VIDEO : 0);
+
+        out.put((byte) VERSION);
+        out.put((byte) flags);
+        out.put((byte) (movie.getSections() & DetailSection.DEFAULT));
+        out.putInt(movie.id);
+        out.putInt(movie.runtime);
+        out.putInt(movie.voteCount);
+        out.putDouble(movie.popularity);
+        out.putDouble(movie.voteAverage);
+
+        writeString(out, movie.backdropPath);
+        writeString(out, movie.originalLanguage);
+        writeString(out, movie.originalTitle);
+        writeString(out, movie.posterPath);
+        writeString(out, movie.title);
+        writeString(out, movie.releaseDate);
+        writeString(out, movie.getOverview());
+
+        writeVarint(out, movie.getGenreIds().length);
+        for (int genreId : movie.getGenreIds()) {
+            writeVarint(out, genreId);
+        }
+
+        writeVarint(out, movie.getReviews().length);
+        for (TMDbMovie.Review review : movie.getReviews()) {
+            writeString(out, review.author);
+            writeString(out, review.getContent());
+            writeString(out, urlSpec(review));
+        }
+
+        writeVarint(out, movie.getVideos().length);
+        for (TMDbMovie.Video video : movie.getVideos()) {
+            writeString(out, video.key);
+            writeString(out, video.name);
+            writeString(out, video.site);
+        }
+    }
+
+    /**
+     * Decodes a movie at the buffer's position, advancing it past the movie.
+     * @param in Buffer positioned at an encoded movie.
+     * @return The movie, whose overview and review content are decoded on first read.
+     * @throws IllegalArgumentException Thrown when the encoding is another version.
+     * @throws java.nio.BufferUnderflowException Thrown when the encoding is truncated.
+     */
+    public static TMDbMovie decode(ByteBuffer in) {
+        int version = in.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported TMDbMovie encoding version " + version);
+        }
+
+        // Lazy text keeps absolute indexes into this, so later moves of in's position are fine.
+        ByteBuffer source = in.duplicate();
+
+        int flags = in.get();
+        int sections = in.get();
+        int id = in.getInt();
+        int runtime = in.getInt();
+        int voteCount = in.getInt();
+        double popularity = in.getDouble();
+        double voteAverage = in.getDouble();
+
+        String backdropPath = readString(in);
+        String originalLanguage = readString(in);
+        String originalTitle = readString(in);
+        String posterPath = readString(in);
+        String title = readString(in);
+        String releaseDate = readString(in);
+        LazyText overview = readLazyText(in, source);
+
+        int[] genreIds = new int[readVarint(in)];
+        for (int i = 0; i < genreIds.length; i++) {
+            genreIds[i] = readVarint(in);
+        }
+
+        TMDbMovie.Review[] reviews = new TMDbMovie.Review[readVarint(in)];
+        for (int i = 0; i < reviews.length; i++) {
+            String author = readString(in);
+            LazyText content = readLazyText(in, source);
+            reviews[i] = new TMDbMovie.Review(author, content, readString(in));
+        }
+
+        TMDbMovie.Video[] videos = new TMDbMovie.Video[readVarint(in)];
+        for (int i = 0; i < videos.length; i++) {
+            videos[i] = new TMDbMovie.Video(readString(in), readString(in), readString(in));
+        }
+
+        return new TMDbMovie((flags & FLAG_ADULT) != 0, backdropPath, genreIds, id,
+                originalLanguage, originalTitle, overview, popularity, posterPath, title,
+                releaseDate, reviews, runtime, (flags & FLAG_VIDEO) != 0, videos, voteAverage,
+                voteCount, sections);
+    }
+
+    private static String urlSpec(TMDbMovie.Review review) {
+        String urlSpec = review.getUrlSpec();
+        return urlSpec != null ? urlSpec : "";
+    }
+
+    private static int stringSize(String value) {
+        int length = utf8Length(value);
+        return varintSize(length) + length;
+    }
+
+    private static void writeString(ByteBuffer out, String value) {
+        writeVarint(out, utf8Length(value));
+
+        // Encode by hand so no intermediate byte[] is allocated. Unpaired surrogates become '?',
+        // as they do with String.getBytes.
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                if (isSurrogatePair(value, i)) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    out.put((byte) (0xf0 | (codePoint >> 18)));
+                    out.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                    out.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                    out.put((byte) (0x80 | (codePoint & 0x3f)));
+                } else {
+                    out.put((byte) '?');
+                }
+            } else {
+                out.put((byte) (0xe0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (isSurrogatePair(value, i)) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 1;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isSurrogatePair(String value, int index) {
+        return Character.isHighSurrogate(value.charAt(index))
+                && index + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(index + 1));
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarint(in);
+        String value;
+
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length,
+                    StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static LazyText readLazyText(ByteBuffer in, ByteBuffer source) {
+        int length = readVarint(in);
+        LazyText text = LazyText.encoded(source, in.position(), length);
+
+        in.position(in.position() + length);
+        return text;
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void writeVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            if (shift > 28) {
+                throw new IllegalArgumentException("Malformed varint in TMDbMovie encoding");
+            }
+            b = in.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
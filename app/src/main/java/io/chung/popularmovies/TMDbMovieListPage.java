@@ -0,0 +1,20 @@
+package io.chung.popularmovies;
+
+/**
+ * A single page of a TMDb movie list response.
+ */
+public class TMDbMovieListPage {
+
+    /* TMDb always returns 20 movies per list page, except possibly the last one. */
+    public static final int PAGE_SIZE = 20;
+
+    public final int page;
+    public final int totalPages;
+    public final TMDbMovie[] movies;
+
+    public TMDbMovieListPage(int page, int totalPages, TMDbMovie[] movies) {
+        this.page = page;
+        this.totalPages = totalPages;
+        this.movies = movies;
+    }
+}
@@ -2,4 +2,6 @@ package io.chung.popularmovies.constants;
 
 public class IntentExtraKeys {
     public static final String MOVIE_ID = "io.chung.extra.MOVIE_ID";
+    public static final String POSTER_SIZE = "io.chung.extra.POSTER_SIZE";
+    public static final String TAP_UPTIME_MILLIS = "io.chung.extra.TAP_UPTIME_MILLIS";
 }
@@ -0,0 +1,209 @@
+package io.chung.popularmovies.data;
+
+import android.content.Context;
+import android.os.Process;
+import android.support.annotation.WorkerThread;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import io.chung.popularmovies.TMDbMovie;
+import io.chung.popularmovies.TMDbMovieCodec;
+import io.chung.popularmovies.TMDbMovieListPage;
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+/**
+ * The first page of each movie list as last seen, kept as one small file per list, so a cold
+ * start can put the last-known grid up without waiting for the database.
+ *
+ * Each file holds a format version, the list's page total and movie count as ints, followed by
+ * the movies in {@link TMDbMovieCodec}'s encoding. A file that can't be read is treated as
+ * missing. Writes go to a temporary file that's then renamed, so a reader never sees half of
+ * one.
+ */
+public final class ListSnapshot {
+
+    /* Bumped when the file layout changes; the codec checks its own version per movie. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_SIZE = 3 * 4;
+
+    private static final String DIRECTORY_NAME = "list-snapshots";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static ListSnapshot sInstance;
+
+    private final File mDirectory;
+
+    /* One thread keeps writes in order. Reads are on the startup path, so it isn't backgrounded. */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+                            runnable.run();
+                        }
+                    }, "ListSnapshot");
+                }
+            });
+
+    /**
+     * Gets the process-wide snapshot store.
+     */
+    public static synchronized ListSnapshot getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ListSnapshot(new File(context.getFilesDir(), DIRECTORY_NAME));
+        }
+        return sInstance;
+    }
+
+    ListSnapshot(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Reads a list's snapshot on the snapshot thread.
+     * @param sortCriteria The list to read.
+     * @return The snapshot's first page, or null if there's none, once read.
+     */
+    public Future<TMDbMovieListPage> readAsync(final NetworkUtils.SortCriteria sortCriteria) {
+        return mExecutor.submit(new Callable<TMDbMovieListPage>() {
+            @Override
+            public TMDbMovieListPage call() {
+                return read(sortCriteria);
+            }
+        });
+    }
+
+    /**
+     * Replaces a list's snapshot on the snapshot thread.
+     * @param sortCriteria The list the page belongs to.
+     * @param page The list's first page. Other pages are ignored.
+     */
+    public void putAsync(final NetworkUtils.SortCriteria sortCriteria,
+                         final TMDbMovieListPage page) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                put(sortCriteria, page);
+            }
+        });
+    }
+
+    /**
+     * Reads a list's snapshot.
+     * @param sortCriteria The list to read.
+     * @return The snapshot's first page, or null if there's none or it can't be read.
+     */
+    @WorkerThread
+    public TMDbMovieListPage read(NetworkUtils.SortCriteria sortCriteria) {
+        File file = snapshotFile(sortCriteria);
+
+        byte[] bytes;
+        try {
+            bytes = readFully(file);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (in.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            int totalPages = in.getInt();
+            TMDbMovie[] movies = new TMDbMovie[in.getInt()];
+
+            for (int i = 0; i < movies.length; i++) {
+                movies[i] = TMDbMovieCodec.decode(in);
+            }
+            return new TMDbMovieListPage(1, totalPages, movies);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            // Truncated, or written by another version of the app.
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Replaces a list's snapshot.
+     * @param sortCriteria The list the page belongs to.
+     * @param page The list's first page. Other pages are ignored.
+     */
+    @WorkerThread
+    public void put(NetworkUtils.SortCriteria sortCriteria, TMDbMovieListPage page) {
+        if (page.page != 1 || page.movies == null) {
+            return;
+        }
+
+        int size = HEADER_SIZE;
+        for (TMDbMovie movie : page.movies) {
+            size += TMDbMovieCodec.encodedSize(movie);
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(FORMAT_VERSION);
+        out.putInt(page.totalPages);
+        out.putInt(page.movies.length);
+        for (TMDbMovie movie : page.movies) {
+            TMDbMovieCodec.encode(movie, out);
+        }
+
+        File file = snapshotFile(sortCriteria);
+        File tempFile = new File(mDirectory, file.getName() + TEMP_SUFFIX);
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return;
+        }
+
+        try {
+            FileOutputStream stream = new FileOutputStream(tempFile);
+            try {
+                stream.write(out.array());
+            } finally {
+                stream.close();
+            }
+
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Unable to replace " + file);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+        }
+    }
+
+    private File snapshotFile(NetworkUtils.SortCriteria sortCriteria) {
+        return new File(mDirectory, sortCriteria.name() + FILE_SUFFIX);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.chung.popularmovies.data;
+
+import android.provider.BaseColumns;
+
+/**
+ * Table and column names of the local movie store.
+ *
+ * Movies are stored once by TMDb ID and referenced by position from each movie list, so a movie
+ * that's both popular and top rated is only written once.
+ */
+public final class MovieContract {
+
+    private MovieContract() {
+    }
+
+    /**
+     * One row per movie. _ID is the TMDb movie ID.
+     */
+    public static final class MovieEntry implements BaseColumns {
+        public static final String TABLE_NAME = "movies";
+
+        public static final String COLUMN_ADULT = "adult";
+        public static final String COLUMN_BACKDROP_PATH = "backdrop_path";
+        public static final String COLUMN_ORIGINAL_LANGUAGE = "original_language";
+        public static final String COLUMN_ORIGINAL_TITLE = "original_title";
+        public static final String COLUMN_OVERVIEW = "overview";
+        public static final String COLUMN_POPULARITY = "popularity";
+        public static final String COLUMN_POSTER_PATH = "poster_path";
+        public static final String COLUMN_TITLE = "title";
+        public static final String COLUMN_RELEASE_DATE = "release_date";
+        public static final String COLUMN_RUNTIME = "runtime";
+        public static final String COLUMN_VIDEO = "video";
+        public static final String COLUMN_VOTE_AVERAGE = "vote_average";
+        public static final String COLUMN_VOTE_COUNT = "vote_count";
+
+        /* 1 once a details response (runtime, reviews and videos) has been stored. */
+        public static final String COLUMN_HAS_DETAILS = "has_details";
+
+        /* Hash of the list-level fields, so unchanged movies can be skipped when syncing. */
+        public static final String COLUMN_LIST_HASH = "list_hash";
+
+        /* When the row was last written, in milliseconds since the epoch. */
+        public static final String COLUMN_UPDATED_AT = "updated_at";
+    }
+
+    /**
+     * A movie's genre IDs, in TMDb's order.
+     */
+    public static final class GenreEntry {
+        public static final String TABLE_NAME = "movie_genres";
+
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_GENRE_ID = "genre_id";
+    }
+
+    /**
+     * A movie's reviews, in TMDb's order.
+     */
+    public static final class ReviewEntry {
+        public static final String TABLE_NAME = "reviews";
+
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_AUTHOR = "author";
+        public static final String COLUMN_CONTENT = "content";
+        public static final String COLUMN_URL = "url";
+    }
+
+    /**
+     * A movie's videos, in TMDb's order.
+     */
+    public static final class VideoEntry {
+        public static final String TABLE_NAME = "videos";
+
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_KEY = "key";
+        public static final String COLUMN_NAME = "name";
+        public static final String COLUMN_SITE = "site";
+    }
+
+    /**
+     * The movies at each position of each movie list.
+     */
+    public static final class ListEntry {
+        public static final String TABLE_NAME = "movie_lists";
+
+        /* Name of the list's NetworkUtils.SortCriteria. */
+        public static final String COLUMN_SORT = "sort";
+        public static final String COLUMN_POSITION = "position";
+        public static final String COLUMN_MOVIE_ID = "movie_id";
+    }
+
+    /**
+     * What's known about each movie list as a whole.
+     */
+    public static final class ListStateEntry {
+        public static final String TABLE_NAME = "list_state";
+
+        /* Name of the list's NetworkUtils.SortCriteria. */
+        public static final String COLUMN_SORT = "sort";
+        public static final String COLUMN_TOTAL_PAGES = "total_pages";
+
+        /* When a page of the list was last stored, in milliseconds since the epoch. */
+        public static final String COLUMN_SYNCED_AT = "synced_at";
+    }
+}
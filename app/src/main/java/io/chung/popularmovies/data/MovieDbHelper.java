@@ -0,0 +1,117 @@
+package io.chung.popularmovies.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import io.chung.popularmovies.data.MovieContract.GenreEntry;
+import io.chung.popularmovies.data.MovieContract.ListEntry;
+import io.chung.popularmovies.data.MovieContract.ListStateEntry;
+import io.chung.popularmovies.data.MovieContract.MovieEntry;
+import io.chung.popularmovies.data.MovieContract.ReviewEntry;
+import io.chung.popularmovies.data.MovieContract.VideoEntry;
+
+/**
+ * Creates and upgrades the local movie store.
+ */
+public class MovieDbHelper extends SQLiteOpenHelper {
+
+    public static final String DATABASE_NAME = "movies.db";
+
+    private static final int DATABASE_VERSION = 1;
+
+    /**
+     * @param context Context used to locate the database file.
+     * @param name Database file name, or null for an in-memory database.
+     */
+    public MovieDbHelper(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+
+        // Lets the UI read a list while a sync is writing to it.
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public MovieDbHelper(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + MovieEntry.TABLE_NAME + " ("
+                + MovieEntry._ID + " INTEGER PRIMARY KEY, "
+                + MovieEntry.COLUMN_ADULT + " INTEGER NOT NULL, "
+                + MovieEntry.COLUMN_BACKDROP_PATH + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_ORIGINAL_LANGUAGE + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_ORIGINAL_TITLE + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_OVERVIEW + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_POPULARITY + " REAL, "
+                + MovieEntry.COLUMN_POSTER_PATH + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_TITLE + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_RELEASE_DATE + " TEXT NOT NULL, "
+                + MovieEntry.COLUMN_RUNTIME + " INTEGER NOT NULL DEFAULT 0, "
+                + MovieEntry.COLUMN_VIDEO + " INTEGER NOT NULL, "
+                + MovieEntry.COLUMN_VOTE_AVERAGE + " REAL, "
+                + MovieEntry.COLUMN_VOTE_COUNT + " INTEGER NOT NULL, "
+                + MovieEntry.COLUMN_HAS_DETAILS + " INTEGER NOT NULL DEFAULT 0, "
+                + MovieEntry.COLUMN_LIST_HASH + " INTEGER NOT NULL, "
+                + MovieEntry.COLUMN_UPDATED_AT + " INTEGER NOT NULL)");
+
+        db.execSQL("CREATE TABLE " + GenreEntry.TABLE_NAME + " ("
+                + GenreEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL REFERENCES "
+                + MovieEntry.TABLE_NAME + " ON DELETE CASCADE, "
+                + GenreEntry.COLUMN_POSITION + " INTEGER NOT NULL, "
+                + GenreEntry.COLUMN_GENRE_ID + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + GenreEntry.COLUMN_MOVIE_ID + ", "
+                + GenreEntry.COLUMN_POSITION + "))");
+
+        db.execSQL("CREATE TABLE " + ReviewEntry.TABLE_NAME + " ("
+                + ReviewEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL REFERENCES "
+                + MovieEntry.TABLE_NAME + " ON DELETE CASCADE, "
+                + ReviewEntry.COLUMN_POSITION + " INTEGER NOT NULL, "
+                + ReviewEntry.COLUMN_AUTHOR + " TEXT NOT NULL, "
+                + ReviewEntry.COLUMN_CONTENT + " TEXT NOT NULL, "
+                + ReviewEntry.COLUMN_URL + " TEXT, "
+                + "PRIMARY KEY (" + ReviewEntry.COLUMN_MOVIE_ID + ", "
+                + ReviewEntry.COLUMN_POSITION + "))");
+
+        db.execSQL("CREATE TABLE " + VideoEntry.TABLE_NAME + " ("
+                + VideoEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL REFERENCES "
+                + MovieEntry.TABLE_NAME + " ON DELETE CASCADE, "
+                + VideoEntry.COLUMN_POSITION + " INTEGER NOT NULL, "
+                + VideoEntry.COLUMN_KEY + " TEXT NOT NULL, "
+                + VideoEntry.COLUMN_NAME + " TEXT NOT NULL, "
+                + VideoEntry.COLUMN_SITE + " TEXT NOT NULL, "
+                + "PRIMARY KEY (" + VideoEntry.COLUMN_MOVIE_ID + ", "
+                + VideoEntry.COLUMN_POSITION + "))");
+
+        db.execSQL("CREATE TABLE " + ListEntry.TABLE_NAME + " ("
+                + ListEntry.COLUMN_SORT + " TEXT NOT NULL, "
+                + ListEntry.COLUMN_POSITION + " INTEGER NOT NULL, "
+                + ListEntry.COLUMN_MOVIE_ID + " INTEGER NOT NULL REFERENCES "
+                + MovieEntry.TABLE_NAME + " ON DELETE CASCADE, "
+                + "PRIMARY KEY (" + ListEntry.COLUMN_SORT + ", "
+                + ListEntry.COLUMN_POSITION + "))");
+
+        db.execSQL("CREATE TABLE " + ListStateEntry.TABLE_NAME + " ("
+                + ListStateEntry.COLUMN_SORT + " TEXT PRIMARY KEY, "
+                + ListStateEntry.COLUMN_TOTAL_PAGES + " INTEGER NOT NULL, "
+                + ListStateEntry.COLUMN_SYNCED_AT + " INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Everything here can be fetched again from TMDb, so start over rather than migrate.
+        db.execSQL("DROP TABLE IF EXISTS " + ListStateEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ListEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + VideoEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + ReviewEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + GenreEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + MovieEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
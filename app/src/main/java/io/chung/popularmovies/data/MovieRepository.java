@@ -0,0 +1,192 @@
+package io.chung.popularmovies.data;
+
+import android.util.LruCache;
+
+import io.chung.popularmovies.DetailSection;
+import io.chung.popularmovies.TMDbMovie;
+import io.chung.popularmovies.metrics.Metrics;
+
+/**
+ * Process-wide, memory-bounded cache of parsed movies keyed by TMDb movie ID, which is also the
+ * identity map that gives every list one instance of each movie.
+ *
+ * Movies from a list response only carry list-level fields, while a movie details response also
+ * carries runtime and whichever {@link DetailSection}s were asked for. Both are kept here; a
+ * list-level entry is upgraded when the details arrive, and is never downgraded by a later list
+ * response, nor by details carrying only some of the sections already cached. Instead, the
+ * fresher response's fields are merged with the sections already cached.
+ *
+ * Lists put their movies here as they're parsed, and get back the cached instance wherever it
+ * will do, so a movie in both the popular and the top rated list, or in a list and its stored
+ * copy, is held once. Movies read from the local store never replace ones from TMDb.
+ */
+public final class MovieRepository {
+
+    /* Share of the heap the repository may use. Parsed movies are small, so this holds hundreds. */
+    private static final int HEAP_FRACTION = 64;
+
+    private static MovieRepository sInstance;
+
+    private final LruCache<Integer, Entry> mEntries;
+
+    /**
+     * Gets the process-wide repository.
+     */
+    public static synchronized MovieRepository getInstance() {
+        if (sInstance == null) {
+            int maxSize = (int) (Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+            sInstance = new MovieRepository(maxSize);
+        }
+        return sInstance;
+    }
+
+    MovieRepository(int maxSize) {
+        mEntries = new LruCache<Integer, Entry>(maxSize) {
+            @Override
+            protected int sizeOf(Integer key, Entry entry) {
+                return entry.size;
+            }
+        };
+    }
+
+    /**
+     * Stores movies parsed from a movie list response, and replaces each one in the array with
+     * the instance to show. That's the cached one if it has the same fields, or the fresh one
+     * with any cached details merged in.
+     * @param movies Movies from a list response, replaced in place.
+     */
+    public synchronized void putMovies(TMDbMovie[] movies) {
+        for (int i = 0; i < movies.length; i++) {
+            TMDbMovie movie = movies[i];
+            Entry existing = mEntries.get(movie.id);
+
+            if (existing == null) {
+                mEntries.put(movie.id, new Entry(movie, false, true));
+            } else if (existing.fresh && existing.movie.hasSameListFields(movie)) {
+                movies[i] = existing.movie;
+                Metrics.MOVIES_SHARED.increment();
+            } else if (existing.hasDetails) {
+                movies[i] = TMDbMovie.merge(movie, existing.movie);
+                mEntries.put(movie.id, new Entry(movies[i], true, true));
+            } else {
+                mEntries.put(movie.id, new Entry(movie, false, true));
+            }
+        }
+    }
+
+    /**
+     * Stores movies read from the local store or the list snapshot, and replaces each one in the
+     * array with the cached instance, if there is one. Stored movies may be days old, so they
+     * only fill in movies that aren't cached.
+     * @param movies Stored movies, replaced in place.
+     */
+    public synchronized void putStoredMovies(TMDbMovie[] movies) {
+        for (int i = 0; i < movies.length; i++) {
+            TMDbMovie movie = movies[i];
+            Entry existing = mEntries.get(movie.id);
+
+            if (existing == null) {
+                mEntries.put(movie.id, new Entry(movie, false, false));
+            } else {
+                movies[i] = existing.movie;
+                Metrics.MOVIES_SHARED.increment();
+            }
+        }
+    }
+
+    /**
+     * Stores a movie parsed from a movie details response, upgrading any list-level entry. Cached
+     * details that carry more sections are kept instead, so a screen that needs them doesn't have
+     * to fetch them again.
+     * @param movie Movie from a details response.
+     */
+    public synchronized void putMovieDetails(TMDbMovie movie) {
+        Entry existing = mEntries.get(movie.id);
+
+        if (existing != null && existing.hasDetails
+                && !movie.hasSections(existing.movie.getSections())) {
+            // Keep the cached sections the response didn't ask for, under its fresher fields.
+            mEntries.put(movie.id, new Entry(TMDbMovie.merge(movie, existing.movie), true, true));
+            return;
+        }
+        mEntries.put(movie.id, new Entry(movie, true, true));
+    }
+
+    /**
+     * Gets whatever is known about a movie, which may only be its list-level fields.
+     * @param movieId TMDb movie ID.
+     * @return The movie, or null if it isn't cached.
+     */
+    public synchronized TMDbMovie getMovie(int movieId) {
+        Entry entry = mEntries.get(movieId);
+        return entry != null ? entry.movie : null;
+    }
+
+    /**
+     * Gets a movie only if its details, with videos and reviews, have been fetched.
+     * @param movieId TMDb movie ID.
+     * @return The movie with details, or null if only list-level fields (or nothing) are cached.
+     */
+    public synchronized TMDbMovie getMovieDetails(int movieId) {
+        return getMovieDetails(movieId, DetailSection.DEFAULT);
+    }
+
+    /**
+     * Gets a movie only if its details have been fetched with at least the given sections.
+     * @param movieId TMDb movie ID.
+     * @param sections Mask of {@link DetailSection}s the caller needs.
+     * @return The movie with details, or null if what's cached lacks any of the sections.
+     */
+    public synchronized TMDbMovie getMovieDetails(int movieId, int sections) {
+        Entry entry = mEntries.get(movieId);
+        return entry != null && entry.hasDetails && entry.movie.hasSections(sections)
+                ? entry.movie
+                : null;
+    }
+
+    /**
+     * Drops every cached movie, e.g. when the system is low on memory.
+     */
+    public synchronized void clear() {
+        mEntries.evictAll();
+    }
+
+    private static final class Entry {
+        final TMDbMovie movie;
+        final boolean hasDetails;
+        /* Whether the movie's fields came from TMDb rather than the local store. */
+        final boolean fresh;
+        final int size;
+
+        Entry(TMDbMovie movie, boolean hasDetails, boolean fresh) {
+            this.movie = movie;
+            this.hasDetails = hasDetails;
+            this.fresh = fresh;
+            this.size = estimateSize(movie);
+        }
+    }
+
+    /**
+     * Roughly estimates the retained size of a movie in bytes, counting two bytes per character
+     * of its strings plus a fixed overhead per object. Text still encoded counts its encoded
+     * bytes, and isn't decoded to be measured, nor are genres, reviews or videos still kept as
+     * JSON built.
+     */
+    private static int estimateSize(TMDbMovie movie) {
+        final int OBJECT_OVERHEAD = 16;
+
+        int size = OBJECT_OVERHEAD * 8
+                + 2 * (length(movie.backdropPath) + length(movie.originalLanguage)
+                + length(movie.originalTitle) + length(movie.posterPath) + length(movie.title)
+                + length(movie.releaseDate))
+                + movie.getOverviewSize()
+                + movie.getCollectionsSize()
+                + 2 * movie.getSectionsJsonLength();
+
+        return size;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
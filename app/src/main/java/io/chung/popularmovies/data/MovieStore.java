@@ -0,0 +1,638 @@
+package io.chung.popularmovies.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.WorkerThread;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import io.chung.popularmovies.TMDbMovie;
+import io.chung.popularmovies.TMDbMovieListPage;
+import io.chung.popularmovies.data.MovieContract.GenreEntry;
+import io.chung.popularmovies.data.MovieContract.ListEntry;
+import io.chung.popularmovies.data.MovieContract.ListStateEntry;
+import io.chung.popularmovies.data.MovieContract.MovieEntry;
+import io.chung.popularmovies.data.MovieContract.ReviewEntry;
+import io.chung.popularmovies.data.MovieContract.VideoEntry;
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+/**
+ * Persistent store of movie lists and movie details, so the app has something to show before,
+ * or without, a network response.
+ *
+ * Writes are incremental: a list page only rewrites the movies whose list-level fields changed
+ * and the positions whose movie changed, and reports what it did as a {@link SyncDiff}.
+ *
+ * Methods marked @WorkerThread hit the disk and must not be called on the main thread; the
+ * load and put*Async methods run them on the store's own thread instead.
+ */
+public final class MovieStore {
+
+    /* Movies that are in no list and weren't written for this long are pruned. */
+    private static final long PRUNE_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private static MovieStore sInstance;
+
+    private final MovieDbHelper mDbHelper;
+
+    /* A single thread keeps writes in order and ahead of any read queued after them. */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "MovieStore");
+                }
+            });
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the result of an asynchronous load on the main thread.
+     * @param <T> The type loaded.
+     */
+    public interface Callback<T> {
+        void onLoaded(T result);
+    }
+
+    /**
+     * A movie list as stored, from its first position up to the first gap.
+     */
+    public static final class StoredList {
+        public final TMDbMovie[] movies;
+        public final int totalPages;
+        /* When a page of the list was last stored, or 0 if it never was. */
+        public final long syncedAt;
+
+        StoredList(TMDbMovie[] movies, int totalPages, long syncedAt) {
+            this.movies = movies;
+            this.totalPages = totalPages;
+            this.syncedAt = syncedAt;
+        }
+    }
+
+    /**
+     * A stored movie, and whether its details (runtime, reviews and videos) were stored too.
+     */
+    public static final class StoredMovie {
+        public final TMDbMovie movie;
+        public final boolean hasDetails;
+
+        StoredMovie(TMDbMovie movie, boolean hasDetails) {
+            this.movie = movie;
+            this.hasDetails = hasDetails;
+        }
+    }
+
+    /**
+     * What storing a list page changed.
+     */
+    public static final class SyncDiff {
+        public int moviesInserted;
+        public int moviesUpdated;
+        public int moviesUnchanged;
+        public int positionsChanged;
+        public int positionsRemoved;
+
+        public boolean isEmpty() {
+            return moviesInserted == 0 && moviesUpdated == 0 && positionsChanged == 0
+                    && positionsRemoved == 0;
+        }
+
+        void add(SyncDiff other) {
+            moviesInserted += other.moviesInserted;
+            moviesUpdated += other.moviesUpdated;
+            moviesUnchanged += other.moviesUnchanged;
+            positionsChanged += other.positionsChanged;
+            positionsRemoved += other.positionsRemoved;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d movies inserted, %d updated, %d unchanged; "
+                            + "%d positions changed, %d removed",
+                    moviesInserted, moviesUpdated, moviesUnchanged, positionsChanged,
+                    positionsRemoved);
+        }
+    }
+
+    /**
+     * Gets the process-wide store.
+     */
+    public static synchronized MovieStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MovieStore(new MovieDbHelper(context.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    MovieStore(MovieDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Reads a stored list on the store's thread.
+     * @param sortCriteria The list to read.
+     * @param callback Receives the list on the main thread.
+     */
+    public void loadList(final NetworkUtils.SortCriteria sortCriteria,
+                         final Callback<StoredList> callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deliver(callback, getList(sortCriteria));
+            }
+        });
+    }
+
+    /**
+     * Reads a stored movie on the store's thread.
+     * @param movieId TMDb movie ID.
+     * @param callback Receives the movie, or null if it isn't stored, on the main thread.
+     */
+    public void loadMovie(final int movieId, final Callback<StoredMovie> callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                deliver(callback, getMovie(movieId));
+            }
+        });
+    }
+
+    /**
+     * Stores a list page on the store's thread.
+     */
+    public void putListPageAsync(final NetworkUtils.SortCriteria sortCriteria,
+                                 final TMDbMovieListPage page) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                putListPage(sortCriteria, page);
+            }
+        });
+    }
+
+    /**
+     * Stores a movie's details on the store's thread.
+     */
+    public void putMovieDetailsAsync(final TMDbMovie movie) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                putMovieDetails(movie);
+            }
+        });
+    }
+
+    /**
+     * Reads a stored list. Movies only carry their list-level fields and genres.
+     * @param sortCriteria The list to read.
+     * @return The list, which is empty if nothing was stored for it.
+     */
+    @WorkerThread
+    public StoredList getList(NetworkUtils.SortCriteria sortCriteria) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        String[] sortArgs = new String[]{sortCriteria.name()};
+
+        SparseArray<int[]> genres = queryGenres(db,
+                GenreEntry.COLUMN_MOVIE_ID + " IN (SELECT " + ListEntry.COLUMN_MOVIE_ID
+                        + " FROM " + ListEntry.TABLE_NAME
+                        + " WHERE " + ListEntry.COLUMN_SORT + " = ?)",
+                sortArgs);
+
+        List<TMDbMovie> movies = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT l." + ListEntry.COLUMN_POSITION + ", m.*"
+                + " FROM " + ListEntry.TABLE_NAME + " l"
+                + " JOIN " + MovieEntry.TABLE_NAME + " m"
+                + " ON m." + MovieEntry._ID + " = l." + ListEntry.COLUMN_MOVIE_ID
+                + " WHERE l." + ListEntry.COLUMN_SORT + " = ?"
+                + " ORDER BY l." + ListEntry.COLUMN_POSITION, sortArgs);
+        try {
+            int positionIndex = cursor.getColumnIndexOrThrow(ListEntry.COLUMN_POSITION);
+            int idIndex = cursor.getColumnIndexOrThrow(MovieEntry._ID);
+
+            while (cursor.moveToNext()) {
+                // A page that failed to store leaves a gap; positions past it can't be shown.
+                if (cursor.getInt(positionIndex) != movies.size()) {
+                    break;
+                }
+
+                int[] genreIds = genres.get(cursor.getInt(idIndex), new int[0]);
+                movies.add(new TMDbMovie(cursor, genreIds, new TMDbMovie.Review[0],
+                        new TMDbMovie.Video[0]));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        int totalPages = 0;
+        long syncedAt = 0;
+        Cursor stateCursor = db.query(ListStateEntry.TABLE_NAME,
+                new String[]{ListStateEntry.COLUMN_TOTAL_PAGES, ListStateEntry.COLUMN_SYNCED_AT},
+                ListStateEntry.COLUMN_SORT + " = ?", sortArgs, null, null, null);
+        try {
+            if (stateCursor.moveToFirst()) {
+                totalPages = stateCursor.getInt(0);
+                syncedAt = stateCursor.getLong(1);
+            }
+        } finally {
+            stateCursor.close();
+        }
+
+        return new StoredList(movies.toArray(new TMDbMovie[movies.size()]), totalPages, syncedAt);
+    }
+
+    /**
+     * Reads a stored movie, with its reviews and videos if its details were stored.
+     * @param movieId TMDb movie ID.
+     * @return The movie, or null if it isn't stored.
+     */
+    @WorkerThread
+    public StoredMovie getMovie(int movieId) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        String[] idArgs = new String[]{Integer.toString(movieId)};
+
+        Cursor cursor = db.query(MovieEntry.TABLE_NAME, null, MovieEntry._ID + " = ?", idArgs,
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+
+            boolean hasDetails = cursor.getInt(
+                    cursor.getColumnIndexOrThrow(MovieEntry.COLUMN_HAS_DETAILS)) != 0;
+
+            int[] genreIds = queryGenres(db, GenreEntry.COLUMN_MOVIE_ID + " = ?", idArgs)
+                    .get(movieId, new int[0]);
+            TMDbMovie.Review[] reviews = new TMDbMovie.Review[0];
+            TMDbMovie.Video[] videos = new TMDbMovie.Video[0];
+
+            if (hasDetails) {
+                reviews = queryReviews(db, idArgs);
+                videos = queryVideos(db, idArgs);
+            }
+
+            return new StoredMovie(new TMDbMovie(cursor, genreIds, reviews, videos), hasDetails);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Gets how many pages of a list are stored.
+     */
+    @WorkerThread
+    public int getStoredPageCount(NetworkUtils.SortCriteria sortCriteria) {
+        long movieCount = DatabaseUtils.queryNumEntries(mDbHelper.getReadableDatabase(),
+                ListEntry.TABLE_NAME, ListEntry.COLUMN_SORT + " = ?",
+                new String[]{sortCriteria.name()});
+        return (int) ((movieCount + TMDbMovieListPage.PAGE_SIZE - 1)
+                / TMDbMovieListPage.PAGE_SIZE);
+    }
+
+    /**
+     * Stores a page of a list. Only movies whose list-level fields changed are rewritten, and
+     * only positions whose movie changed. Movies that already have details keep them.
+     * @param sortCriteria The list the page belongs to.
+     * @param page The page as returned by TMDb.
+     * @return What was changed.
+     */
+    @WorkerThread
+    public SyncDiff putListPage(NetworkUtils.SortCriteria sortCriteria, TMDbMovieListPage page) {
+        TMDbMovie[] movies = page.movies != null ? page.movies : new TMDbMovie[0];
+        long now = System.currentTimeMillis();
+        SyncDiff diff = new SyncDiff();
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            SparseIntArray storedHashes = queryListHashes(db, movies);
+
+            for (TMDbMovie movie : movies) {
+                int hash = listHash(movie);
+                int index = storedHashes.indexOfKey(movie.id);
+
+                if (index < 0) {
+                    db.insert(MovieEntry.TABLE_NAME, null, listValues(movie, hash, now));
+                    writeGenres(db, movie);
+                    storedHashes.put(movie.id, hash);
+                    diff.moviesInserted++;
+                } else if (storedHashes.valueAt(index) != hash) {
+                    db.update(MovieEntry.TABLE_NAME, listValues(movie, hash, now),
+                            MovieEntry._ID + " = ?", new String[]{Integer.toString(movie.id)});
+                    writeGenres(db, movie);
+                    storedHashes.put(movie.id, hash);
+                    diff.moviesUpdated++;
+                } else {
+                    diff.moviesUnchanged++;
+                }
+            }
+
+            writeListPositions(db, sortCriteria, page.page, movies, diff);
+
+            ContentValues state = new ContentValues();
+            state.put(ListStateEntry.COLUMN_SORT, sortCriteria.name());
+            state.put(ListStateEntry.COLUMN_TOTAL_PAGES, page.totalPages);
+            state.put(ListStateEntry.COLUMN_SYNCED_AT, now);
+            db.insertWithOnConflict(ListStateEntry.TABLE_NAME, null, state,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return diff;
+    }
+
+    /**
+     * Stores a movie from a details response, with its genres, reviews and videos.
+     */
+    @WorkerThread
+    public void putMovieDetails(TMDbMovie movie) {
+        String[] idArgs = new String[]{Integer.toString(movie.id)};
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = listValues(movie, listHash(movie), System.currentTimeMillis());
+            values.put(MovieEntry.COLUMN_RUNTIME, movie.runtime);
+            values.put(MovieEntry.COLUMN_HAS_DETAILS, 1);
+
+            // Update rather than replace, since replacing would cascade to the list positions.
+            if (db.update(MovieEntry.TABLE_NAME, values, MovieEntry._ID + " = ?", idArgs) == 0) {
+                db.insert(MovieEntry.TABLE_NAME, null, values);
+            }
+            writeGenres(db, movie);
+
+            db.delete(ReviewEntry.TABLE_NAME, ReviewEntry.COLUMN_MOVIE_ID + " = ?", idArgs);
+            TMDbMovie.Review[] reviews = movie.getReviews();
+            for (int i = 0; i < reviews.length; i++) {
+                TMDbMovie.Review review = reviews[i];
+                ContentValues reviewValues = new ContentValues();
+                reviewValues.put(ReviewEntry.COLUMN_MOVIE_ID, movie.id);
+                reviewValues.put(ReviewEntry.COLUMN_POSITION, i);
+                reviewValues.put(ReviewEntry.COLUMN_AUTHOR, review.author);
+                reviewValues.put(ReviewEntry.COLUMN_CONTENT, review.getContent());
+                reviewValues.put(ReviewEntry.COLUMN_URL,
+                        review.getUrl() != null ? review.getUrl().toString() : null);
+                db.insert(ReviewEntry.TABLE_NAME, null, reviewValues);
+            }
+
+            db.delete(VideoEntry.TABLE_NAME, VideoEntry.COLUMN_MOVIE_ID + " = ?", idArgs);
+            TMDbMovie.Video[] videos = movie.getVideos();
+            for (int i = 0; i < videos.length; i++) {
+                TMDbMovie.Video video = videos[i];
+                ContentValues videoValues = new ContentValues();
+                videoValues.put(VideoEntry.COLUMN_MOVIE_ID, movie.id);
+                videoValues.put(VideoEntry.COLUMN_POSITION, i);
+                videoValues.put(VideoEntry.COLUMN_KEY, video.key);
+                videoValues.put(VideoEntry.COLUMN_NAME, video.name);
+                videoValues.put(VideoEntry.COLUMN_SITE, video.site);
+                db.insert(VideoEntry.TABLE_NAME, null, videoValues);
+            }
+
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Deletes movies that are in no list and haven't been written for a while.
+     * @return The number of movies deleted.
+     */
+    @WorkerThread
+    public int pruneMovies() {
+        long cutoff = System.currentTimeMillis() - PRUNE_AGE_MILLIS;
+
+        return mDbHelper.getWritableDatabase().delete(MovieEntry.TABLE_NAME,
+                MovieEntry.COLUMN_UPDATED_AT + " < ? AND " + MovieEntry._ID
+                        + " NOT IN (SELECT " + ListEntry.COLUMN_MOVIE_ID
+                        + " FROM " + ListEntry.TABLE_NAME + ")",
+                new String[]{Long.toString(cutoff)});
+    }
+
+    private <T> void deliver(final Callback<T> callback, final T result) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onLoaded(result);
+            }
+        });
+    }
+
+    /**
+     * Points the positions covered by a page at its movies, leaving positions that already
+     * hold the right movie alone. A short page is the end of the list, so anything after it
+     * is removed.
+     */
+    private static void writeListPositions(SQLiteDatabase db,
+                                           NetworkUtils.SortCriteria sortCriteria, int page,
+                                           TMDbMovie[] movies, SyncDiff diff) {
+        String sort = sortCriteria.name();
+        int start = (page - 1) * TMDbMovieListPage.PAGE_SIZE;
+        int end = start + TMDbMovieListPage.PAGE_SIZE;
+
+        SparseIntArray storedIds = new SparseIntArray();
+        Cursor cursor = db.query(ListEntry.TABLE_NAME,
+                new String[]{ListEntry.COLUMN_POSITION, ListEntry.COLUMN_MOVIE_ID},
+                ListEntry.COLUMN_SORT + " = ? AND " + ListEntry.COLUMN_POSITION + " >= ? AND "
+                        + ListEntry.COLUMN_POSITION + " < ?",
+                new String[]{sort, Integer.toString(start), Integer.toString(end)},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                storedIds.put(cursor.getInt(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (int i = 0; i < movies.length; i++) {
+            int position = start + i;
+
+            if (storedIds.get(position, -1) != movies[i].id) {
+                ContentValues values = new ContentValues();
+                values.put(ListEntry.COLUMN_SORT, sort);
+                values.put(ListEntry.COLUMN_POSITION, position);
+                values.put(ListEntry.COLUMN_MOVIE_ID, movies[i].id);
+                db.insertWithOnConflict(ListEntry.TABLE_NAME, null, values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+                diff.positionsChanged++;
+            }
+        }
+
+        if (movies.length < TMDbMovieListPage.PAGE_SIZE) {
+            diff.positionsRemoved += db.delete(ListEntry.TABLE_NAME,
+                    ListEntry.COLUMN_SORT + " = ? AND " + ListEntry.COLUMN_POSITION + " >= ?",
+                    new String[]{sort, Integer.toString(start + movies.length)});
+        }
+    }
+
+    private static void writeGenres(SQLiteDatabase db, TMDbMovie movie) {
+        db.delete(GenreEntry.TABLE_NAME, GenreEntry.COLUMN_MOVIE_ID + " = ?",
+                new String[]{Integer.toString(movie.id)});
+
+        int[] genreIds = movie.getGenreIds();
+        for (int i = 0; i < genreIds.length; i++) {
+            ContentValues values = new ContentValues();
+            values.put(GenreEntry.COLUMN_MOVIE_ID, movie.id);
+            values.put(GenreEntry.COLUMN_POSITION, i);
+            values.put(GenreEntry.COLUMN_GENRE_ID, genreIds[i]);
+            db.insert(GenreEntry.TABLE_NAME, null, values);
+        }
+    }
+
+    /**
+     * Reads the stored list hash of each of the given movies that's already stored.
+     */
+    private static SparseIntArray queryListHashes(SQLiteDatabase db, TMDbMovie[] movies) {
+        SparseIntArray hashes = new SparseIntArray();
+        if (movies.length == 0) {
+            return hashes;
+        }
+
+        StringBuilder selection = new StringBuilder(MovieEntry._ID).append(" IN (");
+        String[] selectionArgs = new String[movies.length];
+        for (int i = 0; i < movies.length; i++) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i] = Integer.toString(movies[i].id);
+        }
+        selection.append(')');
+
+        Cursor cursor = db.query(MovieEntry.TABLE_NAME,
+                new String[]{MovieEntry._ID, MovieEntry.COLUMN_LIST_HASH},
+                selection.toString(), selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                hashes.put(cursor.getInt(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return hashes;
+    }
+
+    /**
+     * Reads genre IDs by movie ID for the movies matching a selection on the genres table.
+     */
+    private static SparseArray<int[]> queryGenres(SQLiteDatabase db, String selection,
+                                                  String[] selectionArgs) {
+        SparseArray<int[]> genres = new SparseArray<>();
+
+        Cursor cursor = db.query(GenreEntry.TABLE_NAME,
+                new String[]{GenreEntry.COLUMN_MOVIE_ID, GenreEntry.COLUMN_GENRE_ID},
+                selection, selectionArgs, null, null,
+                GenreEntry.COLUMN_MOVIE_ID + ", " + GenreEntry.COLUMN_POSITION);
+        try {
+            while (cursor.moveToNext()) {
+                int movieId = cursor.getInt(0);
+                int[] genreIds = genres.get(movieId);
+
+                // Rows come grouped by movie, and genre lists are short, so grow one at a time.
+                genreIds = genreIds == null
+                        ? new int[1]
+                        : Arrays.copyOf(genreIds, genreIds.length + 1);
+                genreIds[genreIds.length - 1] = cursor.getInt(1);
+                genres.put(movieId, genreIds);
+            }
+        } finally {
+            cursor.close();
+        }
+        return genres;
+    }
+
+    private static TMDbMovie.Review[] queryReviews(SQLiteDatabase db, String[] idArgs) {
+        Cursor cursor = db.query(ReviewEntry.TABLE_NAME, null,
+                ReviewEntry.COLUMN_MOVIE_ID + " = ?", idArgs, null, null,
+                ReviewEntry.COLUMN_POSITION);
+        try {
+            TMDbMovie.Review[] reviews = new TMDbMovie.Review[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                reviews[i] = new TMDbMovie.Review(cursor);
+            }
+            return reviews;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static TMDbMovie.Video[] queryVideos(SQLiteDatabase db, String[] idArgs) {
+        Cursor cursor = db.query(VideoEntry.TABLE_NAME, null,
+                VideoEntry.COLUMN_MOVIE_ID + " = ?", idArgs, null, null,
+                VideoEntry.COLUMN_POSITION);
+        try {
+            TMDbMovie.Video[] videos = new TMDbMovie.Video[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                videos[i] = new TMDbMovie.Video(cursor);
+            }
+            return videos;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Values for the list-level columns of a movie. Runtime and has_details are left out so a
+     * list page never clears details stored earlier.
+     */
+    private static ContentValues listValues(TMDbMovie movie, int listHash, long now) {
+        ContentValues values = new ContentValues();
+        values.put(MovieEntry._ID, movie.id);
+        values.put(MovieEntry.COLUMN_ADULT, movie.adult ? 1 : 0);
+        values.put(MovieEntry.COLUMN_BACKDROP_PATH, movie.backdropPath);
+        values.put(MovieEntry.COLUMN_ORIGINAL_LANGUAGE, movie.originalLanguage);
+        values.put(MovieEntry.COLUMN_ORIGINAL_TITLE, movie.originalTitle);
+        values.put(MovieEntry.COLUMN_OVERVIEW, movie.getOverview());
+        putDouble(values, MovieEntry.COLUMN_POPULARITY, movie.popularity);
+        values.put(MovieEntry.COLUMN_POSTER_PATH, movie.posterPath);
+        values.put(MovieEntry.COLUMN_TITLE, movie.title);
+        values.put(MovieEntry.COLUMN_RELEASE_DATE, movie.releaseDate);
+        values.put(MovieEntry.COLUMN_VIDEO, movie.video ? 1 : 0);
+        putDouble(values, MovieEntry.COLUMN_VOTE_AVERAGE, movie.voteAverage);
+        values.put(MovieEntry.COLUMN_VOTE_COUNT, movie.voteCount);
+        values.put(MovieEntry.COLUMN_LIST_HASH, listHash);
+        values.put(MovieEntry.COLUMN_UPDATED_AT, now);
+        return values;
+    }
+
+    private static void putDouble(ContentValues values, String column, double value) {
+        if (Double.isNaN(value)) {
+            values.putNull(column);
+        } else {
+            values.put(column, value);
+        }
+    }
+
+    /**
+     * Hashes the fields a list page carries, to tell whether a stored movie needs rewriting.
+     */
+    static int listHash(TMDbMovie movie) {
+        int hash = Arrays.hashCode(new Object[]{movie.adult, movie.backdropPath,
+                movie.originalLanguage, movie.originalTitle, movie.getOverview(), movie.popularity,
+                movie.posterPath, movie.title, movie.releaseDate, movie.video, movie.voteAverage,
+                movie.voteCount});
+        return 31 * hash + Arrays.hashCode(movie.getGenreIds());
+    }
+}
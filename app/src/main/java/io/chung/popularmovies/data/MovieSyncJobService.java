@@ -0,0 +1,151 @@
+package io.chung.popularmovies.data;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import io.chung.popularmovies.R;
+import io.chung.popularmovies.TMDbMovieListPage;
+import io.chung.popularmovies.search.MovieSearch;
+import io.chung.popularmovies.utilities.NetworkUtils;
+import io.chung.popularmovies.utilities.RequestScheduler;
+import io.chung.popularmovies.utilities.TMDbException;
+import io.chung.popularmovies.utilities.TMDbUtils;
+
+/**
+ * Periodically refreshes the stored movie lists while the app isn't running, so the next start
+ * shows recent data straight from disk.
+ *
+ * Each list is refreshed for as many pages as were stored, up to MAX_SYNC_PAGES. Requests go
+ * through the response cache, so unchanged pages are revalidated rather than downloaded, and
+ * the store only rewrites what changed.
+ */
+public class MovieSyncJobService extends JobService {
+
+    private static final String TAG = MovieSyncJobService.class.getSimpleName();
+
+    private static final int JOB_ID = 1;
+
+    private static final long SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    /* Pages refreshed per list; further pages are refreshed when they're scrolled to. */
+    private static final int MAX_SYNC_PAGES = 3;
+
+    private volatile Thread mSyncThread;
+
+    /**
+     * Schedules the periodic sync unless it's already scheduled.
+     */
+    public static void schedule(Context context) {
+        JobScheduler jobScheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, MovieSyncJobService.class))
+                .setPeriodic(SYNC_INTERVAL_MILLIS)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPersisted(true)
+                .build();
+        jobScheduler.schedule(job);
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final MovieStore store = MovieStore.getInstance(this);
+        final ListSnapshot snapshot = ListSnapshot.getInstance(this);
+        final String apiKey = getString(R.string.the_movie_db_api_key);
+
+        mSyncThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                boolean succeeded = syncLists(store, snapshot, apiKey);
+                if (!Thread.currentThread().isInterrupted()) {
+                    jobFinished(params, !succeeded);
+                }
+            }
+        }, "MovieSync");
+        mSyncThread.start();
+
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        Thread syncThread = mSyncThread;
+        if (syncThread != null) {
+            syncThread.interrupt();
+        }
+
+        // Try again later; whatever was stored so far stays.
+        return true;
+    }
+
+    /**
+     * Refreshes every list, and the snapshot of each list's first page.
+     * @return True if every page was refreshed.
+     */
+    private static boolean syncLists(MovieStore store, ListSnapshot snapshot, String apiKey) {
+        boolean succeeded = true;
+
+        for (NetworkUtils.SortCriteria sortCriteria : NetworkUtils.SortCriteria.values()) {
+            int pageCount = Math.max(1,
+                    Math.min(MAX_SYNC_PAGES, store.getStoredPageCount(sortCriteria)));
+            MovieStore.SyncDiff listDiff = new MovieStore.SyncDiff();
+
+            for (int page = 1; page <= pageCount; page++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+
+                URL url = NetworkUtils.buildMovieListUrl(sortCriteria, apiKey, page);
+                try {
+                    TMDbMovieListPage result = RequestScheduler.getInstance().execute(url,
+                            TMDbUtils.MOVIE_LIST_PAGE_HANDLER,
+                            RequestScheduler.Priority.BACKGROUND);
+                    listDiff.add(store.putListPage(sortCriteria, result));
+                    if (result.movies != null) {
+                        MovieSearch.getInstance().indexMovies(result.movies);
+                    }
+                    if (page == 1) {
+                        snapshot.put(sortCriteria, result);
+                    }
+
+                    if (page >= result.totalPages) {
+                        break;
+                    }
+                } catch (IOException | TMDbException e) {
+                    e.printStackTrace();
+                    succeeded = false;
+                    break;
+                }
+            }
+
+            Log.d(TAG, "Synced " + sortCriteria + ": " + listDiff);
+        }
+
+        int pruned = store.pruneMovies();
+        Log.d(TAG, "Pruned " + pruned + " movies");
+
+        // The job's process may be gone before the index's own delayed save.
+        MovieSearch.getInstance().flush();
+
+        return succeeded;
+    }
+}
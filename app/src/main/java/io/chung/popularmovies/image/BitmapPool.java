@@ -0,0 +1,113 @@
+package io.chung.popularmovies.image;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Size-bounded pool of bitmaps that nothing shows or caches any more, for decodes to reuse through
+ * BitmapFactory.Options.inBitmap instead of allocating new pixels.
+ *
+ * Since API 19 a decode can reuse any mutable bitmap with at least as many bytes as it needs,
+ * whatever its size or config, so bitmaps are pooled by byte count alone. Grid posters all decode
+ * to the same size, so in a long scroll nearly every decode finds an exact fit.
+ */
+final class BitmapPool {
+
+    /* A pooled bitmap more than this many times larger than a decode needs isn't handed out,
+       so a small decode doesn't pin a large bitmap's pixels. */
+    private static final int MAX_OVERSIZE = 2;
+
+    private final long mMaxSize;
+
+    /* Pooled bitmaps by allocation byte count. Guarded by this. */
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBitmaps = new TreeMap<>();
+    private long mSize;
+
+    /* Guarded by this. */
+    private boolean mEnabled = true;
+
+    /**
+     * @param maxSize Most bytes of pixels the pool holds.
+     */
+    BitmapPool(long maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Takes a bitmap with at least the given number of bytes out of the pool.
+     * @param byteCount Bytes the decode needs.
+     * @return The smallest pooled bitmap that fits, or null if none does.
+     */
+    synchronized Bitmap get(int byteCount) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBitmaps.ceilingEntry(byteCount);
+
+        if (entry == null || entry.getKey() > (long) byteCount * MAX_OVERSIZE) {
+            return null;
+        }
+
+        ArrayDeque<Bitmap> bitmaps = entry.getValue();
+        Bitmap bitmap = bitmaps.pollLast();
+        if (bitmaps.isEmpty()) {
+            mBitmaps.remove(entry.getKey());
+        }
+
+        mSize -= entry.getKey();
+        return bitmap;
+    }
+
+    /**
+     * Offers a bitmap to the pool. The caller must not use it afterwards, whether it was taken
+     * or not.
+     * @param bitmap A bitmap that nothing shows or caches.
+     */
+    synchronized void put(Bitmap bitmap) {
+        int byteCount = bitmap.getAllocationByteCount();
+
+        if (!mEnabled || !bitmap.isMutable() || bitmap.isRecycled() || byteCount > mMaxSize) {
+            return;
+        }
+
+        ArrayDeque<Bitmap> bitmaps = mBitmaps.get(byteCount);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            mBitmaps.put(byteCount, bitmaps);
+        }
+        bitmaps.addLast(bitmap);
+        mSize += byteCount;
+
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Drops pooled bitmaps, largest first, until at most the given bytes are left.
+     */
+    synchronized void trimToSize(long maxSize) {
+        while (mSize > maxSize) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = mBitmaps.lastEntry();
+
+            largest.getValue().pollFirst();
+            if (largest.getValue().isEmpty()) {
+                mBitmaps.remove(largest.getKey());
+            }
+            mSize -= largest.getKey();
+        }
+    }
+
+    /**
+     * Turns pooling on or off; turning it off drops every pooled bitmap. Lets a benchmark
+     * compare the heap churn with and without reuse.
+     */
+    synchronized void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled) {
+            trimToSize(0);
+        }
+    }
+
+    synchronized long size() {
+        return mSize;
+    }
+}
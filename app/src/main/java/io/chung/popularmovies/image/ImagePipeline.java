@@ -0,0 +1,182 @@
+package io.chung.popularmovies.image;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.VisibleForTesting;
+import android.widget.ImageView;
+
+import com.squareup.picasso.Picasso;
+
+import java.io.File;
+
+import io.chung.popularmovies.utilities.NetworkQualityEstimator;
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+/**
+ * Owns how posters get from TMDb onto the screen, under Picasso: a memory cache sized to the
+ * device's memory class, a pool of bitmaps for decodes to reuse, decoding straight to the size
+ * posters are shown at, and a disk cache of its own below the memory cache.
+ *
+ * Grid cells decode to {@link #GRID_CONFIG}, which halves their memory next to ARGB_8888 and is
+ * indistinguishable on a photo that small. Views showing posters report them through
+ * {@link #acquire(ImageView)} and {@link #release(Bitmap)}, so bitmaps they've let go of are
+ * reused instead of left to the GC.
+ */
+public final class ImagePipeline {
+
+    /* Config grid cells decode their posters to. */
+    public static final Bitmap.Config GRID_CONFIG = Bitmap.Config.RGB_565;
+
+    /* Directory under the app's cache dir that holds posters. */
+    private static final String DISK_CACHE_DIR = "posters";
+
+    /* Posters are 10 to 100 KB, so this holds a thousand or so. */
+    private static final long DISK_CACHE_SIZE = 50 * 1024 * 1024;
+
+    /* Share of the app's heap the memory cache may use, and a smaller one on low-RAM devices. */
+    private static final int MEMORY_CACHE_HEAP_FRACTION = 6;
+    private static final int LOW_RAM_MEMORY_CACHE_HEAP_FRACTION = 10;
+
+    /* The pool holds this share of the memory cache's size, enough for a screenful of cells. */
+    private static final int POOL_CACHE_FRACTION = 4;
+
+    private static ImagePipeline sInstance;
+
+    private final PosterMemoryCache mMemoryCache;
+    private final BitmapPool mPool;
+    private final PosterDiskCache mDiskCache;
+    private final PosterPlaceholders mPlaceholders = new PosterPlaceholders();
+    private final PosterRequestHandler mRequestHandler;
+    private final int mMemoryCacheSize;
+
+    /**
+     * Builds the pipeline and makes the Picasso it's built on the app's Picasso. Called once, from
+     * Application.onCreate.
+     */
+    public static synchronized ImagePipeline install(Context context) {
+        if (sInstance != null) {
+            throw new IllegalStateException("The image pipeline is already installed");
+        }
+
+        sInstance = new ImagePipeline(context.getApplicationContext());
+        return sInstance;
+    }
+
+    public static synchronized ImagePipeline getInstance() {
+        return sInstance;
+    }
+
+    private ImagePipeline(Context context) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int heapFraction = activityManager.isLowRamDevice()
+                ? LOW_RAM_MEMORY_CACHE_HEAP_FRACTION
+                : MEMORY_CACHE_HEAP_FRACTION;
+
+        mMemoryCacheSize = activityManager.getMemoryClass() * 1024 * 1024 / heapFraction;
+        mPool = new BitmapPool(mMemoryCacheSize / POOL_CACHE_FRACTION);
+        mMemoryCache = new PosterMemoryCache(mMemoryCacheSize, mPool);
+        mDiskCache = new PosterDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIR),
+                DISK_CACHE_SIZE);
+
+        PosterDownloader downloader = new PosterDownloader(mDiskCache,
+                NetworkQualityEstimator.getInstance());
+        mRequestHandler = new PosterRequestHandler(downloader, mPool, mPlaceholders,
+                context.getResources().getDisplayMetrics().densityDpi);
+
+        Picasso picasso = new Picasso.Builder(context)
+                .memoryCache(mMemoryCache)
+                .downloader(downloader)
+                .addRequestHandler(mRequestHandler)
+                .build();
+        Picasso.setSingletonInstance(picasso);
+    }
+
+    /**
+     * Has posters of a size decoded no wider than a view of the given width needs. Posters are
+     * decoded for the widest view registered for their size.
+     * @param size The poster size the view requests.
+     * @param widthPx The view's width, in pixels.
+     */
+    public void setDisplayWidth(NetworkUtils.PosterSize size, int widthPx) {
+        mRequestHandler.setDisplayWidth(size, widthPx);
+    }
+
+    /**
+     * Gets the color to fill a poster's view with until it loads, taken from the poster the first
+     * time it was decoded at any size.
+     * @param posterPath The poster's path, as in {@link io.chung.popularmovies.TMDbMovie}, or null.
+     * @param defaultColor Color to use if the poster hasn't been decoded yet.
+     * @return The placeholder color, as an ARGB int.
+     */
+    public int getPlaceholderColor(String posterPath, int defaultColor) {
+        Integer color = posterPath != null ? mPlaceholders.get(posterPath) : null;
+        return color != null ? color : defaultColor;
+    }
+
+    /**
+     * Records that a view is showing the poster Picasso just loaded into it, which keeps the
+     * bitmap from being reused until it's released.
+     * @param view The view Picasso loaded into.
+     * @return The bitmap to release once the view stops showing it, or null if it shows none.
+     */
+    public Bitmap acquire(ImageView view) {
+        Drawable drawable = view.getDrawable();
+        if (!(drawable instanceof BitmapDrawable)) {
+            return null;
+        }
+
+        Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+        if (bitmap != null) {
+            mMemoryCache.acquire(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Records that a view stopped showing a bitmap it acquired, so it can be reused once it's out
+     * of the memory cache.
+     * @param bitmap The acquired bitmap, or null.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap != null) {
+            mMemoryCache.release(bitmap);
+        }
+    }
+
+    /**
+     * Gives memory back as the system asks for it: first the pool, then half the memory cache,
+     * then all of it.
+     * @param level The level passed to onTrimMemory.
+     */
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            mMemoryCache.clear();
+            mPool.trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mMemoryCache.trimToSize(mMemoryCacheSize / 2);
+            mPool.trimToSize(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mPool.trimToSize(0);
+        }
+    }
+
+    @VisibleForTesting
+    public void setPoolingEnabled(boolean enabled) {
+        mPool.setEnabled(enabled);
+    }
+
+    @VisibleForTesting
+    public long getPoolSize() {
+        return mPool.size();
+    }
+
+    @VisibleForTesting
+    public long getDiskCacheSize() {
+        return mDiskCache.size();
+    }
+}
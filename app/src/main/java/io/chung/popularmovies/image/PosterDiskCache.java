@@ -0,0 +1,193 @@
+package io.chung.popularmovies.image;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded, least-recently-used disk cache of poster files, the tier below the memory cache.
+ *
+ * A poster at a given path and size never changes, so entries are kept until they're evicted and
+ * never revalidated. It has a directory of its own, apart from the API response cache, so posters
+ * and API responses don't push each other out.
+ */
+final class PosterDiskCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final long mMaxSize;
+
+    /* Hashed key to file size, in access order so the eldest entry is evicted first. Guarded by
+       this. */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSize;
+
+    /**
+     * Opens the cache in the given directory, picking up any entries left by a previous process.
+     * @param directory Directory owned exclusively by this cache.
+     * @param maxSize Upper bound on the total size of cached files, in bytes.
+     */
+    PosterDiskCache(File directory, long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IllegalStateException("Unable to create cache directory " + directory);
+        }
+
+        loadIndex();
+    }
+
+    /**
+     * Opens a cached poster. The stream keeps the data readable even if the entry is evicted
+     * while it's open.
+     * @param key The poster's URI.
+     * @return A stream of the poster, or null if it isn't cached.
+     */
+    FileInputStream open(String key) {
+        String hashedKey = hashKey(key);
+
+        synchronized (this) {
+            // Also refreshes the access order.
+            if (mEntries.get(hashedKey) == null) {
+                return null;
+            }
+        }
+
+        File file = new File(mDirectory, hashedKey);
+        try {
+            FileInputStream in = new FileInputStream(file);
+            // Keep the access order for the next process, too.
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return in;
+        } catch (FileNotFoundException e) {
+            // Evicted between the lookup and the open.
+            return null;
+        }
+    }
+
+    /**
+     * Copies a poster into the cache and opens the cached copy.
+     * @param key The poster's URI.
+     * @param in Stream of the poster, which is read to its end but not closed.
+     * @return A stream of the cached poster.
+     * @throws IOException Thrown when reading the poster or writing the file fails.
+     */
+    FileInputStream put(String key, InputStream in) throws IOException {
+        String hashedKey = hashKey(key);
+        File temp = File.createTempFile(hashedKey, TEMP_SUFFIX, mDirectory);
+        File file = new File(mDirectory, hashedKey);
+
+        try {
+            OutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to commit cached poster " + key);
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+
+        // Open before indexing, so trimming to make room can't delete it first.
+        FileInputStream cached = new FileInputStream(file);
+        putEntry(hashedKey, file.length());
+        return cached;
+    }
+
+    synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * Rebuilds the in-memory LRU index from the directory, oldest access first.
+     */
+    private synchronized void loadIndex() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // Left over from a write that never finished.
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else {
+                mEntries.put(file.getName(), file.length());
+                mSize += file.length();
+            }
+        }
+
+        trimToSize();
+    }
+
+    private synchronized void putEntry(String hashedKey, long size) {
+        Long previousSize = mEntries.put(hashedKey, size);
+        if (previousSize != null) {
+            mSize -= previousSize;
+        }
+        mSize += size;
+
+        trimToSize();
+    }
+
+    private synchronized void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, eldest.getKey()).delete();
+            mSize -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private static String hashKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package io.chung.popularmovies.image;
+
+import android.net.Uri;
+
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.NetworkPolicy;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.chung.popularmovies.metrics.Metrics;
+import io.chung.popularmovies.utilities.FetchPolicy;
+import io.chung.popularmovies.utilities.NetworkQualityEstimator;
+import io.chung.popularmovies.utilities.NetworkUtils;
+import io.chung.popularmovies.utilities.TMDbHttpClient;
+
+/**
+ * Picasso downloader that fetches posters through the poster disk cache, and keeps track of how
+ * many poster bytes were loaded, and roughly how many were saved by requesting a size that fits
+ * the view instead of the old fixed w780.
+ */
+public class PosterDownloader implements Downloader {
+
+    /* Size every poster used to be requested at, which savings are measured against. */
+    private static final NetworkUtils.PosterSize BASELINE_SIZE = NetworkUtils.PosterSize.W780;
+
+    private static final AtomicLong sBytesLoaded = new AtomicLong();
+    private static final AtomicLong sEstimatedBytesSaved = new AtomicLong();
+
+    private final PosterDiskCache mDiskCache;
+
+    /* A client of its own, so poster downloads don't count towards the TMDb API metrics. */
+    private final TMDbHttpClient mHttpClient = new TMDbHttpClient();
+
+    PosterDownloader(PosterDiskCache diskCache, final NetworkQualityEstimator estimator) {
+        mDiskCache = diskCache;
+
+        // Posters are the largest responses the app gets, so they say the most about throughput.
+        mHttpClient.setEventListener(new TMDbHttpClient.EventListener() {
+            @Override
+            public void onRequestFinished(URL url, TMDbHttpClient.RequestTiming timing) {
+                estimator.onRequestFinished(timing);
+            }
+        });
+        estimator.addListener(new NetworkQualityEstimator.Listener() {
+            @Override
+            public void onPolicyChanged(FetchPolicy policy) {
+                applyTimeouts(policy);
+            }
+        });
+        applyTimeouts(estimator.getPolicy());
+    }
+
+    private void applyTimeouts(FetchPolicy policy) {
+        mHttpClient.setTimeouts(policy.getConnectTimeoutMillis(), policy.getReadTimeoutMillis());
+    }
+
+    @Override
+    public Response load(Uri uri, int networkPolicy) throws IOException {
+        FileInputStream in = openCached(uri, networkPolicy);
+        if (in != null) {
+            return new Response(in, true, in.getChannel().size());
+        }
+
+        in = download(uri, networkPolicy);
+        return new Response(in, false, in.getChannel().size());
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    /**
+     * Opens a poster from the disk cache, if the policy allows it and it's there.
+     * @return A stream of the cached poster, or null.
+     */
+    FileInputStream openCached(Uri uri, int networkPolicy) {
+        if (!NetworkPolicy.shouldReadFromDiskCache(networkPolicy)) {
+            return null;
+        }
+
+        FileInputStream in = mDiskCache.open(uri.toString());
+        if (in != null) {
+            Metrics.POSTER_DISK_HITS.increment();
+        }
+        return in;
+    }
+
+    /**
+     * Downloads a poster into the disk cache.
+     * @return A stream of the downloaded poster.
+     * @throws IOException Thrown when the download fails, or the policy only allows the cache.
+     */
+    FileInputStream download(Uri uri, int networkPolicy) throws IOException {
+        if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
+            throw new ResponseException("Poster isn't cached: " + uri, networkPolicy,
+                    HttpURLConnection.HTTP_GATEWAY_TIMEOUT);
+        }
+
+        TMDbHttpClient.Response response = mHttpClient.get(new URL(uri.toString()));
+        try {
+            if (response.code() >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                throw new ResponseException(response.code() + " loading poster " + uri,
+                        networkPolicy, response.code());
+            }
+
+            InputStream body = response.body();
+            FileInputStream in = mDiskCache.put(uri.toString(), body);
+            body.close();
+
+            recordLoaded(uri, in.getChannel().size());
+            return in;
+        } finally {
+            response.close();
+        }
+    }
+
+    public static long getBytesLoaded() {
+        return sBytesLoaded.get();
+    }
+
+    public static long getEstimatedBytesSaved() {
+        return sEstimatedBytesSaved.get();
+    }
+
+    private static void recordLoaded(Uri uri, long contentLength) {
+        NetworkUtils.PosterSize size = NetworkUtils.PosterSize.forUri(uri);
+
+        if (contentLength > 0 && size != null) {
+            sBytesLoaded.addAndGet(contentLength);
+
+            // JPEG size grows roughly with pixel count, and posters keep the same aspect ratio,
+            // so scale by the square of the width ratio.
+            if (size.getWidth() < BASELINE_SIZE.getWidth()) {
+                double scale = (double) BASELINE_SIZE.getWidth() / size.getWidth();
+                long saved = (long) (contentLength * (scale * scale - 1));
+
+                sEstimatedBytesSaved.addAndGet(saved);
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.chung.popularmovies.image;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import com.squareup.picasso.Cache;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picasso's memory cache, bounded by the bytes of the bitmaps it holds, which hands bitmaps it
+ * evicts to a {@link BitmapPool} once it's sure nothing shows them any more.
+ *
+ * Picasso doesn't say when a view stops showing a bitmap, so every view that shows bitmaps from
+ * this cache reports it through {@link #acquire(Bitmap)} and {@link #release(Bitmap)}. A bitmap is
+ * only pooled once it's out of the cache and every view that acquired it has released it. A
+ * bitmap the cache hands out isn't pooled again until a view acquires it, since it may still be on
+ * its way to a view; if it leaves the cache before that, it's forgotten and left to the GC.
+ */
+final class PosterMemoryCache implements Cache {
+
+    private final LruCache<String, Bitmap> mBitmaps;
+    private final BitmapPool mPool;
+
+    /* Views showing each bitmap that views report on, even after it's left the cache. A
+       bitmap that's in here with no views is safe to pool once it's out of the cache. Guarded
+       by this. */
+    private final Map<Bitmap, Integer> mViewCounts = new IdentityHashMap<>();
+
+    /* Bitmaps in the cache, so a release can tell without copying the cache. Guarded by this. */
+    private final Set<Bitmap> mCached =
+            Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+    /* Bitmaps handed out that no view has acquired since. Guarded by this. */
+    private final Set<Bitmap> mHandedOut =
+            Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+    /**
+     * @param maxSize Most bytes of pixels the cache holds.
+     * @param pool Pool that evicted bitmaps go to.
+     */
+    PosterMemoryCache(int maxSize, BitmapPool pool) {
+        mPool = pool;
+        mBitmaps = new LruCache<String, Bitmap>(maxSize) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldBitmap,
+                                        Bitmap newBitmap) {
+                if (oldBitmap != newBitmap) {
+                    onLeftCache(oldBitmap);
+                }
+            }
+        };
+    }
+
+    @Override
+    public Bitmap get(String key) {
+        Bitmap bitmap = mBitmaps.get(key);
+
+        if (bitmap != null) {
+            synchronized (this) {
+                mHandedOut.add(bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    @Override
+    public void set(String key, Bitmap bitmap) {
+        synchronized (this) {
+            mCached.add(bitmap);
+        }
+        mBitmaps.put(key, bitmap);
+    }
+
+    @Override
+    public int size() {
+        return mBitmaps.size();
+    }
+
+    @Override
+    public int maxSize() {
+        return mBitmaps.maxSize();
+    }
+
+    @Override
+    public void clear() {
+        mBitmaps.evictAll();
+    }
+
+    @Override
+    public void clearKeyUri(String uri) {
+        for (String key : mBitmaps.snapshot().keySet()) {
+            // Picasso's keys are the URI followed by a newline and the request's options.
+            if (key.startsWith(uri) && key.length() > uri.length()
+                    && key.charAt(uri.length()) == '\n') {
+                mBitmaps.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Drops the least recently used bitmaps until at most the given bytes are left.
+     */
+    void trimToSize(int maxSize) {
+        mBitmaps.trimToSize(maxSize);
+    }
+
+    /**
+     * Records that a view started showing a bitmap, which keeps it out of the pool.
+     */
+    synchronized void acquire(Bitmap bitmap) {
+        Integer count = mViewCounts.get(bitmap);
+        mViewCounts.put(bitmap, count != null ? count + 1 : 1);
+        mHandedOut.remove(bitmap);
+    }
+
+    /**
+     * Records that a view stopped showing a bitmap it acquired. If no other view shows it and
+     * it's no longer cached, it's pooled.
+     */
+    void release(Bitmap bitmap) {
+        synchronized (this) {
+            Integer count = mViewCounts.get(bitmap);
+            if (count == null) {
+                return;
+            }
+            mViewCounts.put(bitmap, count - 1);
+        }
+        recycleIfUnused(bitmap);
+    }
+
+    private void onLeftCache(Bitmap bitmap) {
+        synchronized (this) {
+            mCached.remove(bitmap);
+
+            // Nobody can tell any more whether it's on its way to a view, so only views that
+            // acquire it from here on are counted, and the pool never sees it until they do.
+            if (mHandedOut.remove(bitmap)) {
+                mViewCounts.remove(bitmap);
+                return;
+            }
+        }
+        recycleIfUnused(bitmap);
+    }
+
+    /**
+     * Pools the bitmap if it's out of the cache, views have reported on it and none still
+     * shows it.
+     */
+    private void recycleIfUnused(Bitmap bitmap) {
+        synchronized (this) {
+            Integer count = mViewCounts.get(bitmap);
+            if (count == null || count > 0 || mCached.contains(bitmap)
+                    || mHandedOut.contains(bitmap)) {
+                return;
+            }
+            mViewCounts.remove(bitmap);
+        }
+        mPool.put(bitmap);
+    }
+}
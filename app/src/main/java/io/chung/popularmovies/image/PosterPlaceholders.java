@@ -0,0 +1,102 @@
+package io.chung.popularmovies.image;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * Placeholder color for each poster, taken from the poster the first time it's decoded and kept
+ * by poster path, so a cell can show it the moment it's bound, before the poster itself loads.
+ *
+ * The color is the poster's dominant one: the commonest of a coarse grid of color buckets, over a
+ * sample of its pixels, averaged within that bucket.
+ */
+final class PosterPlaceholders {
+
+    /* An Integer and a short path each, so a few thousand entries cost well under a MB. */
+    private static final int MAX_ENTRIES = 4000;
+
+    /* Pixels sampled along each side of a poster. */
+    private static final int SAMPLES_PER_SIDE = 16;
+
+    /* Bits kept of each color channel when bucketing, so 8 * 8 * 8 buckets. */
+    private static final int BUCKET_BITS = 3;
+    private static final int BUCKET_COUNT = 1 << (3 * BUCKET_BITS);
+
+    private final LruCache<String, Integer> mColors = new LruCache<>(MAX_ENTRIES);
+
+    /**
+     * @param posterPath The poster's path, as in {@link io.chung.popularmovies.TMDbMovie}.
+     * @return The poster's placeholder color, or null if it hasn't been decoded yet.
+     */
+    Integer get(String posterPath) {
+        return mColors.get(posterPath);
+    }
+
+    /**
+     * Works out a poster's placeholder color from a decode of it, unless it's already known.
+     * Called off the main thread.
+     * @param posterPath The poster's path, as in {@link io.chung.popularmovies.TMDbMovie}.
+     * @param bitmap A decode of the poster, at any size.
+     */
+    void putIfAbsent(String posterPath, Bitmap bitmap) {
+        if (mColors.get(posterPath) != null) {
+            return;
+        }
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] pixels = new int[SAMPLES_PER_SIDE * SAMPLES_PER_SIDE];
+        int count = 0;
+
+        for (int y = 0; y < SAMPLES_PER_SIDE; y++) {
+            for (int x = 0; x < SAMPLES_PER_SIDE; x++) {
+                pixels[count++] = bitmap.getPixel(
+                        (2 * x + 1) * width / (2 * SAMPLES_PER_SIDE),
+                        (2 * y + 1) * height / (2 * SAMPLES_PER_SIDE));
+            }
+        }
+
+        mColors.put(posterPath, dominantColor(pixels, count));
+    }
+
+    /**
+     * Finds the dominant color among some pixels: the average of those in the commonest bucket.
+     * @param pixels Colors as ARGB ints; alpha is ignored.
+     * @param count Number of pixels to use, from the start of the array.
+     * @return An opaque ARGB color, or opaque black if there are no pixels.
+     */
+    static int dominantColor(int[] pixels, int count) {
+        int[] bucketCounts = new int[BUCKET_COUNT];
+        // Red, green and blue sums of each bucket, one after the other.
+        int[] bucketSums = new int[BUCKET_COUNT * 3];
+        int shift = 8 - BUCKET_BITS;
+
+        int dominant = 0;
+        for (int i = 0; i < count; i++) {
+            int red = (pixels[i] >> 16) & 0xff;
+            int green = (pixels[i] >> 8) & 0xff;
+            int blue = pixels[i] & 0xff;
+
+            int bucket = ((red >> shift) << (2 * BUCKET_BITS))
+                    | ((green >> shift) << BUCKET_BITS)
+                    | (blue >> shift);
+            bucketCounts[bucket]++;
+            bucketSums[bucket * 3] += red;
+            bucketSums[bucket * 3 + 1] += green;
+            bucketSums[bucket * 3 + 2] += blue;
+
+            if (bucketCounts[bucket] > bucketCounts[dominant]) {
+                dominant = bucket;
+            }
+        }
+
+        int n = bucketCounts[dominant];
+        if (n == 0) {
+            return 0xff000000;
+        }
+        return 0xff000000
+                | (bucketSums[dominant * 3] / n) << 16
+                | (bucketSums[dominant * 3 + 1] / n) << 8
+                | (bucketSums[dominant * 3 + 2] / n);
+    }
+}
@@ -0,0 +1,182 @@
+package io.chung.popularmovies.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Trace;
+
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import io.chung.popularmovies.metrics.Metrics;
+import io.chung.popularmovies.utilities.NetworkUtils;
+
+/**
+ * Loads TMDb posters for Picasso: from the disk cache or the network, decoded straight to the
+ * width they're shown at, in the request's config, into a pooled bitmap where one fits. The
+ * first decode of each poster also gives it its placeholder color.
+ *
+ * Requests mustn't ask Picasso to resize: Picasso would then copy the decoded bitmap, and recycle
+ * the pooled one. Posters are scaled down while decoding instead, to the widest view registered
+ * for their size with {@link #setDisplayWidth(NetworkUtils.PosterSize, int)}.
+ */
+final class PosterRequestHandler extends RequestHandler {
+
+    private final PosterDownloader mDownloader;
+    private final BitmapPool mPool;
+    private final PosterPlaceholders mPlaceholders;
+    private final int mDensityDpi;
+
+    /* Widest view each poster size is shown in, by PosterSize ordinal; 0 if unknown. */
+    private final int[] mDisplayWidths = new int[NetworkUtils.PosterSize.values().length];
+
+    /**
+     * @param downloader Loads posters through the disk cache.
+     * @param pool Pool of bitmaps for decodes to reuse.
+     * @param placeholders Placeholder colors, filled in from decoded posters.
+     * @param densityDpi The display's density, which decoded bitmaps are marked with.
+     */
+    PosterRequestHandler(PosterDownloader downloader, BitmapPool pool,
+                         PosterPlaceholders placeholders, int densityDpi) {
+        mDownloader = downloader;
+        mPool = pool;
+        mPlaceholders = placeholders;
+        mDensityDpi = densityDpi;
+    }
+
+    /**
+     * Has posters of a size decoded no wider than needed for a view of the given width.
+     * @param size The poster size the view requests.
+     * @param widthPx The view's width, in pixels.
+     */
+    synchronized void setDisplayWidth(NetworkUtils.PosterSize size, int widthPx) {
+        mDisplayWidths[size.ordinal()] = Math.max(mDisplayWidths[size.ordinal()], widthPx);
+    }
+
+    @Override
+    public boolean canHandleRequest(Request data) {
+        return NetworkUtils.isPosterUri(data.uri) && !data.hasSize();
+    }
+
+    @Override
+    public Result load(Request request, int networkPolicy) throws IOException {
+        Picasso.LoadedFrom loadedFrom = Picasso.LoadedFrom.DISK;
+
+        FileInputStream in = mDownloader.openCached(request.uri, networkPolicy);
+        if (in == null) {
+            in = mDownloader.download(request.uri, networkPolicy);
+            loadedFrom = Picasso.LoadedFrom.NETWORK;
+        }
+
+        try {
+            Bitmap bitmap = decode(in.getFD(), request.config, displayWidth(request));
+            if (bitmap == null) {
+                throw new IOException("Unable to decode poster " + request.uri);
+            }
+
+            mPlaceholders.putIfAbsent("/" + request.uri.getLastPathSegment(), bitmap);
+            return new Result(bitmap, loadedFrom);
+        } finally {
+            in.close();
+        }
+    }
+
+    private synchronized int displayWidth(Request request) {
+        NetworkUtils.PosterSize size = NetworkUtils.PosterSize.forUri(request.uri);
+        return size != null ? mDisplayWidths[size.ordinal()] : 0;
+    }
+
+    /**
+     * Decodes a poster, scaled down to the target width if it's wider, into a pooled bitmap if
+     * one fits.
+     * @param fd The poster file. Decoding leaves its offset where it was.
+     * @param config Config to decode to, or null for ARGB_8888.
+     * @param targetWidth Widest the poster needs to be, or 0 to decode it at full size.
+     * @return The bitmap, or null if the file isn't an image.
+     */
+    private Bitmap decode(FileDescriptor fd, Bitmap.Config config, int targetWidth) {
+        long startNanos = System.nanoTime();
+        Trace.beginSection("Decode poster");
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFileDescriptor(fd, null, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+
+            // Halve while that stays at least as wide as the target, which the decoder does
+            // cheaply, then scale the rest of the way.
+            int sampleSize = 1;
+            while (targetWidth > 0 && options.outWidth / (sampleSize * 2) >= targetWidth) {
+                sampleSize *= 2;
+            }
+            int sampledWidth = ceilDiv(options.outWidth, sampleSize);
+            int sampledHeight = ceilDiv(options.outHeight, sampleSize);
+
+            int width = sampledWidth;
+            int height = sampledHeight;
+            if (targetWidth > 0 && sampledWidth > targetWidth) {
+                options.inScaled = true;
+                options.inDensity = sampledWidth;
+                options.inTargetDensity = targetWidth;
+                width = targetWidth;
+                height = (int) Math.ceil((double) sampledHeight * targetWidth / sampledWidth);
+            } else {
+                options.inScaled = false;
+            }
+
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = config != null ? config : Bitmap.Config.ARGB_8888;
+            options.inMutable = true;
+            options.inBitmap = mPool.get(width * height * bytesPerPixel(options.inPreferredConfig));
+
+            Bitmap bitmap;
+            if (options.inBitmap != null) {
+                Metrics.POSTER_POOL_REUSED.increment();
+                try {
+                    bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+                } catch (IllegalArgumentException e) {
+                    // The pooled bitmap didn't fit after all; it's untouched, so put it back.
+                    mPool.put(options.inBitmap);
+                    options.inBitmap = null;
+                    bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+                }
+            } else {
+                Metrics.POSTER_POOL_ALLOCATED.increment();
+                bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+            }
+
+            if (bitmap != null) {
+                // Scaling marks the bitmap with the target width as its density, which would
+                // throw off its drawable's size.
+                bitmap.setDensity(mDensityDpi);
+            }
+            return bitmap;
+        } finally {
+            Trace.endSection();
+            Metrics.POSTER_DECODE.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                return 4;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.chung.popularmovies.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A named, lock-free count that any thread can add to without allocating.
+ */
+public final class Counter {
+
+    private final String mName;
+    private final AtomicLong mValue = new AtomicLong();
+
+    Counter(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void increment() {
+        mValue.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        mValue.addAndGet(delta);
+    }
+
+    public long get() {
+        return mValue.get();
+    }
+
+    void reset() {
+        mValue.set(0);
+    }
+}
@@ -0,0 +1,291 @@
+package io.chung.popularmovies.metrics;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Process-wide performance metrics: where time goes in fetching, parsing and showing movies, how
+ * many bytes that takes, and how often each cache saves the work.
+ *
+ * Every metric is a static {@link Counter} or {@link Histogram}, so recording one from any thread
+ * takes a few atomic updates and allocates nothing. Durations are in nanoseconds. They can be
+ * read on screen through the debug overlay, or exported with {@link #writeJson(Appendable)}.
+ */
+public final class Metrics {
+
+    /* Phases of each HTTP request. Connect is about 0 when a kept-alive connection is reused,
+       and includes DNS unless the client timed that apart. */
+    public static final Histogram HTTP_DNS = new Histogram("http.dns_ns");
+    public static final Histogram HTTP_CONNECT = new Histogram("http.connect_ns");
+    public static final Histogram HTTP_FIRST_BYTE = new Histogram("http.first_byte_ns");
+    public static final Histogram HTTP_DOWNLOAD = new Histogram("http.download_ns");
+
+    public static final Counter HTTP_REQUESTS = new Counter("http.requests");
+    public static final Counter HTTP_BYTES_ON_WIRE = new Counter("http.bytes_on_wire");
+    public static final Counter HTTP_BYTES_DECODED = new Counter("http.bytes_decoded");
+
+    /* Requests through the request queue that ended in an error, after any cache fallback. */
+    public static final Counter REQUEST_FAILURES = new Counter("request.failures");
+
+    /* Retries after a transient failure, waits for (or skips over) the rate limit, and requests
+       turned away by an open circuit breaker. */
+    public static final Counter REQUEST_RETRIES = new Counter("request.retries");
+    public static final Counter REQUEST_THROTTLED = new Counter("request.throttled");
+    public static final Counter REQUEST_CIRCUIT_OPEN = new Counter("request.circuit_open");
+
+    /* Time in a response handler, which for a network response includes streaming the body. */
+    public static final Histogram TMDB_PARSE = new Histogram("tmdb.parse_ns");
+
+    public static final Counter RESPONSE_CACHE_HITS = new Counter("response_cache.hits");
+    public static final Counter RESPONSE_CACHE_REVALIDATED =
+            new Counter("response_cache.revalidated");
+    public static final Counter RESPONSE_CACHE_STALE_SERVED =
+            new Counter("response_cache.stale_served");
+    public static final Counter RESPONSE_CACHE_MISSES = new Counter("response_cache.misses");
+
+    /* Grid cell binds, and the time from requesting a cell's poster to it being on screen. */
+    public static final Histogram GRID_BIND = new Histogram("grid.bind_ns");
+    public static final Histogram GRID_IMAGE_READY = new Histogram("grid.image_ready_ns");
+
+    /* Binds whose cell already showed the poster, and binds that had to request it. */
+    public static final Counter GRID_POSTER_REUSED = new Counter("grid.poster_reused");
+    public static final Counter GRID_POSTER_REQUESTED = new Counter("grid.poster_requested");
+
+    /* From tapping a movie to its details being on screen, and where the details came from. */
+    public static final Histogram DETAILS_TAP_TO_CONTENT =
+            new Histogram("details.tap_to_content_ns");
+    public static final Counter DETAILS_FROM_PREFETCH = new Counter("details.from_prefetch");
+    public static final Counter DETAILS_FROM_MEMORY = new Counter("details.from_memory");
+    public static final Counter DETAILS_FROM_STORE = new Counter("details.from_store");
+    public static final Counter DETAILS_FROM_NETWORK = new Counter("details.from_network");
+
+    /* From launch to MainActivity's first frame and first poster on screen. A cold launch is
+       timed from Application.onCreate, a warm one from the activity's onCreate. */
+    public static final Histogram STARTUP_COLD_FIRST_FRAME =
+            new Histogram("startup.cold_first_frame_ns");
+    public static final Histogram STARTUP_COLD_FIRST_POSTER =
+            new Histogram("startup.cold_first_poster_ns");
+    public static final Histogram STARTUP_WARM_FIRST_FRAME =
+            new Histogram("startup.warm_first_frame_ns");
+    public static final Histogram STARTUP_WARM_FIRST_POSTER =
+            new Histogram("startup.warm_first_poster_ns");
+
+    /* Posters read from the poster disk cache, decodes into a pooled bitmap and into a new one,
+       and the time each decode takes. */
+    public static final Counter POSTER_DISK_HITS = new Counter("poster.disk_hits");
+    public static final Counter POSTER_POOL_REUSED = new Counter("poster.pool_reused");
+    public static final Counter POSTER_POOL_ALLOCATED = new Counter("poster.pool_allocated");
+    public static final Histogram POSTER_DECODE = new Histogram("poster.decode_ns");
+
+    /* Parsed movies dropped for the instance already cached, and list switches shown straight
+       from a first page fetched alongside the previous list. */
+    public static final Counter MOVIES_SHARED = new Counter("movies.shared");
+    public static final Counter LIST_PRELOAD_HITS = new Counter("list.preload_hits");
+
+    /* Time to run a search query against the local index. */
+    public static final Histogram SEARCH_QUERY = new Histogram("search.query_ns");
+
+    /* Time to filter and reorder the loaded movies on the device. */
+    public static final Histogram LOCAL_QUERY = new Histogram("local_query.query_ns");
+
+    private static final Counter[] COUNTERS = {
+            HTTP_REQUESTS, HTTP_BYTES_ON_WIRE, HTTP_BYTES_DECODED, REQUEST_FAILURES,
+            REQUEST_RETRIES, REQUEST_THROTTLED, REQUEST_CIRCUIT_OPEN,
+            RESPONSE_CACHE_HITS, RESPONSE_CACHE_REVALIDATED, RESPONSE_CACHE_STALE_SERVED,
+            RESPONSE_CACHE_MISSES, GRID_POSTER_REUSED, GRID_POSTER_REQUESTED,
+            DETAILS_FROM_PREFETCH, DETAILS_FROM_MEMORY, DETAILS_FROM_STORE, DETAILS_FROM_NETWORK,
+            POSTER_DISK_HITS, POSTER_POOL_REUSED, POSTER_POOL_ALLOCATED, MOVIES_SHARED,
+            LIST_PRELOAD_HITS
+    };
+
+    private static final Histogram[] HISTOGRAMS = {
+            HTTP_DNS, HTTP_CONNECT, HTTP_FIRST_BYTE, HTTP_DOWNLOAD, TMDB_PARSE,
+            GRID_BIND, GRID_IMAGE_READY, DETAILS_TAP_TO_CONTENT, STARTUP_COLD_FIRST_FRAME,
+            STARTUP_COLD_FIRST_POSTER, STARTUP_WARM_FIRST_FRAME, STARTUP_WARM_FIRST_POSTER,
+            POSTER_DECODE, SEARCH_QUERY, LOCAL_QUERY
+    };
+
+    private Metrics() {
+    }
+
+    /**
+     * Records the phases of a finished HTTP request. Each time is measured from the start of the
+     * request, so the phases are the differences between them.
+     * @param dnsNanos Until the host was resolved, or -1 if that's part of connecting.
+     */
+    public static void recordHttpRequest(long dnsNanos, long connectNanos, long firstByteNanos,
+                                         long totalNanos, long bytesOnWire, long bytesDecoded) {
+        HTTP_REQUESTS.increment();
+        if (dnsNanos >= 0) {
+            HTTP_DNS.record(dnsNanos);
+        }
+        HTTP_CONNECT.record(connectNanos - Math.max(0, dnsNanos));
+        HTTP_FIRST_BYTE.record(firstByteNanos - connectNanos);
+        HTTP_DOWNLOAD.record(totalNanos - firstByteNanos);
+        HTTP_BYTES_ON_WIRE.add(bytesOnWire);
+        HTTP_BYTES_DECODED.add(bytesDecoded);
+    }
+
+    /**
+     * Share of responses the disk cache answered without downloading the body again.
+     */
+    public static double responseCacheHitRatio() {
+        long saved = RESPONSE_CACHE_HITS.get() + RESPONSE_CACHE_REVALIDATED.get();
+        return ratio(saved, saved + RESPONSE_CACHE_MISSES.get());
+    }
+
+    /**
+     * Share of grid binds that found the poster already on the cell.
+     */
+    public static double posterReuseRatio() {
+        long reused = GRID_POSTER_REUSED.get();
+        return ratio(reused, reused + GRID_POSTER_REQUESTED.get());
+    }
+
+    /**
+     * Share of opened details screens whose details were prefetched.
+     */
+    public static double detailsPrefetchHitRatio() {
+        long total = DETAILS_FROM_PREFETCH.get() + DETAILS_FROM_MEMORY.get()
+                + DETAILS_FROM_STORE.get() + DETAILS_FROM_NETWORK.get();
+        return ratio(DETAILS_FROM_PREFETCH.get(), total);
+    }
+
+    /**
+     * Sets every metric back to zero.
+     */
+    public static void reset() {
+        for (Counter counter : COUNTERS) {
+            counter.reset();
+        }
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Writes every metric as a JSON object: counters by name, hit ratios by name, and for each
+     * histogram its count, sum, max, percentiles and non-empty buckets as [upper bound, count].
+     * @param out Where to write the JSON.
+     * @throws IOException Thrown when writing to out fails.
+     */
+    public static void writeJson(Appendable out) throws IOException {
+        out.append("{\"counters\":{");
+        for (int i = 0; i < COUNTERS.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            // Metric names are plain identifiers, so they never need escaping.
+            out.append('"').append(COUNTERS[i].getName()).append("\":")
+                    .append(Long.toString(COUNTERS[i].get()));
+        }
+
+        out.append("},\"ratios\":{");
+        appendRatio(out, "response_cache.hit_ratio", responseCacheHitRatio());
+        out.append(',');
+        appendRatio(out, "grid.poster_reuse_ratio", posterReuseRatio());
+        out.append(',');
+        appendRatio(out, "details.prefetch_hit_ratio", detailsPrefetchHitRatio());
+
+        out.append("},\"histograms\":{");
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendHistogram(out, HISTOGRAMS[i]);
+        }
+        out.append("}}");
+    }
+
+    /**
+     * Gets every metric as a JSON string.
+     * @see #writeJson(Appendable)
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder();
+        try {
+            writeJson(json);
+        } catch (IOException e) {
+            // StringBuilder doesn't throw.
+            throw new AssertionError(e);
+        }
+        return json.toString();
+    }
+
+    /**
+     * Gets a few lines summarizing the metrics, short enough to read on screen.
+     */
+    public static String summary() {
+        return String.format(Locale.US,
+                "HTTP %d req, %s / %s KB wire/decoded\n"
+                        + "  dns %s  connect %s  ttfb %s  download %s\n"
+                        + "parse %s\n"
+                        + "bind %s  image ready %s\n"
+                        + "tap to details %s\n"
+                        + "cold start frame %s  poster %s\n"
+                        + "search %s  genre filter %s\n"
+                        + "poster decode %s  disk hits %d  pooled %d/%d\n"
+                        + "hit ratio: response cache %.0f%%  poster reuse %.0f%%"
+                        + "  detail prefetch %.0f%%\n"
+                        + "movies shared %d  list switches preloaded %d\n"
+                        + "requests failed %d  retried %d  throttled %d  circuit open %d",
+                HTTP_REQUESTS.get(), HTTP_BYTES_ON_WIRE.get() / 1024,
+                HTTP_BYTES_DECODED.get() / 1024,
+                summarize(HTTP_DNS), summarize(HTTP_CONNECT), summarize(HTTP_FIRST_BYTE),
+                summarize(HTTP_DOWNLOAD), summarize(TMDB_PARSE), summarize(GRID_BIND),
+                summarize(GRID_IMAGE_READY), summarize(DETAILS_TAP_TO_CONTENT),
+                summarize(STARTUP_COLD_FIRST_FRAME), summarize(STARTUP_COLD_FIRST_POSTER),
+                summarize(SEARCH_QUERY), summarize(LOCAL_QUERY), summarize(POSTER_DECODE),
+                POSTER_DISK_HITS.get(), POSTER_POOL_REUSED.get(),
+                POSTER_POOL_REUSED.get() + POSTER_POOL_ALLOCATED.get(),
+                responseCacheHitRatio() * 100, posterReuseRatio() * 100,
+                detailsPrefetchHitRatio() * 100, MOVIES_SHARED.get(), LIST_PRELOAD_HITS.get(),
+                REQUEST_FAILURES.get(), REQUEST_RETRIES.get(),
+                REQUEST_THROTTLED.get(), REQUEST_CIRCUIT_OPEN.get());
+    }
+
+    /**
+     * Summarizes a duration histogram as its median and 90th percentile in milliseconds.
+     */
+    private static String summarize(Histogram histogram) {
+        return String.format(Locale.US, "%.1f/%.1fms", histogram.getPercentile(50) / 1e6,
+                histogram.getPercentile(90) / 1e6);
+    }
+
+    private static double ratio(long part, long total) {
+        return total > 0 ? (double) part / total : 0;
+    }
+
+    private static void appendRatio(Appendable out, String name, double ratio)
+            throws IOException {
+        out.append('"').append(name).append("\":")
+                .append(String.format(Locale.US, "%.4f", ratio));
+    }
+
+    private static void appendHistogram(Appendable out, Histogram histogram) throws IOException {
+        out.append('"').append(histogram.getName()).append("\":{")
+                .append("\"count\":").append(Long.toString(histogram.getCount()))
+                .append(",\"sum\":").append(Long.toString(histogram.getSum()))
+                .append(",\"max\":").append(Long.toString(histogram.getMax()))
+                .append(",\"p50\":").append(Long.toString(histogram.getPercentile(50)))
+                .append(",\"p90\":").append(Long.toString(histogram.getPercentile(90)))
+                .append(",\"p99\":").append(Long.toString(histogram.getPercentile(99)))
+                .append(",\"buckets\":[");
+
+        boolean first = true;
+        for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+            long count = histogram.getBucketCount(i);
+            if (count == 0) {
+                continue;
+            }
+
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append('[').append(Long.toString(Histogram.bucketUpperBound(i))).append(',')
+                    .append(Long.toString(count)).append(']');
+        }
+        out.append("]}");
+    }
+}
@@ -0,0 +1,233 @@
+package io.chung.popularmovies.search;
+
+import android.os.Process;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import io.chung.popularmovies.TMDbMovie;
+import io.chung.popularmovies.metrics.Metrics;
+
+/**
+ * Process-wide search over every movie the app has parsed, backed by a {@link SearchIndex} that
+ * is saved to a file and read back at the next start.
+ *
+ * Movies are indexed on a background thread as list pages and details arrive, and the index is
+ * saved a little after it last changed. Searches run on the calling thread and take a few
+ * milliseconds, so they can run on every keystroke.
+ */
+public final class MovieSearch {
+
+    /* Movies kept in the index; about a megabyte with their list-level text. */
+    private static final int MAX_MOVIES = 4000;
+
+    /* How long the index waits after a change before it's saved, to batch up a sync's pages. */
+    private static final long SAVE_DELAY_SECONDS = 10;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static MovieSearch sInstance;
+
+    /* Replaced once, on the index thread, when the saved index has been read. */
+    private volatile SearchIndex mIndex = new SearchIndex(MAX_MOVIES);
+
+    /* One thread keeps loading, indexing and saving in order. */
+    private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "MovieSearch");
+                }
+            });
+
+    /* Where the index is saved; only used on the index thread. */
+    private File mFile;
+
+    private boolean mSaveScheduled;
+
+    private final Runnable mSave = new Runnable() {
+        @Override
+        public void run() {
+            if (mSaveScheduled) {
+                save();
+            }
+        }
+    };
+
+    /**
+     * Gets the process-wide movie search.
+     */
+    public static synchronized MovieSearch getInstance() {
+        if (sInstance == null) {
+            sInstance = new MovieSearch();
+        }
+        return sInstance;
+    }
+
+    private MovieSearch() {
+    }
+
+    /**
+     * Reads the index saved in a file, and saves it there from now on. Anything indexed before
+     * this is kept. Called once, from Application.onCreate.
+     * @param file The index file, which needn't exist yet.
+     */
+    public void open(final File file) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mFile = file;
+                SearchIndex saved = read(file);
+                if (saved == null) {
+                    return;
+                }
+
+                // Whatever was indexed meanwhile is newer than the saved index.
+                if (mIndex.size() > 0) {
+                    scheduleSave();
+                    return;
+                }
+                mIndex = saved;
+            }
+        });
+    }
+
+    /**
+     * Indexes movies from a list page.
+     * @param movies Movies with their list-level fields.
+     */
+    public void indexMovies(final TMDbMovie[] movies) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean changed = false;
+                for (TMDbMovie movie : movies) {
+                    changed |= mIndex.put(new SearchIndex.Document(movie.id, movie.title,
+                            movie.originalTitle, movie.getOverview(), null, movie.popularity));
+                }
+                if (changed) {
+                    scheduleSave();
+                }
+            }
+        });
+    }
+
+    /**
+     * Indexes a movie from its details, including its reviews.
+     */
+    public void indexMovieDetails(final TMDbMovie movie) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                TMDbMovie.Review[] reviews = movie.getReviews();
+                String[] reviewText = new String[reviews.length];
+                for (int i = 0; i < reviews.length; i++) {
+                    reviewText[i] = reviews[i].getContent();
+                }
+
+                if (mIndex.put(new SearchIndex.Document(movie.id, movie.title,
+                        movie.originalTitle, movie.getOverview(), reviewText, movie.popularity))) {
+                    scheduleSave();
+                }
+            }
+        });
+    }
+
+    /**
+     * Finds the indexed movies that best match a query.
+     * @param query What the user typed so far.
+     * @param limit Most results to return.
+     * @return The results, best first.
+     */
+    public SearchIndex.Result[] search(String query, int limit) {
+        long startNanos = System.nanoTime();
+        SearchIndex.Result[] results = mIndex.search(query, limit);
+        Metrics.SEARCH_QUERY.record(System.nanoTime() - startNanos);
+        return results;
+    }
+
+    /**
+     * Saves any unsaved changes now, for a process that may not live until the delayed save.
+     */
+    @WorkerThread
+    public void flush() {
+        try {
+            mExecutor.submit(mSave).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void scheduleSave() {
+        if (mSaveScheduled || mFile == null) {
+            return;
+        }
+
+        mSaveScheduled = true;
+        mExecutor.schedule(mSave, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void save() {
+        mSaveScheduled = false;
+
+        // Written to memory first, so searches only wait for the index, not the disk.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        File tempFile = new File(mFile.getPath() + TEMP_SUFFIX);
+        try {
+            mIndex.writeTo(new DataOutputStream(bytes));
+
+            FileOutputStream out = new FileOutputStream(tempFile);
+            try {
+                bytes.writeTo(out);
+            } finally {
+                out.close();
+            }
+
+            if (!tempFile.renameTo(mFile)) {
+                throw new IOException("Unable to replace " + mFile);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+        }
+    }
+
+    private static SearchIndex read(File file) {
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            try {
+                return SearchIndex.readFrom(in, MAX_MOVIES);
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            // Truncated or damaged; the index fills up again as movies are seen.
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
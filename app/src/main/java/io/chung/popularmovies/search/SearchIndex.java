@@ -0,0 +1,681 @@
+package io.chung.popularmovies.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An inverted index over movie text, kept up to date one movie at a time, that ranks movies
+ * against a query as it's typed.
+ *
+ * Each term maps to the movies that contain it, with a weight that favors terms in the title
+ * over the overview and reviews. A query term matches index terms exactly, by prefix, or within
+ * an edit or two, each kind scoring less than the last; rarer terms score more. Every query term
+ * that isn't a stop word has to match for a movie to be a result.
+ *
+ * Memory is bounded by the number of movies, the least recently indexed being dropped first,
+ * and by the number of distinct terms kept per movie. All methods are thread-safe.
+ */
+public final class SearchIndex {
+
+    /* Weight of one occurrence of a term in each field. A term's weight is capped. */
+    static final int TITLE_WEIGHT = 10;
+    static final int ORIGINAL_TITLE_WEIGHT = 6;
+    static final int OVERVIEW_WEIGHT = 2;
+    static final int REVIEW_WEIGHT = 1;
+    private static final int MAX_WEIGHT = 1000;
+
+    /* Distinct terms kept per movie. The titles come first, so only long reviews get cut. */
+    static final int MAX_TERMS_PER_MOVIE = 128;
+
+    /* Query terms shorter than these only match exactly, or only by prefix. */
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int MIN_FUZZY_LENGTH = 4;
+    /* Query terms this long may be two edits away from an index term rather than one. */
+    private static final int TWO_EDIT_LENGTH = 8;
+
+    /* Index terms one query term may expand to, by prefix and by edits. */
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final int MAX_FUZZY_EXPANSIONS = 32;
+
+    private static final int MAX_QUERY_TERMS = 8;
+
+    /* How much less than an exact match a completion or a near miss scores. */
+    private static final float PREFIX_FACTOR = 0.75f;
+    private static final float FUZZY_FACTOR = 0.5f;
+
+    /* Weight at which a term counts for half its most; more occurrences add less and less. */
+    private static final float WEIGHT_SATURATION = 8f;
+
+    /* Popularity only breaks near ties: the most popular movies get a few percent more. */
+    private static final double POPULARITY_DAMPING = 100;
+
+    /* Bumped when the format or the tokenizer changes; an index in another version is dropped. */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Result[] NO_RESULTS = new Result[0];
+
+    private final int mMaxMovies;
+
+    /* Postings by term, sorted so completions of a prefix are adjacent. */
+    private final TreeMap<String, Postings> mTerms = new TreeMap<>();
+
+    /* Indexed movies by ID, least recently indexed first. */
+    private final LinkedHashMap<Integer, Entry> mEntries = new LinkedHashMap<>();
+
+    /* Movies by slot, the dense number postings refer to them by. Freed slots are reused. */
+    private Entry[] mSlots = new Entry[16];
+    private int mSlotCount;
+    private int[] mFreeSlots = new int[16];
+    private int mFreeSlotCount;
+
+    /**
+     * The searchable text of a movie.
+     */
+    public static final class Document {
+        final int movieId;
+        final String title;
+        final String originalTitle;
+        final String overview;
+        final String[] reviews;
+        final double popularity;
+
+        /**
+         * @param reviews Review text, or null if only the movie's list-level fields are known.
+         *                A document without reviews never replaces one with them.
+         */
+        public Document(int movieId, String title, String originalTitle, String overview,
+                        String[] reviews, double popularity) {
+            this.movieId = movieId;
+            this.title = title;
+            this.originalTitle = originalTitle;
+            this.overview = overview;
+            this.reviews = reviews;
+            this.popularity = popularity;
+        }
+
+        boolean hasDetails() {
+            return reviews != null;
+        }
+
+        int contentHash() {
+            return Arrays.hashCode(new Object[] {title, originalTitle, overview,
+                    Arrays.hashCode(reviews)});
+        }
+    }
+
+    /**
+     * A movie matching a query.
+     */
+    public static final class Result {
+        public final int movieId;
+        public final String title;
+        public final float score;
+
+        Result(int movieId, String title, float score) {
+            this.movieId = movieId;
+            this.title = title;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Creates an empty index.
+     * @param maxMovies Most movies to keep.
+     */
+    public SearchIndex(int maxMovies) {
+        mMaxMovies = maxMovies;
+    }
+
+    public synchronized int size() {
+        return mEntries.size();
+    }
+
+    synchronized int termCount() {
+        return mTerms.size();
+    }
+
+    /**
+     * Adds a movie, or replaces it if its text changed.
+     * @param document The movie's text.
+     * @return True if the index changed, false if the movie was already indexed as it is.
+     */
+    public synchronized boolean put(Document document) {
+        Entry existing = mEntries.get(document.movieId);
+        int contentHash = document.contentHash();
+
+        if (existing != null && (existing.hasDetails && !document.hasDetails()
+                || existing.hasDetails == document.hasDetails()
+                && existing.contentHash == contentHash)) {
+            // Nothing to reindex, but the movie was just seen, so it's kept longest.
+            existing.popularity = (float) document.popularity;
+            mEntries.remove(document.movieId);
+            mEntries.put(document.movieId, existing);
+            return false;
+        }
+
+        TermCollector terms = new TermCollector();
+        terms.collect(document.title, TITLE_WEIGHT, false);
+        terms.collect(document.originalTitle, ORIGINAL_TITLE_WEIGHT, false);
+        terms.collect(document.overview, OVERVIEW_WEIGHT, true);
+        if (document.reviews != null) {
+            for (String review : document.reviews) {
+                terms.collect(review, REVIEW_WEIGHT, true);
+            }
+        }
+
+        String[] termArray = new String[terms.weights.size()];
+        int[] weights = new int[termArray.length];
+        int i = 0;
+        for (Map.Entry<String, Integer> term : terms.weights.entrySet()) {
+            termArray[i] = term.getKey();
+            weights[i] = term.getValue();
+            i++;
+        }
+
+        if (existing != null) {
+            remove(existing);
+        }
+        add(document.movieId, document.title, (float) document.popularity, contentHash,
+                document.hasDetails(), termArray, weights);
+        return true;
+    }
+
+    /**
+     * Removes a movie.
+     * @return True if it was indexed.
+     */
+    public synchronized boolean remove(int movieId) {
+        Entry entry = mEntries.get(movieId);
+        if (entry == null) {
+            return false;
+        }
+
+        remove(entry);
+        return true;
+    }
+
+    /**
+     * Finds the movies that best match a query.
+     * @param query What the user typed so far.
+     * @param limit Most results to return.
+     * @return The results, best first.
+     */
+    public synchronized Result[] search(String query, int limit) {
+        final Set<String> queryTerms = new LinkedHashSet<>();
+        Tokenizer.tokenize(query, new Tokenizer.TermSink() {
+            @Override
+            public void onTerm(String term) {
+                if (queryTerms.size() < MAX_QUERY_TERMS) {
+                    queryTerms.add(term);
+                }
+            }
+        });
+        if (queryTerms.isEmpty() || mEntries.isEmpty()) {
+            return NO_RESULTS;
+        }
+
+        // Stop words are only required when the query is nothing but stop words, like "it".
+        boolean allStopWords = true;
+        for (String term : queryTerms) {
+            allStopWords &= Tokenizer.isStopWord(term);
+        }
+
+        float[] totals = new float[mSlotCount];
+        int[] matchedTerms = new int[mSlotCount];
+        float[] best = new float[mSlotCount];
+        EditDistance editDistance = new EditDistance();
+        int requiredTerms = 0;
+
+        for (String term : queryTerms) {
+            boolean required = allStopWords || !Tokenizer.isStopWord(term);
+            if (required) {
+                requiredTerms++;
+            }
+
+            Arrays.fill(best, 0);
+            match(term, best, editDistance);
+
+            for (int slot = 0; slot < mSlotCount; slot++) {
+                if (best[slot] > 0) {
+                    totals[slot] += best[slot];
+                    if (required) {
+                        matchedTerms[slot]++;
+                    }
+                }
+            }
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (int slot = 0; slot < mSlotCount; slot++) {
+            if (totals[slot] > 0 && matchedTerms[slot] == requiredTerms) {
+                Entry entry = mSlots[slot];
+                double boost = 1 + Math.log1p(Math.max(0, entry.popularity)) / POPULARITY_DAMPING;
+                results.add(new Result(entry.movieId, entry.title, (float) (totals[slot] * boost)));
+            }
+        }
+
+        Collections.sort(results, new Comparator<Result>() {
+            @Override
+            public int compare(Result a, Result b) {
+                int byScore = Float.compare(b.score, a.score);
+                return byScore != 0 ? byScore : Integer.compare(a.movieId, b.movieId);
+            }
+        });
+        return results.subList(0, Math.min(limit, results.size())).toArray(NO_RESULTS);
+    }
+
+    /**
+     * Scores every movie against one query term, keeping each movie's best match in best.
+     */
+    private void match(String term, float[] best, EditDistance editDistance) {
+        int movieCount = mEntries.size();
+
+        Postings exact = mTerms.get(term);
+        if (exact != null) {
+            score(exact, 1f, movieCount, best);
+        }
+
+        if (term.length() >= MIN_PREFIX_LENGTH) {
+            int expansions = 0;
+            for (Postings completion : mTerms.subMap(term, false, term + Character.MAX_VALUE,
+                    false).values()) {
+                if (++expansions > MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                // Completions closer in length to what was typed are likelier what's meant.
+                float closeness = 0.5f + 0.5f * term.length() / completion.term.length();
+                score(completion, PREFIX_FACTOR * closeness, movieCount, best);
+            }
+        }
+
+        if (term.length() < MIN_FUZZY_LENGTH) {
+            return;
+        }
+
+        // Near misses are found by checking every term, which stays in the low milliseconds for
+        // the tens of thousands of terms a full index holds.
+        int maxEdits = term.length() >= TWO_EDIT_LENGTH ? 2 : 1;
+        int letters = Postings.letters(term);
+        int expansions = 0;
+        for (Postings candidate : mTerms.values()) {
+            String candidateTerm = candidate.term;
+            // Each edit leaves at most one letter on either side that the other lacks, so most
+            // terms are ruled out by their letters alone, before any edit distance.
+            if (Integer.bitCount(letters & ~candidate.letters) > maxEdits
+                    || candidateTerm.startsWith(term)) {
+                continue;
+            }
+
+            // A near miss of the whole term, or of the start of a longer one still being typed.
+            int edits = Integer.bitCount(candidate.letters & ~letters) > maxEdits ? maxEdits + 1
+                    : editDistance.get(term, candidateTerm, candidateTerm.length(), maxEdits);
+            float factor = FUZZY_FACTOR;
+            if (edits > maxEdits && candidateTerm.length() > term.length()) {
+                edits = editDistance.get(term, candidateTerm, term.length(), maxEdits);
+                factor *= PREFIX_FACTOR;
+            }
+
+            if (edits <= maxEdits) {
+                score(candidate, factor / edits, movieCount, best);
+                if (++expansions >= MAX_FUZZY_EXPANSIONS) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void score(Postings postings, float factor, int movieCount, float[] best) {
+        float idf = (float) Math.log(1 + (movieCount - postings.size + 0.5)
+                / (postings.size + 0.5));
+
+        for (int i = 0; i < postings.size; i++) {
+            int weight = postings.weights[i];
+            float score = factor * idf * weight / (weight + WEIGHT_SATURATION);
+            int slot = postings.slots[i];
+            if (score > best[slot]) {
+                best[slot] = score;
+            }
+        }
+    }
+
+    /**
+     * Writes the index. Terms are written once, sorted and front-coded, and each movie as the
+     * numbers and weights of its terms.
+     * @param out Where to write the index.
+     * @throws IOException Thrown when writing to out fails.
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+
+        Map<String, Integer> termNumbers = new HashMap<>(mTerms.size() * 2);
+        out.writeInt(mTerms.size());
+        String previous = "";
+        for (String term : mTerms.keySet()) {
+            int shared = 0;
+            int maxShared = Math.min(previous.length(), term.length());
+            while (shared < maxShared && previous.charAt(shared) == term.charAt(shared)) {
+                shared++;
+            }
+            out.writeByte(shared);
+            out.writeUTF(term.substring(shared));
+
+            termNumbers.put(term, termNumbers.size());
+            previous = term;
+        }
+
+        // Least recently indexed first, so reading them back in order keeps the order.
+        out.writeInt(mEntries.size());
+        for (Entry entry : mEntries.values()) {
+            out.writeInt(entry.movieId);
+            out.writeUTF(entry.title != null ? entry.title : "");
+            out.writeFloat(entry.popularity);
+            out.writeInt(entry.contentHash);
+            out.writeBoolean(entry.hasDetails);
+
+            writeVarInt(out, entry.terms.length);
+            for (int i = 0; i < entry.terms.length; i++) {
+                writeVarInt(out, termNumbers.get(entry.terms[i]));
+                writeVarInt(out, entry.weights[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #writeTo(DataOutputStream)}.
+     * @param in Where to read the index from.
+     * @param maxMovies Most movies to keep; if it has more, the least recently indexed are
+     *                  dropped.
+     * @return The index, which is empty if it was written by another version of the app.
+     * @throws IOException Thrown when reading fails or the index is malformed.
+     */
+    public static SearchIndex readFrom(DataInputStream in, int maxMovies) throws IOException {
+        SearchIndex index = new SearchIndex(maxMovies);
+        if (in.readInt() != FORMAT_VERSION) {
+            return index;
+        }
+
+        String[] terms = new String[checkCount(in.readInt())];
+        String previous = "";
+        for (int i = 0; i < terms.length; i++) {
+            int shared = in.readUnsignedByte();
+            if (shared > previous.length()) {
+                throw new IOException("Malformed term " + i);
+            }
+            terms[i] = previous.substring(0, shared) + in.readUTF();
+            if (terms[i].length() > Tokenizer.MAX_TERM_LENGTH) {
+                throw new IOException("Malformed term " + i);
+            }
+            previous = terms[i];
+        }
+
+        int movieCount = checkCount(in.readInt());
+        for (int i = 0; i < movieCount; i++) {
+            int movieId = in.readInt();
+            String title = in.readUTF();
+            float popularity = in.readFloat();
+            int contentHash = in.readInt();
+            boolean hasDetails = in.readBoolean();
+
+            String[] movieTerms = new String[checkCount(readVarInt(in))];
+            int[] weights = new int[movieTerms.length];
+            for (int t = 0; t < movieTerms.length; t++) {
+                int termNumber = readVarInt(in);
+                if (termNumber >= terms.length) {
+                    throw new IOException("Malformed term number " + termNumber);
+                }
+                movieTerms[t] = terms[termNumber];
+                weights[t] = readVarInt(in);
+            }
+
+            Entry existing = index.mEntries.get(movieId);
+            if (existing != null) {
+                index.remove(existing);
+            }
+            index.add(movieId, title, popularity, contentHash, hasDetails, movieTerms, weights);
+        }
+        return index;
+    }
+
+    private void add(int movieId, String title, float popularity, int contentHash,
+                     boolean hasDetails, String[] terms, int[] weights) {
+        Entry entry = new Entry();
+        entry.slot = allocateSlot();
+        entry.movieId = movieId;
+        entry.title = title;
+        entry.popularity = popularity;
+        entry.contentHash = contentHash;
+        entry.hasDetails = hasDetails;
+        entry.terms = terms;
+        entry.weights = weights;
+
+        for (int i = 0; i < terms.length; i++) {
+            Postings postings = mTerms.get(terms[i]);
+            if (postings == null) {
+                postings = new Postings(terms[i]);
+                mTerms.put(postings.term, postings);
+            }
+            // Movies share the index's copy of each term.
+            terms[i] = postings.term;
+            postings.add(entry.slot, weights[i]);
+        }
+
+        mSlots[entry.slot] = entry;
+        mEntries.put(movieId, entry);
+
+        if (mEntries.size() > mMaxMovies) {
+            Iterator<Entry> eldest = mEntries.values().iterator();
+            remove(eldest.next());
+        }
+    }
+
+    private void remove(Entry entry) {
+        for (String term : entry.terms) {
+            Postings postings = mTerms.get(term);
+            postings.remove(entry.slot);
+            if (postings.size == 0) {
+                mTerms.remove(term);
+            }
+        }
+
+        mEntries.remove(entry.movieId);
+        mSlots[entry.slot] = null;
+        if (mFreeSlotCount == mFreeSlots.length) {
+            mFreeSlots = Arrays.copyOf(mFreeSlots, mFreeSlotCount * 2);
+        }
+        mFreeSlots[mFreeSlotCount++] = entry.slot;
+    }
+
+    private int allocateSlot() {
+        if (mFreeSlotCount > 0) {
+            return mFreeSlots[--mFreeSlotCount];
+        }
+
+        if (mSlotCount == mSlots.length) {
+            mSlots = Arrays.copyOf(mSlots, mSlotCount * 2);
+        }
+        return mSlotCount++;
+    }
+
+    private static int checkCount(int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Malformed count " + count);
+        }
+        return count;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static final class Entry {
+        int slot;
+        int movieId;
+        String title;
+        float popularity;
+        int contentHash;
+        boolean hasDetails;
+        /* Distinct terms and their weights, in parallel. */
+        String[] terms;
+        int[] weights;
+    }
+
+    /**
+     * The movies a term is in, by slot, with its weight in each. Unordered.
+     */
+    private static final class Postings {
+        final String term;
+        /* Which letters the term has, folded into 32 bits. */
+        final int letters;
+        int[] slots = new int[2];
+        int[] weights = new int[2];
+        int size;
+
+        Postings(String term) {
+            this.term = term;
+            letters = letters(term);
+        }
+
+        static int letters(String term) {
+            int letters = 0;
+            for (int i = 0; i < term.length(); i++) {
+                letters |= 1 << (term.charAt(i) & 31);
+            }
+            return letters;
+        }
+
+        void add(int slot, int weight) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            slots[size] = slot;
+            weights[size] = weight;
+            size++;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    size--;
+                    slots[i] = slots[size];
+                    weights[i] = weights[size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sums the weights of a movie's distinct terms across its fields, up to the per-movie limit.
+     */
+    private static final class TermCollector implements Tokenizer.TermSink {
+        final LinkedHashMap<String, Integer> weights = new LinkedHashMap<>();
+
+        private int mFieldWeight;
+        private boolean mSkipStopWords;
+
+        void collect(String text, int fieldWeight, boolean skipStopWords) {
+            mFieldWeight = fieldWeight;
+            mSkipStopWords = skipStopWords;
+            Tokenizer.tokenize(text, this);
+        }
+
+        @Override
+        public void onTerm(String term) {
+            if (mSkipStopWords && Tokenizer.isStopWord(term)) {
+                return;
+            }
+
+            Integer weight = weights.get(term);
+            if (weight != null) {
+                weights.put(term, Math.min(MAX_WEIGHT, weight + mFieldWeight));
+            } else if (weights.size() < MAX_TERMS_PER_MOVIE) {
+                weights.put(term, mFieldWeight);
+            }
+        }
+    }
+
+    /**
+     * Optimal string alignment distance, the edit distance that counts swapping two adjacent
+     * letters as one edit, given up on once it's known to be over a limit. Reuses its rows
+     * across calls.
+     */
+    private static final class EditDistance {
+        private int[] mTwoRowsBack = new int[Tokenizer.MAX_TERM_LENGTH + 1];
+        private int[] mPreviousRow = new int[Tokenizer.MAX_TERM_LENGTH + 1];
+        private int[] mRow = new int[Tokenizer.MAX_TERM_LENGTH + 1];
+
+        /**
+         * @param a First term.
+         * @param b Second term, of which only the first bLength characters are compared.
+         * @param max Largest distance of interest.
+         * @return The distance, or max + 1 if it's over max.
+         */
+        int get(String a, String b, int bLength, int max) {
+            int aLength = a.length();
+            if (Math.abs(aLength - bLength) > max) {
+                return max + 1;
+            }
+
+            for (int j = 0; j <= bLength; j++) {
+                mPreviousRow[j] = j;
+            }
+
+            for (int i = 1; i <= aLength; i++) {
+                char ca = a.charAt(i - 1);
+                mRow[0] = i;
+                int rowMin = i;
+
+                for (int j = 1; j <= bLength; j++) {
+                    char cb = b.charAt(j - 1);
+                    int distance = Math.min(Math.min(mPreviousRow[j], mRow[j - 1]) + 1,
+                            mPreviousRow[j - 1] + (ca == cb ? 0 : 1));
+                    if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                        distance = Math.min(distance, mTwoRowsBack[j - 2] + 1);
+                    }
+                    mRow[j] = distance;
+                    rowMin = Math.min(rowMin, distance);
+                }
+
+                if (rowMin > max) {
+                    return max + 1;
+                }
+
+                int[] recycled = mTwoRowsBack;
+                mTwoRowsBack = mPreviousRow;
+                mPreviousRow = mRow;
+                mRow = recycled;
+            }
+            return Math.min(mPreviousRow[bLength], max + 1);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.chung.popularmovies.search;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits text into search terms: runs of letters and digits, lower-cased, with accents removed
+ * so that typing a title without its accents still finds it.
+ */
+final class Tokenizer {
+
+    /* Words too common in overviews and reviews to be worth indexing there. Titles keep them. */
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "has", "he",
+            "her", "his", "in", "into", "is", "it", "its", "of", "on", "or", "she", "that",
+            "the", "their", "they", "this", "to", "was", "when", "who", "with"));
+
+    /* Terms longer than this are cut short; nobody types more to find a movie. */
+    static final int MAX_TERM_LENGTH = 32;
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Receives the terms of a text, in order, duplicates included.
+     */
+    interface TermSink {
+        void onTerm(String term);
+    }
+
+    /**
+     * Splits text into terms.
+     * @param text The text, or null for none.
+     * @param sink Receives each term.
+     */
+    static void tokenize(String text, TermSink sink) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+
+        String folded = fold(text);
+        int length = folded.length();
+        int start = -1;
+
+        for (int i = 0; i <= length; i++) {
+            boolean inTerm = i < length && Character.isLetterOrDigit(folded.charAt(i));
+
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                sink.onTerm(folded.substring(start, Math.min(i, start + MAX_TERM_LENGTH)));
+                start = -1;
+            }
+        }
+    }
+
+    static boolean isStopWord(String term) {
+        return STOP_WORDS.contains(term);
+    }
+
+    /**
+     * Lower-cases text and strips the accents off its letters.
+     */
+    private static String fold(String text) {
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+
+        // Only text with non-ASCII characters can have accents to strip.
+        boolean ascii = true;
+        for (int i = 0; i < lowerCase.length() && ascii; i++) {
+            ascii = lowerCase.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            return lowerCase;
+        }
+
+        String decomposed = Normalizer.normalize(lowerCase, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                folded.append(c);
+            }
+        }
+        return folded.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package io.chung.popularmovies.utilities;
+
+/**
+ * Stops requests to an endpoint that keeps failing, so a TMDb outage costs one quick failure per
+ * request instead of a timeout and a round of retries each.
+ *
+ * After enough failures in a row the breaker opens and turns requests away. Once it has been open
+ * for a while, one trial request is let through: success closes the breaker, and failure opens it
+ * again for another while. Times are passed in, so it can be driven by a fake clock.
+ */
+final class CircuitBreaker {
+
+    private final int mFailureThreshold;
+    private final long mOpenNanos;
+
+    /* Guarded by this. */
+    private int mFailures;
+    private boolean mOpen;
+    private long mOpenedAtNanos;
+    private boolean mTrialInFlight;
+
+    /**
+     * @param failureThreshold Failures in a row that open the breaker.
+     * @param openNanos How long it stays open before a trial request.
+     */
+    CircuitBreaker(int failureThreshold, long openNanos) {
+        mFailureThreshold = failureThreshold;
+        mOpenNanos = openNanos;
+    }
+
+    /**
+     * Checks whether a request may be sent now. A caller that's allowed must report the outcome
+     * with {@link #onSuccess()} or {@link #onFailure(long)}, or {@link #onNotSent()} if it
+     * didn't send the request after all.
+     * @param nowNanos The current time.
+     * @return True if the request may be sent.
+     */
+    synchronized boolean allowRequest(long nowNanos) {
+        if (!mOpen) {
+            return true;
+        }
+        if (mTrialInFlight || nowNanos - mOpenedAtNanos < mOpenNanos) {
+            return false;
+        }
+
+        mTrialInFlight = true;
+        return true;
+    }
+
+    /**
+     * Records that the endpoint answered, which closes the breaker.
+     */
+    synchronized void onSuccess() {
+        mFailures = 0;
+        mOpen = false;
+        mTrialInFlight = false;
+    }
+
+    /**
+     * Records that the endpoint failed or didn't answer.
+     * @param nowNanos The current time.
+     */
+    synchronized void onFailure(long nowNanos) {
+        mTrialInFlight = false;
+        mFailures++;
+        if (mOpen || mFailures >= mFailureThreshold) {
+            mOpen = true;
+            mOpenedAtNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Records that an allowed request wasn't sent, so another request can be the trial.
+     */
+    synchronized void onNotSent() {
+        mTrialInFlight = false;
+    }
+
+    synchronized boolean isOpen() {
+        return mOpen;
+    }
+}
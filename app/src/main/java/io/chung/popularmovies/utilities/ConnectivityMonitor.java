@@ -0,0 +1,94 @@
+package io.chung.popularmovies.utilities;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.telephony.TelephonyManager;
+
+/**
+ * Tells the {@link NetworkQualityEstimator} about the connection whenever it changes: whether
+ * there is one, whether it's metered, and how good its type suggests it is until requests have
+ * been measured on it.
+ */
+public final class ConnectivityMonitor extends BroadcastReceiver {
+
+    private final ConnectivityManager mConnectivityManager;
+    private final NetworkQualityEstimator mEstimator;
+
+    private ConnectivityMonitor(Context context, NetworkQualityEstimator estimator) {
+        mConnectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mEstimator = estimator;
+    }
+
+    /**
+     * Reports the current connection, and every change to it for as long as the app runs.
+     * Called once, from Application.onCreate.
+     */
+    public static void start(Context context, NetworkQualityEstimator estimator) {
+        context = context.getApplicationContext();
+
+        ConnectivityMonitor monitor = new ConnectivityMonitor(context, estimator);
+        monitor.update();
+        context.registerReceiver(monitor,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        update();
+    }
+
+    private void update() {
+        NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+        if (info == null || !info.isConnected()) {
+            mEstimator.onConnectivityChanged(false, false, null,
+                    NetworkQualityEstimator.Quality.OFFLINE);
+            return;
+        }
+
+        // The extra info names the Wi-Fi network or the APN, so switching either starts afresh.
+        String networkKey = info.getType() + ":" + info.getSubtype() + ":" + info.getExtraInfo();
+        mEstimator.onConnectivityChanged(true, mConnectivityManager.isActiveNetworkMetered(),
+                networkKey, priorFor(info));
+    }
+
+    /**
+     * Guesses how good a connection is from its type alone.
+     */
+    private static NetworkQualityEstimator.Quality priorFor(NetworkInfo info) {
+        switch (info.getType()) {
+            case ConnectivityManager.TYPE_WIFI:
+            case ConnectivityManager.TYPE_ETHERNET:
+                return NetworkQualityEstimator.Quality.GOOD;
+            case ConnectivityManager.TYPE_MOBILE:
+                break;
+            default:
+                return NetworkQualityEstimator.Quality.MODERATE;
+        }
+
+        switch (info.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return NetworkQualityEstimator.Quality.POOR;
+            case TelephonyManager.NETWORK_TYPE_UMTS:
+            case TelephonyManager.NETWORK_TYPE_EVDO_0:
+            case TelephonyManager.NETWORK_TYPE_EVDO_A:
+            case TelephonyManager.NETWORK_TYPE_EVDO_B:
+            case TelephonyManager.NETWORK_TYPE_HSDPA:
+            case TelephonyManager.NETWORK_TYPE_HSUPA:
+            case TelephonyManager.NETWORK_TYPE_HSPA:
+            case TelephonyManager.NETWORK_TYPE_EHRPD:
+                return NetworkQualityEstimator.Quality.MODERATE;
+            default:
+                // HSPA+, LTE and whatever comes after.
+                return NetworkQualityEstimator.Quality.GOOD;
+        }
+    }
+}
@@ -0,0 +1,632 @@
+package io.chung.popularmovies.utilities;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.chung.popularmovies.metrics.Metrics;
+
+/**
+ * Size-bounded, least-recently-used disk cache for TMDb API responses.
+ *
+ * Entries are keyed by the request URL with the api_key parameter removed, so a changed key
+ * doesn't orphan the cache. A fresh entry (within its Cache-Control max-age) is served without
+ * touching the network. A stale entry is revalidated with If-None-Match / If-Modified-Since, and
+ * is served as-is when the network fails or TMDb answers with a server error.
+ *
+ * A cached body is opened before anything else is decided about it, so an entry evicted by a
+ * concurrent request can still be served by one that already looked it up. Metadata whose body
+ * is gone counts as a miss.
+ */
+public final class DiskResponseCache {
+
+    private static final String API_KEY_PARAM = "api_key";
+
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String DIRECTIVE_MAX_AGE = "max-age=";
+    private static final String DIRECTIVE_NO_STORE = "no-store";
+    private static final String DIRECTIVE_NO_CACHE = "no-cache";
+
+    /* Each entry is a metadata file and a body file named after the hashed key. */
+    private static final String METADATA_SUFFIX = ".0";
+    private static final String BODY_SUFFIX = ".1";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /* Bump when the metadata layout changes so old entries are ignored instead of misread. */
+    private static final int METADATA_VERSION = 1;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final TMDbHttpClient mHttpClient;
+
+    /* Hashed key to body size, in access order so the eldest entry is evicted first. */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mSize;
+
+    /* Outcome counters of this cache, mainly useful for tests; Metrics counts them app-wide. */
+    private int mHitCount;
+    private int mMissCount;
+    private int mRevalidatedCount;
+    private int mStaleServedCount;
+
+    /**
+     * Opens the cache in the given directory, picking up any entries left by a previous process.
+     * @param directory Directory owned exclusively by this cache.
+     * @param maxSize Upper bound on the total size of cached bodies, in bytes.
+     * @param httpClient Client used for requests that can't be answered from disk.
+     */
+    public DiskResponseCache(File directory, long maxSize, TMDbHttpClient httpClient) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mHttpClient = httpClient;
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IllegalStateException("Unable to create cache directory " + directory);
+        }
+
+        loadIndex();
+    }
+
+    /**
+     * Fetches the URL through the cache and hands the response body to the given handler.
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @param handler Handler that reads the response body.
+     * @param <T> The type produced by the handler.
+     * @return The result of the handler.
+     * @throws IOException Thrown when the network fails and there's no cached copy to fall back on.
+     * @throws TMDbException Thrown when TMDb reports a failed request.
+     */
+    public <T> T fetch(URL url, NetworkUtils.ResponseHandler<T> handler)
+            throws IOException, TMDbException {
+
+        String hashedKey = hashKey(cacheKey(url));
+        Metadata cached = readMetadata(hashedKey);
+        InputStream cachedBody = cached != null ? openBody(hashedKey) : null;
+        if (cachedBody == null) {
+            // Without its body the entry can't be served or revalidated, so fetch it afresh.
+            cached = null;
+        }
+
+        try {
+            if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+                synchronized (this) {
+                    mHitCount++;
+                }
+                Metrics.RESPONSE_CACHE_HITS.increment();
+                return handler.handleResponse(cachedBody);
+            }
+
+            return fetchFromNetwork(url, handler, hashedKey, cached, cachedBody);
+        } finally {
+            closeQuietly(cachedBody);
+        }
+    }
+
+    private <T> T fetchFromNetwork(URL url, NetworkUtils.ResponseHandler<T> handler,
+                                   String hashedKey, Metadata cached, InputStream cachedBody)
+            throws IOException, TMDbException {
+
+        TMDbHttpClient.Response response = null;
+        try {
+            String[] conditionalHeaders = {HEADER_IF_NONE_MATCH, HEADER_IF_MODIFIED_SINCE};
+            String[] conditionalValues = cached != null
+                    ? new String[]{cached.etag, cached.lastModified}
+                    : new String[2];
+
+            response = mHttpClient.get(url, conditionalHeaders, conditionalValues);
+            int responseCode = response.code();
+
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                Metadata refreshed = new Metadata(cached.key,
+                        firstNonNull(response.header(HEADER_ETAG), cached.etag),
+                        firstNonNull(response.header(HEADER_LAST_MODIFIED), cached.lastModified),
+                        System.currentTimeMillis(),
+                        parseMaxAge(response.header(HEADER_CACHE_CONTROL)));
+
+                synchronized (this) {
+                    // Evicted while the request was out: its files are gone, so leave them be
+                    // rather than write metadata for a body that no longer exists.
+                    if (mEntries.containsKey(hashedKey)) {
+                        writeMetadata(hashedKey, refreshed);
+                    }
+                    mRevalidatedCount++;
+                }
+                Metrics.RESPONSE_CACHE_REVALIDATED.increment();
+                return handler.handleResponse(cachedBody);
+            }
+
+            if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR && cached != null) {
+                return serveStale(cachedBody, handler);
+            }
+
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw TMDbUtils.parseResponseError(response.body(), responseCode,
+                        response.header(NetworkUtils.HEADER_RETRY_AFTER));
+            }
+
+            synchronized (this) {
+                mMissCount++;
+            }
+            Metrics.RESPONSE_CACHE_MISSES.increment();
+
+            String cacheControl = response.header(HEADER_CACHE_CONTROL);
+            InputStream in = response.body();
+
+            if (cacheControl != null && cacheControl.contains(DIRECTIVE_NO_STORE)) {
+                return handler.handleResponse(in);
+            }
+
+            Metadata metadata = new Metadata(cacheKey(url),
+                    response.header(HEADER_ETAG),
+                    response.header(HEADER_LAST_MODIFIED),
+                    System.currentTimeMillis(),
+                    parseMaxAge(cacheControl));
+
+            // Copy the body to disk as the handler reads it, so the response is only streamed once.
+            CachingInputStream cachingIn = new CachingInputStream(in, hashedKey, metadata);
+            try {
+                T result = handler.handleResponse(cachingIn);
+                cachingIn.commit();
+                return result;
+            } finally {
+                cachingIn.close();
+            }
+        } catch (IOException e) {
+            if (cached != null) {
+                return serveStale(cachedBody, handler);
+            }
+            throw e;
+        } finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    /**
+     * Checks whether {@link #fetch(URL, NetworkUtils.ResponseHandler)} would serve the URL from
+     * disk without a request. The answer can change by the time it's fetched.
+     * @param url The URL to look up.
+     * @return True if a fresh response is cached.
+     */
+    public boolean isFresh(URL url) {
+        Metadata cached = readMetadata(hashKey(cacheKey(url)));
+        return cached != null && cached.isFresh(System.currentTimeMillis());
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public synchronized void evictAll() {
+        for (String hashedKey : mEntries.keySet()) {
+            deleteEntryFiles(hashedKey);
+        }
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    public synchronized long size() {
+        return mSize;
+    }
+
+    public synchronized int hitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int missCount() {
+        return mMissCount;
+    }
+
+    public synchronized int revalidatedCount() {
+        return mRevalidatedCount;
+    }
+
+    public synchronized int staleServedCount() {
+        return mStaleServedCount;
+    }
+
+    /**
+     * Builds the cache key for a URL, which is the URL without its api_key query parameter.
+     * @param url Request URL.
+     * @return The cache key.
+     */
+    static String cacheKey(URL url) {
+        String query = url.getQuery();
+        String spec = url.toExternalForm();
+
+        if (query == null) {
+            return spec;
+        }
+
+        StringBuilder filteredQuery = new StringBuilder();
+        for (String parameter : query.split("&")) {
+            if (parameter.equals(API_KEY_PARAM) || parameter.startsWith(API_KEY_PARAM + "=")) {
+                continue;
+            }
+            if (filteredQuery.length() > 0) {
+                filteredQuery.append('&');
+            }
+            filteredQuery.append(parameter);
+        }
+
+        String base = spec.substring(0, spec.indexOf('?'));
+        return filteredQuery.length() == 0 ? base : base + '?' + filteredQuery;
+    }
+
+    /**
+     * Reads the max-age directive out of a Cache-Control header.
+     * @return The max age in seconds, or 0 if the response must always be revalidated.
+     */
+    static long parseMaxAge(String cacheControl) {
+        if (cacheControl == null || cacheControl.contains(DIRECTIVE_NO_CACHE)) {
+            return 0;
+        }
+
+        for (String directive : cacheControl.split(",")) {
+            directive = directive.trim();
+
+            if (directive.startsWith(DIRECTIVE_MAX_AGE)) {
+                try {
+                    return Math.max(0, Long.parseLong(directive.substring(DIRECTIVE_MAX_AGE.length())));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return 0;
+    }
+
+    private <T> T serveStale(InputStream cachedBody, NetworkUtils.ResponseHandler<T> handler)
+            throws IOException, TMDbException {
+
+        synchronized (this) {
+            mStaleServedCount++;
+        }
+        Metrics.RESPONSE_CACHE_STALE_SERVED.increment();
+        return handler.handleResponse(cachedBody);
+    }
+
+    /**
+     * Opens an entry's body and marks the entry as used. The open stream stays readable even if
+     * the entry is evicted before it's read.
+     * @return The body, or null if it's gone, in which case the entry is dropped.
+     */
+    private InputStream openBody(String hashedKey) {
+        File body = new File(mDirectory, hashedKey + BODY_SUFFIX);
+
+        InputStream in;
+        try {
+            in = new FileInputStream(body);
+        } catch (FileNotFoundException e) {
+            removeEntry(hashedKey);
+            return null;
+        }
+
+        synchronized (this) {
+            // Refresh the access order, both in memory and for the next process via the file time.
+            mEntries.get(hashedKey);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        body.setLastModified(System.currentTimeMillis());
+        return in;
+    }
+
+    private Metadata readMetadata(String hashedKey) {
+        synchronized (this) {
+            if (!mEntries.containsKey(hashedKey)) {
+                return null;
+            }
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(new File(mDirectory, hashedKey + METADATA_SUFFIX)));
+
+            if (in.readInt() != METADATA_VERSION) {
+                return null;
+            }
+
+            String key = in.readUTF();
+            String etag = in.readBoolean() ? in.readUTF() : null;
+            String lastModified = in.readBoolean() ? in.readUTF() : null;
+            long storedAtMillis = in.readLong();
+            long maxAgeSeconds = in.readLong();
+
+            return new Metadata(key, etag, lastModified, storedAtMillis, maxAgeSeconds);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void writeMetadata(String hashedKey, Metadata metadata) throws IOException {
+        File temp = File.createTempFile(hashedKey, TEMP_SUFFIX, mDirectory);
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+        try {
+            out.writeInt(METADATA_VERSION);
+            out.writeUTF(metadata.key);
+            writeOptionalString(out, metadata.etag);
+            writeOptionalString(out, metadata.lastModified);
+            out.writeLong(metadata.storedAtMillis);
+            out.writeLong(metadata.maxAgeSeconds);
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(new File(mDirectory, hashedKey + METADATA_SUFFIX))) {
+            throw new IOException("Unable to commit cache metadata for " + metadata.key);
+        }
+    }
+
+    private static void writeOptionalString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Rebuilds the in-memory LRU index from the directory, oldest access first.
+     */
+    private synchronized void loadIndex() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long difference = a.lastModified() - b.lastModified();
+                return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : files) {
+            String name = file.getName();
+
+            if (name.endsWith(TEMP_SUFFIX)) {
+                // Left over from a write that never finished.
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else if (name.endsWith(METADATA_SUFFIX)) {
+                String hashedKey = name.substring(0, name.length() - METADATA_SUFFIX.length());
+
+                // Metadata whose body was evicted would never be indexed, nor cleaned up.
+                if (!new File(mDirectory, hashedKey + BODY_SUFFIX).exists()) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            } else if (name.endsWith(BODY_SUFFIX)) {
+                String hashedKey = name.substring(0, name.length() - BODY_SUFFIX.length());
+
+                if (new File(mDirectory, hashedKey + METADATA_SUFFIX).exists()) {
+                    mEntries.put(hashedKey, file.length());
+                    mSize += file.length();
+                } else {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+
+        trimToSize();
+    }
+
+    private synchronized void putEntry(String hashedKey, long bodySize) {
+        Long previousSize = mEntries.put(hashedKey, bodySize);
+        if (previousSize != null) {
+            mSize -= previousSize;
+        }
+        mSize += bodySize;
+
+        trimToSize();
+    }
+
+    private synchronized void removeEntry(String hashedKey) {
+        Long size = mEntries.remove(hashedKey);
+        if (size != null) {
+            mSize -= size;
+        }
+        deleteEntryFiles(hashedKey);
+    }
+
+    private synchronized void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+
+            deleteEntryFiles(eldest.getKey());
+            mSize -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void deleteEntryFiles(String hashedKey) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, hashedKey + METADATA_SUFFIX).delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, hashedKey + BODY_SUFFIX).delete();
+    }
+
+    private static String hashKey(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(key.getBytes("UTF-8"));
+
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String firstNonNull(String first, String second) {
+        return first != null ? first : second;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Everything needed to decide freshness and revalidate an entry.
+     */
+    private static final class Metadata {
+        final String key;
+        final String etag;
+        final String lastModified;
+        final long storedAtMillis;
+        final long maxAgeSeconds;
+
+        Metadata(String key, String etag, String lastModified, long storedAtMillis,
+                 long maxAgeSeconds) {
+            this.key = key;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.storedAtMillis = storedAtMillis;
+            this.maxAgeSeconds = maxAgeSeconds;
+        }
+
+        boolean isFresh(long nowMillis) {
+            return nowMillis - storedAtMillis < maxAgeSeconds * 1000;
+        }
+    }
+
+    /**
+     * Copies everything read from the network into a temporary body file. The entry only replaces
+     * the cached copy when {@link #commit()} is called after the handler finished successfully.
+     */
+    private final class CachingInputStream extends FilterInputStream {
+        private final String mHashedKey;
+        private final Metadata mMetadata;
+        private final File mTempBody;
+        private OutputStream mOut;
+        private long mWritten;
+
+        CachingInputStream(InputStream in, String hashedKey, Metadata metadata)
+                throws IOException {
+            super(in);
+            mHashedKey = hashedKey;
+            mMetadata = metadata;
+            // Unique per stream, since two requests for the same URL may be writing at once.
+            mTempBody = File.createTempFile(hashedKey, TEMP_SUFFIX, mDirectory);
+            mOut = new FileOutputStream(mTempBody);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1 && mOut != null) {
+                mOut.write(b);
+                mWritten++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0 && mOut != null) {
+                mOut.write(buffer, offset, read);
+                mWritten += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Route skips through read() so skipped bytes still reach the cached copy.
+            byte[] buffer = new byte[(int) Math.min(count, 8192)];
+            long skipped = 0;
+
+            while (skipped < count) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Drains what the handler left unread (such as trailing whitespace) and publishes the
+         * entry.
+         */
+        void commit() throws IOException {
+            byte[] buffer = new byte[8192];
+            //noinspection StatementWithEmptyBody
+            while (read(buffer, 0, buffer.length) != -1) {
+            }
+
+            mOut.close();
+            mOut = null;
+
+            writeMetadata(mHashedKey, mMetadata);
+            if (!mTempBody.renameTo(new File(mDirectory, mHashedKey + BODY_SUFFIX))) {
+                throw new IOException("Unable to commit cache body for " + mMetadata.key);
+            }
+
+            putEntry(mHashedKey, mWritten);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (mOut != null) {
+                    // Not committed, so the partial copy is discarded.
+                    mOut.close();
+                    mOut = null;
+                    //noinspection ResultOfMethodCallIgnored
+                    mTempBody.delete();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.chung.popularmovies.utilities;
+
+/**
+ * How much work fetching should do on the network as {@link NetworkQualityEstimator} last found
+ * it: how large a poster to ask for, how far ahead to prefetch, how many requests to run at once
+ * and how long to wait on them. Immutable; read it again at each decision, as it's replaced
+ * whenever the network changes.
+ *
+ * A GOOD link gets what the app always did. Slower links ask for less speculatively, and a POOR
+ * one also takes smaller posters, fewer parallel requests, and longer timeouts so requests that
+ * are merely slow aren't abandoned, and neither preloads the lists that aren't on screen. A
+ * metered link halves what prefetching may spend.
+ */
+public final class FetchPolicy {
+
+    private final NetworkQualityEstimator.Quality mQuality;
+    private final boolean mMetered;
+
+    /* Poster sizes below the one covering the view to ask for instead. */
+    private final int mPosterSizeStepsDown;
+
+    /* Most posters and list pages to prefetch ahead of the viewport. */
+    private final int mMaxPosterPrefetch;
+    private final int mMaxPagePrefetch;
+
+    /* Idle details prefetches in flight at once. */
+    private final int mMaxIdleDetailPrefetch;
+
+    /* Whether the first pages of the lists not on screen are fetched too. */
+    private final boolean mPreloadLists;
+
+    /* Threads TMDb API requests run on. */
+    private final int mRequestThreads;
+
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+
+    private FetchPolicy(NetworkQualityEstimator.Quality quality, boolean metered,
+                        int posterSizeStepsDown, int maxPosterPrefetch, int maxPagePrefetch,
+                        int maxIdleDetailPrefetch, boolean preloadLists, int requestThreads,
+                        int connectTimeoutMillis, int readTimeoutMillis) {
+        mQuality = quality;
+        mMetered = metered;
+        mPosterSizeStepsDown = posterSizeStepsDown;
+        mMaxPosterPrefetch = maxPosterPrefetch;
+        mMaxPagePrefetch = maxPagePrefetch;
+        mMaxIdleDetailPrefetch = maxIdleDetailPrefetch;
+        mPreloadLists = preloadLists;
+        mRequestThreads = requestThreads;
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Builds the policy for a network.
+     * @param quality How well the network is doing.
+     * @param metered Whether data on it costs the user.
+     */
+    static FetchPolicy forQuality(NetworkQualityEstimator.Quality quality, boolean metered) {
+        int prefetchDivisor = metered ? 2 : 1;
+
+        switch (quality) {
+            case OFFLINE:
+                // Only what's cached can load, so speculate about nothing.
+                return new FetchPolicy(quality, metered, 0, 0, 1, 0, false, 4,
+                        TMDbHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                        TMDbHttpClient.DEFAULT_READ_TIMEOUT_MILLIS);
+            case POOR:
+                return new FetchPolicy(quality, metered, 1, 0, 1, 0, false, 2, 20000, 30000);
+            case MODERATE:
+                return new FetchPolicy(quality, metered, 0, 8 / prefetchDivisor, 2,
+                        1, true, 4, 15000, 20000);
+            default:
+                return new FetchPolicy(quality, metered, 0, 16 / prefetchDivisor, 4,
+                        2 / prefetchDivisor, true, 4,
+                        TMDbHttpClient.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                        TMDbHttpClient.DEFAULT_READ_TIMEOUT_MILLIS);
+        }
+    }
+
+    public NetworkQualityEstimator.Quality getQuality() {
+        return mQuality;
+    }
+
+    public boolean isMetered() {
+        return mMetered;
+    }
+
+    /**
+     * Picks the poster size to request for a view: the smallest that covers it, or a smaller one
+     * on a slow link.
+     * @param widthPx Width of the view the poster is shown in, in pixels.
+     */
+    public NetworkUtils.PosterSize posterSizeFor(int widthPx) {
+        NetworkUtils.PosterSize size = NetworkUtils.PosterSize.forWidth(widthPx);
+        return NetworkUtils.PosterSize.values()[
+                Math.max(0, size.ordinal() - mPosterSizeStepsDown)];
+    }
+
+    public int getMaxPosterPrefetch() {
+        return mMaxPosterPrefetch;
+    }
+
+    public int getMaxPagePrefetch() {
+        return mMaxPagePrefetch;
+    }
+
+    public int getMaxIdleDetailPrefetch() {
+        return mMaxIdleDetailPrefetch;
+    }
+
+    public boolean shouldPreloadLists() {
+        return mPreloadLists;
+    }
+
+    public int getRequestThreads() {
+        return mRequestThreads;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return mConnectTimeoutMillis;
+    }
+
+    public int getReadTimeoutMillis() {
+        return mReadTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return mQuality + (mMetered ? " (metered)" : "");
+    }
+}
@@ -0,0 +1,306 @@
+package io.chung.popularmovies.utilities;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates how good the network is from the requests the app makes anyway, and turns that into
+ * the {@link FetchPolicy} that poster sizes, prefetching, request parallelism and timeouts follow.
+ *
+ * Every finished request gives a round trip time, from sending the request to its response
+ * headers, and a body large enough to leave slow start gives a throughput. Each estimate is the
+ * median of the recent samples, weighted so a sample counts half as much for every 30 seconds
+ * of its age: a link that gets worse shows within a few requests, and one slow request doesn't
+ * flip it. Until there are enough samples, and once they've all gone stale, the quality is what
+ * the connection type suggests. A new connection starts afresh, and no connection is OFFLINE.
+ *
+ * Requests report from worker threads and the UI reads the policy on the main thread, so all
+ * methods are thread safe.
+ */
+public final class NetworkQualityEstimator {
+
+    /**
+     * How well the network is doing, worst first.
+     */
+    public enum Quality {
+        OFFLINE, POOR, MODERATE, GOOD
+    }
+
+    /**
+     * Receives the new policy whenever it changes, on the thread whose report changed it.
+     */
+    public interface Listener {
+        void onPolicyChanged(FetchPolicy policy);
+    }
+
+    /* Samples kept of each kind, and how many fresh ones an estimate needs. */
+    static final int MAX_SAMPLES = 20;
+    static final int MIN_SAMPLES = 3;
+
+    static final long HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(30);
+    static final long MAX_SAMPLE_AGE_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /* Smaller bodies arrive in a round trip or two, so they say more about latency. */
+    static final long MIN_THROUGHPUT_BYTES = 16 * 1024;
+
+    /* Round trip times, which include TMDb's own response time, that make a link worse than
+       GOOD and than MODERATE. */
+    static final long MODERATE_RTT_MILLIS = 400;
+    static final long POOR_RTT_MILLIS = 1400;
+
+    /* Throughputs below which a link is worse than GOOD and than MODERATE. */
+    static final long MODERATE_KBPS = 1000;
+    static final long POOR_KBPS = 150;
+
+    /* How often reading the policy re-evaluates it, so stale samples age out without requests. */
+    private static final long REEVALUATE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static NetworkQualityEstimator sInstance;
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    /* Recent round trip times in ms, and throughputs in kbps. Guarded by this. */
+    private final SampleWindow mRtts = new SampleWindow();
+    private final SampleWindow mThroughputs = new SampleWindow();
+
+    /* The connection as last reported, and the quality its type suggests. Guarded by this. */
+    private boolean mConnected = true;
+    private boolean mMetered;
+    private String mNetworkKey;
+    private Quality mPrior = Quality.GOOD;
+
+    /* When the policy was last worked out. Guarded by this. */
+    private long mEvaluatedAtNanos;
+
+    /* Until something is known, fetch the way the app always has. */
+    private volatile FetchPolicy mPolicy = FetchPolicy.forQuality(Quality.GOOD, false);
+
+    public static synchronized NetworkQualityEstimator getInstance() {
+        if (sInstance == null) {
+            sInstance = new NetworkQualityEstimator();
+        }
+        return sInstance;
+    }
+
+    NetworkQualityEstimator() {
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * @return What fetching should do on the network as it is now.
+     */
+    public FetchPolicy getPolicy() {
+        return getPolicy(System.nanoTime());
+    }
+
+    FetchPolicy getPolicy(long nowNanos) {
+        boolean changed = false;
+        synchronized (this) {
+            if (nowNanos - mEvaluatedAtNanos >= REEVALUATE_NANOS) {
+                changed = evaluate(nowNanos);
+            }
+        }
+        if (changed) {
+            notifyListeners();
+        }
+        return mPolicy;
+    }
+
+    public Quality getQuality() {
+        return getPolicy().getQuality();
+    }
+
+    /**
+     * Takes samples from a finished request, as reported by {@link TMDbHttpClient}.
+     */
+    public void onRequestFinished(TMDbHttpClient.RequestTiming timing) {
+        onRequestFinished(timing, System.nanoTime());
+    }
+
+    void onRequestFinished(TMDbHttpClient.RequestTiming timing, long nowNanos) {
+        // Connecting may have taken a DNS lookup and a TLS handshake, which a reused connection
+        // doesn't; from there to the headers is one round trip either way.
+        long rttNanos = timing.firstByteNanos - timing.connectNanos;
+        long transferNanos = timing.totalNanos - timing.firstByteNanos;
+
+        boolean changed;
+        synchronized (this) {
+            if (rttNanos > 0) {
+                mRtts.add(TimeUnit.NANOSECONDS.toMillis(rttNanos), nowNanos);
+            }
+            if (timing.bytesOnWire >= MIN_THROUGHPUT_BYTES && transferNanos > 0) {
+                // Bits per nanosecond, times a million, is kilobits per second.
+                mThroughputs.add(timing.bytesOnWire * 8 * 1000000 / transferNanos, nowNanos);
+            }
+            changed = evaluate(nowNanos);
+        }
+        if (changed) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Takes the connection's state, whenever it changes.
+     * @param connected Whether there's a connection at all.
+     * @param metered Whether data on it costs the user.
+     * @param networkKey Tells networks apart; samples from another network are dropped.
+     * @param prior The quality the connection's type suggests, until it's been measured.
+     */
+    public void onConnectivityChanged(boolean connected, boolean metered, String networkKey,
+                                      Quality prior) {
+        onConnectivityChanged(connected, metered, networkKey, prior, System.nanoTime());
+    }
+
+    void onConnectivityChanged(boolean connected, boolean metered, String networkKey,
+                               Quality prior, long nowNanos) {
+        boolean changed;
+        synchronized (this) {
+            if (networkKey == null ? mNetworkKey != null : !networkKey.equals(mNetworkKey)) {
+                mRtts.clear();
+                mThroughputs.clear();
+            }
+            mConnected = connected;
+            mMetered = metered;
+            mNetworkKey = networkKey;
+            mPrior = prior;
+            changed = evaluate(nowNanos);
+        }
+        if (changed) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * @return The estimated round trip time in ms, or -1 if there aren't enough fresh samples.
+     */
+    public synchronized long getRttMillis() {
+        return mRtts.weightedMedian(System.nanoTime());
+    }
+
+    /**
+     * @return The estimated throughput in kbps, or -1 if there aren't enough fresh samples.
+     */
+    public synchronized long getThroughputKbps() {
+        return mThroughputs.weightedMedian(System.nanoTime());
+    }
+
+    /**
+     * Works the policy out again. Must hold the lock.
+     * @return True if it changed.
+     */
+    private boolean evaluate(long nowNanos) {
+        mEvaluatedAtNanos = nowNanos;
+
+        Quality quality = estimateQuality(nowNanos);
+        FetchPolicy policy = mPolicy;
+        if (quality == policy.getQuality() && mMetered == policy.isMetered()) {
+            return false;
+        }
+
+        mPolicy = FetchPolicy.forQuality(quality, mMetered);
+        return true;
+    }
+
+    private Quality estimateQuality(long nowNanos) {
+        if (!mConnected) {
+            return Quality.OFFLINE;
+        }
+
+        long rttMillis = mRtts.weightedMedian(nowNanos);
+        long kbps = mThroughputs.weightedMedian(nowNanos);
+        if (rttMillis < 0 && kbps < 0) {
+            return mPrior;
+        }
+
+        // A link is only as good as the worse of its latency and its bandwidth.
+        Quality quality = Quality.GOOD;
+        if (rttMillis >= POOR_RTT_MILLIS) {
+            quality = Quality.POOR;
+        } else if (rttMillis >= MODERATE_RTT_MILLIS) {
+            quality = Quality.MODERATE;
+        }
+        if (kbps >= 0 && kbps < POOR_KBPS) {
+            quality = Quality.POOR;
+        } else if (kbps >= 0 && kbps < MODERATE_KBPS && quality == Quality.GOOD) {
+            quality = Quality.MODERATE;
+        }
+        return quality;
+    }
+
+    private void notifyListeners() {
+        // Read again rather than passed in, so a listener never ends up on a superseded policy.
+        for (Listener listener : mListeners) {
+            listener.onPolicyChanged(mPolicy);
+        }
+    }
+
+    /**
+     * The most recent samples of one kind, with the time each was taken.
+     */
+    private static final class SampleWindow {
+        private final long[] mValues = new long[MAX_SAMPLES];
+        private final long[] mTimes = new long[MAX_SAMPLES];
+        private int mCount;
+        private int mNext;
+
+        void add(long value, long nowNanos) {
+            mValues[mNext] = value;
+            mTimes[mNext] = nowNanos;
+            mNext = (mNext + 1) % MAX_SAMPLES;
+            mCount = Math.min(MAX_SAMPLES, mCount + 1);
+        }
+
+        void clear() {
+            mCount = 0;
+            mNext = 0;
+        }
+
+        /**
+         * @return The median of the fresh samples, each weighted by its age, or -1 if there are
+         * fewer than MIN_SAMPLES of them.
+         */
+        long weightedMedian(long nowNanos) {
+            long[] values = new long[mCount];
+            double[] weights = new double[mCount];
+            int fresh = 0;
+            double totalWeight = 0;
+
+            for (int i = 0; i < mCount; i++) {
+                long ageNanos = nowNanos - mTimes[i];
+                if (ageNanos > MAX_SAMPLE_AGE_NANOS) {
+                    continue;
+                }
+
+                double weight = Math.pow(0.5, (double) ageNanos / HALF_LIFE_NANOS);
+                // Insertion sort by value; there are only a handful.
+                int j = fresh;
+                while (j > 0 && values[j - 1] > mValues[i]) {
+                    values[j] = values[j - 1];
+                    weights[j] = weights[j - 1];
+                    j--;
+                }
+                values[j] = mValues[i];
+                weights[j] = weight;
+                fresh++;
+                totalWeight += weight;
+            }
+
+            if (fresh < MIN_SAMPLES) {
+                return -1;
+            }
+
+            double weight = 0;
+            for (int i = 0; i < fresh; i++) {
+                weight += weights[i];
+                if (weight >= totalWeight / 2) {
+                    return values[i];
+                }
+            }
+            return values[fresh - 1];
+        }
+    }
+}
@@ -8,8 +8,11 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.List;
 import java.util.Scanner;
 
+import io.chung.popularmovies.DetailSection;
+
 public final class NetworkUtils {
 
     private static final String TAG = NetworkUtils.class.getSimpleName();
@@ -17,20 +20,120 @@ public final class NetworkUtils {
     private static final String THEMOVIEDB_BASE_URL = "https://api.themoviedb.org/3/movie";
 
     private static final String API_KEY_PARAM = "api_key";
+    private static final String PAGE_PARAM = "page";
 
     private static final String POPULAR_PATH = "popular";
     private static final String TOP_RATED_PATH = "top_rated";
 
+    static final String HEADER_RETRY_AFTER = "Retry-After";
+
     private static final String APPEND_TO_RESPONSE_QUERY = "append_to_response";
-    private static final String APPEND_TO_RESULT_SUB_REQUESTS = "videos,reviews";
 
     private static final String THEMOVIEDB_POSTER_BASE_URL = "http://image.tmdb.org/t/p/";
 
-    private static final String THEMOVIEDB_POSTER_SIZE = "w780";
-
     private static final String YOUTUBE_BASE_URL = "https://www.youtube.com/watch";
     private static final String YOUTUBE_VIDEO_PARAM = "v";
 
+    /* Shared client, so every request can reuse the pooled keep-alive connections. */
+    private static final TMDbHttpClient sHttpClient = new TMDbHttpClient();
+
+    /* Disk cache for API responses, or null to always go to the network. */
+    private static volatile DiskResponseCache sResponseCache;
+
+    /**
+     * Consumes the body of a successful HTTP response directly from the connection's stream.
+     * @param <T> The type produced from the response body.
+     */
+    public interface ResponseHandler<T> {
+        T handleResponse(InputStream in) throws IOException, TMDbException;
+    }
+
+    /**
+     * Poster widths TMDb serves, smallest first.
+     */
+    public enum PosterSize {
+        W92(92, "w92"), W154(154, "w154"), W185(185, "w185"), W342(342, "w342"),
+        W500(500, "w500"), W780(780, "w780"), ORIGINAL(Integer.MAX_VALUE, "original");
+
+        private final int mWidth;
+        private final String mValue;
+
+        /* Poster URL up to the image path, so building a poster URL is a single concatenation. */
+        private final String mUrlPrefix;
+
+        PosterSize(int width, String value) {
+            mWidth = width;
+            mValue = value;
+            mUrlPrefix = THEMOVIEDB_POSTER_BASE_URL + value;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public String getValue() {
+            return mValue;
+        }
+
+        /**
+         * Picks the smallest size that is at least as wide as the target, so posters are never
+         * scaled up.
+         * @param widthPx Width of the view the poster is shown in, in pixels.
+         * @return The smallest covering size, or ORIGINAL if none of the fixed sizes is wide enough.
+         */
+        public static PosterSize forWidth(int widthPx) {
+            for (PosterSize size : values()) {
+                if (size.mWidth >= widthPx) {
+                    return size;
+                }
+            }
+            return ORIGINAL;
+        }
+
+        /**
+         * Picks the smallest size that covers a width given in density-independent pixels.
+         * @param widthDp Width of the view the poster is shown in, in dp.
+         * @param density Display density, as in DisplayMetrics.density.
+         * @return The smallest covering size.
+         */
+        public static PosterSize forWidth(float widthDp, float density) {
+            return forWidth(Math.round(widthDp * density));
+        }
+
+        /**
+         * Reads the size out of a poster Uri such as http://image.tmdb.org/t/p/w185/abc.jpg.
+         * @return The size, or null if the Uri isn't a poster's.
+         */
+        public static PosterSize forUri(Uri uri) {
+            if (!isPosterUri(uri)) {
+                return null;
+            }
+
+            List<String> segments = uri.getPathSegments();
+            if (segments.size() >= 2) {
+                String sizeSegment = segments.get(segments.size() - 2);
+
+                for (PosterSize size : values()) {
+                    if (size.mValue.equals(sizeSegment)) {
+                        return size;
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether a Uri is a TMDb poster's, as built by {@link #buildPosterUri(String,
+     * PosterSize)}.
+     */
+    public static boolean isPosterUri(Uri uri) {
+        return uri != null && uri.toString().startsWith(THEMOVIEDB_POSTER_BASE_URL);
+    }
+
+    /* Size used when the caller doesn't know how large the poster will be shown. */
+    private static final PosterSize DEFAULT_POSTER_SIZE = PosterSize.W780;
+
     /**
      * Sort criteria used when requesting movie list.
      */
@@ -49,18 +152,31 @@ public final class NetworkUtils {
     }
 
     /**
-     * Builds a URL to get a list of movies with the given sortCriteria.
+     * Builds a URL to get the first page of a list of movies with the given sortCriteria.
      *
      * @param sortCriteria Sorting used for request.
      * @param apiKey The Movie DB API key used for request.
      * @return The Movie DB URL used for requesting a movie list.
      */
     public static URL buildMovieListUrl(SortCriteria sortCriteria, String apiKey) {
+        return buildMovieListUrl(sortCriteria, apiKey, 1);
+    }
+
+    /**
+     * Builds a URL to get a page of a list of movies with the given sortCriteria.
+     *
+     * @param sortCriteria Sorting used for request.
+     * @param apiKey The Movie DB API key used for request.
+     * @param page The 1-based page of results to request.
+     * @return The Movie DB URL used for requesting a movie list page.
+     */
+    public static URL buildMovieListUrl(SortCriteria sortCriteria, String apiKey, int page) {
         String subPath = sortCriteria.getValue();
 
         Uri uri = Uri.parse(THEMOVIEDB_BASE_URL).buildUpon()
                 .appendPath(subPath)
                 .appendQueryParameter(API_KEY_PARAM, apiKey)
+                .appendQueryParameter(PAGE_PARAM, String.valueOf(page))
                 .build();
 
         URL url = uriToUrl(uri);
@@ -75,10 +191,28 @@ public final class NetworkUtils {
      * @return Returns a Uri object to the image path.
      */
     public static Uri buildPosterUri(String imagePath) {
-        return Uri.parse(THEMOVIEDB_POSTER_BASE_URL).buildUpon()
-                .appendPath(THEMOVIEDB_POSTER_SIZE)
-                .appendEncodedPath(imagePath)
-                .build();
+        return buildPosterUri(imagePath, DEFAULT_POSTER_SIZE);
+    }
+
+    /**
+     * Builds a Uri for a movie poster of the given size. Prefer
+     * {@link io.chung.popularmovies.TMDbMovie#getPosterUri(PosterSize)}, which builds each size
+     * once per movie.
+     * @param imagePath Relative path to poster image (e.g. /tWqifoYuwLETmmasnGHO7xBjEtt.jpg).
+     * @param size Size of the poster to request, usually from {@link PosterSize#forWidth(int)}.
+     * @return Returns a Uri object to the image path.
+     */
+    public static Uri buildPosterUri(String imagePath, PosterSize size) {
+        // TMDb image paths are already encoded, and Uri.parse only wraps the string, so this
+        // skips parsing the base URL and running a Uri.Builder for every poster.
+        StringBuilder url = new StringBuilder(size.mUrlPrefix.length() + imagePath.length() + 1)
+                .append(size.mUrlPrefix);
+        if (!imagePath.startsWith("/")) {
+            url.append('/');
+        }
+        url.append(imagePath);
+
+        return Uri.parse(url.toString());
     }
 
     /**
@@ -102,11 +236,27 @@ public final class NetworkUtils {
      * @return The Movie DB URL used for requesting information about the given movie ID.
      */
     public static URL buildMovieDetailsUrl(int movieId, String apiKey) {
-        Uri uri = Uri.parse(THEMOVIEDB_BASE_URL).buildUpon()
+        return buildMovieDetailsUrl(movieId, DetailSection.DEFAULT, apiKey);
+    }
+
+    /**
+     * Builds a URL to get movie details for a movie ID together with the given sections, all in
+     * one round trip.
+     *
+     * @param movieId The Movie DB's movie ID used to get information.
+     * @param sections Mask of {@link DetailSection}s to append to the response.
+     * @return The Movie DB URL used for requesting information about the given movie ID.
+     */
+    public static URL buildMovieDetailsUrl(int movieId, int sections, String apiKey) {
+        Uri.Builder builder = Uri.parse(THEMOVIEDB_BASE_URL).buildUpon()
                 .appendPath(String.valueOf(movieId))
-                .appendQueryParameter(API_KEY_PARAM, apiKey)
-                .appendQueryParameter(APPEND_TO_RESPONSE_QUERY, APPEND_TO_RESULT_SUB_REQUESTS)
-                .build();
+                .appendQueryParameter(API_KEY_PARAM, apiKey);
+
+        if (sections != 0) {
+            builder.appendQueryParameter(APPEND_TO_RESPONSE_QUERY,
+                    DetailSection.appendToResponse(sections));
+        }
+        Uri uri = builder.build();
 
         URL url = uriToUrl(uri);
         Log.v(TAG, "Movie info URL for " + movieId + " built: " + url);
@@ -138,9 +288,9 @@ public final class NetworkUtils {
      * @throws IOException Related to network and stream reading
      */
     public static String getResponseFromUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        TMDbHttpClient.Response response = sHttpClient.get(url);
         try {
-            InputStream in = urlConnection.getInputStream();
+            InputStream in = response.body();
 
             Scanner scanner = new Scanner(in);
             scanner.useDelimiter("\\A");
@@ -152,7 +302,68 @@ public final class NetworkUtils {
                 return null;
             }
         } finally {
-            urlConnection.disconnect();
+            response.close();
+        }
+    }
+
+    /**
+     * Gets the client shared by every TMDb request, e.g. to observe request timings.
+     */
+    public static TMDbHttpClient getHttpClient() {
+        return sHttpClient;
+    }
+
+    /**
+     * Routes {@link #getResponseFromUrl(URL, ResponseHandler)} through the given disk cache.
+     * @param responseCache The cache to use, or null to disable caching.
+     */
+    public static void setResponseCache(DiskResponseCache responseCache) {
+        sResponseCache = responseCache;
+    }
+
+    /**
+     * Checks whether a request would be answered from the disk cache without touching the
+     * network, so it needn't count against TMDb's rate limit.
+     * @param url The URL that would be fetched.
+     * @return True if a fresh response for it is cached.
+     */
+    public static boolean isResponseFresh(URL url) {
+        DiskResponseCache responseCache = sResponseCache;
+        return responseCache != null && responseCache.isFresh(url);
+    }
+
+    /**
+     * Streams the HTTP response body into the given handler without first buffering it into a
+     * String. Error responses are turned into a TMDbException using TMDb's status JSON. When a
+     * response cache is set, fresh cached responses are served without a network request.
+     *
+     * @param url The URL to fetch the HTTP response from.
+     * @param handler Handler that reads the response body.
+     * @param <T> The type produced by the handler.
+     * @return The result of the handler.
+     * @throws IOException Related to network and stream reading
+     * @throws TMDbException Thrown when TMDb reports a failed request.
+     */
+    public static <T> T getResponseFromUrl(URL url, ResponseHandler<T> handler)
+            throws IOException, TMDbException {
+
+        DiskResponseCache responseCache = sResponseCache;
+        if (responseCache != null) {
+            return responseCache.fetch(url, handler);
+        }
+
+        TMDbHttpClient.Response response = sHttpClient.get(url);
+        try {
+            int responseCode = response.code();
+
+            if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw TMDbUtils.parseResponseError(response.body(), responseCode,
+                        response.header(HEADER_RETRY_AFTER));
+            }
+
+            return handler.handleResponse(response.body());
+        } finally {
+            response.close();
         }
     }
 
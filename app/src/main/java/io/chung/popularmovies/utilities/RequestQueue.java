@@ -0,0 +1,398 @@
+package io.chung.popularmovies.utilities;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.Trace;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.chung.popularmovies.metrics.Metrics;
+
+/**
+ * Runs TMDb requests on a small shared thread pool and delivers the results on the main thread.
+ * Waiting requests are started most urgent first, and each is sent through the
+ * {@link RequestScheduler} in its priority's lane.
+ *
+ * Identical requests (same URL and response handler) that overlap are coalesced into a single
+ * network call. Each caller gets its own {@link Request} handle; cancelling it stops delivery to
+ * that caller and drops the reference to its callback, and a call whose callers have all
+ * cancelled is skipped if it hasn't started yet.
+ */
+public final class RequestQueue {
+
+    /* Enough to overlap a few list pages and a details request without flooding TMDb. Slow links
+       get fewer, through setThreadCount. */
+    private static final int THREAD_COUNT = 4;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /* Sends requests through the app-wide scheduler, traced so they show up in systrace. */
+    private static final Network SCHEDULED_NETWORK = new Network() {
+        @Override
+        public <T> T execute(URL url, NetworkUtils.ResponseHandler<T> handler,
+                             RequestScheduler.PrioritySource priority)
+                throws IOException, TMDbException {
+            Trace.beginSection("TMDb request");
+            try {
+                return RequestScheduler.getInstance().execute(url, handler, priority);
+            } finally {
+                Trace.endSection();
+            }
+        }
+    };
+
+    private static RequestQueue sInstance;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final Executor mMainThread;
+    private final Network mNetwork;
+
+    /* In-flight calls by key. Guarded by this. */
+    private final Map<CallKey, Call<?>> mCalls = new HashMap<>();
+
+    /* Order calls were made in, so calls of the same priority start first come, first served. */
+    private final AtomicLong mCallSequence = new AtomicLong();
+
+    /**
+     * Receives the outcome of a request on the main thread.
+     * @param <T> The type produced by the response handler.
+     */
+    public interface Callback<T> {
+        void onResponse(T result);
+
+        void onFailure(Exception e);
+    }
+
+    /**
+     * Sends a call's request on a worker thread, so tests can stand in for the network.
+     */
+    interface Network {
+        /**
+         * @param priority The call's lane, which can be raised while the request runs.
+         */
+        <T> T execute(URL url, NetworkUtils.ResponseHandler<T> handler,
+                      RequestScheduler.PrioritySource priority)
+                throws IOException, TMDbException;
+    }
+
+    /**
+     * A caller's handle on a possibly shared call.
+     * @param <T> The type produced by the response handler.
+     */
+    public static final class Request<T> {
+        private final Call<T> mCall;
+        private Callback<T> mCallback;
+
+        private Request(Call<T> call, Callback<T> callback) {
+            mCall = call;
+            mCallback = callback;
+        }
+
+        /**
+         * Stops delivery to this request's callback. Must be called on the main thread.
+         */
+        public void cancel() {
+            if (mCallback != null) {
+                mCallback = null;
+                mCall.onRequestCancelled();
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCallback == null;
+        }
+
+        /**
+         * Moves the request's call to a more urgent lane; for example when a prefetched page
+         * scrolls into view. A call that's running takes the lane from its next attempt, and is
+         * sent again if it already failed under the old one. A less urgent priority is ignored.
+         * @param priority The new priority.
+         */
+        public void raisePriority(RequestScheduler.Priority priority) {
+            mCall.raisePriority(priority);
+        }
+    }
+
+    public static synchronized RequestQueue getInstance() {
+        if (sInstance == null) {
+            sInstance = new RequestQueue();
+        }
+        return sInstance;
+    }
+
+    private RequestQueue() {
+        this(newExecutor(), new Executor() {
+            private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+            @Override
+            public void execute(Runnable runnable) {
+                mMainHandler.post(runnable);
+            }
+        }, SCHEDULED_NETWORK);
+    }
+
+    /**
+     * @param executor Runs calls; its queue must order them, as a PriorityBlockingQueue does.
+     * @param mainThread Runs deliveries on the thread requests are made and cancelled on.
+     * @param network Sends each call's request.
+     */
+    RequestQueue(ThreadPoolExecutor executor, Executor mainThread, Network network) {
+        mExecutor = executor;
+        mMainThread = mainThread;
+        mNetwork = network;
+    }
+
+    private static ThreadPoolExecutor newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(),
+                new BackgroundThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Fetches a URL for something the user is waiting on.
+     * @see #fetch(URL, NetworkUtils.ResponseHandler, RequestScheduler.Priority, Callback)
+     */
+    public <T> Request<T> fetch(URL url, NetworkUtils.ResponseHandler<T> handler,
+                                Callback<T> callback) {
+        return fetch(url, handler, RequestScheduler.Priority.USER_VISIBLE, callback);
+    }
+
+    /**
+     * Fetches a URL and parses it with the given handler, joining an identical request that's
+     * already in flight. Must be called on the main thread.
+     *
+     * @param url The URL to fetch.
+     * @param handler Handler that reads the response body on a worker thread.
+     * @param priority How urgent the request is; joining a call can only make it more urgent.
+     * @param callback Receives the result on the main thread.
+     * @param <T> The type produced by the handler.
+     * @return A handle that can cancel delivery to the callback.
+     */
+    public <T> Request<T> fetch(URL url, NetworkUtils.ResponseHandler<T> handler,
+                                RequestScheduler.Priority priority, Callback<T> callback) {
+
+        CallKey key = new CallKey(url, handler);
+
+        synchronized (this) {
+            @SuppressWarnings("unchecked")
+            Call<T> call = (Call<T>) mCalls.get(key);
+
+            if (call == null) {
+                call = new Call<>(key, url, handler, priority);
+                mCalls.put(key, call);
+                mExecutor.execute(call);
+            } else {
+                call.raisePriority(priority);
+            }
+
+            Request<T> request = new Request<>(call, callback);
+            call.mRequests.add(request);
+
+            return request;
+        }
+    }
+
+    /**
+     * Changes how many requests run at once, e.g. fewer on a congested link so the ones running
+     * each get more of it. Requests already running finish first.
+     * @param threadCount The number of request threads.
+     */
+    public synchronized void setThreadCount(int threadCount) {
+        // The maximum may never be below the core size, so move whichever keeps that true first.
+        if (threadCount > mExecutor.getMaximumPoolSize()) {
+            mExecutor.setMaximumPoolSize(threadCount);
+            mExecutor.setCorePoolSize(threadCount);
+        } else {
+            mExecutor.setCorePoolSize(threadCount);
+            mExecutor.setMaximumPoolSize(threadCount);
+        }
+    }
+
+    private synchronized void removeCall(CallKey key, Call<?> call) {
+        if (mCalls.get(key) == call) {
+            mCalls.remove(key);
+        }
+    }
+
+    /**
+     * A single network call shared by every request that coalesced into it.
+     */
+    private final class Call<T>
+            implements Runnable, Comparable<Call<?>>, RequestScheduler.PrioritySource {
+        private final CallKey mKey;
+        private final URL mUrl;
+        private final NetworkUtils.ResponseHandler<T> mHandler;
+        private final long mSequence = mCallSequence.getAndIncrement();
+
+        /* Only changed out of the executor's queue, holding the RequestQueue lock. Read by the
+           scheduler as the call runs. */
+        private volatile RequestScheduler.Priority mPriority;
+
+        /* The priority the scheduler last read. Only touched on the thread running the call. */
+        private RequestScheduler.Priority mSentPriority;
+
+        /* Only touched on the main thread. */
+        private final List<Request<T>> mRequests = new ArrayList<>();
+
+        Call(CallKey key, URL url, NetworkUtils.ResponseHandler<T> handler,
+             RequestScheduler.Priority priority) {
+            mKey = key;
+            mUrl = url;
+            mHandler = handler;
+            mPriority = priority;
+        }
+
+        @Override
+        public int compareTo(Call<?> other) {
+            int byPriority = mPriority.compareTo(other.mPriority);
+            return byPriority != 0 ? byPriority : Long.compare(mSequence, other.mSequence);
+        }
+
+        void raisePriority(RequestScheduler.Priority priority) {
+            synchronized (RequestQueue.this) {
+                if (priority.compareTo(mPriority) >= 0) {
+                    return;
+                }
+
+                // A waiting call is ordered by its priority, so it's taken out to change it. One
+                // that's running isn't in the queue, and picks the change up as it goes.
+                boolean waiting = mExecutor.remove(this);
+                mPriority = priority;
+                if (waiting) {
+                    mExecutor.execute(this);
+                }
+            }
+        }
+
+        @Override
+        public RequestScheduler.Priority getPriority() {
+            RequestScheduler.Priority priority = mPriority;
+            mSentPriority = priority;
+            return priority;
+        }
+
+        @Override
+        public void run() {
+            T result = null;
+            Exception failure = null;
+            mSentPriority = mPriority;
+
+            try {
+                result = mNetwork.execute(mUrl, mHandler, this);
+            } catch (IOException | TMDbException | RuntimeException e) {
+                failure = e;
+            }
+
+            synchronized (RequestQueue.this) {
+                // Raised after the scheduler last looked, e.g. a prefetch that gave up rather
+                // than wait for a token: the caller now waiting on it gets its own lane's try.
+                if (failure != null && mPriority != mSentPriority) {
+                    mExecutor.execute(this);
+                    return;
+                }
+
+                // Later requests for the same URL should start a new call rather than join
+                // this one.
+                removeCall(mKey, this);
+            }
+
+            if (failure != null) {
+                Metrics.REQUEST_FAILURES.increment();
+            }
+
+            final T deliveredResult = result;
+            final Exception deliveredFailure = failure;
+            mMainThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(deliveredResult, deliveredFailure);
+                }
+            });
+        }
+
+        private void deliver(T result, Exception failure) {
+            for (Request<T> request : mRequests) {
+                Callback<T> callback = request.mCallback;
+                if (callback == null) {
+                    continue;
+                }
+                request.mCallback = null;
+
+                if (failure == null) {
+                    callback.onResponse(result);
+                } else {
+                    callback.onFailure(failure);
+                }
+            }
+            mRequests.clear();
+        }
+
+        void onRequestCancelled() {
+            for (Request<T> request : mRequests) {
+                if (!request.isCancelled()) {
+                    return;
+                }
+            }
+
+            // Nobody is waiting any more, so don't spend a connection on it if it hasn't started.
+            if (mExecutor.remove(this)) {
+                removeCall(mKey, this);
+            }
+        }
+    }
+
+    private static final class CallKey {
+        private final String mUrl;
+        private final NetworkUtils.ResponseHandler<?> mHandler;
+
+        CallKey(URL url, NetworkUtils.ResponseHandler<?> handler) {
+            mUrl = url.toExternalForm();
+            mHandler = handler;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CallKey)) {
+                return false;
+            }
+            CallKey other = (CallKey) o;
+            return mUrl.equals(other.mUrl) && mHandler == other.mHandler;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mUrl.hashCode() + System.identityHashCode(mHandler);
+        }
+    }
+
+    private static final class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "TMDbRequest #" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package io.chung.popularmovies.utilities;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import io.chung.popularmovies.metrics.Metrics;
+
+/**
+ * Sends every TMDb API request that goes to the network, keeping the app within TMDb's rate limit
+ * and riding out its transient failures.
+ *
+ * A token bucket sized to TMDb's quota paces requests. Each request belongs to a lane: speculative
+ * lanes have to leave part of the bucket for requests the user is waiting on, and prefetches give
+ * up rather than wait. Rate-limited, server and network failures are retried with jittered
+ * exponential backoff, never sooner than the server's Retry-After, which also pauses the bucket
+ * for every lane, for as long as a worker thread may wait. A request facing a longer wait for a
+ * token fails rather than hold up a worker. A response the handler can't read is neither, and
+ * fails at once. An endpoint that keeps failing trips its circuit breaker, and is left alone for
+ * a while rather than retried by every caller, without spending tokens on it.
+ *
+ * Requests block the calling thread while they wait, so this is only called from worker threads.
+ */
+public final class RequestScheduler {
+
+    /**
+     * Lanes of requests, most urgent first.
+     */
+    public enum Priority {
+        /* Something the user is looking at, or waiting for. May use every token. */
+        USER_VISIBLE(0),
+        /* Something the user might look at soon. Never waits, and never retries. */
+        PREFETCH(3),
+        /* Syncing while the app isn't in use. Waits for as long as it takes. */
+        BACKGROUND(6);
+
+        /* Tokens the lane must leave in the bucket for more urgent lanes. */
+        private final int mReserve;
+
+        Priority(int reserve) {
+            mReserve = reserve;
+        }
+    }
+
+    /**
+     * Where the time comes from, and how to wait, so tests can run on a fake clock.
+     */
+    interface Clock {
+        long nanoTime();
+
+        void sleep(long nanos) throws InterruptedException;
+    }
+
+    /**
+     * One attempt at a request.
+     * @param <T> The type of the response.
+     */
+    interface Attempt<T> {
+        T run() throws IOException, TMDbException;
+    }
+
+    /**
+     * A request's lane, asked for again before every attempt and every wait for a token, so a
+     * request that becomes more urgent while it runs is treated as such from then on.
+     */
+    interface PrioritySource {
+        Priority getPriority();
+    }
+
+    /* TMDb allows 40 requests every 10 seconds from one address. A full bucket plus what
+       refills in 10 seconds stays within that: a burst of 10, then 3 a second. */
+    static final int BUCKET_CAPACITY = 10;
+    static final double TOKENS_PER_SECOND = 3;
+
+    static final int MAX_ATTEMPTS = 4;
+    static final long BASE_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(8);
+
+    /* A longer Retry-After, or wait for a token, isn't waited out on a worker thread; the
+       request fails instead. */
+    static final long MAX_RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    static final int BREAKER_FAILURE_THRESHOLD = 5;
+    static final long BREAKER_OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    /* A numeric path segment after a resource name, like the 550 in /3/movie/550. */
+    private static final Pattern ID_SEGMENT = Pattern.compile("(/[^/\\d][^/]*)/\\d+(?=/|$)");
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    };
+
+    private static RequestScheduler sInstance;
+
+    private final Clock mClock;
+    private final TokenBucket mBucket;
+    private final Random mRandom;
+
+    /* Breakers by endpoint. Guarded by this. */
+    private final Map<String, CircuitBreaker> mBreakers = new HashMap<>();
+
+    public static synchronized RequestScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new RequestScheduler(SYSTEM_CLOCK, new TokenBucket(BUCKET_CAPACITY,
+                    TOKENS_PER_SECOND, SYSTEM_CLOCK.nanoTime()), new Random());
+        }
+        return sInstance;
+    }
+
+    RequestScheduler(Clock clock, TokenBucket bucket, Random random) {
+        mClock = clock;
+        mBucket = bucket;
+        mRandom = random;
+    }
+
+    /**
+     * Fetches a URL through {@link NetworkUtils#getResponseFromUrl(URL,
+     * NetworkUtils.ResponseHandler)}, once the rate limit allows, retrying transient failures.
+     * A response the disk cache holds fresh is served straight away.
+     *
+     * @param url The URL to fetch.
+     * @param handler Handler that reads the response body.
+     * @param priority Lane of the request.
+     * @param <T> The type produced by the handler.
+     * @return The result of the handler.
+     * @throws IOException Thrown when the network still fails after the last attempt, the
+     * handler can't read the response, or the thread is interrupted while waiting.
+     * @throws TMDbException Thrown when TMDb refuses the request, still fails after the last
+     * attempt, or isn't asked because of the rate limit or the endpoint's circuit breaker.
+     */
+    public <T> T execute(URL url, NetworkUtils.ResponseHandler<T> handler, Priority priority)
+            throws IOException, TMDbException {
+        return execute(url, handler, fixed(priority));
+    }
+
+    /**
+     * Fetches a URL like {@link #execute(URL, NetworkUtils.ResponseHandler, Priority)}, in
+     * whichever lane the request is in at each attempt.
+     */
+    <T> T execute(final URL url, final NetworkUtils.ResponseHandler<T> handler,
+                  PrioritySource priority) throws IOException, TMDbException {
+
+        // A fresh cached response doesn't reach TMDb, so it costs no token and is served even
+        // while the endpoint's breaker is open.
+        if (NetworkUtils.isResponseFresh(url)) {
+            return NetworkUtils.getResponseFromUrl(url, handler);
+        }
+
+        return execute(endpointOf(url), priority, new Attempt<T>() {
+            @Override
+            public T run() throws IOException, TMDbException {
+                return NetworkUtils.getResponseFromUrl(url, new CheckedHandler<>(handler));
+            }
+        });
+    }
+
+    /**
+     * Runs attempts at a request that stays in one lane.
+     * @see #execute(String, PrioritySource, Attempt)
+     */
+    <T> T execute(String endpoint, Priority priority, Attempt<T> attempt)
+            throws IOException, TMDbException {
+        return execute(endpoint, fixed(priority), attempt);
+    }
+
+    /**
+     * Runs attempts at a request under the rate limit, the endpoint's breaker and the retry
+     * policy.
+     * @param endpoint Key of the endpoint's circuit breaker.
+     * @param prioritySource The request's lane, read again for each attempt.
+     */
+    <T> T execute(String endpoint, PrioritySource prioritySource, Attempt<T> attempt)
+            throws IOException, TMDbException {
+
+        CircuitBreaker breaker = getBreaker(endpoint);
+
+        for (int attemptCount = 1; ; attemptCount++) {
+            // A request the breaker turns away doesn't reach TMDb, so it mustn't take a token.
+            if (!breaker.allowRequest(mClock.nanoTime())) {
+                Metrics.REQUEST_CIRCUIT_OPEN.increment();
+                throw new TMDbException(TMDbException.Status.CIRCUIT_OPEN,
+                        "Too many recent failures from " + endpoint);
+            }
+
+            try {
+                acquireToken(prioritySource);
+            } catch (IOException | TMDbException e) {
+                breaker.onNotSent();
+                throw e;
+            }
+
+            long retryAfterNanos = -1;
+            try {
+                T result = attempt.run();
+                breaker.onSuccess();
+                return result;
+            } catch (TMDbException e) {
+                TMDbException.Status status = e.getStatus();
+                if (status == TMDbException.Status.RATE_LIMITED) {
+                    // TMDb answered, so the endpoint is fine; the quota is what ran out, for
+                    // every lane and endpoint.
+                    breaker.onSuccess();
+                    retryAfterNanos = TimeUnit.MILLISECONDS.toNanos(e.getRetryAfterMillis());
+                    long now = mClock.nanoTime();
+                    mBucket.pause(now, now + Math.max(0,
+                            Math.min(retryAfterNanos, MAX_RETRY_AFTER_NANOS)));
+                } else if (status.isRetryable()) {
+                    breaker.onFailure(mClock.nanoTime());
+                } else {
+                    breaker.onSuccess();
+                }
+
+                if (!shouldRetry(status.isRetryable(), prioritySource.getPriority(), attemptCount,
+                        retryAfterNanos)) {
+                    throw e;
+                }
+            } catch (HandlerException e) {
+                // The endpoint answered, and its response won't read any better a second time.
+                breaker.onSuccess();
+                throw e.getHandlerFailure();
+            } catch (IOException e) {
+                breaker.onFailure(mClock.nanoTime());
+                if (!shouldRetry(true, prioritySource.getPriority(), attemptCount, -1)) {
+                    throw e;
+                }
+            } catch (RuntimeException e) {
+                // The response couldn't be handled, but the endpoint did answer.
+                breaker.onSuccess();
+                throw e;
+            }
+
+            Metrics.REQUEST_RETRIES.increment();
+            sleep(Math.max(retryAfterNanos, backoffNanos(attemptCount)));
+        }
+    }
+
+    /**
+     * Picks how long to wait before the next attempt: a random time up to an exponentially
+     * growing cap, so clients that failed together don't retry together.
+     * @param attemptCount Attempts made so far.
+     */
+    long backoffNanos(int attemptCount) {
+        long capNanos = Math.min(MAX_BACKOFF_NANOS, BASE_BACKOFF_NANOS << (attemptCount - 1));
+        return (long) (mRandom.nextDouble() * capNanos);
+    }
+
+    /**
+     * Gets the key an endpoint's breaker is filed under: the URL's path, with IDs that follow a
+     * resource name replaced so every movie's details share one breaker. The API version stays.
+     */
+    static String endpointOf(URL url) {
+        return url.getHost() + ID_SEGMENT.matcher(url.getPath()).replaceAll("$1/{id}");
+    }
+
+    private static boolean shouldRetry(boolean retryable, Priority priority, int attemptCount,
+                                       long retryAfterNanos) {
+        return retryable && priority != Priority.PREFETCH && attemptCount < MAX_ATTEMPTS
+                && retryAfterNanos <= MAX_RETRY_AFTER_NANOS;
+    }
+
+    private void acquireToken(PrioritySource prioritySource)
+            throws IOException, TMDbException {
+        Priority priority = prioritySource.getPriority();
+        long waitNanos = mBucket.tryAcquire(mClock.nanoTime(), priority.mReserve);
+        if (waitNanos == 0) {
+            return;
+        }
+
+        Metrics.REQUEST_THROTTLED.increment();
+        if (priority == Priority.PREFETCH) {
+            throw new TMDbException(TMDbException.Status.RATE_LIMITED,
+                    "Prefetch skipped to stay within the rate limit");
+        }
+
+        do {
+            if (waitNanos > MAX_RETRY_AFTER_NANOS) {
+                throw new TMDbException(TMDbException.Status.RATE_LIMITED,
+                        "Rate limited for longer than a request may wait");
+            }
+            sleep(waitNanos);
+            // A request raised while it waits may dip further into the bucket.
+            priority = prioritySource.getPriority();
+            waitNanos = mBucket.tryAcquire(mClock.nanoTime(), priority.mReserve);
+        } while (waitNanos > 0);
+    }
+
+    private static PrioritySource fixed(final Priority priority) {
+        return new PrioritySource() {
+            @Override
+            public Priority getPriority() {
+                return priority;
+            }
+        };
+    }
+
+    private void sleep(long nanos) throws IOException {
+        try {
+            mClock.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Tells a response handler's own failures, such as malformed JSON, apart from the network
+     * failing under it while it reads.
+     */
+    private static final class CheckedHandler<T> implements NetworkUtils.ResponseHandler<T> {
+        private final NetworkUtils.ResponseHandler<T> mHandler;
+
+        CheckedHandler(NetworkUtils.ResponseHandler<T> handler) {
+            mHandler = handler;
+        }
+
+        @Override
+        public T handleResponse(InputStream in) throws IOException, TMDbException {
+            FailureTrackingInputStream trackedIn = new FailureTrackingInputStream(in);
+            try {
+                return mHandler.handleResponse(trackedIn);
+            } catch (IOException e) {
+                if (trackedIn.mFailed) {
+                    throw e;
+                }
+                throw new HandlerException(e);
+            }
+        }
+    }
+
+    /**
+     * A handler's failure that didn't come from the stream it read, to be passed on as it is.
+     */
+    private static final class HandlerException extends IOException {
+        HandlerException(IOException handlerFailure) {
+            super(handlerFailure);
+        }
+
+        IOException getHandlerFailure() {
+            return (IOException) getCause();
+        }
+    }
+
+    /**
+     * Notes whether reading the stream ever failed.
+     */
+    private static final class FailureTrackingInputStream extends FilterInputStream {
+        private boolean mFailed;
+
+        FailureTrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            try {
+                return super.read(buffer, offset, count);
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            try {
+                return super.skip(count);
+            } catch (IOException e) {
+                mFailed = true;
+                throw e;
+            }
+        }
+    }
+
+    private synchronized CircuitBreaker getBreaker(String endpoint) {
+        CircuitBreaker breaker = mBreakers.get(endpoint);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_NANOS);
+            mBreakers.put(endpoint, breaker);
+        }
+        return breaker;
+    }
+}
@@ -1,9 +1,150 @@
 package io.chung.popularmovies.utilities;
 
+import java.net.HttpURLConnection;
+
 public class TMDbException
         extends Exception {
 
+    /* TMDb's own status codes, which say more than the HTTP code they come with. */
+    private static final int TMDB_AUTHENTICATION_FAILED = 3;
+    private static final int TMDB_INVALID_API_KEY = 7;
+    private static final int TMDB_INTERNAL_ERROR = 11;
+    private static final int TMDB_BACKEND_TIMEOUT = 24;
+    private static final int TMDB_REQUEST_LIMIT = 25;
+    private static final int TMDB_NOT_FOUND = 34;
+    private static final int TMDB_SERVICE_OFFLINE = 43;
+    private static final int TMDB_SERVICE_UNAVAILABLE = 46;
+
+    /* HTTP status for too many requests, which HttpURLConnection has no constant for. */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     * What kind of failure it was, and so whether trying again can help.
+     */
+    public enum Status {
+        /* Over TMDb's request quota; worth trying again once the quota refills. */
+        RATE_LIMITED(true),
+        /* TMDb failed or timed out on its side; worth trying again after a while. */
+        SERVER_ERROR(true),
+        /* The API key was rejected. */
+        UNAUTHORIZED(false),
+        /* No such movie or list. */
+        NOT_FOUND(false),
+        /* The endpoint failed too often lately, so the request wasn't sent. */
+        CIRCUIT_OPEN(false),
+        /* Anything else TMDb refused, such as a malformed request. */
+        FAILED(false);
+
+        private final boolean mRetryable;
+
+        Status(boolean retryable) {
+            mRetryable = retryable;
+        }
+
+        public boolean isRetryable() {
+            return mRetryable;
+        }
+    }
+
+    private final Status mStatus;
+    private final int mHttpCode;
+    private final int mStatusCode;
+    private final long mRetryAfterMillis;
+
     public TMDbException(String message) {
+        this(Status.FAILED, message);
+    }
+
+    public TMDbException(Status status, String message) {
+        this(status, -1, -1, -1, message);
+    }
+
+    /**
+     * @param status What kind of failure it was.
+     * @param httpCode HTTP response code, or -1 if there was no response.
+     * @param statusCode TMDb's status_code, or -1 if it didn't send one.
+     * @param retryAfterMillis How long the server asked to wait, or -1 if it didn't say.
+     * @param message Description of the failure.
+     */
+    public TMDbException(Status status, int httpCode, int statusCode, long retryAfterMillis,
+                         String message) {
         super(message);
+        mStatus = status;
+        mHttpCode = httpCode;
+        mStatusCode = statusCode;
+        mRetryAfterMillis = retryAfterMillis;
+    }
+
+    public Status getStatus() {
+        return mStatus;
+    }
+
+    public int getHttpCode() {
+        return mHttpCode;
+    }
+
+    public int getStatusCode() {
+        return mStatusCode;
+    }
+
+    /**
+     * Gets how long the server asked to wait before trying again.
+     * @return The wait in milliseconds, or -1 if the server didn't say.
+     */
+    public long getRetryAfterMillis() {
+        return mRetryAfterMillis;
+    }
+
+    /**
+     * Classifies a failed request by TMDb's status code, falling back on the HTTP code.
+     * @param httpCode HTTP response code, or -1 if unknown.
+     * @param statusCode TMDb's status_code, or -1 if it didn't send one.
+     * @return The kind of failure.
+     */
+    public static Status statusOf(int httpCode, int statusCode) {
+        switch (statusCode) {
+            case TMDB_REQUEST_LIMIT:
+                return Status.RATE_LIMITED;
+            case TMDB_INTERNAL_ERROR:
+            case TMDB_BACKEND_TIMEOUT:
+            case TMDB_SERVICE_OFFLINE:
+            case TMDB_SERVICE_UNAVAILABLE:
+                return Status.SERVER_ERROR;
+            case TMDB_AUTHENTICATION_FAILED:
+            case TMDB_INVALID_API_KEY:
+                return Status.UNAUTHORIZED;
+            case TMDB_NOT_FOUND:
+                return Status.NOT_FOUND;
+        }
+
+        if (httpCode == HTTP_TOO_MANY_REQUESTS) {
+            return Status.RATE_LIMITED;
+        } else if (httpCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+            return Status.SERVER_ERROR;
+        } else if (httpCode == HttpURLConnection.HTTP_UNAUTHORIZED) {
+            return Status.UNAUTHORIZED;
+        } else if (httpCode == HttpURLConnection.HTTP_NOT_FOUND) {
+            return Status.NOT_FOUND;
+        }
+        return Status.FAILED;
+    }
+
+    /**
+     * Parses a Retry-After header in its delay-seconds form, which is the one TMDb sends.
+     * @param retryAfter The header value, may be null.
+     * @return The delay in milliseconds, or -1 if it's missing or isn't a number of seconds.
+     */
+    public static long parseRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+
+        try {
+            long seconds = Long.parseLong(retryAfter.trim());
+            return seconds >= 0 ? seconds * 1000 : -1;
+        } catch (NumberFormatException e) {
+            // An HTTP date; rare enough that the scheduler's own backoff does instead.
+            return -1;
+        }
     }
 }
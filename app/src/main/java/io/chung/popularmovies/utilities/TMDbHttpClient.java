@@ -0,0 +1,295 @@
+package io.chung.popularmovies.utilities;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Thin HTTP client over HttpURLConnection that keeps connections alive between requests.
+ *
+ * HttpURLConnection already pools keep-alive connections per host, but only when a response is
+ * read to the end and closed without calling disconnect(). This client makes sure that happens,
+ * asks for gzip and decompresses it as the body is streamed, applies timeouts, and reports the
+ * timing and size of every request.
+ */
+public final class TMDbHttpClient {
+
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+
+    /* Leftover body bytes worth reading just to keep the connection reusable. */
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 15000;
+
+    /**
+     * Receives the timing of every finished request, on the thread that made it.
+     */
+    public interface EventListener {
+        void onRequestFinished(URL url, RequestTiming timing);
+    }
+
+    /**
+     * Timing and size of a single request. Times are in nanoseconds, measured from when the
+     * request started.
+     */
+    public static final class RequestTiming {
+        /* Until the host name was resolved, or -1 when that isn't known apart from connecting,
+           as with HttpURLConnection, which resolves the host inside connect(). */
+        public long dnsNanos = -1;
+        /* Until the connection was open (includes DNS, TCP and TLS unless it was reused). */
+        public long connectNanos;
+        /* Until the response headers arrived. */
+        public long firstByteNanos;
+        /* Until the response body was fully read or abandoned. */
+        public long totalNanos;
+        /* Body bytes as received, before decompression. */
+        public long bytesOnWire;
+        /* Body bytes after decompression. */
+        public long bytesDecoded;
+        public int responseCode;
+        public boolean gzipped;
+    }
+
+    private volatile int mConnectTimeoutMillis;
+    private volatile int mReadTimeoutMillis;
+
+    private volatile EventListener mEventListener;
+
+    public TMDbHttpClient() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    public TMDbHttpClient(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    public void setEventListener(EventListener eventListener) {
+        mEventListener = eventListener;
+    }
+
+    /**
+     * Changes the timeouts of requests started from now on.
+     */
+    public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        mConnectTimeoutMillis = connectTimeoutMillis;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Starts a GET request. The response headers are read before this returns.
+     *
+     * @param url The URL to request.
+     * @param headerNames Extra request header names, paired with headerValues.
+     * @param headerValues Extra request header values; a null value skips the header.
+     * @return The response, which must be closed.
+     * @throws IOException Thrown when the connection fails.
+     */
+    public Response get(URL url, String[] headerNames, String[] headerValues)
+            throws IOException {
+
+        long startNanos = System.nanoTime();
+        RequestTiming timing = new RequestTiming();
+
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        try {
+            urlConnection.setConnectTimeout(mConnectTimeoutMillis);
+            urlConnection.setReadTimeout(mReadTimeoutMillis);
+            urlConnection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+
+            for (int i = 0; i < headerNames.length; i++) {
+                if (headerValues[i] != null) {
+                    urlConnection.setRequestProperty(headerNames[i], headerValues[i]);
+                }
+            }
+
+            urlConnection.connect();
+            timing.connectNanos = System.nanoTime() - startNanos;
+
+            timing.responseCode = urlConnection.getResponseCode();
+            timing.firstByteNanos = System.nanoTime() - startNanos;
+        } catch (IOException e) {
+            urlConnection.disconnect();
+            throw e;
+        }
+
+        return new Response(url, urlConnection, timing, startNanos);
+    }
+
+    public Response get(URL url) throws IOException {
+        return get(url, new String[0], new String[0]);
+    }
+
+    /**
+     * A response whose body is streamed from the connection. Closing it returns the connection
+     * to the keep-alive pool when the body was read to the end.
+     */
+    public final class Response {
+        private final URL mUrl;
+        private final HttpURLConnection mConnection;
+        private final RequestTiming mTiming;
+        private final long mStartNanos;
+
+        private CountingInputStream mRawBody;
+        private InputStream mDecodedBody;
+        private InputStream mBody;
+        private boolean mClosed;
+
+        private Response(URL url, HttpURLConnection connection, RequestTiming timing,
+                         long startNanos) {
+            mUrl = url;
+            mConnection = connection;
+            mTiming = timing;
+            mStartNanos = startNanos;
+        }
+
+        public int code() {
+            return mTiming.responseCode;
+        }
+
+        public String header(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /**
+         * Gets the decompressed response body, or the error body for an unsuccessful response.
+         * @return The body stream, which may be null for an error response without a body.
+         */
+        public InputStream body() throws IOException {
+            if (mBody != null) {
+                return mBody;
+            }
+
+            InputStream raw = code() >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? mConnection.getErrorStream()
+                    : mConnection.getInputStream();
+            if (raw == null) {
+                return null;
+            }
+
+            mRawBody = new CountingInputStream(raw);
+            mTiming.gzipped = ENCODING_GZIP.equalsIgnoreCase(header(HEADER_CONTENT_ENCODING));
+
+            // Wrap the decoded stream too, so close() goes through this response.
+            mDecodedBody = mTiming.gzipped ? new GZIPInputStream(mRawBody) : mRawBody;
+            mBody = new FilterInputStream(mDecodedBody) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        mTiming.bytesDecoded++;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int count) throws IOException {
+                    int read = super.read(buffer, offset, count);
+                    if (read > 0) {
+                        mTiming.bytesDecoded += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    Response.this.close();
+                }
+            };
+
+            return mBody;
+        }
+
+        public RequestTiming timing() {
+            return mTiming;
+        }
+
+        /**
+         * Finishes the request. A body with only a little left unread is drained so the
+         * connection can be reused; otherwise the connection is dropped.
+         */
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            boolean reusable = false;
+            try {
+                if (mBody != null) {
+                    reusable = drain(mBody) && drain(mRawBody);
+                    // Closes the raw stream too, and releases the inflater when gzipped.
+                    mDecodedBody.close();
+                } else {
+                    reusable = code() == HttpURLConnection.HTTP_NOT_MODIFIED;
+                }
+            } catch (IOException e) {
+                reusable = false;
+            } finally {
+                if (!reusable) {
+                    mConnection.disconnect();
+                }
+
+                mTiming.totalNanos = System.nanoTime() - mStartNanos;
+                if (mRawBody != null) {
+                    mTiming.bytesOnWire = mRawBody.mCount;
+                }
+
+                EventListener eventListener = mEventListener;
+                if (eventListener != null) {
+                    eventListener.onRequestFinished(mUrl, mTiming);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the rest of a stream, up to MAX_DRAIN_BYTES.
+     * @return True if the end of the stream was reached.
+     */
+    private static boolean drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[4096];
+        int drained = 0;
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            drained += read;
+            if (drained > MAX_DRAIN_BYTES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long mCount;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                mCount += read;
+            }
+            return read;
+        }
+    }
+}
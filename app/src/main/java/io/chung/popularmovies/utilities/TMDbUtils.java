@@ -1,10 +1,22 @@
 package io.chung.popularmovies.utilities;
 
+import android.os.Trace;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
 import io.chung.popularmovies.TMDbMovie;
+import io.chung.popularmovies.TMDbMovieListPage;
+import io.chung.popularmovies.metrics.Metrics;
 
 public final class TMDbUtils {
     private static final String TAG = TMDbUtils.class.getSimpleName();
@@ -15,6 +27,80 @@ public final class TMDbUtils {
     /* Key for status message related to the status code. */
     private static final String TMDB_STATUS_MESSAGE = "status_message";
 
+    /* Key for movie list results. */
+    private static final String TMDB_RESULTS = "results";
+
+    /* Keys for the page number and page count of a movie list response. */
+    private static final String TMDB_PAGE = "page";
+    private static final String TMDB_TOTAL_PAGES = "total_pages";
+
+    /* Status code TMDb uses for a successful request. */
+    private static final int SUCCESS_STATUS_CODE = 1;
+
+    /* Charset of every TMDb response. */
+    private static final String RESPONSE_CHARSET = "UTF-8";
+
+    /**
+     * Handler that streams a movie list response into TMDbMovie objects.
+     */
+    public static final NetworkUtils.ResponseHandler<TMDbMovie[]> MOVIE_LIST_HANDLER =
+            new TimedResponseHandler<TMDbMovie[]>("TMDb parse movie list") {
+                @Override
+                TMDbMovie[] parse(InputStream in) throws IOException, TMDbException {
+                    return parseMovieListResponse(in);
+                }
+            };
+
+    /**
+     * Handler that streams a movie list response into a page of TMDbMovie objects.
+     */
+    public static final NetworkUtils.ResponseHandler<TMDbMovieListPage> MOVIE_LIST_PAGE_HANDLER =
+            new TimedResponseHandler<TMDbMovieListPage>("TMDb parse movie list page") {
+                @Override
+                TMDbMovieListPage parse(InputStream in) throws IOException, TMDbException {
+                    return parseMovieListPage(in);
+                }
+            };
+
+    /**
+     * Handler that streams a movie details response into a TMDbMovie object.
+     */
+    public static final NetworkUtils.ResponseHandler<TMDbMovie> MOVIE_DETAILS_HANDLER =
+            new TimedResponseHandler<TMDbMovie>("TMDb parse movie details") {
+                @Override
+                TMDbMovie parse(InputStream in) throws IOException {
+                    return parseMovieDetailsResponse(in);
+                }
+            };
+
+    /**
+     * Response handler that records how long it takes in {@link Metrics#TMDB_PARSE}, and marks
+     * it as a trace section for systrace.
+     * @param <T> The type produced by the handler.
+     */
+    private abstract static class TimedResponseHandler<T>
+            implements NetworkUtils.ResponseHandler<T> {
+        private final String mTraceSection;
+
+        TimedResponseHandler(String traceSection) {
+            mTraceSection = traceSection;
+        }
+
+        @Override
+        public final T handleResponse(InputStream in) throws IOException, TMDbException {
+            long startNanos = System.nanoTime();
+            Trace.beginSection(mTraceSection);
+            try {
+                return parse(in);
+            } finally {
+                Trace.endSection();
+                Metrics.TMDB_PARSE.record(System.nanoTime() - startNanos);
+            }
+        }
+
+        abstract T parse(InputStream in) throws IOException, TMDbException;
+    }
+
     /**
      * Checks to see if the response contains an error. If an error is
      * @param responseJson JSONObject of the response.
@@ -24,14 +110,10 @@ public final class TMDbUtils {
 
         // TMDb will return a small JSON with "status_code" and "status_message" keys if the request failed.
         if (responseJson.has(TMDB_STATUS_CODE)) {
-            final int SUCCESS_STATUS_CODE = 1;
             int statusCode = responseJson.getInt(TMDB_STATUS_CODE);
             String statusMessage = responseJson.getString(TMDB_STATUS_MESSAGE);
 
-            if (statusCode != SUCCESS_STATUS_CODE) {
-                String errorMessage = "Error (" + statusCode + "): " + statusMessage;
-                throw new TMDbException(errorMessage);
-            }
+            checkResponseError(statusCode, statusMessage);
         }
     }
 
@@ -61,9 +143,6 @@ public final class TMDbUtils {
     public static TMDbMovie[] parseMovieListResponse(String response)
             throws JSONException, TMDbException {
 
-        /* Key for movie list results. */
-        final String TMDB_RESULTS = "results";
-
         // Start parsing the given string as a JSON object.
         JSONObject responseJson = new JSONObject(response);
         checkResponseError(responseJson);
@@ -84,4 +163,145 @@ public final class TMDbUtils {
 
         return movieList;
     }
+
+    /**
+     * Streams a movie details response straight into a TMDbMovie without building a String or a
+     * JSONObject tree. Failed requests are reported through the HTTP status code, which
+     * {@link NetworkUtils#getResponseFromUrl(java.net.URL, NetworkUtils.ResponseHandler)} checks
+     * before handing over the stream.
+     * @param in Stream of the movie details response body.
+     * @return A TMDbMovie object.
+     * @throws IOException Thrown when reading the stream or JSON parsing fails.
+     */
+    public static TMDbMovie parseMovieDetailsResponse(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, RESPONSE_CHARSET));
+        try {
+            return new TMDbMovie(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Streams a movie list response straight into TMDbMovie objects without building a String or
+     * a JSONObject tree.
+     * @param in Stream of the movie list response body.
+     * @return The movies in the order they appear in the response, or null if there are no
+     * results.
+     * @throws IOException Thrown when reading the stream or JSON parsing fails.
+     * @throws TMDbException Thrown when the response contains a TMDb error status.
+     */
+    public static TMDbMovie[] parseMovieListResponse(InputStream in)
+            throws IOException, TMDbException {
+
+        return parseMovieListPage(in).movies;
+    }
+
+    /**
+     * Streams a movie list response into a page of TMDbMovie objects, keeping the paging
+     * information that {@link #parseMovieListResponse(InputStream)} drops.
+     * @param in Stream of the movie list response body.
+     * @return The page, whose movies are null if there are no results.
+     * @throws IOException Thrown when reading the stream or JSON parsing fails.
+     * @throws TMDbException Thrown when the response contains a TMDb error status.
+     */
+    public static TMDbMovieListPage parseMovieListPage(InputStream in)
+            throws IOException, TMDbException {
+
+        JsonReader reader = new JsonReader(new InputStreamReader(in, RESPONSE_CHARSET));
+        try {
+            TMDbMovie[] movieList = null;
+            int page = 1;
+            int totalPages = 1;
+            int statusCode = SUCCESS_STATUS_CODE;
+            String statusMessage = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+
+                if (name.equals(TMDB_RESULTS) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    List<TMDbMovie> movies = new ArrayList<>();
+
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        movies.add(new TMDbMovie(reader));
+                    }
+                    reader.endArray();
+
+                    movieList = movies.toArray(new TMDbMovie[movies.size()]);
+                } else if (name.equals(TMDB_PAGE)) {
+                    page = reader.nextInt();
+                } else if (name.equals(TMDB_TOTAL_PAGES)) {
+                    totalPages = reader.nextInt();
+                } else if (name.equals(TMDB_STATUS_CODE)) {
+                    statusCode = reader.nextInt();
+                } else if (name.equals(TMDB_STATUS_MESSAGE)) {
+                    statusMessage = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            checkResponseError(statusCode, statusMessage);
+
+            return new TMDbMovieListPage(page, totalPages, movieList);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Builds the exception for a failed HTTP request from TMDb's status JSON in the error body.
+     * @param errorStream Stream of the error response body, may be null.
+     * @param responseCode HTTP response code of the failed request.
+     * @param retryAfter The response's Retry-After header, may be null.
+     * @return A TMDbException describing the failure.
+     */
+    static TMDbException parseResponseError(InputStream errorStream, int responseCode,
+                                            String retryAfter) {
+        int statusCode = -1;
+        String statusMessage = "HTTP " + responseCode;
+
+        if (errorStream != null) {
+            try {
+                JsonReader reader = new JsonReader(new InputStreamReader(errorStream, RESPONSE_CHARSET));
+                try {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+
+                        if (name.equals(TMDB_STATUS_CODE)) {
+                            statusCode = reader.nextInt();
+                        } else if (name.equals(TMDB_STATUS_MESSAGE)) {
+                            statusMessage = reader.nextString();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The error body wasn't TMDb's status JSON, so only the HTTP code is known.
+                e.printStackTrace();
+            }
+        }
+
+        return new TMDbException(TMDbException.statusOf(responseCode, statusCode), responseCode,
+                statusCode, TMDbException.parseRetryAfterMillis(retryAfter),
+                "Error (" + statusCode + "): " + statusMessage);
+    }
+
+    private static void checkResponseError(int statusCode, String statusMessage)
+            throws TMDbException {
+
+        if (statusCode != SUCCESS_STATUS_CODE) {
+            String errorMessage = "Error (" + statusCode + "): " + statusMessage;
+            throw new TMDbException(TMDbException.statusOf(-1, statusCode), -1, statusCode, -1,
+                    errorMessage);
+        }
+    }
 }
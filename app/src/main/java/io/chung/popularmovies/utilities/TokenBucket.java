@@ -0,0 +1,76 @@
+package io.chung.popularmovies.utilities;
+
+/**
+ * Token bucket rate limiter: each request takes a token, tokens refill at a steady rate, and the
+ * bucket holds at most a burst's worth. Times are passed in, so it can be driven by a fake clock.
+ */
+final class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final double mCapacity;
+    private final double mTokensPerNano;
+
+    /* Guarded by this. */
+    private double mTokens;
+    /* When mTokens was last brought up to date; in the future while paused. */
+    private long mRefilledAtNanos;
+
+    /**
+     * Creates a full bucket.
+     * @param capacity Most tokens held, which is the largest burst allowed.
+     * @param tokensPerSecond Rate tokens refill at, which is the sustained rate allowed.
+     * @param nowNanos The current time.
+     */
+    TokenBucket(int capacity, double tokensPerSecond, long nowNanos) {
+        mCapacity = capacity;
+        mTokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        mTokens = capacity;
+        mRefilledAtNanos = nowNanos;
+    }
+
+    /**
+     * Takes a token if that leaves at least the reserve in the bucket.
+     * @param nowNanos The current time.
+     * @param reserve Tokens that must be left for others.
+     * @return 0 if a token was taken, otherwise about how long until one can be, in nanoseconds.
+     */
+    synchronized long tryAcquire(long nowNanos, int reserve) {
+        refill(nowNanos);
+
+        if (nowNanos >= mRefilledAtNanos && mTokens >= reserve + 1) {
+            mTokens -= 1;
+            return 0;
+        }
+
+        long pausedNanos = Math.max(0, mRefilledAtNanos - nowNanos);
+        double missing = Math.max(0, reserve + 1 - mTokens);
+        return Math.max(1, pausedNanos + (long) Math.ceil(missing / mTokensPerNano));
+    }
+
+    /**
+     * Empties the bucket and stops it refilling until the given time, for when the server says
+     * the quota is used up whatever this bucket thinks.
+     * @param nowNanos The current time.
+     * @param untilNanos When tokens start refilling again.
+     */
+    synchronized void pause(long nowNanos, long untilNanos) {
+        refill(nowNanos);
+        mTokens = 0;
+        mRefilledAtNanos = Math.max(mRefilledAtNanos, untilNanos);
+    }
+
+    synchronized double getTokens(long nowNanos) {
+        refill(nowNanos);
+        return mTokens;
+    }
+
+    private void refill(long nowNanos) {
+        if (nowNanos <= mRefilledAtNanos) {
+            return;
+        }
+
+        mTokens = Math.min(mCapacity, mTokens + (nowNanos - mRefilledAtNanos) * mTokensPerNano);
+        mRefilledAtNanos = nowNanos;
+    }
+}
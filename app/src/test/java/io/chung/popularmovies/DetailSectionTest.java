@@ -0,0 +1,41 @@
+package io.chung.popularmovies;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that section masks turn into stable append_to_response values, so the same sections
+ * always make the same details URL.
+ */
+public class DetailSectionTest {
+
+    @Test
+    public void appendToResponse_defaultIsVideosAndReviews() {
+        assertEquals("videos,reviews", DetailSection.appendToResponse(DetailSection.DEFAULT));
+    }
+
+    @Test
+    public void appendToResponse_isTheSameWhateverTheOrderSectionsAreGiven() {
+        int mask = DetailSection.mask(DetailSection.RELEASE_DATES, DetailSection.CREDITS,
+                DetailSection.VIDEOS);
+
+        assertEquals(mask, DetailSection.mask(DetailSection.VIDEOS, DetailSection.CREDITS,
+                DetailSection.RELEASE_DATES));
+        assertEquals("videos,credits,release_dates", DetailSection.appendToResponse(mask));
+    }
+
+    @Test
+    public void appendToResponse_isEmptyForNoSections() {
+        assertEquals("", DetailSection.appendToResponse(0));
+    }
+
+    @Test
+    public void bits_areDistinct() {
+        int seen = 0;
+        for (DetailSection section : DetailSection.values()) {
+            assertEquals(0, seen & section.bit());
+            seen |= section.bit();
+        }
+    }
+}
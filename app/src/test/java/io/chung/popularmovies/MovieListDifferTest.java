@@ -0,0 +1,231 @@
+package io.chung.popularmovies;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the updates MovieListDiffer hands back, by applying them to the old snapshot's IDs, and
+ * that a cancelled diff never calls back. Both threads are queues the test runs by hand.
+ */
+public class MovieListDifferTest {
+
+    /* Stands in for a movie that was inserted, once the updates have been applied. */
+    private static final String INSERTED = "inserted";
+
+    private final QueueExecutor mBackground = new QueueExecutor();
+    private final QueueExecutor mMainThread = new QueueExecutor();
+
+    @Test
+    public void insertedMovie_isDispatchedAsAnInsert() {
+        AppliedUpdates updates = diffAndApply(movies(1, 2, 3), movies(1, 4, 2, 3));
+
+        assertEquals(Arrays.<Object>asList(1, INSERTED, 2, 3), updates.mItems);
+        assertEquals(1, updates.mInserts);
+        assertEquals(0, updates.mRemoves);
+        assertEquals(0, updates.mMoves);
+        assertTrue(updates.mChanged.isEmpty());
+    }
+
+    @Test
+    public void removedMovie_isDispatchedAsARemove() {
+        AppliedUpdates updates = diffAndApply(movies(1, 2, 3), movies(1, 3));
+
+        assertEquals(Arrays.<Object>asList(1, 3), updates.mItems);
+        assertEquals(0, updates.mInserts);
+        assertEquals(1, updates.mRemoves);
+    }
+
+    @Test
+    public void reorderedMovies_areDispatchedAsMoves() {
+        AppliedUpdates updates = diffAndApply(movies(1, 2, 3, 4), movies(1, 3, 2, 4));
+
+        assertEquals(Arrays.<Object>asList(1, 3, 2, 4), updates.mItems);
+        assertTrue(updates.mMoves > 0);
+        assertEquals(0, updates.mInserts);
+        assertEquals(0, updates.mRemoves);
+        assertTrue(updates.mChanged.isEmpty());
+    }
+
+    @Test
+    public void changedPoster_isDispatchedAsAChange() {
+        TMDbMovie[] oldMovies = movies(1, 2, 3);
+        // A new instance of every movie, but only the second one's poster differs.
+        TMDbMovie[] newMovies = new TMDbMovie[]{
+                movie(1, "/poster1.jpg"), movie(2, "/repainted.jpg"), movie(3, "/poster3.jpg")
+        };
+
+        AppliedUpdates updates = diffAndApply(oldMovies, newMovies);
+
+        assertEquals(Arrays.<Object>asList(1, 2, 3), updates.mItems);
+        assertEquals(Arrays.asList(1), updates.mChanged);
+        assertEquals(0, updates.mMoves);
+    }
+
+    @Test
+    public void positionsThatArentResident_onlyMatchEachOther() {
+        TMDbMovie[] oldMovies = new TMDbMovie[]{movie(1, "/poster1.jpg"), null};
+        TMDbMovie[] newMovies = new TMDbMovie[]{movie(1, "/poster1.jpg"), null};
+
+        AppliedUpdates updates = diffAndApply(oldMovies, newMovies);
+
+        assertEquals(0, updates.mInserts + updates.mRemoves + updates.mMoves);
+        assertTrue(updates.mChanged.isEmpty());
+    }
+
+    @Test
+    public void result_isOnlyDeliveredOnTheMainThread() {
+        RecordingCallback callback = new RecordingCallback();
+        MovieListDiffer.diff(movies(1), movies(1, 2), callback, mBackground, mMainThread);
+
+        mBackground.runAll();
+        assertEquals(0, callback.mCalls);
+
+        mMainThread.runAll();
+        assertEquals(1, callback.mCalls);
+    }
+
+    @Test
+    public void diffCancelledBeforeItRuns_neverCallsBack() {
+        RecordingCallback callback = new RecordingCallback();
+        MovieListDiffer.Diff diff = MovieListDiffer.diff(movies(1, 2), movies(2, 1), callback,
+                mBackground, mMainThread);
+
+        diff.cancel();
+        mBackground.runAll();
+
+        // The diff bails out at its first comparison, so there's nothing to deliver.
+        assertTrue(mMainThread.isEmpty());
+        assertEquals(0, callback.mCalls);
+    }
+
+    @Test
+    public void diffCancelledBeforeDelivery_neverCallsBack() {
+        RecordingCallback callback = new RecordingCallback();
+        MovieListDiffer.Diff diff = MovieListDiffer.diff(movies(1, 2), movies(2, 1), callback,
+                mBackground, mMainThread);
+
+        mBackground.runAll();
+        diff.cancel();
+        mMainThread.runAll();
+
+        assertTrue(diff.isCancelled());
+        assertEquals(0, callback.mCalls);
+    }
+
+    /**
+     * Diffs two snapshots and applies the result to the old snapshot's IDs.
+     */
+    private AppliedUpdates diffAndApply(TMDbMovie[] oldMovies, TMDbMovie[] newMovies) {
+        RecordingCallback callback = new RecordingCallback();
+        MovieListDiffer.diff(oldMovies, newMovies, callback, mBackground, mMainThread);
+        mBackground.runAll();
+        mMainThread.runAll();
+        assertEquals(1, callback.mCalls);
+
+        AppliedUpdates updates = new AppliedUpdates(oldMovies);
+        callback.mResult.dispatchUpdatesTo(updates);
+        return updates;
+    }
+
+    private static TMDbMovie[] movies(int... ids) {
+        TMDbMovie[] movies = new TMDbMovie[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            movies[i] = movie(ids[i], "/poster" + ids[i] + ".jpg");
+        }
+        return movies;
+    }
+
+    private static TMDbMovie movie(int id, String posterPath) {
+        return new TMDbMovie(false, null, new int[0], id, "en", "Title " + id, LazyText.of(""),
+                1.0, posterPath, "Title " + id, "2017-01-01", new TMDbMovie.Review[0], 0, false,
+                new TMDbMovie.Video[0], 7.0, 10, 0);
+    }
+
+    private static final class QueueExecutor implements Executor {
+        private final Queue<Runnable> mQueue = new LinkedList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            mQueue.add(runnable);
+        }
+
+        void runAll() {
+            Runnable runnable;
+            while ((runnable = mQueue.poll()) != null) {
+                runnable.run();
+            }
+        }
+
+        boolean isEmpty() {
+            return mQueue.isEmpty();
+        }
+    }
+
+    private static final class RecordingCallback implements MovieListDiffer.Callback {
+        int mCalls;
+        DiffUtil.DiffResult mResult;
+
+        @Override
+        public void onDiffed(DiffUtil.DiffResult result) {
+            mCalls++;
+            mResult = result;
+        }
+    }
+
+    /**
+     * Applies updates to a list of IDs, and counts them.
+     */
+    private static final class AppliedUpdates implements ListUpdateCallback {
+        final List<Object> mItems = new ArrayList<>();
+        final List<Integer> mChanged = new ArrayList<>();
+        int mInserts;
+        int mRemoves;
+        int mMoves;
+
+        AppliedUpdates(TMDbMovie[] movies) {
+            for (TMDbMovie movie : movies) {
+                mItems.add(movie != null ? movie.id : null);
+            }
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mInserts += count;
+            for (int i = 0; i < count; i++) {
+                mItems.add(position, INSERTED);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mRemoves += count;
+            for (int i = 0; i < count; i++) {
+                mItems.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mMoves++;
+            mItems.add(toPosition, mItems.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            for (int i = 0; i < count; i++) {
+                mChanged.add(position + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package io.chung.popularmovies;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trips movies through TMDbMovieCodec, including text that needs multi-byte UTF-8 and
+ * the fields that are decoded lazily.
+ */
+public class TMDbMovieCodecTest {
+
+    /* Two- and three-byte characters, and a surrogate pair for a four-byte one. */
+    private static final String MULTI_BYTE_TEXT = "\u00dcberraschung \u2014 caf\u00e9 \ud83c\udfac";
+    private static final String CJK_TEXT = "\u65e5\u672c\u8a9e";
+
+    @Test
+    public void roundTrip_keepsEveryField() throws Exception {
+        TMDbMovie movie = movie("A movie about a voyage, with a long overview.",
+                "Great movie, would watch again.");
+
+        TMDbMovie decoded = TMDbMovieCodec.decode(ByteBuffer.wrap(TMDbMovieCodec.encode(movie)));
+
+        assertMovieEquals(movie, decoded);
+    }
+
+    @Test
+    public void listLevelMovie_roundTripsWithoutSections() throws Exception {
+        TMDbMovie movie = new TMDbMovie(false, "/backdrop.jpg", new int[]{18}, 550, "en",
+                "Fight Club", LazyText.of("Overview"), 40.1, "/poster.jpg", "Fight Club",
+                "1999-10-15", new TMDbMovie.Review[0], 0, false, new TMDbMovie.Video[0], 8.4, 20000,
+                0);
+
+        TMDbMovie decoded = TMDbMovieCodec.decode(ByteBuffer.wrap(TMDbMovieCodec.encode(movie)));
+
+        // Its empty videos and reviews weren't fetched, so they mustn't stand in for details.
+        assertEquals(0, decoded.getSections());
+        assertFalse(decoded.hasSections(DetailSection.VIDEOS.bit()));
+        assertMovieEquals(movie, decoded);
+    }
+
+    @Test
+    public void encodedSize_matchesBytesWritten() throws Exception {
+        TMDbMovie movie = movie(MULTI_BYTE_TEXT, CJK_TEXT);
+        ByteBuffer out = ByteBuffer.allocate(TMDbMovieCodec.encodedSize(movie) + 8);
+
+        TMDbMovieCodec.encode(movie, out);
+
+        assertEquals(TMDbMovieCodec.encodedSize(movie), out.position());
+    }
+
+    @Test
+    public void multiByteText_roundTripsLikeStringGetBytes() throws Exception {
+        // The last character is an unpaired surrogate, which UTF-8 can't represent.
+        String overview = MULTI_BYTE_TEXT + " \ud83c";
+        TMDbMovie movie = movie(overview, CJK_TEXT);
+
+        TMDbMovie decoded = TMDbMovieCodec.decode(ByteBuffer.wrap(TMDbMovieCodec.encode(movie)));
+
+        assertEquals(new String(overview.getBytes("UTF-8"), "UTF-8"), decoded.getOverview());
+        assertEquals(CJK_TEXT, decoded.getReviews()[0].getContent());
+    }
+
+    @Test
+    public void decode_leavesLongTextEncodedUntilRead() throws Exception {
+        TMDbMovie decoded = TMDbMovieCodec.decode(
+                ByteBuffer.wrap(TMDbMovieCodec.encode(movie("Overview", "Content"))));
+
+        assertFalse(decoded.overviewText().isDecoded());
+        assertFalse(decoded.getReviews()[0].contentText().isDecoded());
+
+        assertEquals("Overview", decoded.getOverview());
+        assertTrue(decoded.overviewText().isDecoded());
+        assertFalse(decoded.getReviews()[0].contentText().isDecoded());
+    }
+
+    @Test
+    public void encodedText_isComparedAndSizedWithoutDecoding() throws Exception {
+        byte[] encoded = TMDbMovieCodec.encode(movie(MULTI_BYTE_TEXT, "Content"));
+        TMDbMovie decoded = TMDbMovieCodec.decode(ByteBuffer.wrap(encoded));
+        TMDbMovie again = TMDbMovieCodec.decode(ByteBuffer.wrap(encoded.clone()));
+
+        assertTrue(decoded.hasSameListFields(again));
+        assertEquals(MULTI_BYTE_TEXT.getBytes("UTF-8").length, decoded.getOverviewSize());
+        assertEquals("Content".length(), decoded.getReviews()[0].getContentSize());
+        assertFalse(decoded.overviewText().isDecoded());
+        assertFalse(again.overviewText().isDecoded());
+
+        // Once decoded, the text counts as a String, and still matches the encoded copy.
+        assertEquals(MULTI_BYTE_TEXT, decoded.getOverview());
+        assertEquals(2 * MULTI_BYTE_TEXT.length(), decoded.getOverviewSize());
+        assertTrue(again.hasSameListFields(decoded));
+        assertFalse(decoded.hasSameListFields(movie("Another overview", "Content")));
+    }
+
+    @Test
+    public void decode_readsConsecutiveMoviesFromDirectBuffer() throws Exception {
+        TMDbMovie first = movie("First", "One");
+        TMDbMovie second = movie("Second", "Two");
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(
+                TMDbMovieCodec.encodedSize(first) + TMDbMovieCodec.encodedSize(second));
+        TMDbMovieCodec.encode(first, buffer);
+        TMDbMovieCodec.encode(second, buffer);
+        buffer.flip();
+
+        TMDbMovie decodedFirst = TMDbMovieCodec.decode(buffer);
+        TMDbMovie decodedSecond = TMDbMovieCodec.decode(buffer);
+
+        assertFalse(buffer.hasRemaining());
+        assertMovieEquals(first, decodedFirst);
+        assertMovieEquals(second, decodedSecond);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsOtherVersions() throws Exception {
+        byte[] encoded = TMDbMovieCodec.encode(movie("Overview", "Content"));
+        encoded[0] = TMDbMovieCodec.VERSION + 1;
+
+        TMDbMovieCodec.decode(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Builds a movie with every field set. Videos avoid YouTube, whose URLs need android.net.Uri.
+     */
+    private static TMDbMovie movie(String overview, String reviewContent) throws Exception {
+        TMDbMovie.Review[] reviews = new TMDbMovie.Review[]{
+                new TMDbMovie.Review("critic", LazyText.of(reviewContent),
+                        "https://www.themoviedb.org/review/1"),
+                new TMDbMovie.Review("fan", LazyText.of(""), null)
+        };
+        TMDbMovie.Video[] videos = new TMDbMovie.Video[]{
+                new TMDbMovie.Video("abc123", "Trailer", "Vimeo")
+        };
+
+        return new TMDbMovie(false, "/backdrop.jpg", new int[]{28, 12, 10752}, 263115, "en",
+                "Logan", LazyText.of(overview), 92.5, "/poster.jpg", "Logan", "2017-02-28",
+                reviews, 137, true, videos, Double.NaN, 8123, DetailSection.DEFAULT);
+    }
+
+    private static void assertMovieEquals(TMDbMovie expected, TMDbMovie actual) {
+        assertEquals(expected.adult, actual.adult);
+        assertEquals(expected.backdropPath, actual.backdropPath);
+        assertArrayEquals(expected.getGenreIds(), actual.getGenreIds());
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.originalLanguage, actual.originalLanguage);
+        assertEquals(expected.originalTitle, actual.originalTitle);
+        assertEquals(expected.getOverview(), actual.getOverview());
+        assertEquals(expected.popularity, actual.popularity, 0);
+        assertEquals(expected.posterPath, actual.posterPath);
+        assertEquals(expected.title, actual.title);
+        assertEquals(expected.releaseDate, actual.releaseDate);
+        assertEquals(expected.runtime, actual.runtime);
+        assertEquals(expected.video, actual.video);
+        assertEquals(expected.voteAverage, actual.voteAverage, 0);
+        assertEquals(expected.voteCount, actual.voteCount);
+        assertEquals(expected.getSections(), actual.getSections());
+
+        assertEquals(expected.getReviews().length, actual.getReviews().length);
+        for (int i = 0; i < expected.getReviews().length; i++) {
+            assertEquals(expected.getReviews()[i].author, actual.getReviews()[i].author);
+            assertEquals(expected.getReviews()[i].getContent(), actual.getReviews()[i].getContent());
+            // URL.equals resolves hosts, so compare the URLs as strings.
+            assertEquals(String.valueOf(expected.getReviews()[i].getUrl()),
+                    String.valueOf(actual.getReviews()[i].getUrl()));
+        }
+
+        assertEquals(expected.getVideos().length, actual.getVideos().length);
+        for (int i = 0; i < expected.getVideos().length; i++) {
+            assertEquals(expected.getVideos()[i].key, actual.getVideos()[i].key);
+            assertEquals(expected.getVideos()[i].name, actual.getVideos()[i].name);
+            assertEquals(expected.getVideos()[i].site, actual.getVideos()[i].site);
+        }
+    }
+}
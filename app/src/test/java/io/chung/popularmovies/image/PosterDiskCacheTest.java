@@ -0,0 +1,129 @@
+package io.chung.popularmovies.image;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises PosterDiskCache's storage, least-recently-used eviction and reloading from disk.
+ */
+public class PosterDiskCacheTest {
+
+    private static final int POSTER_SIZE = 100;
+    private static final String BASE_URI = "http://image.tmdb.org/t/p/w185/";
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        mDirectory = mTemporaryFolder.newFolder("posters");
+    }
+
+    @Test
+    public void putThenOpen_returnsTheSameBytes() throws Exception {
+        PosterDiskCache cache = new PosterDiskCache(mDirectory, 10 * POSTER_SIZE);
+
+        assertNull(cache.open(BASE_URI + "a.jpg"));
+
+        byte[] poster = poster(1);
+        assertArrayEquals(poster, readFully(cache.put(BASE_URI + "a.jpg", stream(poster))));
+        assertArrayEquals(poster, readFully(cache.open(BASE_URI + "a.jpg")));
+        assertEquals(POSTER_SIZE, cache.size());
+    }
+
+    @Test
+    public void putOverMaxSize_evictsLeastRecentlyOpened() throws Exception {
+        PosterDiskCache cache = new PosterDiskCache(mDirectory, 3 * POSTER_SIZE);
+
+        readFully(cache.put(BASE_URI + "a.jpg", stream(poster(1))));
+        readFully(cache.put(BASE_URI + "b.jpg", stream(poster(2))));
+        readFully(cache.put(BASE_URI + "c.jpg", stream(poster(3))));
+
+        // Opening a makes b the least recently used.
+        readFully(cache.open(BASE_URI + "a.jpg"));
+        readFully(cache.put(BASE_URI + "d.jpg", stream(poster(4))));
+
+        assertNull(cache.open(BASE_URI + "b.jpg"));
+        assertNotNull(cache.open(BASE_URI + "a.jpg"));
+        assertNotNull(cache.open(BASE_URI + "c.jpg"));
+        assertNotNull(cache.open(BASE_URI + "d.jpg"));
+        assertEquals(3 * POSTER_SIZE, cache.size());
+        assertEquals(3, mDirectory.list().length);
+    }
+
+    @Test
+    public void putSameKey_replacesEntry() throws Exception {
+        PosterDiskCache cache = new PosterDiskCache(mDirectory, 10 * POSTER_SIZE);
+
+        readFully(cache.put(BASE_URI + "a.jpg", stream(poster(1))));
+        readFully(cache.put(BASE_URI + "a.jpg", stream(poster(2))));
+
+        assertArrayEquals(poster(2), readFully(cache.open(BASE_URI + "a.jpg")));
+        assertEquals(POSTER_SIZE, cache.size());
+    }
+
+    @Test
+    public void reopen_keepsEntriesAndDropsUnfinishedWrites() throws Exception {
+        PosterDiskCache cache = new PosterDiskCache(mDirectory, 10 * POSTER_SIZE);
+        readFully(cache.put(BASE_URI + "a.jpg", stream(poster(1))));
+        readFully(cache.put(BASE_URI + "b.jpg", stream(poster(2))));
+        assertTrue(new File(mDirectory, "partial.tmp").createNewFile());
+
+        PosterDiskCache reopened = new PosterDiskCache(mDirectory, 10 * POSTER_SIZE);
+
+        assertArrayEquals(poster(1), readFully(reopened.open(BASE_URI + "a.jpg")));
+        assertArrayEquals(poster(2), readFully(reopened.open(BASE_URI + "b.jpg")));
+        assertEquals(2 * POSTER_SIZE, reopened.size());
+        assertFalse(new File(mDirectory, "partial.tmp").exists());
+    }
+
+    @Test
+    public void reopenWithSmallerMaxSize_trimsToIt() throws Exception {
+        PosterDiskCache cache = new PosterDiskCache(mDirectory, 10 * POSTER_SIZE);
+        for (int i = 0; i < 5; i++) {
+            readFully(cache.put(BASE_URI + i + ".jpg", stream(poster(i))));
+        }
+
+        PosterDiskCache reopened = new PosterDiskCache(mDirectory, 2 * POSTER_SIZE);
+
+        assertEquals(2 * POSTER_SIZE, reopened.size());
+        assertEquals(2, mDirectory.list().length);
+    }
+
+    private static byte[] poster(int fill) {
+        byte[] poster = new byte[POSTER_SIZE];
+        Arrays.fill(poster, (byte) fill);
+        return poster;
+    }
+
+    private static ByteArrayInputStream stream(byte[] bytes) {
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private static byte[] readFully(FileInputStream in) throws IOException {
+        try {
+            byte[] bytes = new byte[(int) in.getChannel().size()];
+            int offset = 0;
+            int read;
+            while (offset < bytes.length
+                    && (read = in.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
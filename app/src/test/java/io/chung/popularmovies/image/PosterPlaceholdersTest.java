@@ -0,0 +1,34 @@
+package io.chung.popularmovies.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how a poster's placeholder color is picked from its pixels.
+ */
+public class PosterPlaceholdersTest {
+
+    @Test
+    public void dominantColor_isTheCommonestBucketsAverage() {
+        // Mostly two close dark blues, with a few bright reds.
+        int[] pixels = {
+                0xff102040, 0xff102040, 0xff102040, 0xff14244c, 0xff14244c,
+                0xffff0000, 0xffff0000, 0xffff0000
+        };
+
+        assertEquals(0xff112144, PosterPlaceholders.dominantColor(pixels, pixels.length));
+    }
+
+    @Test
+    public void dominantColor_ignoresAlphaAndPixelsPastCount() {
+        int[] pixels = {0x00808080, 0x80808080, 0xffffffff, 0xffffffff, 0xffffffff};
+
+        assertEquals(0xff808080, PosterPlaceholders.dominantColor(pixels, 2));
+    }
+
+    @Test
+    public void dominantColor_ofNoPixels_isBlack() {
+        assertEquals(0xff000000, PosterPlaceholders.dominantColor(new int[0], 0));
+    }
+}
@@ -0,0 +1,132 @@
+package io.chung.popularmovies.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks Histogram's bucket layout, percentile estimates and concurrent recording, and that
+ * Metrics exports them as JSON.
+ */
+public class HistogramTest {
+
+    @Test
+    public void buckets_coverEveryValueContiguously() throws Exception {
+        assertEquals(0, Histogram.bucketLowerBound(0));
+        assertEquals(Long.MAX_VALUE, Histogram.bucketUpperBound(Histogram.BUCKET_COUNT - 1));
+
+        for (int i = 1; i < Histogram.BUCKET_COUNT; i++) {
+            assertEquals(Histogram.bucketUpperBound(i - 1) + 1, Histogram.bucketLowerBound(i));
+        }
+    }
+
+    @Test
+    public void bucketIndex_isWithinBucketBounds() throws Exception {
+        long[] values = {0, 1, 3, 4, 5, 7, 8, 1000, 999999, 16666667, Long.MAX_VALUE};
+
+        for (long value : values) {
+            int index = Histogram.bucketIndex(value);
+            assertTrue(value + " below bucket", value >= Histogram.bucketLowerBound(index));
+            assertTrue(value + " above bucket", value <= Histogram.bucketUpperBound(index));
+        }
+    }
+
+    @Test
+    public void percentiles_areWithinAQuarterOfTheExactValue() throws Exception {
+        Histogram histogram = new Histogram("test");
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertWithinQuarter(500000, histogram.getPercentile(50));
+        assertWithinQuarter(900000, histogram.getPercentile(90));
+        assertEquals(1000000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void record_clampsNegativeValuesToZero() throws Exception {
+        Histogram histogram = new Histogram("test");
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void record_countsEveryValueFromConcurrentThreads() throws Exception {
+        final int threadCount = 4;
+        final int recordsPerThread = 10000;
+        final Histogram histogram = new Histogram("test");
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < recordsPerThread; i++) {
+                        histogram.record(i + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long bucketTotal = 0;
+        for (int i = 0; i < Histogram.BUCKET_COUNT; i++) {
+            bucketTotal += histogram.getBucketCount(i);
+        }
+        assertEquals(threadCount * recordsPerThread, histogram.getCount());
+        assertEquals(threadCount * recordsPerThread, bucketTotal);
+        assertEquals(recordsPerThread - 1 + threadCount - 1, histogram.getMax());
+    }
+
+    @Test
+    public void metricsJson_includesCountersRatiosAndHistograms() throws Exception {
+        Metrics.reset();
+        Metrics.RESPONSE_CACHE_HITS.add(3);
+        Metrics.RESPONSE_CACHE_MISSES.increment();
+        Metrics.recordHttpRequest(1000, 5000, 20000, 50000, 400, 1200);
+
+        String json = Metrics.toJson();
+        Metrics.reset();
+
+        assertTrue(json, json.contains("\"response_cache.hits\":3"));
+        assertTrue(json, json.contains("\"http.bytes_on_wire\":400"));
+        assertTrue(json, json.contains("\"response_cache.hit_ratio\":0.7500"));
+        assertTrue(json, json.contains("\"http.download_ns\":{\"count\":1,\"sum\":30000"));
+        assertTrue(json, json.startsWith("{") && json.endsWith("}"));
+    }
+
+    @Test
+    public void unknownDns_countsAsPartOfConnecting() throws Exception {
+        Metrics.reset();
+        Metrics.recordHttpRequest(-1, 5000, 20000, 50000, 400, 1200);
+
+        String json = Metrics.toJson();
+        Metrics.reset();
+
+        assertTrue(json, json.contains("\"http.dns_ns\":{\"count\":0,"));
+        assertTrue(json, json.contains("\"http.connect_ns\":{\"count\":1,\"sum\":5000"));
+    }
+
+    private static void assertWithinQuarter(long expected, long actual) {
+        assertTrue("expected about " + expected + ", got " + actual,
+                Math.abs(actual - expected) <= expected / 4);
+    }
+}
@@ -0,0 +1,119 @@
+package io.chung.popularmovies.query;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks MovieCatalog's genre filters and sort orders against a few hand-made movies.
+ */
+public class MovieCatalogTest {
+
+    private static final int ACTION = 28;
+    private static final int COMEDY = 35;
+    private static final int DRAMA = 18;
+    private static final int HORROR = 27;
+
+    @Test
+    public void noFilter_matchesEveryMovieInRowOrder() throws Exception {
+        assertMovies(sampleCatalog(), new int[0], true, null, 10, 20, 30, 40);
+    }
+
+    @Test
+    public void matchAll_needsEveryGenre() throws Exception {
+        MovieCatalog catalog = sampleCatalog();
+
+        assertMovies(catalog, new int[] {ACTION}, true, null, 10, 20, 40);
+        assertMovies(catalog, new int[] {ACTION, COMEDY}, true, null, 20);
+        assertMovies(catalog, new int[] {ACTION, COMEDY, DRAMA}, true, null);
+    }
+
+    @Test
+    public void matchAny_needsOneGenre() throws Exception {
+        assertMovies(sampleCatalog(), new int[] {COMEDY, DRAMA}, false, null, 20, 30, 40);
+    }
+
+    @Test
+    public void unknownGenre_matchesNothingWhenAllAreNeeded() throws Exception {
+        MovieCatalog catalog = sampleCatalog();
+
+        assertMovies(catalog, new int[] {ACTION, HORROR}, true, null);
+        assertMovies(catalog, new int[] {HORROR, COMEDY}, false, null, 20, 30);
+    }
+
+    @Test
+    public void sortKeys_orderHighestFirstAndKeepTiesInRowOrder() throws Exception {
+        MovieCatalog catalog = sampleCatalog();
+
+        assertMovies(catalog, new int[0], true, MovieCatalog.SortKey.VOTE_AVERAGE, 30, 10, 40, 20);
+        assertMovies(catalog, new int[0], true, MovieCatalog.SortKey.VOTE_COUNT, 20, 40, 10, 30);
+        assertMovies(catalog, new int[0], true, MovieCatalog.SortKey.POPULARITY, 40, 10, 20, 30);
+        assertMovies(catalog, new int[0], true, MovieCatalog.SortKey.RELEASE_DATE, 10, 20, 40, 30);
+        assertMovies(catalog, new int[] {ACTION}, true, MovieCatalog.SortKey.VOTE_AVERAGE,
+                10, 40, 20);
+    }
+
+    @Test
+    public void negativeValues_sortBelowPositiveOnes() throws Exception {
+        MovieCatalog catalog = new MovieCatalog.Builder(3)
+                .add(1, new int[0], -2.5f, 0, 0, 0)
+                .add(2, new int[0], 1.5f, 0, 0, 0)
+                .add(3, new int[0], -0.5f, 0, 0, 0)
+                .build();
+
+        assertMovies(catalog, new int[0], true, MovieCatalog.SortKey.VOTE_AVERAGE, 2, 3, 1);
+    }
+
+    @Test
+    public void manyMovies_spanSeveralBitsetWords() throws Exception {
+        MovieCatalog.Builder builder = new MovieCatalog.Builder(0);
+        for (int row = 0; row < 200; row++) {
+            builder.add(row, row % 3 == 0 ? new int[] {ACTION} : new int[] {DRAMA}, 0, row, 0, 0);
+        }
+        MovieCatalog catalog = builder.build();
+
+        int[] rows = new int[catalog.size()];
+        int count = catalog.query(new int[] {ACTION}, true, MovieCatalog.SortKey.VOTE_COUNT, rows);
+
+        assertEquals(67, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(198 - i * 3, catalog.getMovieId(rows[i]));
+        }
+        assertArrayEquals(new int[] {DRAMA, ACTION}, catalog.getGenreIds());
+    }
+
+    @Test
+    public void releaseDates_parseToComparableNumbers() throws Exception {
+        assertEquals(20170315, MovieCatalog.parseReleaseDate("2017-03-15"));
+        assertEquals(0, MovieCatalog.parseReleaseDate(""));
+        assertEquals(0, MovieCatalog.parseReleaseDate(null));
+        assertEquals(0, MovieCatalog.parseReleaseDate("2017/03/15"));
+        assertEquals(0, MovieCatalog.parseReleaseDate("2017-0a-15"));
+    }
+
+    /**
+     * Four movies whose keys order them differently, with ties on vote average.
+     */
+    private static MovieCatalog sampleCatalog() {
+        return new MovieCatalog.Builder(4)
+                .add(10, new int[] {ACTION}, 7.5f, 300, 50.5f, 20170315)
+                .add(20, new int[] {ACTION, COMEDY}, 6.0f, 900, 20.0f, 20161201)
+                .add(30, new int[] {DRAMA, COMEDY}, 8.1f, 100, 10.0f, 0)
+                .add(40, new int[] {DRAMA, ACTION}, 7.5f, 500, 90.0f, 19990101)
+                .build();
+    }
+
+    private static void assertMovies(MovieCatalog catalog, int[] genreIds, boolean matchAll,
+                                     MovieCatalog.SortKey sortKey, int... expectedMovieIds) {
+        int[] rows = new int[catalog.size()];
+        int count = catalog.query(genreIds, matchAll, sortKey, rows);
+
+        int[] movieIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            movieIds[i] = catalog.getMovieId(rows[i]);
+        }
+        assertEquals(Arrays.toString(expectedMovieIds), Arrays.toString(movieIds));
+    }
+}
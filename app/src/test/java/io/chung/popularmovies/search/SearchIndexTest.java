@@ -0,0 +1,188 @@
+package io.chung.popularmovies.search;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks how SearchIndex matches and ranks queries, keeps itself up to date and bounded, and
+ * round-trips through its file format.
+ */
+public class SearchIndexTest {
+
+    @Test
+    public void exactPrefixAndTypo_allFindTheMovie() throws Exception {
+        SearchIndex index = sampleIndex();
+
+        assertFirst(603, index.search("matrix", 5));
+        assertFirst(603, index.search("Matr", 5));
+        assertFirst(603, index.search("matirx", 5));
+        assertFirst(603, index.search("the matrx", 5));
+        assertEquals(0, index.search("zebra", 5).length);
+    }
+
+    @Test
+    public void accentsAndCase_areIgnored() throws Exception {
+        SearchIndex index = sampleIndex();
+
+        assertFirst(194, index.search("AMELIE", 5));
+    }
+
+    @Test
+    public void titleMatch_outranksOverviewMatch() throws Exception {
+        SearchIndex index = new SearchIndex(100);
+        index.put(new SearchIndex.Document(1, "Space Trip", null,
+                "A heist film about a vault.", null, 1));
+        index.put(new SearchIndex.Document(2, "The Heist", null,
+                "Thieves plan a job.", null, 1));
+
+        SearchIndex.Result[] results = index.search("heist", 5);
+        assertEquals(2, results.length);
+        assertEquals(2, results[0].movieId);
+        assertEquals("The Heist", results[0].title);
+    }
+
+    @Test
+    public void everyQueryTerm_mustMatch() throws Exception {
+        SearchIndex index = sampleIndex();
+
+        assertEquals(1, index.search("dark knight", 5).length);
+        assertEquals(0, index.search("dark matrix", 5).length);
+        // Stop words are optional, unless that's all there is.
+        assertFirst(155, index.search("the dark of knight", 5));
+    }
+
+    @Test
+    public void changedText_replacesOldTerms() throws Exception {
+        SearchIndex index = sampleIndex();
+        int terms = index.termCount();
+
+        assertTrue(index.put(new SearchIndex.Document(603, "Renamed", null, null, null, 1)));
+
+        assertEquals(0, index.search("matrix", 5).length);
+        assertFirst(603, index.search("renamed", 5));
+        assertTrue(index.termCount() < terms);
+    }
+
+    @Test
+    public void listLevelDocument_doesNotReplaceDetails() throws Exception {
+        SearchIndex index = new SearchIndex(100);
+        index.put(new SearchIndex.Document(1, "Title", null, "Overview.",
+                new String[] {"Unforgettable cinematography."}, 1));
+
+        assertFalse(index.put(new SearchIndex.Document(1, "Title", null, "Overview.", null, 2)));
+        assertFalse(index.put(new SearchIndex.Document(1, "Title", null, "Overview.",
+                new String[] {"Unforgettable cinematography."}, 3)));
+        assertFirst(1, index.search("cinematography", 5));
+    }
+
+    @Test
+    public void fullIndex_dropsLeastRecentlyIndexed() throws Exception {
+        SearchIndex index = new SearchIndex(2);
+        index.put(new SearchIndex.Document(1, "First", null, null, null, 1));
+        index.put(new SearchIndex.Document(2, "Second", null, null, null, 1));
+        // Seeing the first again keeps it over the second.
+        index.put(new SearchIndex.Document(1, "First", null, null, null, 1));
+        index.put(new SearchIndex.Document(3, "Third", null, null, null, 1));
+
+        assertEquals(2, index.size());
+        assertFirst(1, index.search("first", 5));
+        assertEquals(0, index.search("second", 5).length);
+        assertFirst(3, index.search("third", 5));
+    }
+
+    @Test
+    public void writtenIndex_readsBackTheSame() throws Exception {
+        SearchIndex index = sampleIndex();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+
+        SearchIndex read = SearchIndex.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 100);
+
+        assertEquals(index.size(), read.size());
+        assertEquals(index.termCount(), read.termCount());
+        for (String query : new String[] {"matrix", "knight", "amelie", "matirx", "paris"}) {
+            SearchIndex.Result[] expected = index.search(query, 5);
+            SearchIndex.Result[] actual = read.search(query, 5);
+            assertEquals(query, expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(query, expected[i].movieId, actual[i].movieId);
+                assertEquals(query, expected[i].score, actual[i].score, 1e-6f);
+            }
+        }
+    }
+
+    @Test
+    public void search_staysFastWithThousandsOfMovies() throws Exception {
+        SearchIndex index = new SearchIndex(4000);
+        StringBuilder overview = new StringBuilder();
+        for (int id = 0; id < 4000; id++) {
+            overview.setLength(0);
+            for (int word = 0; word < 40; word++) {
+                overview.append(syntheticWord(id * 31 + word * 7)).append(' ');
+            }
+            index.put(new SearchIndex.Document(id, syntheticWord(id) + " " + syntheticWord(id + 1),
+                    null, overview.toString(), null, id % 100));
+        }
+
+        // The first title word with two letters swapped, and the start of the second.
+        String first = syntheticWord(1234);
+        String query = first.substring(0, 2) + first.charAt(3) + first.charAt(2)
+                + first.substring(4) + " " + syntheticWord(1235).substring(0, 3);
+
+        // Warm up, then time a query that exercises prefix and typo matching.
+        for (int i = 0; i < 20; i++) {
+            index.search(query, 20);
+        }
+        long startNanos = System.nanoTime();
+        SearchIndex.Result[] results = null;
+        for (int i = 0; i < 20; i++) {
+            results = index.search(query, 20);
+        }
+        long averageMillis = (System.nanoTime() - startNanos) / 20 / 1000000;
+
+        assertFirst(1234, results);
+        assertTrue("average query took " + averageMillis + "ms", averageMillis < 50);
+    }
+
+    private static SearchIndex sampleIndex() {
+        SearchIndex index = new SearchIndex(100);
+        index.put(new SearchIndex.Document(603, "The Matrix", "The Matrix",
+                "A hacker learns the world is a simulation.", null, 50));
+        index.put(new SearchIndex.Document(155, "The Dark Knight", "The Dark Knight",
+                "Batman faces the Joker in Gotham.", new String[] {"A dark, brilliant film."}, 80));
+        index.put(new SearchIndex.Document(194, "Am\u00e9lie",
+                "Le Fabuleux Destin d'Am\u00e9lie Poulain",
+                "A shy waitress in Paris decides to change the lives of those around her.",
+                null, 30));
+        return index;
+    }
+
+    /**
+     * Builds a pronounceable made-up word from a number, so a large index has many terms.
+     */
+    private static String syntheticWord(int seed) {
+        String consonants = "bdfgklmnprstv";
+        String vowels = "aeiou";
+        StringBuilder word = new StringBuilder();
+        int value = seed;
+        for (int i = 0; i < 3; i++) {
+            word.append(consonants.charAt(value % consonants.length()));
+            value /= consonants.length();
+            word.append(vowels.charAt(value % vowels.length()));
+            value /= vowels.length();
+        }
+        return word.toString();
+    }
+
+    private static void assertFirst(int movieId, SearchIndex.Result[] results) {
+        assertTrue("no results", results.length > 0);
+        assertEquals(movieId, results[0].movieId);
+    }
+}
@@ -0,0 +1,225 @@
+package io.chung.popularmovies.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exercises DiskResponseCache against a local HTTP server that counts requests.
+ */
+public class DiskResponseCacheTest {
+
+    private static final String BODY = "{\"page\":1,\"results\":[]}";
+    private static final String ETAG = "\"abc123\"";
+
+    private static final NetworkUtils.ResponseHandler<String> READ_BODY =
+            new NetworkUtils.ResponseHandler<String>() {
+                @Override
+                public String handleResponse(InputStream in) throws IOException {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[1024];
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                    return out.toString("UTF-8");
+                }
+            };
+
+    @Rule
+    public final TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private final TMDbHttpClient mHttpClient = new TMDbHttpClient();
+
+    private HttpServer mServer;
+    private DiskResponseCache mCache;
+
+    /* Behavior of the mock server, changed per test. */
+    private volatile String mCacheControl = "max-age=60";
+    private volatile int mRequestCount;
+    private volatile String mLastIfNoneMatch;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.createContext("/3/movie/popular", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequestCount++;
+                mLastIfNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+
+                exchange.getResponseHeaders().set("Cache-Control", mCacheControl);
+                exchange.getResponseHeaders().set("ETag", ETAG);
+
+                if (ETAG.equals(mLastIfNoneMatch)) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] body = BODY.getBytes("UTF-8");
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+                exchange.close();
+            }
+        });
+        mServer.start();
+
+        mCache = new DiskResponseCache(mTemporaryFolder.newFolder("responses"), 1024 * 1024,
+                mHttpClient);
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void freshEntry_isServedWithoutNetwork() throws Exception {
+        assertEquals(BODY, mCache.fetch(popularUrl("key1"), READ_BODY));
+        assertEquals(BODY, mCache.fetch(popularUrl("key1"), READ_BODY));
+
+        assertEquals(1, mRequestCount);
+        assertEquals(1, mCache.missCount());
+        assertEquals(1, mCache.hitCount());
+    }
+
+    @Test
+    public void cacheKey_ignoresApiKey() throws Exception {
+        mCache.fetch(popularUrl("key1"), READ_BODY);
+        mCache.fetch(popularUrl("key2"), READ_BODY);
+
+        assertEquals(1, mRequestCount);
+        assertEquals("http://example.com/3/movie/popular?page=2",
+                DiskResponseCache.cacheKey(new URL("http://example.com/3/movie/popular?api_key=x&page=2")));
+    }
+
+    @Test
+    public void staleEntry_isRevalidatedWithEtag() throws Exception {
+        mCacheControl = "max-age=0";
+
+        mCache.fetch(popularUrl("key1"), READ_BODY);
+        assertEquals(BODY, mCache.fetch(popularUrl("key1"), READ_BODY));
+
+        assertEquals(2, mRequestCount);
+        assertEquals(ETAG, mLastIfNoneMatch);
+        assertEquals(1, mCache.revalidatedCount());
+    }
+
+    @Test
+    public void staleEntry_isServedWhenNetworkFails() throws Exception {
+        mCacheControl = "max-age=0";
+
+        mCache.fetch(popularUrl("key1"), READ_BODY);
+        mServer.stop(0);
+
+        assertEquals(BODY, mCache.fetch(popularUrl("key1"), READ_BODY));
+        assertEquals(1, mCache.staleServedCount());
+    }
+
+    @Test
+    public void noStoreResponse_isNotCached() throws Exception {
+        mCacheControl = "no-store";
+
+        mCache.fetch(popularUrl("key1"), READ_BODY);
+        mCache.fetch(popularUrl("key1"), READ_BODY);
+
+        assertEquals(2, mRequestCount);
+        assertEquals(0, mCache.size());
+    }
+
+    @Test
+    public void entries_surviveReopen() throws Exception {
+        mCache.fetch(popularUrl("key1"), READ_BODY);
+
+        DiskResponseCache reopened =
+                new DiskResponseCache(mTemporaryFolder.getRoot().listFiles()[0], 1024 * 1024,
+                        mHttpClient);
+
+        assertEquals(BODY, reopened.fetch(popularUrl("key1"), READ_BODY));
+        assertEquals(1, mRequestCount);
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvictedOverMaxSize() throws Exception {
+        DiskResponseCache small = new DiskResponseCache(mTemporaryFolder.newFolder("small"),
+                BODY.length() + BODY.length() / 2, mHttpClient);
+
+        small.fetch(popularUrl("key1"), READ_BODY);
+        small.fetch(new URL(popularUrl("key1") + "&page=2"), READ_BODY);
+
+        assertEquals(BODY.length(), small.size());
+    }
+
+    @Test
+    public void freshEntryWithoutBody_isFetchedAgain() throws Exception {
+        File directory = mTemporaryFolder.newFolder("evicted");
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024, mHttpClient);
+        cache.fetch(popularUrl("key1"), READ_BODY);
+
+        // As if another request evicted the entry after this one read its metadata.
+        deleteFiles(directory, ".1");
+
+        assertEquals(BODY, cache.fetch(popularUrl("key1"), READ_BODY));
+        assertEquals(2, mRequestCount);
+        assertEquals(0, cache.hitCount());
+    }
+
+    @Test
+    public void staleEntryWithoutBody_isFetchedUnconditionally() throws Exception {
+        mCacheControl = "max-age=0";
+        File directory = mTemporaryFolder.newFolder("evicted");
+        DiskResponseCache cache = new DiskResponseCache(directory, 1024 * 1024, mHttpClient);
+        cache.fetch(popularUrl("key1"), READ_BODY);
+
+        deleteFiles(directory, ".1");
+
+        // A 304 would leave nothing to serve, so the ETag mustn't be sent.
+        assertEquals(BODY, cache.fetch(popularUrl("key1"), READ_BODY));
+        assertNull(mLastIfNoneMatch);
+        assertEquals(0, cache.revalidatedCount());
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    public void orphanedMetadata_isDeletedOnReopen() throws Exception {
+        File directory = mTemporaryFolder.newFolder("orphans");
+        new DiskResponseCache(directory, 1024 * 1024, mHttpClient)
+                .fetch(popularUrl("key1"), READ_BODY);
+
+        deleteFiles(directory, ".1");
+        DiskResponseCache reopened = new DiskResponseCache(directory, 1024 * 1024, mHttpClient);
+
+        assertEquals(0, directory.listFiles().length);
+        assertFalse(reopened.isFresh(popularUrl("key1")));
+    }
+
+    private static void deleteFiles(File directory, String suffix) {
+        for (File file : directory.listFiles()) {
+            if (file.getName().endsWith(suffix)) {
+                assertTrue(file.delete());
+            }
+        }
+    }
+
+    private URL popularUrl(String apiKey) throws Exception {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort()
+                + "/3/movie/popular?api_key=" + apiKey);
+    }
+}
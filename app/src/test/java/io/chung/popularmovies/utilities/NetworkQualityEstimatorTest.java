@@ -0,0 +1,191 @@
+package io.chung.popularmovies.utilities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds NetworkQualityEstimator synthetic traces of request timings on a fake clock, and checks
+ * how it classifies the link and what policy it hands out.
+ */
+public class NetworkQualityEstimatorTest {
+
+    private static final String WIFI = "1:0:\"home\"";
+    private static final String CELLULAR = "0:2:internet";
+
+    /* A request every couple of seconds, as when scrolling through posters. */
+    private static final long REQUEST_INTERVAL_MILLIS = 2000;
+
+    private final NetworkQualityEstimator mEstimator = new NetworkQualityEstimator();
+    private final List<FetchPolicy> mChanges = new ArrayList<>();
+    private long mNowNanos;
+
+    public NetworkQualityEstimatorTest() {
+        mEstimator.addListener(new NetworkQualityEstimator.Listener() {
+            @Override
+            public void onPolicyChanged(FetchPolicy policy) {
+                mChanges.add(policy);
+            }
+        });
+    }
+
+    @Test
+    public void noSamples_followsTheConnectionType() {
+        assertEquals(NetworkQualityEstimator.Quality.GOOD, quality());
+
+        connect(CELLULAR, NetworkQualityEstimator.Quality.POOR);
+        assertEquals(NetworkQualityEstimator.Quality.POOR, quality());
+
+        mEstimator.onConnectivityChanged(false, false, null,
+                NetworkQualityEstimator.Quality.OFFLINE, mNowNanos);
+        assertEquals(NetworkQualityEstimator.Quality.OFFLINE, quality());
+    }
+
+    @Test
+    public void fastTrace_isGood() {
+        connect(CELLULAR, NetworkQualityEstimator.Quality.MODERATE);
+
+        // 80 ms round trips, and 200 KB posters in 400 ms: 4 Mbps.
+        trace(10, 80, 200 * 1024, 400);
+
+        assertEquals(NetworkQualityEstimator.Quality.GOOD, quality());
+    }
+
+    @Test
+    public void congested3gTrace_isModerate() {
+        connect(WIFI, NetworkQualityEstimator.Quality.GOOD);
+
+        // Round trips are fine, but 50 KB takes a second: 400 kbps.
+        trace(10, 250, 50 * 1024, 1000);
+
+        assertEquals(NetworkQualityEstimator.Quality.MODERATE, quality());
+    }
+
+    @Test
+    public void smallResponses_onlyMeasureLatency() {
+        connect(WIFI, NetworkQualityEstimator.Quality.GOOD);
+
+        // 4 KB bodies that dribble in would otherwise read as a POOR throughput.
+        trace(10, 100, 4 * 1024, 1000);
+
+        assertEquals(NetworkQualityEstimator.Quality.GOOD, quality());
+        assertEquals(0, mChanges.size());
+    }
+
+    @Test
+    public void degradingTrace_isNoticedWithinAFewRequests() {
+        connect(WIFI, NetworkQualityEstimator.Quality.GOOD);
+        trace(10, 80, 200 * 1024, 400);
+        assertEquals(0, mChanges.size());
+
+        // The link drops to 2G: 2 s round trips, 30 KB in 3 s.
+        int requests = 0;
+        while (quality() != NetworkQualityEstimator.Quality.POOR) {
+            trace(1, 2000, 30 * 1024, 3000);
+            requests++;
+            assertTrue("still " + quality() + " after " + requests + " requests", requests < 10);
+        }
+
+        // The listener only heard about actual changes, ending on POOR.
+        assertTrue(mChanges.size() <= 2);
+        assertEquals(NetworkQualityEstimator.Quality.POOR,
+                mChanges.get(mChanges.size() - 1).getQuality());
+    }
+
+    @Test
+    public void oneSlowRequest_doesntFlipTheQuality() {
+        connect(WIFI, NetworkQualityEstimator.Quality.GOOD);
+        trace(10, 80, 200 * 1024, 400);
+
+        trace(1, 5000, 200 * 1024, 20000);
+        trace(5, 80, 200 * 1024, 400);
+
+        assertEquals(NetworkQualityEstimator.Quality.GOOD, quality());
+        assertEquals(0, mChanges.size());
+    }
+
+    @Test
+    public void staleSamples_fallBackToTheConnectionType() {
+        connect(CELLULAR, NetworkQualityEstimator.Quality.GOOD);
+        trace(10, 2000, 30 * 1024, 3000);
+        assertEquals(NetworkQualityEstimator.Quality.POOR, quality());
+
+        mNowNanos += NetworkQualityEstimator.MAX_SAMPLE_AGE_NANOS + TimeUnit.SECONDS.toNanos(1);
+
+        assertEquals(NetworkQualityEstimator.Quality.GOOD, quality());
+    }
+
+    @Test
+    public void newNetwork_startsAfresh() {
+        connect(CELLULAR, NetworkQualityEstimator.Quality.MODERATE);
+        trace(10, 2000, 30 * 1024, 3000);
+        assertEquals(NetworkQualityEstimator.Quality.POOR, quality());
+
+        connect(WIFI, NetworkQualityEstimator.Quality.GOOD);
+        assertEquals(NetworkQualityEstimator.Quality.GOOD, quality());
+
+        // The same network reported again keeps what was measured on it.
+        trace(10, 2000, 30 * 1024, 3000);
+        connect(WIFI, NetworkQualityEstimator.Quality.GOOD);
+        assertEquals(NetworkQualityEstimator.Quality.POOR, quality());
+    }
+
+    @Test
+    public void policy_doesLessOnSlowerAndMeteredLinks() {
+        FetchPolicy good = FetchPolicy.forQuality(NetworkQualityEstimator.Quality.GOOD, false);
+        FetchPolicy metered = FetchPolicy.forQuality(NetworkQualityEstimator.Quality.GOOD, true);
+        FetchPolicy poor = FetchPolicy.forQuality(NetworkQualityEstimator.Quality.POOR, false);
+
+        // A 300 px cell takes w342 posters, or w185 on a POOR link; nothing goes below w92.
+        assertEquals(NetworkUtils.PosterSize.W342, good.posterSizeFor(300));
+        assertEquals(NetworkUtils.PosterSize.W185, poor.posterSizeFor(300));
+        assertEquals(NetworkUtils.PosterSize.W92, poor.posterSizeFor(50));
+
+        assertEquals(good.getMaxPosterPrefetch() / 2, metered.getMaxPosterPrefetch());
+        assertEquals(0, poor.getMaxPosterPrefetch());
+        assertEquals(0, poor.getMaxIdleDetailPrefetch());
+        assertTrue(good.shouldPreloadLists());
+        assertFalse(poor.shouldPreloadLists());
+        assertTrue(poor.getRequestThreads() < good.getRequestThreads());
+        assertTrue(poor.getReadTimeoutMillis() > good.getReadTimeoutMillis());
+
+        mEstimator.onConnectivityChanged(true, true, CELLULAR,
+                NetworkQualityEstimator.Quality.GOOD, mNowNanos);
+        assertTrue(mEstimator.getPolicy(mNowNanos).isMetered());
+        assertEquals(1, mChanges.size());
+    }
+
+    private NetworkQualityEstimator.Quality quality() {
+        return mEstimator.getPolicy(mNowNanos).getQuality();
+    }
+
+    private void connect(String networkKey, NetworkQualityEstimator.Quality prior) {
+        mEstimator.onConnectivityChanged(true, false, networkKey, prior, mNowNanos);
+    }
+
+    /**
+     * Reports requests at a steady interval, each with the given round trip, then a body of the
+     * given size taking the given time.
+     */
+    private void trace(int count, long rttMillis, long bytes, long transferMillis) {
+        for (int i = 0; i < count; i++) {
+            mNowNanos += TimeUnit.MILLISECONDS.toNanos(REQUEST_INTERVAL_MILLIS);
+
+            TMDbHttpClient.RequestTiming timing = new TMDbHttpClient.RequestTiming();
+            timing.dnsNanos = TimeUnit.MILLISECONDS.toNanos(5);
+            timing.connectNanos = TimeUnit.MILLISECONDS.toNanos(10);
+            timing.firstByteNanos = timing.connectNanos + TimeUnit.MILLISECONDS.toNanos(rttMillis);
+            timing.totalNanos = timing.firstByteNanos
+                    + TimeUnit.MILLISECONDS.toNanos(transferMillis);
+            timing.bytesOnWire = bytes;
+            timing.bytesDecoded = bytes;
+            timing.responseCode = 200;
+
+            mEstimator.onRequestFinished(timing, mNowNanos);
+        }
+    }
+}
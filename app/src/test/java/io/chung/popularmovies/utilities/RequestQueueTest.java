@@ -0,0 +1,256 @@
+package io.chung.popularmovies.utilities;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks RequestQueue's coalescing and cancellation on a single worker thread, with a network
+ * that echoes the URL and can be held up. The test thread stands in for the main thread: it
+ * makes and cancels requests, and runs the deliveries.
+ */
+public class RequestQueueTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private static final NetworkUtils.ResponseHandler<String> READ_BODY =
+            new NetworkUtils.ResponseHandler<String>() {
+                @Override
+                public String handleResponse(InputStream in) throws IOException {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    int b;
+                    while ((b = in.read()) != -1) {
+                        out.write(b);
+                    }
+                    return out.toString("UTF-8");
+                }
+            };
+
+    private final BlockingQueue<Runnable> mDeliveries = new LinkedBlockingQueue<>();
+    private final FakeNetwork mNetwork = new FakeNetwork();
+
+    private ThreadPoolExecutor mExecutor;
+    private RequestQueue mQueue;
+
+    @Before
+    public void setUp() {
+        mExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>());
+        mQueue = new RequestQueue(mExecutor, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                mDeliveries.add(runnable);
+            }
+        }, mNetwork);
+    }
+
+    @After
+    public void tearDown() {
+        mNetwork.release();
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void identicalRequests_shareOneCall() throws Exception {
+        mQueue.fetch(url("blocker"), READ_BODY, new RecordingCallback());
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RecordingCallback otherUrl = new RecordingCallback();
+        mQueue.fetch(url("popular"), READ_BODY, first);
+        mQueue.fetch(url("popular"), READ_BODY, second);
+        mQueue.fetch(url("top_rated"), READ_BODY, otherUrl);
+
+        mNetwork.release();
+        deliver(3);
+
+        assertEquals(url("popular").toString(), first.mResult);
+        assertEquals(url("popular").toString(), second.mResult);
+        assertEquals(url("top_rated").toString(), otherUrl.mResult);
+        assertEquals(3, mNetwork.sent().size());
+    }
+
+    @Test
+    public void cancellingOneOfTwoJoinedRequests_stillDeliversToTheOther() throws Exception {
+        mQueue.fetch(url("blocker"), READ_BODY, new RecordingCallback());
+        RecordingCallback cancelled = new RecordingCallback();
+        RecordingCallback kept = new RecordingCallback();
+        RequestQueue.Request<String> request = mQueue.fetch(url("popular"), READ_BODY, cancelled);
+        mQueue.fetch(url("popular"), READ_BODY, kept);
+
+        request.cancel();
+        assertTrue(request.isCancelled());
+        mNetwork.release();
+        deliver(2);
+
+        assertEquals(0, cancelled.mCalls);
+        assertEquals(url("popular").toString(), kept.mResult);
+        assertTrue(mNetwork.sent().contains(url("popular").toString()));
+    }
+
+    @Test
+    public void cancellingEveryRequest_dropsACallThatHasntStarted() throws Exception {
+        mQueue.fetch(url("blocker"), READ_BODY, new RecordingCallback());
+        RecordingCallback cancelled = new RecordingCallback();
+        RequestQueue.Request<String> first = mQueue.fetch(url("popular"), READ_BODY, cancelled);
+        RequestQueue.Request<String> second = mQueue.fetch(url("popular"), READ_BODY, cancelled);
+
+        first.cancel();
+        second.cancel();
+
+        // A request made afterwards starts a new call rather than joining the dropped one.
+        RecordingCallback later = new RecordingCallback();
+        mQueue.fetch(url("top_rated"), READ_BODY, later);
+        mNetwork.release();
+        deliver(2);
+
+        assertEquals(0, cancelled.mCalls);
+        assertEquals(url("top_rated").toString(), later.mResult);
+        assertFalse(mNetwork.sent().contains(url("popular").toString()));
+    }
+
+    @Test
+    public void failure_isDeliveredToEveryRequest() throws Exception {
+        mNetwork.mFailure = new IOException("reset");
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        mQueue.fetch(url("popular"), READ_BODY, first);
+        mQueue.fetch(url("popular"), READ_BODY, second);
+
+        mNetwork.release();
+        deliver(1);
+
+        assertSame(mNetwork.mFailure, first.mFailure);
+        assertSame(mNetwork.mFailure, second.mFailure);
+        assertNull(first.mResult);
+    }
+
+    @Test
+    public void raisingACallThatFailedWhileRunning_sendsItAgainInTheNewLane() throws Exception {
+        mNetwork.mFailure = new IOException("reset");
+        mNetwork.mFailuresLeft = 1;
+        RecordingCallback prefetch = new RecordingCallback();
+        RecordingCallback visible = new RecordingCallback();
+        mQueue.fetch(url("popular"), READ_BODY, RequestScheduler.Priority.PREFETCH, prefetch);
+        mNetwork.awaitSent(1);
+
+        // The user scrolls onto the page while its prefetch is out.
+        mQueue.fetch(url("popular"), READ_BODY, RequestScheduler.Priority.USER_VISIBLE, visible);
+        mNetwork.release();
+        deliver(1);
+
+        assertEquals(url("popular").toString(), prefetch.mResult);
+        assertEquals(url("popular").toString(), visible.mResult);
+        assertEquals(Arrays.asList(RequestScheduler.Priority.PREFETCH,
+                RequestScheduler.Priority.USER_VISIBLE), mNetwork.priorities());
+    }
+
+    private static URL url(String list) throws IOException {
+        return new URL("https://api.themoviedb.org/3/movie/" + list + "?api_key=k");
+    }
+
+    /**
+     * Runs the given number of deliveries, as the main thread's looper would.
+     */
+    private void deliver(int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            Runnable delivery = mDeliveries.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull("delivery " + i + " never came", delivery);
+            delivery.run();
+        }
+    }
+
+    private static final class RecordingCallback implements RequestQueue.Callback<String> {
+        int mCalls;
+        String mResult;
+        Exception mFailure;
+
+        @Override
+        public void onResponse(String result) {
+            mCalls++;
+            mResult = result;
+        }
+
+        @Override
+        public void onFailure(Exception e) {
+            mCalls++;
+            mFailure = e;
+        }
+    }
+
+    /**
+     * Answers every request with its URL, or a set failure, once released. Until then it holds
+     * up the worker thread, so requests made meanwhile queue up behind the first.
+     */
+    private static final class FakeNetwork implements RequestQueue.Network {
+        private final CountDownLatch mReleased = new CountDownLatch(1);
+        private final List<String> mSent = new ArrayList<>();
+        private final List<RequestScheduler.Priority> mPriorities = new ArrayList<>();
+        volatile IOException mFailure;
+        volatile int mFailuresLeft = Integer.MAX_VALUE;
+
+        @Override
+        public <T> T execute(URL url, NetworkUtils.ResponseHandler<T> handler,
+                             RequestScheduler.PrioritySource priority)
+                throws IOException, TMDbException {
+            synchronized (this) {
+                mSent.add(url.toString());
+                mPriorities.add(priority.getPriority());
+                notifyAll();
+            }
+            try {
+                mReleased.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            // Only one call runs at a time, so this doesn't race.
+            if (mFailure != null && mFailuresLeft > 0) {
+                mFailuresLeft--;
+                throw mFailure;
+            }
+            return handler.handleResponse(new ByteArrayInputStream(url.toString().getBytes()));
+        }
+
+        void release() {
+            mReleased.countDown();
+        }
+
+        synchronized List<String> sent() {
+            return new ArrayList<>(mSent);
+        }
+
+        synchronized List<RequestScheduler.Priority> priorities() {
+            return new ArrayList<>(mPriorities);
+        }
+
+        /**
+         * Waits until the given number of requests have reached the network.
+         */
+        synchronized void awaitSent(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (mSent.size() < count) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                assertTrue("request " + count + " never started", remainingMillis > 0);
+                wait(remainingMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,559 @@
+package io.chung.popularmovies.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks RequestScheduler's rate limit, lanes, retries and circuit breaker on a fake clock, so
+ * waits are instant and exact, and its rate limit and Retry-After handling against a local server
+ * that answers 429 when it's asked too often.
+ */
+public class RequestSchedulerTest {
+
+    private static final String ENDPOINT = "api.themoviedb.org/3/movie/popular";
+
+    private final FakeClock mClock = new FakeClock();
+
+    @Test
+    public void burst_thenSteadyRate() throws Exception {
+        RequestScheduler scheduler = newScheduler(10, 3);
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE, succeed());
+        }
+        assertEquals(0, mClock.mSleptNanos);
+
+        // Past the burst, requests go out at the refill rate.
+        for (int i = 0; i < 30; i++) {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE, succeed());
+        }
+        assertEquals(10.0, seconds(mClock.mSleptNanos), 0.01);
+    }
+
+    @Test
+    public void speculativeLanes_leaveTokensForTheUser() throws Exception {
+        RequestScheduler scheduler = newScheduler(10, 3);
+
+        // Background work stops short of the last six tokens.
+        for (int i = 0; i < 4; i++) {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.BACKGROUND, succeed());
+        }
+        assertEquals(0, mClock.mSleptNanos);
+
+        // A prefetch can still go, but gives up rather than dip into the last three.
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.PREFETCH, succeed());
+        }
+        try {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.PREFETCH, succeed());
+            fail("prefetch should have been skipped");
+        } catch (TMDbException e) {
+            assertEquals(TMDbException.Status.RATE_LIMITED, e.getStatus());
+        }
+
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE, succeed());
+        }
+        assertEquals(0, mClock.mSleptNanos);
+    }
+
+    @Test
+    public void rateLimited_retriesNoSoonerThanRetryAfter() throws Exception {
+        RequestScheduler scheduler = newScheduler(10, 3);
+        CountingAttempt attempt = new CountingAttempt(
+                new TMDbException(TMDbException.Status.RATE_LIMITED, 429, 25, 2000, "Too many"));
+
+        assertEquals("ok", scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE,
+                attempt));
+
+        assertEquals(2, attempt.mCount);
+        assertTrue(mClock.mSleptNanos >= TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void longRetryAfter_failsTheNextRequestRatherThanParkIt() throws Exception {
+        RequestScheduler scheduler = newScheduler(10, 3);
+        long hourMillis = TimeUnit.HOURS.toMillis(1);
+        CountingAttempt attempt = new CountingAttempt(new TMDbException(
+                TMDbException.Status.RATE_LIMITED, 429, 25, hourMillis, "Too many"));
+        try {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE, attempt);
+            fail("expected the 429");
+        } catch (TMDbException e) {
+            assertEquals(1, attempt.mCount);
+        }
+
+        // Waiting out the pause would hold a worker for longer than a request may wait.
+        try {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE, succeed());
+            fail("expected the request to be turned away");
+        } catch (TMDbException e) {
+            assertEquals(TMDbException.Status.RATE_LIMITED, e.getStatus());
+        }
+        assertEquals(0, mClock.mSleptNanos);
+
+        // The bucket was only paused for as long as a request may wait, not the hour.
+        mClock.mNanos += RequestScheduler.MAX_RETRY_AFTER_NANOS;
+        assertEquals("ok", scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE,
+                succeed()));
+        assertTrue(mClock.mSleptNanos < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void serverErrors_backOffExponentiallyThenGiveUp() throws Exception {
+        RequestScheduler scheduler = newScheduler(10, 3);
+        CountingAttempt attempt = new CountingAttempt(new IOException("reset"),
+                new IOException("reset"), new IOException("reset"), new IOException("reset"));
+
+        try {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE, attempt);
+            fail("expected the last failure");
+        } catch (IOException e) {
+            assertEquals(RequestScheduler.MAX_ATTEMPTS, attempt.mCount);
+        }
+
+        // Jittered, but each wait is capped at 0.5s, 1s and 2s.
+        assertTrue(mClock.mSleptNanos <= TimeUnit.MILLISECONDS.toNanos(3500));
+        assertTrue(mClock.mSleptNanos > 0);
+    }
+
+    @Test
+    public void prefetchRaisedWhileRunning_isRetriedInItsNewLane() throws Exception {
+        // The prefetch takes one of four tokens, and leaves three that only the user's lane may
+        // take, so the retry has to be in that lane on both counts.
+        RequestScheduler scheduler = newScheduler(4, 0.001);
+        final MutablePriority priority = new MutablePriority(RequestScheduler.Priority.PREFETCH);
+        final CountingAttempt failOnce = new CountingAttempt(new IOException("reset"));
+
+        RequestScheduler.Attempt<String> attempt = new RequestScheduler.Attempt<String>() {
+            @Override
+            public String run() throws IOException, TMDbException {
+                // The user scrolls onto the prefetched page while it's out.
+                priority.mPriority = RequestScheduler.Priority.USER_VISIBLE;
+                return failOnce.run();
+            }
+        };
+
+        String result = scheduler.execute(ENDPOINT, priority, attempt);
+
+        assertEquals("ok", result);
+        assertEquals(2, failOnce.mCount);
+    }
+
+    @Test
+    public void fatalErrors_areNotRetried() throws Exception {
+        RequestScheduler scheduler = newScheduler(10, 3);
+        CountingAttempt attempt = new CountingAttempt(new TMDbException(
+                TMDbException.Status.NOT_FOUND, 404, 34, -1, "Not found"));
+
+        try {
+            scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE, attempt);
+            fail("expected the failure");
+        } catch (TMDbException e) {
+            assertEquals(TMDbException.Status.NOT_FOUND, e.getStatus());
+        }
+        assertEquals(1, attempt.mCount);
+    }
+
+    @Test
+    public void failingEndpoint_opensBreakerUntilATrialSucceeds() throws Exception {
+        RequestScheduler scheduler = newScheduler(100, 100);
+        TMDbException serverError =
+                new TMDbException(TMDbException.Status.SERVER_ERROR, 503, 46, -1, "Unavailable");
+
+        for (int i = 0; i < RequestScheduler.BREAKER_FAILURE_THRESHOLD; i++) {
+            try {
+                scheduler.execute(ENDPOINT, RequestScheduler.Priority.PREFETCH,
+                        new CountingAttempt(serverError));
+                fail("expected the failure");
+            } catch (TMDbException e) {
+                assertEquals(TMDbException.Status.SERVER_ERROR, e.getStatus());
+            }
+        }
+
+        CountingAttempt turnedAway = new CountingAttempt();
+        assertCircuitOpen(scheduler, ENDPOINT, turnedAway);
+        assertEquals(0, turnedAway.mCount);
+
+        // Other endpoints have their own breakers.
+        scheduler.execute("api.themoviedb.org/3/movie/{id}",
+                RequestScheduler.Priority.USER_VISIBLE, succeed());
+
+        mClock.mNanos += RequestScheduler.BREAKER_OPEN_NANOS;
+        assertEquals("ok", scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE,
+                succeed()));
+        assertEquals("ok", scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE,
+                succeed()));
+    }
+
+    @Test
+    public void openBreaker_turnsRequestsAwayWithoutSpendingTokens() throws Exception {
+        // Five prefetches leave three tokens, which only the user's lane may take.
+        RequestScheduler scheduler = newScheduler(8, 0.001);
+        TMDbException serverError =
+                new TMDbException(TMDbException.Status.SERVER_ERROR, 503, 46, -1, "Unavailable");
+        for (int i = 0; i < RequestScheduler.BREAKER_FAILURE_THRESHOLD; i++) {
+            try {
+                scheduler.execute(ENDPOINT, RequestScheduler.Priority.PREFETCH,
+                        new CountingAttempt(serverError));
+                fail("expected the failure");
+            } catch (TMDbException e) {
+                assertEquals(TMDbException.Status.SERVER_ERROR, e.getStatus());
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertCircuitOpen(scheduler, ENDPOINT, new CountingAttempt());
+        }
+
+        // The three tokens are all still there for another endpoint.
+        for (int i = 0; i < 3; i++) {
+            scheduler.execute("api.themoviedb.org/3/movie/{id}",
+                    RequestScheduler.Priority.USER_VISIBLE, succeed());
+        }
+        assertEquals(0, mClock.mSleptNanos);
+    }
+
+    @Test
+    public void trialThatWasntSent_letsAnotherRequestBeTheTrial() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(1, 100);
+        breaker.onFailure(0);
+
+        assertTrue(breaker.allowRequest(100));
+        breaker.onNotSent();
+        assertTrue(breaker.allowRequest(100));
+        assertFalse(breaker.allowRequest(100));
+    }
+
+    @Test
+    public void handlerFailures_areNeitherRetriedNorCountedAgainstTheEndpoint()
+            throws Exception {
+        QuotaServer server = new QuotaServer(Integer.MAX_VALUE, 1, 0);
+        try {
+            RequestScheduler scheduler = newScheduler(100, 100);
+            final IOException malformed = new IOException("Expected BEGIN_ARRAY");
+            NetworkUtils.ResponseHandler<String> failingHandler =
+                    new NetworkUtils.ResponseHandler<String>() {
+                        @Override
+                        public String handleResponse(InputStream in) throws IOException {
+                            readFully(in);
+                            throw malformed;
+                        }
+                    };
+
+            for (int i = 0; i < RequestScheduler.BREAKER_FAILURE_THRESHOLD; i++) {
+                try {
+                    scheduler.execute(server.url(), failingHandler,
+                            RequestScheduler.Priority.USER_VISIBLE);
+                    fail("expected the handler's failure");
+                } catch (IOException e) {
+                    assertSame(malformed, e);
+                }
+            }
+
+            // One request each, and the breaker is still closed.
+            assertEquals(RequestScheduler.BREAKER_FAILURE_THRESHOLD, server.arrivals().size());
+            assertEquals("ok", scheduler.execute(RequestScheduler.endpointOf(server.url()),
+                    RequestScheduler.Priority.USER_VISIBLE, succeed()));
+            assertEquals(0, mClock.mSleptNanos);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void failedTrial_reopensBreaker() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(2, 100);
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertFalse(breaker.allowRequest(50));
+
+        // Only one trial at a time.
+        assertTrue(breaker.allowRequest(100));
+        assertFalse(breaker.allowRequest(100));
+
+        breaker.onFailure(120);
+        assertFalse(breaker.allowRequest(200));
+        assertTrue(breaker.allowRequest(220));
+        breaker.onSuccess();
+        assertTrue(breaker.allowRequest(220));
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void statuses_classifyTMDbAndHttpCodes() throws Exception {
+        assertEquals(TMDbException.Status.RATE_LIMITED, TMDbException.statusOf(429, -1));
+        assertEquals(TMDbException.Status.RATE_LIMITED, TMDbException.statusOf(-1, 25));
+        assertEquals(TMDbException.Status.SERVER_ERROR, TMDbException.statusOf(502, -1));
+        assertEquals(TMDbException.Status.SERVER_ERROR, TMDbException.statusOf(200, 11));
+        assertEquals(TMDbException.Status.UNAUTHORIZED, TMDbException.statusOf(401, 7));
+        assertEquals(TMDbException.Status.NOT_FOUND, TMDbException.statusOf(404, 34));
+        assertEquals(TMDbException.Status.FAILED, TMDbException.statusOf(400, 22));
+
+        assertEquals(3000, TMDbException.parseRetryAfterMillis(" 3"));
+        assertEquals(-1, TMDbException.parseRetryAfterMillis(null));
+        assertEquals(-1, TMDbException.parseRetryAfterMillis("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+
+    @Test
+    public void endpoints_shareABreakerAcrossMovieIds() throws Exception {
+        assertEquals("api.themoviedb.org/3/movie/{id}", RequestScheduler.endpointOf(
+                new URL("https://api.themoviedb.org/3/movie/550?api_key=k")));
+        assertEquals("api.themoviedb.org/3/movie/top_rated", RequestScheduler.endpointOf(
+                new URL("https://api.themoviedb.org/3/movie/top_rated?page=2")));
+    }
+
+    @Test
+    public void limiter_staysWithinServerQuota() throws Exception {
+        // The server allows 8 requests a second; a burst of 2 and 5/s leaves room for jitter.
+        QuotaServer server = new QuotaServer(8, TimeUnit.SECONDS.toNanos(1), 0);
+        try {
+            RequestScheduler scheduler = new RequestScheduler(RequestScheduler.SYSTEM_CLOCK,
+                    new TokenBucket(2, 5, System.nanoTime()), new Random(42));
+            TMDbHttpClient client = new TMDbHttpClient();
+
+            for (int i = 0; i < 16; i++) {
+                assertEquals("{}", scheduler.execute(ENDPOINT,
+                        RequestScheduler.Priority.USER_VISIBLE, get(client, server.url())));
+            }
+
+            assertEquals(16, server.arrivals().size());
+            assertEquals(0, server.rejectedCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void injected429s_areRetriedAfterRetryAfter() throws Exception {
+        QuotaServer server = new QuotaServer(Integer.MAX_VALUE, 1, 2);
+        try {
+            RequestScheduler scheduler = new RequestScheduler(RequestScheduler.SYSTEM_CLOCK,
+                    new TokenBucket(10, 3, System.nanoTime()), new Random(42));
+
+            assertEquals("{}", scheduler.execute(ENDPOINT, RequestScheduler.Priority.USER_VISIBLE,
+                    get(new TMDbHttpClient(), server.url())));
+
+            List<Long> arrivals = server.arrivals();
+            assertEquals(3, arrivals.size());
+            assertEquals(2, server.rejectedCount());
+            for (int i = 1; i < arrivals.size(); i++) {
+                long gapNanos = arrivals.get(i) - arrivals.get(i - 1);
+                assertTrue("retried after " + gapNanos / 1000000 + "ms",
+                        gapNanos >= TimeUnit.SECONDS.toNanos(1));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    private RequestScheduler newScheduler(int capacity, double tokensPerSecond) {
+        return new RequestScheduler(mClock,
+                new TokenBucket(capacity, tokensPerSecond, mClock.mNanos), new Random(42));
+    }
+
+    private static void assertCircuitOpen(RequestScheduler scheduler, String endpoint,
+                                          CountingAttempt attempt) throws Exception {
+        try {
+            scheduler.execute(endpoint, RequestScheduler.Priority.USER_VISIBLE, attempt);
+            fail("expected the breaker to be open");
+        } catch (TMDbException e) {
+            assertEquals(TMDbException.Status.CIRCUIT_OPEN, e.getStatus());
+        }
+    }
+
+    /**
+     * Gets a URL the way NetworkUtils does, minus parsing TMDb's error JSON.
+     */
+    private static RequestScheduler.Attempt<String> get(final TMDbHttpClient client,
+                                                        final URL url) {
+        return new RequestScheduler.Attempt<String>() {
+            @Override
+            public String run() throws IOException, TMDbException {
+                TMDbHttpClient.Response response = client.get(url);
+                try {
+                    int code = response.code();
+                    if (code >= 400) {
+                        throw new TMDbException(TMDbException.statusOf(code, -1), code, -1,
+                                TMDbException.parseRetryAfterMillis(
+                                        response.header(NetworkUtils.HEADER_RETRY_AFTER)),
+                                "HTTP " + code);
+                    }
+                    return new String(readFully(response.body()), "UTF-8");
+                } finally {
+                    response.close();
+                }
+            }
+        };
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static CountingAttempt succeed() {
+        return new CountingAttempt();
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    /**
+     * Time that only moves when something sleeps, or the test moves it.
+     */
+    private static final class FakeClock implements RequestScheduler.Clock {
+        long mNanos = 1000;
+        long mSleptNanos;
+
+        @Override
+        public long nanoTime() {
+            return mNanos;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            mNanos += nanos;
+            mSleptNanos += nanos;
+        }
+    }
+
+    private static final class MutablePriority implements RequestScheduler.PrioritySource {
+        volatile RequestScheduler.Priority mPriority;
+
+        MutablePriority(RequestScheduler.Priority priority) {
+            mPriority = priority;
+        }
+
+        @Override
+        public RequestScheduler.Priority getPriority() {
+            return mPriority;
+        }
+    }
+
+    /**
+     * Fails with the given exceptions in turn, then succeeds.
+     */
+    private static final class CountingAttempt implements RequestScheduler.Attempt<String> {
+        private final Exception[] mFailures;
+        int mCount;
+
+        CountingAttempt(Exception... failures) {
+            mFailures = failures;
+        }
+
+        @Override
+        public String run() throws IOException, TMDbException {
+            int attempt = mCount++;
+            if (attempt < mFailures.length) {
+                Exception failure = mFailures[attempt];
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                throw (TMDbException) failure;
+            }
+            return "ok";
+        }
+    }
+
+    /**
+     * Local server that answers 429 with Retry-After: 1 to a request over its quota of requests
+     * in any window, and to a given number of requests up front.
+     */
+    private static final class QuotaServer {
+        private final HttpServer mServer;
+        private final int mQuota;
+        private final long mWindowNanos;
+
+        /* Guarded by this. */
+        private final List<Long> mArrivals = new ArrayList<>();
+        private final List<Long> mAccepted = new ArrayList<>();
+        private int mRejectUpFront;
+        private int mRejectedCount;
+
+        QuotaServer(int quota, long windowNanos, int rejectUpFront) throws IOException {
+            mQuota = quota;
+            mWindowNanos = windowNanos;
+            mRejectUpFront = rejectUpFront;
+
+            mServer = HttpServer.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            mServer.createContext("/3/movie/popular", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    byte[] body = "{}".getBytes("UTF-8");
+                    int code = admit(System.nanoTime()) ? 200 : 429;
+                    if (code == 429) {
+                        exchange.getResponseHeaders().set("Retry-After", "1");
+                        body = "{\"status_code\":25}".getBytes("UTF-8");
+                    }
+
+                    exchange.sendResponseHeaders(code, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+            });
+            mServer.start();
+        }
+
+        private synchronized boolean admit(long nowNanos) {
+            mArrivals.add(nowNanos);
+
+            int inWindow = 0;
+            for (long accepted : mAccepted) {
+                if (nowNanos - accepted < mWindowNanos) {
+                    inWindow++;
+                }
+            }
+
+            if (mRejectUpFront > 0 || inWindow >= mQuota) {
+                mRejectUpFront = Math.max(0, mRejectUpFront - 1);
+                mRejectedCount++;
+                return false;
+            }
+            mAccepted.add(nowNanos);
+            return true;
+        }
+
+        URL url() throws IOException {
+            return new URL("http://127.0.0.1:" + mServer.getAddress().getPort()
+                    + "/3/movie/popular");
+        }
+
+        synchronized List<Long> arrivals() {
+            return new ArrayList<>(mArrivals);
+        }
+
+        synchronized int rejectedCount() {
+            return mRejectedCount;
+        }
+
+        void stop() {
+            mServer.stop(0);
+        }
+    }
+}
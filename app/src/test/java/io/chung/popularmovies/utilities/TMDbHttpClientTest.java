@@ -0,0 +1,289 @@
+package io.chung.popularmovies.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.KeyStore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks TMDbHttpClient against a local TLS server: connections should be reused across
+ * requests, and gzip should shrink what goes over the wire.
+ */
+public class TMDbHttpClientTest {
+
+    private static final String KEYSTORE = "/localhost.p12";
+    private static final char[] KEYSTORE_PASSWORD = "password".toCharArray();
+
+    private static final int REQUEST_COUNT = 5;
+
+    private HttpsServer mServer;
+    private SSLSocketFactory mDefaultSocketFactory;
+    private HostnameVerifier mDefaultHostnameVerifier;
+
+    private final AtomicInteger mHandshakeCount = new AtomicInteger();
+    private byte[] mBody;
+
+    @Before
+    public void setUp() throws Exception {
+        // A movie-list-sized JSON body with the kind of repetition TMDb responses have.
+        StringBuilder body = new StringBuilder("{\"page\":1,\"results\":[");
+        for (int i = 0; i < 20; i++) {
+            body.append(i == 0 ? "" : ",")
+                    .append("{\"id\":").append(i)
+                    .append(",\"title\":\"Movie ").append(i)
+                    .append("\",\"overview\":\"An unlikely group must work together.\"")
+                    .append(",\"poster_path\":\"/poster").append(i).append(".jpg\"}");
+        }
+        mBody = body.append("]}").toString().getBytes("UTF-8");
+
+        SSLContext sslContext = createSslContext();
+
+        mServer = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        mServer.createContext("/3/movie/popular", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                byte[] responseBody = mBody;
+
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+                    gzip.write(mBody);
+                    gzip.close();
+
+                    responseBody = compressed.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+
+                exchange.sendResponseHeaders(200, responseBody.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(responseBody);
+                out.close();
+            }
+        });
+        mServer.start();
+
+        // Trust the test certificate and count every TLS handshake the client performs.
+        mDefaultSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        mDefaultHostnameVerifier = HttpsURLConnection.getDefaultHostnameVerifier();
+        HttpsURLConnection.setDefaultSSLSocketFactory(
+                new HandshakeCountingSocketFactory(sslContext.getSocketFactory()));
+        HttpsURLConnection.setDefaultHostnameVerifier(new HostnameVerifier() {
+            @Override
+            public boolean verify(String hostname, SSLSession session) {
+                return true;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+        HttpsURLConnection.setDefaultSSLSocketFactory(mDefaultSocketFactory);
+        HttpsURLConnection.setDefaultHostnameVerifier(mDefaultHostnameVerifier);
+    }
+
+    @Test
+    public void disconnectingEveryRequest_handshakesEveryTime() throws Exception {
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            // What NetworkUtils used to do.
+            HttpsURLConnection connection = (HttpsURLConnection) popularUrl().openConnection();
+            try {
+                readFully(connection.getInputStream());
+            } finally {
+                connection.disconnect();
+            }
+        }
+
+        assertEquals(REQUEST_COUNT, mHandshakeCount.get());
+    }
+
+    @Test
+    public void client_reusesConnectionAcrossRequests() throws Exception {
+        TMDbHttpClient client = new TMDbHttpClient();
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            TMDbHttpClient.Response response = client.get(popularUrl());
+            try {
+                assertArrayEquals(mBody, readFully(response.body()));
+            } finally {
+                response.close();
+            }
+        }
+
+        assertEquals(1, mHandshakeCount.get());
+    }
+
+    @Test
+    public void client_reusesConnectionWhenBodyIsPartlyRead() throws Exception {
+        TMDbHttpClient client = new TMDbHttpClient();
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            TMDbHttpClient.Response response = client.get(popularUrl());
+            // Like JsonReader stopping at the end of the top-level object.
+            response.body().read(new byte[16]);
+            response.close();
+        }
+
+        assertEquals(1, mHandshakeCount.get());
+    }
+
+    @Test
+    public void client_receivesGzipAndReportsBytesOnWire() throws Exception {
+        TMDbHttpClient client = new TMDbHttpClient();
+
+        final TMDbHttpClient.RequestTiming[] reported = new TMDbHttpClient.RequestTiming[1];
+        client.setEventListener(new TMDbHttpClient.EventListener() {
+            @Override
+            public void onRequestFinished(URL url, TMDbHttpClient.RequestTiming timing) {
+                reported[0] = timing;
+            }
+        });
+
+        TMDbHttpClient.Response response = client.get(popularUrl());
+        try {
+            assertArrayEquals(mBody, readFully(response.body()));
+        } finally {
+            response.close();
+        }
+
+        TMDbHttpClient.RequestTiming timing = reported[0];
+        assertNotNull(timing);
+        assertTrue(timing.gzipped);
+        assertEquals(mBody.length, timing.bytesDecoded);
+        assertTrue("expected gzip to at least halve the body, got " + timing.bytesOnWire
+                + " of " + mBody.length, timing.bytesOnWire * 2 < mBody.length);
+        assertTrue(timing.firstByteNanos <= timing.totalNanos);
+    }
+
+    private URL popularUrl() throws Exception {
+        return new URL("https://127.0.0.1:" + mServer.getAddress().getPort() + "/3/movie/popular");
+    }
+
+    private static SSLContext createSslContext() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        InputStream in = TMDbHttpClientTest.class.getResourceAsStream(KEYSTORE);
+        try {
+            keyStore.load(in, KEYSTORE_PASSWORD);
+        } finally {
+            in.close();
+        }
+
+        KeyManagerFactory keyManagerFactory =
+                KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, KEYSTORE_PASSWORD);
+
+        TrustManagerFactory trustManagerFactory =
+                TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(),
+                null);
+        return sslContext;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Counts completed handshakes on every socket the client creates.
+     */
+    private final class HandshakeCountingSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory mDelegate;
+
+        HandshakeCountingSocketFactory(SSLSocketFactory delegate) {
+            mDelegate = delegate;
+        }
+
+        private Socket count(Socket socket) {
+            ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                @Override
+                public void handshakeCompleted(HandshakeCompletedEvent event) {
+                    mHandshakeCount.incrementAndGet();
+                }
+            });
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return mDelegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return mDelegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return count(mDelegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+                throws IOException {
+            return count(mDelegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return count(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+                throws IOException {
+            return count(mDelegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return count(mDelegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                                   int localPort) throws IOException {
+            return count(mDelegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}